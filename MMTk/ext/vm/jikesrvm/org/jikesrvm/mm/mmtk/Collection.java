@@ -16,6 +16,8 @@ import org.mmtk.plan.CollectorContext;
 import org.mmtk.plan.MutatorContext;
 
 import org.jikesrvm.VM;
+import org.jikesrvm.adaptive.controller.Controller;
+import org.jikesrvm.adaptive.measurements.RuntimeMeasurements;
 import org.jikesrvm.architecture.StackFrameLayout;
 import org.jikesrvm.mm.mminterface.MemoryManager;
 import org.jikesrvm.mm.mminterface.Selected;
@@ -59,6 +61,18 @@ public class Collection extends org.mmtk.vm.Collection {
     return RVMThread.getNumActiveThreads() - RVMThread.getNumActiveDaemons();
   }
 
+  @Override
+  public int getCurrentCpu() {
+    return SysCall.sysCall.sysGetCpu();
+  }
+
+  @Override
+  public boolean bindCurrentThread(int cpu) {
+    if (SysCall.sysCall.sysThreadBindSupported() != 1) return false;
+    SysCall.sysCall.sysThreadBind(cpu);
+    return true;
+  }
+
   @Override
   @Unpreemptible
   public void blockForGC() {
@@ -124,6 +138,9 @@ public class Collection extends org.mmtk.vm.Collection {
   @Override
   @Unpreemptible
   public void resumeAllMutators() {
+    if (VM.BuildForAdaptiveSystem && Controller.options.GC_SAMPLING) {
+      RuntimeMeasurements.takeCollectorSamples();
+    }
     RVMThread.unblockAllMutatorsForGC();
   }
 
@@ -16,14 +16,21 @@ import static org.jikesrvm.runtime.UnboxedSizeConstants.LOG_BYTES_IN_ADDRESS;
 
 import org.jikesrvm.VM;
 import org.jikesrvm.mm.mminterface.Selected;
+import org.jikesrvm.runtime.Entrypoints;
 import org.jikesrvm.runtime.Magic;
+import org.jikesrvm.scheduler.RVMThread;
+import org.jikesrvm.scheduler.Synchronization;
 import org.jikesrvm.util.Services;
+import org.mmtk.plan.CollectorContext;
 import org.mmtk.plan.TraceLocal;
+import org.vmmagic.pragma.Entrypoint;
+import org.vmmagic.pragma.Inline;
 import org.vmmagic.pragma.NoInline;
 import org.vmmagic.pragma.Uninterruptible;
 import org.vmmagic.pragma.UninterruptibleNoWarn;
 import org.vmmagic.pragma.Unpreemptible;
 import org.vmmagic.pragma.UnpreemptibleNoWarn;
+import org.vmmagic.unboxed.Address;
 import org.vmmagic.unboxed.AddressArray;
 import org.vmmagic.unboxed.ObjectReference;
 import org.vmmagic.unboxed.Offset;
@@ -32,6 +39,10 @@ import org.vmmagic.unboxed.Word;
 /**
  * This class manages the processing of finalizable objects.
  * <p>
+ * As in {@link ReferenceProcessor}, candidates are added without taking the
+ * lock unless the tables need to grow, and the table is scanned by all
+ * collector threads in parallel.
+ * <p>
  * TODO can this be a linked list?
  */
 @Uninterruptible
@@ -53,6 +64,12 @@ public final class FinalizableProcessor extends org.mmtk.vm.FinalizableProcessor
   /** Amount to grow the table by when it is filled */
   private static final double GROWTH_FACTOR = 2.0;
 
+  /** Set in {@code maxIndex} while the tables are being grown */
+  private static final int GROWING = 0x80000000;
+
+  /** Set in a table entry during a parallel scan when the object is ready for finalization */
+  private static final int READY = 0x1;
+
   /*************************************************************************
    * Instance fields
    */
@@ -69,9 +86,21 @@ public final class FinalizableProcessor extends org.mmtk.vm.FinalizableProcessor
   /** Index of first entry created since last collection */
   protected int nurseryIndex = 0;
 
-  /** Index of the first free slot in the table. */
+  /**
+   * Index of the first free slot in the table. Slots at or above this index
+   * are always zero. The {@link #GROWING} bit is set while the tables are
+   * being grown.
+   */
+  @Entrypoint
   protected volatile int maxIndex = 0;
 
+  /**
+   * Number of slots that can be reserved without growing the tables,
+   * i.e. the minimum of the size of the table and the free space in
+   * the table of ready objects
+   */
+  private volatile int limit = INITIAL_SIZE;
+
   /** Next object ready to be finalized */
   private volatile int nextReadyIndex = 0;
 
@@ -83,6 +112,31 @@ public final class FinalizableProcessor extends org.mmtk.vm.FinalizableProcessor
    */
   protected FinalizableProcessor() {}
 
+  /**
+   * Reserve the next free slot in the table, without taking the lock.
+   *
+   * @return the index of the reserved slot, or -1 if the tables are full
+   *  or being grown
+   */
+  @Inline
+  private int reserveSlot() {
+    Offset offset = Entrypoints.finalizableProcessorMaxIndexField.getOffset();
+    while (true) {
+      int index = maxIndex;
+      if (index < 0 || index >= limit) return -1;
+      if (Synchronization.tryCompareAndSwap(this, offset, index, index + 1)) return index;
+    }
+  }
+
+  /**
+   * Recompute the number of slots that can be reserved without growing the
+   * tables.
+   */
+  private void updateLimit() {
+    int free = freeReady();
+    limit = free < table.length() ? free : table.length();
+  }
+
   /**
    * Allocate an entry in the table. This should be called from an unpreemptible
    * context so that the entry can be filled. This method is responsible for growing
@@ -93,64 +147,112 @@ public final class FinalizableProcessor extends org.mmtk.vm.FinalizableProcessor
   @NoInline
   @UnpreemptibleNoWarn("Non-preemptible but yield when table needs to be grown")
   public void add(Object object) {
+    int index;
+    while ((index = reserveSlot()) < 0) {
+      grow();
+    }
+    /*
+     * A thread growing the table waits for this slot to be filled before
+     * copying it, but we may have stored into the old table after the new
+     * one was installed, in which case we store again.
+     */
+    AddressArray oldTable;
+    do {
+      oldTable = table;
+      oldTable.set(index, Magic.objectAsAddress(object));
+    } while (Magic.objectAsAddress(oldTable).NE(Magic.objectAsAddress(table)));
+  }
+
+  /**
+   * Grow the table and the table of ready objects as required so that
+   * another slot can be reserved.
+   */
+  @UnpreemptibleNoWarn("Non-preemptible but may allocate")
+  private void grow() {
     lock.acquire();
-    while (maxIndex >= table.length() || maxIndex >= freeReady()) {
-      int newTableSize = -1;
-      int newReadyForFinalizeSize = -1;
-      AddressArray newTable = null;
-      Object[] newReadyForFinalize = null;
-
-      if (maxIndex >= table.length()) {
-        newTableSize = STRESS ? table.length() + 1 : (int)(table.length() * GROWTH_FACTOR);
-      }
+    int index = maxIndex;
+    if (index < 0 || index < limit) {
+      // Someone else is growing the tables, or has grown them
+      lock.release();
+      return;
+    }
+    int newTableSize = -1;
+    int newReadyForFinalizeSize = -1;
+    AddressArray newTable = null;
+    Object[] newReadyForFinalize = null;
 
-      if (maxIndex >= freeReady()) {
-        newReadyForFinalizeSize = table.length() + countReady();
-        if (newReadyForFinalizeSize <= readyForFinalize.length) {
-          newReadyForFinalizeSize = -1;
-        }
+    if (index >= table.length()) {
+      newTableSize = STRESS ? table.length() + 1 : (int)(table.length() * GROWTH_FACTOR);
+    }
+
+    if (index >= freeReady()) {
+      newReadyForFinalizeSize = table.length() + countReady();
+      if (newReadyForFinalizeSize <= readyForFinalize.length) {
+        newReadyForFinalizeSize = -1;
       }
+    }
 
-      {
-        lock.release();
-        if (newTableSize >= 0) {
-          newTable = AddressArray.create(newTableSize);
-        }
-        if (newReadyForFinalizeSize >= 0) {
-          newReadyForFinalize = new Object[newReadyForFinalizeSize];
-        }
-        lock.acquire();
+    {
+      lock.release();
+      if (newTableSize >= 0) {
+        newTable = AddressArray.create(newTableSize);
+      }
+      if (newReadyForFinalizeSize >= 0) {
+        newReadyForFinalize = new Object[newReadyForFinalizeSize];
       }
+      lock.acquire();
+    }
 
-      if (maxIndex >= table.length() && newTable != null) {
-        for (int i = 0; i < table.length(); i++) {
-          newTable.set(i, table.get(i));
+    /* Stop slots being reserved, and wait for the reserved ones to be filled */
+    Offset offset = Entrypoints.finalizableProcessorMaxIndexField.getOffset();
+    do {
+      index = maxIndex;
+    } while (index < 0 || !Synchronization.tryCompareAndSwap(this, offset, index, index | GROWING));
+
+    if (index >= table.length() && newTable != null && newTable.length() > table.length()) {
+      for (int i = 0; i < table.length(); i++) {
+        Address entry = table.get(i);
+        while (i < index && entry.isZero()) {
+          // reserved by a mutator that has not yet filled it
+          Magic.pause();
+          entry = table.get(i);
         }
-        table = newTable;
+        newTable.set(i, entry);
       }
+      table = newTable;
+    }
 
-      if (maxIndex >= freeReady() && newReadyForFinalize != null) {
-        int j = 0;
-        for (int i = nextReadyIndex; i < lastReadyIndex && i < readyForFinalize.length; i++) {
+    if (index >= freeReady() && newReadyForFinalize != null && newReadyForFinalize.length > countReady()) {
+      int j = 0;
+      for (int i = nextReadyIndex; i < lastReadyIndex && i < readyForFinalize.length; i++) {
+        newReadyForFinalize[j++] = readyForFinalize[i];
+      }
+      if (lastReadyIndex < nextReadyIndex) {
+        for (int i = 0; i < lastReadyIndex; i++) {
           newReadyForFinalize[j++] = readyForFinalize[i];
         }
-        if (lastReadyIndex < nextReadyIndex) {
-          for (int i = 0; i < lastReadyIndex; i++) {
-            newReadyForFinalize[j++] = readyForFinalize[i];
-          }
-        }
-        lastReadyIndex = j;
-        nextReadyIndex = 0;
-        readyForFinalize = newReadyForFinalize;
       }
+      lastReadyIndex = j;
+      nextReadyIndex = 0;
+      readyForFinalize = newReadyForFinalize;
     }
-    table.set(maxIndex++, Magic.objectAsAddress(object));
+    updateLimit();
+    maxIndex = index;
     lock.release();
   }
 
   @Override
   public void clear() {
+    for (int i = 0; i < maxIndex; i++) {
+      table.set(i, Address.zero());
+    }
     maxIndex = 0;
+    updateLimit();
+  }
+
+  @Override
+  public boolean isParallel() {
+    return true;
   }
 
   /**
@@ -158,14 +260,18 @@ public final class FinalizableProcessor extends org.mmtk.vm.FinalizableProcessor
    * <p>
    * Currently ignores the nursery hint.
    * <p>
-   * TODO parallelise this code?
+   * Called by every collector thread, each of which forwards its share of
+   * the table.
    *
    * @param trace The trace
    * @param nursery Is this a nursery collection ?
    */
   @Override
   public void forward(TraceLocal trace, boolean nursery) {
-    for (int i = 0 ; i < maxIndex; i++) {
+    CollectorContext collector = RVMThread.getCurrentThread().getCollectorContext();
+    int from = ReferenceProcessor.partitionStart(collector, 0, maxIndex);
+    int to = ReferenceProcessor.partitionEnd(collector, 0, maxIndex);
+    for (int i = from; i < to; i++) {
       ObjectReference ref = table.get(i).toObjectReference();
       table.set(i, trace.getForwardedFinalizable(ref).toAddress());
     }
@@ -179,36 +285,60 @@ public final class FinalizableProcessor extends org.mmtk.vm.FinalizableProcessor
    * Depending on the value of <code>nursery</code>, we will either
    * scan all references, or just those created since the last scan.
    * <p>
-   * TODO parallelise this code
+   * Called by every collector thread. Each thread processes its share of
+   * the table in place, marking the objects that are ready for finalization;
+   * the primary thread then compacts the table and moves the marked objects
+   * to the table of ready objects.
    *
    * @param nursery Scan only the newly created references
    */
   @Override
   @UninterruptibleNoWarn
   public void scan(TraceLocal trace, boolean nursery) {
-    int toIndex = nursery ? nurseryIndex : 0;
+    int start = nursery ? nurseryIndex : 0;
+    int end = maxIndex;
+    CollectorContext collector = RVMThread.getCurrentThread().getCollectorContext();
+    int from = ReferenceProcessor.partitionStart(collector, start, end);
+    int to = ReferenceProcessor.partitionEnd(collector, start, end);
 
-    for (int fromIndex = toIndex; fromIndex < maxIndex; fromIndex++) {
-      ObjectReference ref = table.get(fromIndex).toObjectReference();
+    for (int i = from; i < to; i++) {
+      ObjectReference ref = table.get(i).toObjectReference();
 
       /* Determine liveness (and forward if necessary) */
       if (trace.isLive(ref)) {
-        table.set(toIndex++, trace.getForwardedFinalizable(ref).toAddress());
+        table.set(i, trace.getForwardedFinalizable(ref).toAddress());
         continue;
       }
 
       /* Make ready for finalize */
       ref = trace.retainForFinalize(ref);
-
-      /* Add to object table */
-      Offset offset = Word.fromIntZeroExtend(lastReadyIndex).lsh(LOG_BYTES_IN_ADDRESS).toOffset();
-      Selected.Plan.get().storeObjectReference(Magic.objectAsAddress(readyForFinalize).plus(offset), ref);
-      lastReadyIndex = (lastReadyIndex + 1) % readyForFinalize.length;
+      table.set(i, ref.toAddress().toWord().or(Word.fromIntZeroExtend(READY)).toAddress());
     }
-    nurseryIndex = maxIndex = toIndex;
 
-    /* Possible schedule finalizers to run */
-    Collection.scheduleFinalizerThread();
+    if (collector.rendezvous() == 0) {
+      int toIndex = start;
+      for (int fromIndex = start; fromIndex < end; fromIndex++) {
+        Word entry = table.get(fromIndex).toWord();
+        if (entry.and(Word.fromIntZeroExtend(READY)).isZero()) {
+          table.set(toIndex++, entry.toAddress());
+          continue;
+        }
+
+        /* Add to object table */
+        ObjectReference ref = entry.and(Word.fromIntZeroExtend(READY).not()).toAddress().toObjectReference();
+        Offset offset = Word.fromIntZeroExtend(lastReadyIndex).lsh(LOG_BYTES_IN_ADDRESS).toOffset();
+        Selected.Plan.get().storeObjectReference(Magic.objectAsAddress(readyForFinalize).plus(offset), ref);
+        lastReadyIndex = (lastReadyIndex + 1) % readyForFinalize.length;
+      }
+      for (int i = toIndex; i < end; i++) {
+        table.set(i, Address.zero());
+      }
+      nurseryIndex = maxIndex = toIndex;
+      updateLimit();
+
+      /* Possible schedule finalizers to run */
+      Collection.scheduleFinalizerThread();
+    }
   }
 
   /**
@@ -225,6 +355,7 @@ public final class FinalizableProcessor extends org.mmtk.vm.FinalizableProcessor
       result = readyForFinalize[nextReadyIndex];
       Services.setArrayUninterruptible(readyForFinalize, nextReadyIndex, null);
       nextReadyIndex = (nextReadyIndex + 1) % readyForFinalize.length;
+      updateLimit();
     }
     lock.release();
     return result;
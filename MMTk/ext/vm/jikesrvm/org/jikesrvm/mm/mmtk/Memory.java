@@ -28,6 +28,7 @@ import org.jikesrvm.VM;
 import org.jikesrvm.objectmodel.JavaHeader;
 import org.jikesrvm.runtime.BootRecord;
 import org.jikesrvm.runtime.Magic;
+import org.jikesrvm.runtime.SysCall;
 import org.mmtk.policy.ImmortalSpace;
 import org.mmtk.utility.heap.VMRequest;
 import org.vmmagic.pragma.Inline;
@@ -186,6 +187,31 @@ import org.vmmagic.unboxed.Offset;
                                                    org.jikesrvm.runtime.Memory.PROT_EXEC);
   }
 
+  @Override
+  public final int getNumaNodes() {
+    return SysCall.sysCall.sysNumaNodes();
+  }
+
+  @Override
+  public final int getNumaNodeOfCpu(int cpu) {
+    return SysCall.sysCall.sysNumaNodeOfCpu(cpu);
+  }
+
+  @Override
+  public final boolean bindToNumaNode(Address start, int size, int node) {
+    return SysCall.sysCall.sysNumaBind(start, Extent.fromIntZeroExtend(size), node) == 0;
+  }
+
+  @Override
+  public final boolean adviseHugePages(Address start, int size) {
+    return SysCall.sysCall.sysMAdviseHugePages(start, Extent.fromIntZeroExtend(size)) == 0;
+  }
+
+  @Override
+  public final long getHugePageBytes(Address start, Address end) {
+    return SysCall.sysCall.sysHugePageBytes(start, end);
+  }
+
   @Override
   public final void zero(boolean useNT, Address start, Extent len) {
     org.jikesrvm.runtime.Memory.zero(useNT, start,len);
@@ -12,6 +12,7 @@
  */
 package org.jikesrvm.mm.mmtk;
 
+import org.mmtk.plan.CollectorContext;
 import org.mmtk.plan.TraceLocal;
 import org.mmtk.utility.options.Options;
 
@@ -24,6 +25,7 @@ import org.jikesrvm.mm.mminterface.Selected;
 import org.jikesrvm.runtime.Entrypoints;
 import org.jikesrvm.runtime.Magic;
 import org.jikesrvm.scheduler.RVMThread;
+import org.jikesrvm.scheduler.Synchronization;
 
 import java.lang.ref.Reference;
 import java.lang.ref.SoftReference;
@@ -46,6 +48,13 @@ import java.lang.ref.PhantomReference;
  * <p>
  * As an optimization for generational collectors, each reference type
  * maintains two queues: a nursery queue and the main queue.
+ * <p>
+ * Mutators add references without taking a lock: a slot is reserved by
+ * atomically incrementing {@code maxIndex}, and the lock is only used to
+ * elect the thread that grows a full table. At GC time the table is
+ * partitioned between the collector threads, which process their part in
+ * place; the primary collector thread then compacts the table and enqueues
+ * the references whose referents have died.
  */
 @Uninterruptible
 public final class ReferenceProcessor extends org.mmtk.vm.ReferenceProcessor {
@@ -78,6 +87,15 @@ public final class ReferenceProcessor extends org.mmtk.vm.ReferenceProcessor {
    */
   private static final double GROWTH_FACTOR = 2.0;
 
+  /** Set in {@code maxIndex} while the table is being copied to a larger one */
+  private static final int GROWING = 0x80000000;
+
+  /**
+   * Set in a table entry during a parallel scan when the reference is to be
+   * enqueued. References are enqueued by the primary collector thread only.
+   */
+  private static final int ENQUEUE = 0x1;
+
 
   /*************************************************************************
    * Instance fields
@@ -103,8 +121,11 @@ public final class ReferenceProcessor extends org.mmtk.vm.ReferenceProcessor {
   private int nurseryIndex = 0;
 
   /**
-   * Index of the first free slot in the reference table.
+   * Index of the first free slot in the reference table. Slots at or above
+   * this index are always zero. The {@link #GROWING} bit is set while the
+   * table is being copied.
    */
+  @Entrypoint
   private volatile int maxIndex = 0;
 
   /**
@@ -153,14 +174,40 @@ public final class ReferenceProcessor extends org.mmtk.vm.ReferenceProcessor {
   }
 
   /**
-   * Add a reference at the end of the table
+   * Reserve the next free slot in the table, without taking the lock.
+   *
+   * @return the index of the reserved slot, or -1 if the table is full or
+   *  being grown
+   */
+  @Inline
+  private int reserveSlot() {
+    Offset offset = Entrypoints.referenceProcessorMaxIndexField.getOffset();
+    while (true) {
+      int index = maxIndex;
+      if (index < 0 || index >= references.length()) return -1;
+      if (Synchronization.tryCompareAndSwap(this, offset, index, index + 1)) return index;
+    }
+  }
+
+  /**
+   * Fill a reserved slot of the table
    * @param ref The reference to add
    * @param referent the object pointed to by the reference
+   * @param index the slot reserved by {@link #reserveSlot()}
    */
-  private void addReference(Reference<?> ref, ObjectReference referent) {
+  private void addReference(Reference<?> ref, ObjectReference referent, int index) {
     ObjectReference reference = ObjectReference.fromObject(ref);
     setReferent(reference, referent);
-    setReference(maxIndex++,reference);
+    /*
+     * A thread growing the table waits for this slot to be filled before
+     * copying it, but we may have stored into the old table after the new
+     * one was installed, in which case we store again.
+     */
+    AddressArray table;
+    do {
+      table = references;
+      table.set(index, reference.toAddress());
+    } while (Magic.objectAsAddress(table).NE(Magic.objectAsAddress(references)));
   }
 
   /**
@@ -188,7 +235,7 @@ public final class ReferenceProcessor extends org.mmtk.vm.ReferenceProcessor {
   }
 
   /**
-   * Grow the reference table by GROWTH_FACTOR.
+   * Allocate a reference table GROWTH_FACTOR times the size of the current one.
    *
    * <p>Marked as UninterruptibleNoWarn because it can GC when it allocates, but
    * the rest of the code can't tolerate GC.
@@ -196,16 +243,41 @@ public final class ReferenceProcessor extends org.mmtk.vm.ReferenceProcessor {
    * <p>This method is called without the reference processor lock held,
    * but with the flag <code>growingTable</code> set.
    *
-   * @return the start address of the new reference table
+   * @return the new (empty) reference table
    */
   @UninterruptibleNoWarn
   private AddressArray growReferenceTable() {
     int newLength = STRESS ? references.length() + 1 : (int)(references.length() * GROWTH_FACTOR);
     if (TRACE) VM.sysWriteln("Expanding reference type table ",semanticsStr," to ",newLength);
-    AddressArray newReferences = AddressArray.create(newLength);
-    for (int i = 0; i < references.length(); i++)
-      newReferences.set(i,references.get(i));
-    return newReferences;
+    return AddressArray.create(newLength);
+  }
+
+  /**
+   * Copy the contents of the reference table into a larger one and install
+   * it. No slots can be reserved while the copy is in progress; slots that
+   * were reserved before it started are copied once they have been filled.
+   *
+   * @param newReferences the new table, as allocated by {@link #growReferenceTable()}
+   */
+  private void installReferenceTable(AddressArray newReferences) {
+    Offset offset = Entrypoints.referenceProcessorMaxIndexField.getOffset();
+    int index;
+    do {
+      index = maxIndex;
+    } while (!Synchronization.tryCompareAndSwap(this, offset, index, index | GROWING));
+    if (VM.VerifyAssertions) VM._assert(index < newReferences.length());
+    AddressArray oldReferences = references;
+    for (int i = 0; i < index; i++) {
+      Address entry = oldReferences.get(i);
+      while (entry.isZero()) {
+        // reserved by a mutator that has not yet filled it
+        Magic.pause();
+        entry = oldReferences.get(i);
+      }
+      newReferences.set(i, entry);
+    }
+    references = newReferences;
+    maxIndex = index;
   }
 
   /**
@@ -230,37 +302,32 @@ public final class ReferenceProcessor extends org.mmtk.vm.ReferenceProcessor {
     }
 
     /*
-     * Ensure that only one thread at a time can grow the
-     * table of references.  The volatile flag <code>growingTable</code> is
-     * used to allow growing the table to trigger GC, but to prevent
-     * any other thread from accessing the table while it is being grown.
-     *
-     * If the table has space, threads will add the reference, incrementing maxIndex
-     * and exit.
+     * Threads reserve a slot by atomically incrementing maxIndex, and fill it
+     * without holding the lock.
      *
      * If the table is full, the first thread to notice will grow the table.
-     * Subsequent threads will release the lock and yield at (1) while the
-     * first thread
+     * The volatile flag <code>growingTable</code> is used to allow growing
+     * the table to trigger GC, but to prevent any other thread from growing
+     * it at the same time. Subsequent threads yield at (1) until the first
+     * thread has installed the new table.
      */
-    lock.acquire();
-    while (growingTable || maxIndex >= references.length()) {
+    int index;
+    while ((index = reserveSlot()) < 0) {
+      lock.acquire();
       if (growingTable) {
-        // FIXME: We should probably speculatively allocate a new table instead.
-        // note, we can copy without the lock after installing the new table (unint during copy).
         lock.release();
         RVMThread.yieldWithHandshake(); // (1) Allow another thread to grow the table
-        lock.acquire();
+      } else if (maxIndex < references.length()) {
+        lock.release();       // Table was grown or emptied in the meantime
       } else {
         growingTable = true;  // Prevent other threads from growing table while lock is released
         lock.release();       // Can't hold the lock while allocating
         AddressArray newTable = growReferenceTable();
-        lock.acquire();
-        references = newTable;
+        installReferenceTable(newTable);
         growingTable = false; // Allow other threads to grow the table rather than waiting for us
       }
     }
-    addReference(ref,referent);
-    lock.release();
+    addReference(ref, referent, index);
   }
 
   /***********************************************************************
@@ -275,8 +342,8 @@ public final class ReferenceProcessor extends org.mmtk.vm.ReferenceProcessor {
    * <p>
    * Currently ignores the nursery hint.
    * <p>
-   * TODO parallelise this code
-   *
+   * Called by every collector thread, each of which forwards its share of
+   * the table.
    */
   @Override
   public void forward(TraceLocal trace, boolean nursery) {
@@ -288,7 +355,10 @@ public final class ReferenceProcessor extends org.mmtk.vm.ReferenceProcessor {
       VM.sysWriteln("unforwardedReferences is ",
           Magic.objectAsAddress(unforwardedReferences));
     }
-    for (int i = 0; i < maxIndex; i++) {
+    CollectorContext collector = RVMThread.getCurrentThread().getCollectorContext();
+    int from = partitionStart(collector, 0, maxIndex);
+    int to = partitionEnd(collector, 0, maxIndex);
+    for (int i = from; i < to; i++) {
       if (TRACE_DETAIL) VM.sysWrite("slot ",i,": ");
       ObjectReference reference = unforwardedReferences.get(i).toObjectReference();
       if (TRACE_DETAIL) VM.sysWriteln("forwarding ",reference);
@@ -297,14 +367,50 @@ public final class ReferenceProcessor extends org.mmtk.vm.ReferenceProcessor {
       unforwardedReferences.set(i, newReference.toAddress());
     }
     if (TRACE) VM.sysWriteln("Ending ReferenceGlue.forward(",semanticsStr,")");
-    unforwardedReferences = null;
+    if (collector.rendezvous() == 0) {
+      unforwardedReferences = null;
+    }
   }
 
   @Override
   public void clear() {
+    for (int i = 0; i < maxIndex; i++) {
+      references.set(i, Address.zero());
+    }
     maxIndex = 0;
   }
 
+  @Override
+  public boolean isParallel() {
+    return true;
+  }
+
+  /**
+   * @param collector the current collector context
+   * @param start the start of the range of slots to be processed
+   * @param end the end (exclusive) of the range of slots to be processed
+   * @return the first slot of the range to be processed by {@code collector}
+   */
+  static int partitionStart(CollectorContext collector, int start, int end) {
+    int workers = collector.parallelWorkerCount();
+    int chunk = (end - start + workers - 1) / workers;
+    int from = start + collector.parallelWorkerOrdinal() * chunk;
+    return from < end ? from : end;
+  }
+
+  /**
+   * @param collector the current collector context
+   * @param start the start of the range of slots to be processed
+   * @param end the end (exclusive) of the range of slots to be processed
+   * @return the end (exclusive) of the range to be processed by {@code collector}
+   */
+  static int partitionEnd(CollectorContext collector, int start, int end) {
+    int workers = collector.parallelWorkerCount();
+    int chunk = (end - start + workers - 1) / workers;
+    int to = start + (collector.parallelWorkerOrdinal() + 1) * chunk;
+    return to < end ? to : end;
+  }
+
   /**
    * {@inheritDoc} Calls ReferenceProcessor's
    * processReference method for each reference and builds a new
@@ -313,7 +419,9 @@ public final class ReferenceProcessor extends org.mmtk.vm.ReferenceProcessor {
    * Depending on the value of <code>nursery</code>, we will either
    * scan all references, or just those created since the last scan.
    * <p>
-   * TODO parallelise this code
+   * Called by every collector thread. Each thread processes its share of
+   * the table in place, leaving a zero in the slots of references that are
+   * no longer active; the primary thread then compacts the table.
    *
    * @param nursery Scan only the newly created references
    */
@@ -322,36 +430,28 @@ public final class ReferenceProcessor extends org.mmtk.vm.ReferenceProcessor {
     unforwardedReferences = references;
 
     if (TRACE) VM.sysWriteln("Starting ReferenceGlue.scan(",semanticsStr,")");
-    int toIndex = nursery ? nurseryIndex : 0;
+    int start = nursery ? nurseryIndex : 0;
+    int end = maxIndex;
+    CollectorContext collector = RVMThread.getCurrentThread().getCollectorContext();
+    int from = partitionStart(collector, start, end);
+    int to = partitionEnd(collector, start, end);
 
     if (TRACE_DETAIL) VM.sysWriteln(semanticsStr," Reference table is ",Magic.objectAsAddress(references));
     if (retain) {
-      for (int fromIndex = toIndex; fromIndex < maxIndex; fromIndex++) {
-          ObjectReference reference = getReference(fromIndex);
-          retainReferent(trace, reference);
-        }
+      for (int i = from; i < to; i++) {
+        ObjectReference reference = getReference(i);
+        retainReferent(trace, reference);
+      }
     } else {
-      for (int fromIndex = toIndex; fromIndex < maxIndex; fromIndex++) {
-        ObjectReference reference = getReference(fromIndex);
+      for (int i = from; i < to; i++) {
+        ObjectReference reference = getReference(i);
 
         /* Determine liveness (and forward if necessary) the reference */
-        ObjectReference newReference = processReference(trace,reference);
-        if (!newReference.isNull()) {
-          setReference(toIndex++,newReference);
-          if (TRACE_DETAIL) {
-            int index = toIndex - 1;
-            VM.sysWrite("SCANNED ",index);
-            VM.sysWrite(" ",references.get(index));
-            VM.sysWrite(" -> ");
-            VM.sysWriteln(getReferent(references.get(index).toObjectReference()));
-          }
-               }
-             }
-      if (Options.verbose.getValue() >= 3) {
-        VM.sysWrite(semanticsStr);
-        VM.sysWriteln(" references: ",maxIndex," -> ",toIndex);
+        references.set(i, processReference(trace, reference));
+      }
+      if (collector.rendezvous() == 0) {
+        compact(start, end);
       }
-      nurseryIndex = maxIndex = toIndex;
     }
 
     /* flush out any remset entries generated during the above activities */
@@ -359,6 +459,41 @@ public final class ReferenceProcessor extends org.mmtk.vm.ReferenceProcessor {
     if (TRACE) VM.sysWriteln("Ending ReferenceGlue.scan(",semanticsStr,")");
   }
 
+  /**
+   * Compact the slots left by a parallel scan, enqueueing the references
+   * marked for it, and zero the slots that are no longer in use.
+   *
+   * @param start the first slot that was scanned
+   * @param end the end (exclusive) of the scanned slots
+   */
+  private void compact(int start, int end) {
+    int toIndex = start;
+    for (int fromIndex = start; fromIndex < end; fromIndex++) {
+      Word entry = references.get(fromIndex).toWord();
+      if (entry.isZero()) continue;
+      if (entry.and(Word.fromIntZeroExtend(ENQUEUE)).isZero()) {
+        setReference(toIndex++, entry.toAddress().toObjectReference());
+        if (TRACE_DETAIL) {
+          int index = toIndex - 1;
+          VM.sysWrite("SCANNED ",index);
+          VM.sysWrite(" ",references.get(index));
+          VM.sysWrite(" -> ");
+          VM.sysWriteln(getReferent(references.get(index).toObjectReference()));
+        }
+      } else {
+        enqueueReference(entry.and(Word.fromIntZeroExtend(ENQUEUE).not()).toAddress().toObjectReference());
+      }
+    }
+    for (int i = toIndex; i < end; i++) {
+      references.set(i, Address.zero());
+    }
+    if (Options.verbose.getValue() >= 3) {
+      VM.sysWrite(semanticsStr);
+      VM.sysWriteln(" references: ",end," -> ",toIndex);
+    }
+    nurseryIndex = maxIndex = toIndex;
+  }
+
   /**
    * This method deals only with soft references. It retains the referent
    * if the reference is definitely reachable.
@@ -458,13 +593,18 @@ public final class ReferenceProcessor extends org.mmtk.vm.ReferenceProcessor {
    * {@link #retainReferent(TraceLocal, ObjectReference)} followed by a transitive
    * closure phase.
    *
+   * Reference objects are not enqueued here, as this may run on several
+   * collector threads at once; instead, the returned table entry is marked
+   * and the reference is enqueued when the table is compacted.
+   *
    * @param reference the address of the reference. This may or may not
    * be the address of a heap object, depending on the VM.
    * @param trace the thread local trace element.
-   * @return an updated reference (e.g. with a new address) if the reference
-   *  is still live, {@code ObjectReference.nullReference()} otherwise
+   * @return the new table entry: the updated reference (e.g. with a new
+   *  address) if the reference is still live, the updated reference with
+   *  the {@link #ENQUEUE} bit set if it is to be enqueued, and zero otherwise
    */
-  public ObjectReference processReference(TraceLocal trace, ObjectReference reference) {
+  private Address processReference(TraceLocal trace, ObjectReference reference) {
     if (VM.VerifyAssertions) VM._assert(!reference.isNull());
 
     if (TRACE_DETAIL) {
@@ -482,7 +622,7 @@ public final class ReferenceProcessor extends org.mmtk.vm.ReferenceProcessor {
       if (TRACE_DETAIL) {
         VM.sysWriteln(" (unreachable)");
       }
-      return ObjectReference.nullReference();
+      return Address.zero();
     }
 
     /* The reference object is live */
@@ -501,7 +641,7 @@ public final class ReferenceProcessor extends org.mmtk.vm.ReferenceProcessor {
      */
     if (oldReferent.isNull()) {
       if (TRACE_DETAIL) VM.sysWriteln(" (null referent)");
-      return ObjectReference.nullReference();
+      return Address.zero();
     }
 
     if (TRACE_DETAIL)  VM.sysWrite(" => ",newReference);
@@ -541,7 +681,7 @@ public final class ReferenceProcessor extends org.mmtk.vm.ReferenceProcessor {
 
       /* Update the referent */
       setReferent(newReference, newReferent);
-      return newReference;
+      return newReference.toAddress();
     } else {
       /* Referent is unreachable. Clear the referent and enqueue the reference object. */
 
@@ -549,8 +689,7 @@ public final class ReferenceProcessor extends org.mmtk.vm.ReferenceProcessor {
       else if (TRACE_UNREACHABLE) VM.sysWriteln(" UNREACHABLE referent:  ",oldReferent);
 
       clearReferent(newReference);
-      enqueueReference(newReference);
-      return ObjectReference.nullReference();
+      return newReference.toAddress().toWord().or(Word.fromIntZeroExtend(ENQUEUE)).toAddress();
     }
   }
 
@@ -13,6 +13,7 @@
 package org.jikesrvm.mm.mmtk;
 
 import static org.jikesrvm.mm.mminterface.MemoryManagerConstants.MOVES_CODE;
+import static org.jikesrvm.runtime.UnboxedSizeConstants.BYTES_IN_ADDRESS;
 import static org.jikesrvm.runtime.UnboxedSizeConstants.LOG_BYTES_IN_ADDRESS;
 
 import org.jikesrvm.VM;
@@ -21,9 +22,11 @@ import org.jikesrvm.jni.JNIEnvironment;
 import org.jikesrvm.jni.JNIGenericHelpers;
 import org.jikesrvm.jni.JNIGlobalRefTable;
 import org.jikesrvm.mm.mminterface.AlignmentEncoding;
+import org.jikesrvm.mm.mminterface.AllocationProfiler;
 import org.jikesrvm.mm.mminterface.HandInlinedScanning;
 import org.jikesrvm.mm.mminterface.Selected;
 import org.jikesrvm.mm.mminterface.SpecializedScanMethod;
+import org.jikesrvm.objectmodel.ObjectModel;
 import org.jikesrvm.runtime.Magic;
 import org.jikesrvm.scheduler.RVMThread;
 import org.mmtk.plan.CollectorContext;
@@ -61,6 +64,18 @@ public final class Scanning extends org.mmtk.vm.Scanning {
     }
   }
 
+  @Override
+  @Inline
+  public void scanArrayRange(TransitiveClosure trace, ObjectReference array, Address start, Address end) {
+    Address slot = array.toAddress();
+    Address limit = slot.plus(ObjectModel.getArrayLength(array.toObject()) << LOG_BYTES_IN_ADDRESS);
+    if (start.GT(slot)) slot = start;
+    if (end.LT(limit)) limit = end;
+    for (; slot.LT(limit); slot = slot.plus(BYTES_IN_ADDRESS)) {
+      trace.processEdge(array, slot);
+    }
+  }
+
   @Override
   @Inline
   public void specializedScanObject(int id, TransitiveClosure trace, ObjectReference object) {
@@ -213,4 +228,20 @@ public final class Scanning extends org.mmtk.vm.Scanning {
   public boolean supportsReturnBarrier() {
     return VM.BuildForIA32;
   }
+
+  @Override
+  public boolean startLiveObjectCount() {
+    return AllocationProfiler.startLiveObjectCount();
+  }
+
+  @Override
+  @Inline
+  public void countLiveObject(ObjectReference object) {
+    AllocationProfiler.countLiveObject(object);
+  }
+
+  @Override
+  public void finishLiveObjectCount() {
+    AllocationProfiler.finishLiveObjectCount();
+  }
 }
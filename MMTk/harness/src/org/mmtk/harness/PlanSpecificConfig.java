@@ -102,6 +102,10 @@ public class PlanSpecificConfig {
         .addExpectedSpaces("ss0", "ss1")
         .heapFactor(18816 / BASE_HEAP),
         "UsePrimitiveWriteBarriers", "PrimitiveWB");
+    register(
+        new PlanSpecific("org.mmtk.plan.concurrent.regional.Regional")
+        .addExpectedSpaces("regional"),
+        "Regional");
     register(
         new PlanSpecific("org.mmtk.plan.refcount.fullheap.RC")
         .addExpectedSpaces("rclos", "rc")
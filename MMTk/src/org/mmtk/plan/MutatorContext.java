@@ -119,6 +119,15 @@ public abstract class MutatorContext {
   /** Per-mutator allocator into the small code space */
   protected final MarkSweepLocal smcode = Plan.USE_CODE_SPACE ? new MarkSweepLocal(Plan.smallCodeSpace) : null;
 
+  /**
+   * Per-mutator allocator of hot code into the small code space.  Having
+   * its own free lists, it packs hot code into blocks that hold no cold code.
+   * Code is hot or cold per method: a method's code is a single code array,
+   * which the VM's code maps and stack walking rely on, so the cold blocks
+   * of a hot method stay with it (the VM can only move them to its tail).
+   */
+  protected final MarkSweepLocal smhotcode = Plan.USE_CODE_SPACE ? new MarkSweepLocal(Plan.smallCodeSpace) : null;
+
   /** Per-mutator allocator into the large code space */
   protected final LargeObjectLocal lgcode = Plan.USE_CODE_SPACE ? new LargeObjectLocal(Plan.largeCodeSpace) : null;
 
@@ -164,7 +173,7 @@ public abstract class MutatorContext {
       return (maxBytes > Plan.MAX_NON_LOS_DEFAULT_ALLOC_BYTES || (maxBytes > Plan.MAX_NON_LOS_COPY_BYTES && maxBytes > Plan.pretenureThreshold)) ? Plan.ALLOC_LOS : Plan.ALLOC_DEFAULT;
     }
 
-    if (Plan.USE_CODE_SPACE && allocator == Plan.ALLOC_CODE) {
+    if (Plan.USE_CODE_SPACE && (allocator == Plan.ALLOC_CODE || allocator == Plan.ALLOC_HOT_SMALL_CODE)) {
       return (maxBytes > Plan.MAX_NON_LOS_NONMOVING_ALLOC_BYTES || (maxBytes > Plan.MAX_NON_LOS_COPY_BYTES && maxBytes > Plan.pretenureThreshold)) ? Plan.ALLOC_LARGE_CODE : allocator;
     }
 
@@ -179,6 +188,21 @@ public abstract class MutatorContext {
     return allocator;
   }
 
+  /**
+   * Run-time check of the allocator to use for an allocation from a known
+   * site.  By default the site is ignored.
+   *
+   * @param bytes The number of bytes to be allocated
+   * @param align The requested alignment.
+   * @param allocator The allocator statically assigned to this allocation
+   * @param site The allocation site
+   * @return The allocator dynamically assigned to this allocation
+   */
+  @Inline
+  public int checkAllocator(int bytes, int align, int allocator, int site) {
+    return checkAllocator(bytes, align, allocator);
+  }
+
   /**
    * Allocate memory for an object.
    *
@@ -195,6 +219,7 @@ public abstract class MutatorContext {
     case      Plan.ALLOC_LOS: return los.alloc(bytes, align, offset);
     case      Plan.ALLOC_IMMORTAL: return immortal.alloc(bytes, align, offset);
     case      Plan.ALLOC_CODE: return smcode.alloc(bytes, align, offset);
+    case      Plan.ALLOC_HOT_SMALL_CODE: return smhotcode.alloc(bytes, align, offset);
     case      Plan.ALLOC_LARGE_CODE: return lgcode.alloc(bytes, align, offset);
     case      Plan.ALLOC_NON_MOVING: return nonmove.alloc(bytes, align, offset);
     default:
@@ -219,6 +244,7 @@ public abstract class MutatorContext {
     case           Plan.ALLOC_LOS: Plan.loSpace.initializeHeader(ref, true); return;
     case      Plan.ALLOC_IMMORTAL: Plan.immortalSpace.initializeHeader(ref);  return;
     case          Plan.ALLOC_CODE: Plan.smallCodeSpace.initializeHeader(ref, true); return;
+    case Plan.ALLOC_HOT_SMALL_CODE: Plan.smallCodeSpace.initializeHeader(ref, true); return;
     case    Plan.ALLOC_LARGE_CODE: Plan.largeCodeSpace.initializeHeader(ref, true); return;
     case    Plan.ALLOC_NON_MOVING: Plan.nonMovingSpace.initializeHeader(ref, true); return;
     default:
@@ -259,6 +285,24 @@ public abstract class MutatorContext {
     return null;
   }
 
+  /**
+   * Return the allocator instance of this plan instance that takes over
+   * allocation into <code>space</code> from <code>allocator</code> after
+   * a collection (see {@link Allocator#allocSlowInline}).  This is the
+   * allocator associated with the space, except that the small code space
+   * has an allocator for hot code as well as one for other code, so this
+   * plan instance's hot code allocator is kept.
+   *
+   * @param space The space being allocated into
+   * @param allocator The allocator that was allocating before the collection
+   * @return The allocator instance of this plan instance that allocates
+   * into <code>space</code> like <code>allocator</code>
+   */
+  public final Allocator getAllocatorFromSpace(Space space, Allocator allocator) {
+    if (Plan.USE_CODE_SPACE && allocator == smhotcode) return smhotcode;
+    return getAllocatorFromSpace(space);
+  }
+
   /****************************************************************************
    *
    * Write and read barriers. By default do nothing, override if
@@ -1221,6 +1265,7 @@ public abstract class MutatorContext {
   public void flush() {
     flushRememberedSets();
     smcode.flush();
+    smhotcode.flush();
     nonmove.flush();
   }
 
@@ -12,6 +12,7 @@
  */
 package org.mmtk.plan;
 
+import org.mmtk.utility.heap.Numa;
 import org.mmtk.vm.VM;
 
 import org.vmmagic.pragma.*;
@@ -45,12 +46,21 @@ public abstract class ParallelCollector extends CollectorContext {
   @Override
   @Unpreemptible
   public void run() {
+    bindToNumaNode();
     while (true) {
       park();
       collect();
     }
   }
 
+  /**
+   * Bind this thread to a processor of its NUMA node, if there is
+   * more than one node.
+   */
+  protected final void bindToNumaNode() {
+    Numa.bindCollector(workerOrdinal);
+  }
+
   /** Perform a single garbage collection */
   public void collect() {
     VM.assertions.fail("Collector has not implemented collectionPhase");
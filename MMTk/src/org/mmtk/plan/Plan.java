@@ -24,6 +24,8 @@ import org.mmtk.utility.alloc.LinearScan;
 import org.mmtk.utility.Conversions;
 import org.mmtk.utility.HeaderByte;
 import org.mmtk.utility.heap.HeapGrowthManager;
+import org.mmtk.utility.heap.HugePages;
+import org.mmtk.utility.heap.Numa;
 import org.mmtk.utility.heap.VMRequest;
 import org.mmtk.utility.heap.layout.HeapLayout;
 import org.mmtk.utility.Log;
@@ -83,10 +85,12 @@ public abstract class Plan {
   public static final int ALLOC_GCSPY = 6;
   public static final int ALLOC_CODE = 7;
   public static final int ALLOC_LARGE_CODE = 8;
-  public static final int ALLOC_HOT_CODE = USE_CODE_SPACE ? ALLOC_CODE : ALLOC_DEFAULT;
+  /** Small hot code: allocated into the small code space, but into blocks of its own */
+  public static final int ALLOC_HOT_SMALL_CODE = 9;
+  public static final int ALLOC_HOT_CODE = USE_CODE_SPACE ? ALLOC_HOT_SMALL_CODE : ALLOC_DEFAULT;
   public static final int ALLOC_COLD_CODE = USE_CODE_SPACE ? ALLOC_CODE : ALLOC_DEFAULT;
   public static final int ALLOC_STACK = ALLOC_LOS;
-  public static final int ALLOCATORS = 9;
+  public static final int ALLOCATORS = 10;
   public static final int DEFAULT_SITE = -1;
 
   /* Miscellaneous Constants */
@@ -174,7 +178,11 @@ public abstract class Plan {
     Options.useReturnBarrier = new UseReturnBarrier();
     Options.useShortStackScans = new UseShortStackScans();
     Options.threads = new Threads();
+    Options.numaNodes = new NumaNodes();
+    Options.hugePageSpaces = new HugePageSpaces();
     Options.cycleTriggerThreshold = new CycleTriggerThreshold();
+    Options.cycleFilterThreshold = new CycleFilterThreshold();
+    Options.cycleMetaDataLimit = new CycleMetaDataLimit();
     HeapLayout.vmMap.finalizeStaticSpaceMap();
     registerSpecializedMethods();
 
@@ -227,6 +235,8 @@ public abstract class Plan {
     if (Options.verbose.getValue() > 3) VM.config.printConfig();
     if (Options.verbose.getValue() > 0) Stats.startAll();
     if (Options.eagerMmapSpaces.getValue()) Space.eagerlyMmapMMTkSpaces();
+    HugePages.boot();
+    Numa.boot();
     pretenureThreshold = (int) ((Options.nurserySize.getMaxNursery() << LOG_BYTES_IN_PAGE) * Options.pretenureThresholdFraction.getValue());
   }
 
@@ -368,6 +378,8 @@ public abstract class Plan {
       Log.writeln(" ms]");
     }
     if (Options.verboseTiming.getValue()) printDetailedTiming(true);
+    if (Options.verbose.getValue() > 0) HugePages.printStats();
+    if (Options.verbose.getValue() >= 2) Numa.printPlacement();
   }
 
   /**
@@ -423,6 +435,19 @@ public abstract class Plan {
       return DEFAULT_SITE;
   }
 
+  /**
+   * Give the plan the opportunity to change, when code is compiled, the
+   * allocator used by an allocation site.  By default the allocator is
+   * left alone.
+   *
+   * @param allocator the allocator chosen for the allocation
+   * @param site the allocation site
+   * @return the allocator the compiled code should use
+   */
+  public int adviseAllocator(int allocator, int site) {
+    return allocator;
+  }
+
   /****************************************************************************
    * Collection.
    */
@@ -540,6 +565,10 @@ public abstract class Plan {
   protected static boolean lastInternalTriggeredCollection;
   protected static boolean emergencyCollection;
   protected static boolean stacksPrepared;
+  /** Are the objects scanned by the current trace being counted for the runtime? */
+  protected static boolean countingLiveObjects;
+  /** Have the live objects of the current collection been counted (or is counting under way)? */
+  protected static boolean liveObjectsCounted;
 
   private static boolean initialized = false;
 
@@ -550,6 +579,15 @@ public abstract class Plan {
     return initialized;
   }
 
+  /**
+   * @return {@code true} if the objects scanned by the current trace should
+   * be passed to {@link org.mmtk.vm.Scanning#countLiveObject}
+   */
+  @Inline
+  public static boolean isCountingLiveObjects() {
+    return countingLiveObjects;
+  }
+
   /**
    * Return {@code true} if stacks have been prepared in this collection cycle.
    *
@@ -202,6 +202,7 @@ public abstract class Simple extends Plan {
 
     if (phaseId == INITIATE) {
       setGCStatus(GC_PREPARE);
+      liveObjectsCounted = false;
       return;
     }
 
@@ -219,6 +220,11 @@ public abstract class Simple extends Plan {
       }
       immortalSpace.prepare();
       VM.memory.globalPrepareVMSpace();
+      // Plans that trace the heap twice (e.g. MC) prepare twice; count the first trace only
+      if (!liveObjectsCounted && !isCurrentGCNursery()) {
+        liveObjectsCounted = true;
+        countingLiveObjects = VM.scanning.startLiveObjectCount();
+      }
       return;
     }
 
@@ -243,6 +249,10 @@ public abstract class Simple extends Plan {
       }
       immortalSpace.release();
       VM.memory.globalReleaseVMSpace();
+      if (countingLiveObjects) {
+        countingLiveObjects = false;
+        VM.scanning.finishLiveObjectCount();
+      }
       return;
     }
 
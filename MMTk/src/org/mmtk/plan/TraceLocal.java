@@ -92,7 +92,7 @@ public abstract class TraceLocal extends TransitiveClosure {
    */
   @Override
   @Inline
-  public final void processEdge(ObjectReference source, Address slot) {
+  public void processEdge(ObjectReference source, Address slot) {
     ObjectReference object = VM.activePlan.global().loadObjectReference(slot);
     ObjectReference newObject = traceObject(object, false);
     if (overwriteReferenceDuringTrace()) {
@@ -164,6 +164,16 @@ public abstract class TraceLocal extends TransitiveClosure {
     }
   }
 
+  /**
+   * @return {@code true} if the objects scanned by this trace are passed
+   * to {@link org.mmtk.vm.Scanning#countLiveObject} while live objects are
+   * being counted.  Traces that scan again objects already scanned by
+   * another trace of the same collection must return {@code false}.
+   */
+  protected boolean countsLiveObjects() {
+    return true;
+  }
+
   /**
    * Collectors that move objects <b>must</b> override this method.
    * It performs the deferred scanning of objects which are forwarded
@@ -177,6 +187,7 @@ public abstract class TraceLocal extends TransitiveClosure {
    */
   @Inline
   protected void scanObject(ObjectReference object) {
+    if (Plan.isCountingLiveObjects() && countsLiveObjects()) VM.scanning.countLiveObject(object);
     if (specializedScan >= 0) {
       VM.scanning.specializedScanObject(specializedScan, this, object);
     } else {
@@ -48,6 +48,7 @@ public abstract class ConcurrentCollector extends SimpleCollector {
   @Override
   @Unpreemptible
   public void run() {
+    bindToNumaNode();
     while (true) {
       park();
       if (Plan.concurrentWorkers.isMember(this)) {
@@ -0,0 +1,315 @@
+/*
+ *  This file is part of the Jikes RVM project (http://jikesrvm.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  See the COPYRIGHT.txt file distributed with this work for information
+ *  regarding copyright ownership.
+ */
+package org.mmtk.plan.concurrent.regional;
+
+import static org.mmtk.policy.immix.ImmixConstants.*;
+import static org.mmtk.utility.Constants.LOG_BYTES_IN_PAGE;
+
+import org.mmtk.plan.*;
+import org.mmtk.plan.concurrent.Concurrent;
+import org.mmtk.policy.Space;
+import org.mmtk.policy.immix.Block;
+import org.mmtk.policy.immix.ImmixSpace;
+import org.mmtk.policy.immix.ObjectHeader;
+import org.mmtk.utility.Log;
+import org.mmtk.utility.deque.SharedDeque;
+import org.mmtk.utility.heap.VMRequest;
+import org.mmtk.utility.options.Options;
+import org.mmtk.utility.options.PauseTarget;
+import org.mmtk.utility.statistics.Timer;
+import org.mmtk.vm.VM;
+
+import org.vmmagic.pragma.*;
+import org.vmmagic.unboxed.*;
+
+/**
+ * This class implements the global state of a region-based collector
+ * in the style of Garbage-First.<p>
+ *
+ * The heap is an immix space whose blocks serve as regions.  Liveness is
+ * established by a concurrent snapshot-at-the-beginning mark, as in
+ * {@link org.mmtk.plan.concurrent.marksweep.CMS}, and space is reclaimed
+ * by sweeping.  In addition, each collection evacuates a <i>collection
+ * set</i> of the blocks that held the fewest live lines at the last sweep,
+ * sized so that evacuating it should fit within the pause target
+ * (<code>-X:gc:pauseTarget</code>), using the evacuation rate observed
+ * in earlier collections.<p>
+ *
+ * The collection set is chosen when marking starts.  From then on, the
+ * marking trace remembers the slots outside the collection set that refer
+ * into it, and so does the mutator write barrier for slots written while
+ * marking is in progress.  Once marking is complete, the final pause
+ * evacuates the collection set, tracing from the roots and the remembered
+ * slots only, before the heap is swept.  Marking thus plays the role of
+ * the per-region remembered sets of Garbage-First, which a mutator barrier
+ * would otherwise have to maintain at all times.
+ */
+@Uninterruptible
+public class Regional extends Concurrent {
+
+  /****************************************************************************
+   * Constants
+   */
+
+  /** Blocks with a greater fraction of live lines are never evacuated */
+  private static final float MAX_LIVE_FRACTION = (float) 0.85;
+  private static final short MAX_LIVE_LINES = (short) (MAX_LIVE_FRACTION * LINES_IN_BLOCK);
+
+  /** Estimated evacuation rate (lines per microsecond) before any evacuation is timed */
+  private static final float INITIAL_EVACUATION_RATE = (float) 1.0;
+
+  /****************************************************************************
+   * Class variables
+   */
+
+  /**
+   *
+   */
+  public static final ImmixSpace immixSpace = new ImmixSpace("regional", VMRequest.discontiguous());
+  public static final int REGIONAL = immixSpace.getDescriptor();
+
+  /** Are mutators to allocate objects marked, because marking is in progress? */
+  public static boolean allocateMarked = false;
+  /** Are mutators to remember the slots they point into the collection set? */
+  public static boolean rememberCollectionSet = false;
+
+  static {
+    smallCodeSpace.makeAllocAsMarked();
+    nonMovingSpace.makeAllocAsMarked();
+    // the marking trace relies on this to leave the lines of the collection set unmarked
+    if (VM.VERIFY_ASSERTIONS) VM.assertions._assert(MARK_LINE_AT_SCAN_TIME);
+  }
+
+  private static final Timer evacuateTime = new Timer("evacuate", false, true);
+
+  /* Phases */
+  public static final short PREPARE_EVACUATE    = Phase.createSimple("ev-prepare");
+  public static final short EVACUATE_CLOSURE    = Phase.createSimple("ev-closure", evacuateTime);
+  public static final short RELEASE_EVACUATE    = Phase.createSimple("ev-release");
+
+  // CHECKSTYLE:OFF
+
+  /**
+   * Evacuate the collection set, once marking is complete.
+   */
+  protected static final short evacuatePhase = Phase.createComplex("evacuate", null,
+      Phase.scheduleGlobal     (PREPARE_EVACUATE),
+      Phase.scheduleComplex    (prepareStacks),
+      Phase.scheduleCollector  (PREPARE_EVACUATE),
+      Phase.scheduleCollector  (STACK_ROOTS),
+      Phase.scheduleCollector  (ROOTS),
+      Phase.scheduleGlobal     (ROOTS),
+      Phase.scheduleCollector  (EVACUATE_CLOSURE),
+      Phase.scheduleComplex    (forwardPhase),
+      Phase.scheduleCollector  (EVACUATE_CLOSURE),
+      Phase.scheduleCollector  (RELEASE_EVACUATE),
+      Phase.scheduleGlobal     (RELEASE_EVACUATE));
+
+  /**
+   * This is the phase that is executed to perform a collection.
+   */
+  public short regionalCollection = Phase.createComplex("collection", null,
+      Phase.scheduleComplex(initPhase),
+      Phase.scheduleComplex(rootClosurePhase),
+      Phase.scheduleComplex(refTypeClosurePhase),
+      Phase.scheduleComplex(evacuatePhase),
+      Phase.scheduleComplex(completeClosurePhase),
+      Phase.scheduleComplex(finishPhase));
+
+  // CHECKSTYLE:ON
+
+  /****************************************************************************
+   * Instance variables
+   */
+
+  /**
+   *
+   */
+  public final Trace markTrace = new Trace(metaDataSpace);
+  public final Trace evacuateTrace = new Trace(metaDataSpace);
+
+  /** Slots that refer into the collection set */
+  public final SharedDeque remsetPool = new SharedDeque("remSets", metaDataSpace, 1);
+  /** Address ranges, written by bulk copies, that may refer into the collection set */
+  public final SharedDeque arrayRemsetPool = new SharedDeque("arrayRemSets", metaDataSpace, 2);
+
+  /** Live lines (at the last sweep) in the current collection set */
+  private int collectionSetLines = 0;
+  /** The number of live lines that the current collection set was allowed */
+  private int collectionSetBudget = 0;
+  /** Observed evacuation rate, in lines per microsecond */
+  private float evacuationRate = INITIAL_EVACUATION_RATE;
+  private long evacuationStart;
+
+  /**
+   * Constructor
+   */
+  public Regional() {
+    Options.pauseTarget = new PauseTarget();
+    collection = regionalCollection;
+  }
+
+  /*****************************************************************************
+   *
+   * Collection
+   */
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  @Inline
+  public void collectionPhase(short phaseId) {
+    if (phaseId == SET_COLLECTION_KIND) {
+      super.collectionPhase(phaseId);
+      // the collection set is evacuated instead of defragmenting
+      immixSpace.decideWhetherToDefrag(false, false, 1, false);
+      return;
+    }
+
+    if (phaseId == PREPARE) {
+      super.collectionPhase(phaseId);
+      markTrace.prepareNonBlocking();
+      immixSpace.prepare(true);
+      collectionSetBudget = evacuationBudget();
+      collectionSetLines = immixSpace.selectCollectionSet(MAX_LIVE_LINES, collectionSetBudget);
+      allocateMarked = true;
+      rememberCollectionSet = collectionSetLines > 0;
+      return;
+    }
+
+    if (phaseId == PREPARE_EVACUATE) {
+      evacuationStart = VM.statistics.nanoTime();
+      evacuateTrace.prepare();
+      immixSpace.prepareEvacuation();
+      return;
+    }
+
+    if (phaseId == RELEASE_EVACUATE) {
+      evacuateTrace.release();
+      remsetPool.clearDeque(1);
+      arrayRemsetPool.clearDeque(2);
+      rememberCollectionSet = false;
+      updateEvacuationRate((VM.statistics.nanoTime() - evacuationStart) / 1000);
+      return;
+    }
+
+    if (phaseId == RELEASE) {
+      markTrace.release();
+      immixSpace.release(true);
+      allocateMarked = false;
+      collectionSetLines = 0;
+      super.collectionPhase(phaseId);
+      return;
+    }
+
+    super.collectionPhase(phaseId);
+  }
+
+  /**
+   * @return The number of live lines that may be evacuated in this
+   * collection: as many as the pause target allows at the observed
+   * evacuation rate, or everything that fits in an emergency.
+   */
+  private int evacuationBudget() {
+    int freeLines = (getTotalPages() - getPagesReserved()) << (LOG_BYTES_IN_PAGE - LOG_BYTES_IN_LINE);
+    if (freeLines < 0) freeLines = 0;
+    if (emergencyCollection) return freeLines;
+    int targetLines = (int) (Options.pauseTarget.getMicroseconds() * evacuationRate);
+    return targetLines < freeLines ? targetLines : freeLines;
+  }
+
+  /**
+   * Fold the time taken by this evacuation into the evacuation rate.  Only
+   * collection sets that were limited by the budget are a fair measure,
+   * since the roots must be rescanned however little is evacuated.
+   *
+   * @param elapsedUs The duration of the evacuation, in microseconds
+   */
+  private void updateEvacuationRate(long elapsedUs) {
+    if (elapsedUs > 0 && collectionSetLines > 0 && collectionSetLines >= collectionSetBudget / 2) {
+      float observed = (float) collectionSetLines / elapsedUs;
+      evacuationRate = (evacuationRate + observed) / 2;
+      if (Options.verbose.getValue() >= 2) {
+        Log.write("[evacuated ", collectionSetLines);
+        Log.write(" lines in ", elapsedUs);
+        Log.write("us]");
+      }
+    }
+  }
+
+  /**
+   * @return {@code true} if this collection has a collection set to evacuate
+   */
+  public final boolean hasCollectionSet() {
+    return collectionSetLines > 0;
+  }
+
+  /**
+   * @param object An object, or {@code null}
+   * @return {@code true} if the object is in the collection set
+   */
+  @Inline
+  public static boolean inCollectionSet(ObjectReference object) {
+    return !object.isNull() && Space.isInSpace(REGIONAL, object) && immixSpace.inCollectionSet(object);
+  }
+
+  /**
+   * @param slot The address of a reference field
+   * @return {@code true} if the field belongs to an object in the collection set
+   */
+  @Inline
+  public static boolean inCollectionSet(Address slot) {
+    return Space.isInSpace(REGIONAL, slot) && Block.inCollectionSet(slot);
+  }
+
+  /*****************************************************************************
+   *
+   * Accounting
+   */
+
+  /**
+   * {@inheritDoc}
+   * The superclass accounts for its spaces, we just
+   * augment this with the immix space's contribution.
+   */
+  @Override
+  public int getPagesUsed() {
+    return immixSpace.reservedPages() + super.getPagesUsed();
+  }
+
+  /**
+   * {@inheritDoc}
+   * Evacuating the collection set may require up to as many pages
+   * as were live in it.
+   */
+  @Override
+  public int getCollectionReserve() {
+    return super.getCollectionReserve() + (collectionSetLines >> (LOG_BYTES_IN_PAGE - LOG_BYTES_IN_LINE));
+  }
+
+  @Override
+  public boolean willNeverMove(ObjectReference object) {
+    if (Space.isInSpace(REGIONAL, object)) {
+      ObjectHeader.pinObject(object);
+      return true;
+    }
+    return super.willNeverMove(object);
+  }
+
+  @Override
+  @Interruptible
+  public void preCollectorSpawn() {
+    immixSpace.initializeDefrag();
+  }
+}
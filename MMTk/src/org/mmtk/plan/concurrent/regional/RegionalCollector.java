@@ -0,0 +1,187 @@
+/*
+ *  This file is part of the Jikes RVM project (http://jikesrvm.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  See the COPYRIGHT.txt file distributed with this work for information
+ *  regarding copyright ownership.
+ */
+package org.mmtk.plan.concurrent.regional;
+
+import org.mmtk.plan.*;
+import org.mmtk.plan.concurrent.ConcurrentCollector;
+import org.mmtk.policy.immix.CollectorLocal;
+import org.mmtk.utility.alloc.ImmixAllocator;
+import org.mmtk.utility.deque.AddressDeque;
+import org.mmtk.utility.deque.AddressPairDeque;
+import org.mmtk.vm.VM;
+
+import org.vmmagic.pragma.*;
+import org.vmmagic.unboxed.Address;
+import org.vmmagic.unboxed.ObjectReference;
+
+/**
+ * This class implements <i>per-collector thread</i> behavior
+ * and state for the <i>Regional</i> plan, which marks the heap
+ * concurrently and then evacuates a collection set of sparse
+ * regions in the final pause.
+ */
+@Uninterruptible
+public class RegionalCollector extends ConcurrentCollector {
+
+  /****************************************************************************
+   * Instance fields
+   */
+
+  /**
+   *
+   */
+  protected final AddressDeque remset;
+  protected final AddressPairDeque arrayRemset;
+  protected final RegionalMarkTraceLocal markTrace;
+  protected final RegionalEvacuateTraceLocal evacuateTrace;
+  protected final CollectorLocal immix;
+  protected final ImmixAllocator copy;
+  /** Are we evacuating the collection set? */
+  private boolean evacuating;
+
+  /****************************************************************************
+   * Initialization
+   */
+
+  /**
+   * Constructor
+   */
+  public RegionalCollector() {
+    remset = new AddressDeque("remset", global().remsetPool);
+    arrayRemset = new AddressPairDeque(global().arrayRemsetPool);
+    markTrace = new RegionalMarkTraceLocal(global().markTrace, remset);
+    evacuateTrace = new RegionalEvacuateTraceLocal(global().evacuateTrace, remset, arrayRemset);
+    immix = new CollectorLocal(Regional.immixSpace);
+    copy = new ImmixAllocator(Regional.immixSpace, true, true);
+  }
+
+  /****************************************************************************
+   *
+   * Collection-time allocation
+   */
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  @Inline
+  public Address allocCopy(ObjectReference original, int bytes,
+      int align, int offset, int allocator) {
+    if (VM.VERIFY_ASSERTIONS) {
+      VM.assertions._assert(bytes <= Plan.MAX_NON_LOS_COPY_BYTES);
+      VM.assertions._assert(allocator == Regional.ALLOC_DEFAULT);
+    }
+    return copy.alloc(bytes, align, offset);
+  }
+
+  @Override
+  @Inline
+  public void postCopy(ObjectReference object, ObjectReference typeRef,
+      int bytes, int allocator) {
+    if (VM.VERIFY_ASSERTIONS) VM.assertions._assert(allocator == Regional.ALLOC_DEFAULT);
+    Regional.immixSpace.postCopy(object, bytes, true);
+
+    if (VM.VERIFY_ASSERTIONS) {
+      VM.assertions._assert(getCurrentTrace().isLive(object));
+      VM.assertions._assert(getCurrentTrace().willNotMoveInCurrentCollection(object));
+    }
+  }
+
+  /****************************************************************************
+   *
+   * Collection
+   */
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  @Inline
+  public void collectionPhase(short phaseId, boolean primary) {
+    if (phaseId == Regional.PREPARE) {
+      super.collectionPhase(phaseId, primary);
+      immix.prepare(true);
+      markTrace.prepare();
+      copy.reset();
+      return;
+    }
+
+    if (phaseId == Regional.CLOSURE) {
+      markTrace.completeTrace();
+      return;
+    }
+
+    if (phaseId == Regional.PREPARE_EVACUATE) {
+      remset.flushLocal();
+      global().arrayRemsetPool.prepareNonBlocking();
+      global().remsetPool.prepareNonBlocking();
+      evacuateTrace.prepare();
+      copy.reset();
+      evacuating = true;
+      return;
+    }
+
+    if (evacuating && !global().hasCollectionSet() &&
+        (phaseId == Regional.STACK_ROOTS || phaseId == Regional.ROOTS)) {
+      /* Nothing can refer into an empty collection set */
+      return;
+    }
+
+    if (phaseId == Regional.EVACUATE_CLOSURE) {
+      evacuateTrace.completeTrace();
+      return;
+    }
+
+    if (phaseId == Regional.RELEASE_EVACUATE) {
+      evacuateTrace.release();
+      global().arrayRemsetPool.reset();
+      global().remsetPool.reset();
+      evacuating = false;
+      return;
+    }
+
+    if (phaseId == Regional.RELEASE) {
+      markTrace.release();
+      immix.release(true);
+      super.collectionPhase(phaseId, primary);
+      return;
+    }
+
+    super.collectionPhase(phaseId, primary);
+  }
+
+  @Override
+  protected boolean concurrentTraceComplete() {
+    if (!global().markTrace.hasWork()) {
+      return true;
+    }
+    return false;
+  }
+
+  /****************************************************************************
+   *
+   * Miscellaneous
+   */
+
+  /** @return The active global plan as a <code>Regional</code> instance. */
+  @Inline
+  private static Regional global() {
+    return (Regional) VM.activePlan.global();
+  }
+
+  /** @return The current trace instance. */
+  @Override
+  public final TraceLocal getCurrentTrace() {
+    return evacuating ? evacuateTrace : markTrace;
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ *  This file is part of the Jikes RVM project (http://jikesrvm.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  See the COPYRIGHT.txt file distributed with this work for information
+ *  regarding copyright ownership.
+ */
+package org.mmtk.plan.concurrent.regional;
+
+import static org.mmtk.policy.immix.ImmixConstants.MARK_LINE_AT_SCAN_TIME;
+import static org.mmtk.utility.Constants.BYTES_IN_ADDRESS;
+
+import org.mmtk.plan.TraceLocal;
+import org.mmtk.plan.Trace;
+import org.mmtk.policy.Space;
+import org.mmtk.utility.deque.*;
+import org.mmtk.vm.VM;
+
+import org.vmmagic.pragma.*;
+import org.vmmagic.unboxed.*;
+
+/**
+ * This class implements the thread-local functionality for evacuating the
+ * collection set of the <i>Regional</i> plan.  The heap outside the
+ * collection set was marked concurrently, so the trace starts from the
+ * roots and the remembered slots that refer into the collection set, and
+ * only follows objects within it.
+ */
+@Uninterruptible
+public final class RegionalEvacuateTraceLocal extends TraceLocal {
+
+  /****************************************************************************
+   *
+   * Instance fields.
+   */
+
+  /**
+   *
+   */
+  private final AddressDeque remset;
+  private final AddressPairDeque arrayRemset;
+
+  /**
+   * @param trace the global trace class to use
+   * @param remset the deque of slots that refer into the collection set
+   * @param arrayRemset the deque of bulk copied ranges
+   */
+  public RegionalEvacuateTraceLocal(Trace trace, AddressDeque remset, AddressPairDeque arrayRemset) {
+    super(trace);
+    this.remset = remset;
+    this.arrayRemset = arrayRemset;
+  }
+
+  /****************************************************************************
+   *
+   * Externally visible Object processing and tracing
+   */
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean isLive(ObjectReference object) {
+    if (object.isNull()) return false;
+    if (Space.isInSpace(Regional.REGIONAL, object)) {
+      return Regional.immixSpace.evacuationIsLive(object);
+    }
+    return super.isLive(object);
+  }
+
+  /**
+   * {@inheritDoc}<p>
+   *
+   * Objects in the collection set are evacuated.  Everything else was
+   * marked by the concurrent trace and is left alone.
+   */
+  @Override
+  @Inline
+  public ObjectReference traceObject(ObjectReference object) {
+    if (Regional.inCollectionSet(object))
+      return Regional.immixSpace.evacuateObject(this, object, Regional.ALLOC_DEFAULT);
+    return object;
+  }
+
+  /**
+   * {@inheritDoc}<p>
+   *
+   * The objects of the collection set were counted by the marking trace.
+   */
+  @Override
+  protected boolean countsLiveObjects() {
+    return false;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Inline
+  @Override
+  public boolean willNotMoveInCurrentCollection(ObjectReference object) {
+    if (Space.isInSpace(Regional.REGIONAL, object))
+      return !Regional.immixSpace.inCollectionSet(object);
+    return super.willNotMoveInCurrentCollection(object);
+  }
+
+  @Inline
+  @Override
+  protected void scanObject(ObjectReference object) {
+    super.scanObject(object);
+    if (MARK_LINE_AT_SCAN_TIME && Space.isInSpace(Regional.REGIONAL, object))
+      Regional.immixSpace.markLines(object);
+  }
+
+  /**
+   * Process the slots that refer into the collection set.  Slots within
+   * the collection set are ignored: they are reached, if at all, when
+   * their object is evacuated.
+   */
+  @Override
+  @Inline
+  protected void processRememberedSets() {
+    logMessage(5, "processing remset");
+    while (!remset.isEmpty()) {
+      Address loc = remset.pop();
+      if (VM.DEBUG) VM.debugging.remsetEntry(loc);
+      if (!Regional.inCollectionSet(loc)) processRootEdge(loc, false);
+    }
+    logMessage(5, "processing array remset");
+    arrayRemset.flushLocal();
+    while (!arrayRemset.isEmpty()) {
+      Address start = arrayRemset.pop1();
+      Address guard = arrayRemset.pop2();
+      if (VM.DEBUG) VM.debugging.arrayRemsetEntry(start,guard);
+      while (start.LT(guard)) {
+        processRootEdge(start, false);
+        start = start.plus(BYTES_IN_ADDRESS);
+      }
+    }
+  }
+}
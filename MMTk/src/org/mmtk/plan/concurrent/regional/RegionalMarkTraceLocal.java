@@ -0,0 +1,132 @@
+/*
+ *  This file is part of the Jikes RVM project (http://jikesrvm.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  See the COPYRIGHT.txt file distributed with this work for information
+ *  regarding copyright ownership.
+ */
+package org.mmtk.plan.concurrent.regional;
+
+import static org.mmtk.policy.immix.ImmixConstants.MARK_LINE_AT_SCAN_TIME;
+
+import org.mmtk.plan.TraceLocal;
+import org.mmtk.plan.Trace;
+import org.mmtk.policy.Space;
+import org.mmtk.utility.deque.AddressDeque;
+import org.mmtk.vm.VM;
+
+import org.vmmagic.pragma.*;
+import org.vmmagic.unboxed.*;
+
+/**
+ * This class implements the thread-local functionality for the concurrent
+ * marking trace of the <i>Regional</i> plan.  As well as marking, it
+ * remembers every slot outside the collection set that refers into it,
+ * so that the slot can be updated when the collection set is evacuated.
+ */
+@Uninterruptible
+public final class RegionalMarkTraceLocal extends TraceLocal {
+
+  /****************************************************************************
+   *
+   * Instance fields.
+   */
+
+  /**
+   *
+   */
+  private final AddressDeque remset;
+
+  /**
+   * @param trace the global trace class to use
+   * @param remset the deque of slots that refer into the collection set
+   */
+  public RegionalMarkTraceLocal(Trace trace, AddressDeque remset) {
+    super(trace);
+    this.remset = remset;
+  }
+
+  /****************************************************************************
+   *
+   * Externally visible Object processing and tracing
+   */
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected boolean overwriteReferenceDuringTrace() {
+    return false;
+  }
+
+  /**
+   * {@inheritDoc}<p>
+   *
+   * Remember the slot if it refers into the collection set from outside it.
+   */
+  @Override
+  @Inline
+  public void processEdge(ObjectReference source, Address slot) {
+    ObjectReference object = VM.activePlan.global().loadObjectReference(slot);
+    traceObject(object, false);
+    if (Regional.inCollectionSet(object) && !Regional.inCollectionSet(slot))
+      remset.insert(slot);
+  }
+
+  @Override
+  public boolean isLive(ObjectReference object) {
+    if (object.isNull()) return false;
+    if (Space.isInSpace(Regional.REGIONAL, object)) {
+      return Regional.immixSpace.fastIsLive(object);
+    }
+    return super.isLive(object);
+  }
+
+  /**
+   * {@inheritDoc}<p>
+   *
+   * In this instance, we refer objects in the immix space to the
+   * immixSpace for marking, and defer to the superclass for all others.
+   */
+  @Override
+  @Inline
+  public ObjectReference traceObject(ObjectReference object) {
+    if (object.isNull()) return object;
+    if (Space.isInSpace(Regional.REGIONAL, object))
+      return Regional.immixSpace.fastTraceObject(this, object);
+    return super.traceObject(object);
+  }
+
+  /**
+   * {@inheritDoc}<p>
+   *
+   * Objects in the collection set may be evacuated later in this collection.
+   */
+  @Inline
+  @Override
+  public boolean willNotMoveInCurrentCollection(ObjectReference object) {
+    if (Space.isInSpace(Regional.REGIONAL, object))
+      return !Regional.immixSpace.inCollectionSet(object);
+    return super.willNotMoveInCurrentCollection(object);
+  }
+
+  /**
+   * {@inheritDoc}<p>
+   *
+   * The lines of objects in the collection set are marked only if they
+   * survive evacuation in place.
+   */
+  @Inline
+  @Override
+  protected void scanObject(ObjectReference object) {
+    super.scanObject(object);
+    if (MARK_LINE_AT_SCAN_TIME && Space.isInSpace(Regional.REGIONAL, object) &&
+        !Regional.immixSpace.inCollectionSet(object))
+      Regional.immixSpace.markLines(object);
+  }
+}
@@ -0,0 +1,232 @@
+/*
+ *  This file is part of the Jikes RVM project (http://jikesrvm.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  See the COPYRIGHT.txt file distributed with this work for information
+ *  regarding copyright ownership.
+ */
+package org.mmtk.plan.concurrent.regional;
+
+import org.mmtk.plan.*;
+import org.mmtk.plan.concurrent.ConcurrentMutator;
+import org.mmtk.policy.Space;
+import org.mmtk.policy.immix.MutatorLocal;
+import org.mmtk.utility.alloc.Allocator;
+import org.mmtk.utility.deque.AddressPairDeque;
+import org.mmtk.utility.deque.WriteBuffer;
+import org.mmtk.vm.VM;
+
+import org.vmmagic.pragma.*;
+import org.vmmagic.unboxed.*;
+
+/**
+ * This class implements <i>per-mutator thread</i> behavior
+ * and state for the <i>Regional</i> plan.<p>
+ *
+ * In addition to the snapshot barrier of the superclass, while a
+ * collection is in progress the write barrier remembers the slots that
+ * are made to refer into the collection set, so that they can be
+ * updated when it is evacuated.
+ *
+ * @see Regional
+ * @see RegionalCollector
+ * @see ConcurrentMutator
+ * @see MutatorContext
+ */
+@Uninterruptible
+public class RegionalMutator extends ConcurrentMutator {
+
+  /****************************************************************************
+   * Instance fields
+   */
+
+  /**
+   *
+   */
+  protected final MutatorLocal immix;
+  private final TraceWriteBuffer markRemset;     /* snapshot barrier */
+  private final WriteBuffer remset;              /* remember slots referring into the collection set */
+  private final AddressPairDeque arrayRemset;    /* remember bulk copied ranges */
+
+  /****************************************************************************
+   *
+   * Initialization
+   */
+
+  /**
+   * Constructor
+   */
+  public RegionalMutator() {
+    immix = new MutatorLocal(Regional.immixSpace, false);
+    markRemset = new TraceWriteBuffer(global().markTrace);
+    remset = new WriteBuffer(global().remsetPool);
+    arrayRemset = new AddressPairDeque(global().arrayRemsetPool);
+  }
+
+  /****************************************************************************
+   *
+   * Mutator-time allocation
+   */
+
+  /**
+   * {@inheritDoc}<p>
+   *
+   * This class handles the default allocator from the immix space,
+   * and delegates everything else to the superclass.
+   */
+  @Override
+  @Inline
+  public Address alloc(int bytes, int align, int offset, int allocator, int site) {
+    if (allocator == Regional.ALLOC_DEFAULT)
+      return immix.alloc(bytes, align, offset);
+    return super.alloc(bytes, align, offset, allocator, site);
+  }
+
+  /**
+   * {@inheritDoc}<p>
+   *
+   * Initialize the object header for objects in the immix space, marking
+   * them if a collection is in progress, and delegate to the superclass
+   * for other objects.
+   */
+  @Override
+  @Inline
+  public void postAlloc(ObjectReference ref, ObjectReference typeRef,
+      int bytes, int allocator) {
+    if (allocator == Regional.ALLOC_DEFAULT) {
+      if (Regional.allocateMarked)
+        Regional.immixSpace.postAllocMarked(ref, bytes);
+      else
+        Regional.immixSpace.postAlloc(ref, bytes);
+    } else {
+      super.postAlloc(ref, typeRef, bytes, allocator);
+    }
+  }
+
+  @Override
+  public Allocator getAllocatorFromSpace(Space space) {
+    if (space == Regional.immixSpace) return immix;
+    return super.getAllocatorFromSpace(space);
+  }
+
+  /****************************************************************************
+   *
+   * Collection
+   */
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  @Inline
+  public void collectionPhase(short phaseId, boolean primary) {
+    if (phaseId == Regional.PREPARE) {
+      super.collectionPhase(phaseId, primary);
+      immix.prepare();
+      return;
+    }
+
+    if (phaseId == Regional.RELEASE) {
+      immix.release();
+      super.collectionPhase(phaseId, primary);
+      return;
+    }
+
+    super.collectionPhase(phaseId, primary);
+  }
+
+  @Override
+  public void flushRememberedSets() {
+    markRemset.flush();
+    remset.flushLocal();
+    arrayRemset.flushLocal();
+  }
+
+  /****************************************************************************
+   *
+   * Write and read barriers.
+   */
+
+  /**
+   * {@inheritDoc}<p>
+   *
+   * In addition to the snapshot barrier, remember the slot if it
+   * now refers into the collection set.
+   */
+  @Inline
+  @Override
+  public void objectReferenceWrite(ObjectReference src, Address slot, ObjectReference tgt, Word metaDataA, Word metaDataB, int mode) {
+    if (Regional.rememberCollectionSet) rememberSlot(src, slot, tgt);
+    super.objectReferenceWrite(src, slot, tgt, metaDataA, metaDataB, mode);
+  }
+
+  @Inline
+  @Override
+  public boolean objectReferenceTryCompareAndSwap(ObjectReference src, Address slot, ObjectReference old,
+                                               ObjectReference tgt, Word metaDataA, Word metaDataB, int mode) {
+    boolean result = super.objectReferenceTryCompareAndSwap(src, slot, old, tgt, metaDataA, metaDataB, mode);
+    if (result && Regional.rememberCollectionSet) rememberSlot(src, slot, tgt);
+    return result;
+  }
+
+  /**
+   * {@inheritDoc}<p>
+   *
+   * In addition to the snapshot barrier, remember the destination range
+   * while a collection set is being remembered.
+   */
+  @Inline
+  @Override
+  public boolean objectReferenceBulkCopy(ObjectReference src, Offset srcOffset, ObjectReference dst, Offset dstOffset, int bytes) {
+    if (Regional.rememberCollectionSet && !Regional.inCollectionSet(dst)) {
+      Address start = dst.toAddress().plus(dstOffset);
+      arrayRemset.insert(start, start.plus(bytes));
+    }
+    return super.objectReferenceBulkCopy(src, srcOffset, dst, dstOffset, bytes);
+  }
+
+  /**
+   * Remember a slot outside the collection set that refers into it.
+   *
+   * @param src The object being mutated
+   * @param slot The address of the field being written
+   * @param tgt The new value of the field
+   */
+  @Inline
+  private void rememberSlot(ObjectReference src, Address slot, ObjectReference tgt) {
+    if (Regional.inCollectionSet(tgt) && !Regional.inCollectionSet(src))
+      remset.insert(slot);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected void checkAndEnqueueReference(ObjectReference ref) {
+    if (ref.isNull()) return;
+    if (barrierActive) {
+      if      (Space.isInSpace(Regional.REGIONAL,   ref)) Regional.immixSpace.fastTraceObject(markRemset, ref);
+      else if (Space.isInSpace(Regional.IMMORTAL,   ref)) Regional.immortalSpace.traceObject(markRemset, ref);
+      else if (Space.isInSpace(Regional.LOS,        ref)) Regional.loSpace.traceObject(markRemset, ref);
+      else if (Space.isInSpace(Regional.NON_MOVING, ref)) Regional.nonMovingSpace.traceObject(markRemset, ref);
+      else if (Space.isInSpace(Regional.SMALL_CODE, ref)) Regional.smallCodeSpace.traceObject(markRemset, ref);
+      else if (Space.isInSpace(Regional.LARGE_CODE, ref)) Regional.largeCodeSpace.traceObject(markRemset, ref);
+    }
+  }
+
+  /****************************************************************************
+   *
+   * Miscellaneous
+   */
+
+  /** @return The active global plan as a <code>Regional</code> instance. */
+  @Inline
+  private static Regional global() {
+    return (Regional) VM.activePlan.global();
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ *  This file is part of the Jikes RVM project (http://jikesrvm.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  See the COPYRIGHT.txt file distributed with this work for information
+ *  regarding copyright ownership.
+ */
+package org.mmtk.plan.generational;
+
+import static org.mmtk.utility.heap.layout.VMLayoutConstants.HEAP_END;
+import static org.mmtk.utility.heap.layout.VMLayoutConstants.HEAP_START;
+
+import org.mmtk.vm.VM;
+
+import org.vmmagic.pragma.*;
+import org.vmmagic.unboxed.*;
+
+/**
+ * A byte map with one entry per {@link #BYTES_IN_CARD} bytes of the heap,
+ * used by the card marking write barrier (see {@link Gen#USE_CARD_BARRIER}).<p>
+ *
+ * The barrier dirties the card holding each array slot that receives a
+ * pointer into the nursery, and the nursery collection rescans only the
+ * dirty cards of the logged arrays, cleaning them as it goes.  The table
+ * covers the whole of the 32-bit heap range, so it is only allocated when
+ * the card barrier is configured in.
+ */
+@Uninterruptible
+public final class CardTable {
+
+  /****************************************************************************
+   *
+   * Class variables
+   */
+
+  /** Log of the number of heap bytes covered by a card */
+  public static final int LOG_BYTES_IN_CARD = 9;
+  public static final int BYTES_IN_CARD = 1 << LOG_BYTES_IN_CARD;
+  private static final Word CARD_MASK = Word.fromIntZeroExtend(BYTES_IN_CARD - 1);
+
+  private static final byte CLEAN = 0;
+  private static final byte DIRTY = 1;
+
+  private static final boolean ENABLED = Gen.USE_CARD_BARRIER && !VM.HEAP_LAYOUT_64BIT;
+
+  private static final byte[] cards =
+    new byte[ENABLED ? HEAP_END.diff(HEAP_START).toWord().rshl(LOG_BYTES_IN_CARD).toInt() : 0];
+
+  static {
+    if (VM.VERIFY_ASSERTIONS) VM.assertions._assert(ENABLED || !Gen.USE_CARD_BARRIER);
+  }
+
+  /****************************************************************************
+   *
+   * Card table accessors
+   */
+
+  /**
+   * Dirty the card containing an address.
+   *
+   * @param slot The address being written to
+   */
+  @Inline
+  public static void mark(Address slot) {
+    int index = cardIndex(slot);
+    if (!Gen.CONDITIONAL_CARD_MARKING || cards[index] != DIRTY) {
+      cards[index] = DIRTY;
+    }
+  }
+
+  /**
+   * Dirty every card overlapping a range of addresses.
+   *
+   * @param start The first address in the range
+   * @param end The address just beyond the range
+   */
+  public static void markRange(Address start, Address end) {
+    if (start.GE(end)) return;
+    int last = cardIndex(end.minus(1));
+    for (int index = cardIndex(start); index <= last; index++) {
+      cards[index] = DIRTY;
+    }
+  }
+
+  /**
+   * @param card The start of a card
+   * @return {@code true} if the card has been dirtied since it was last cleaned
+   */
+  @Inline
+  public static boolean isDirty(Address card) {
+    return cards[cardIndex(card)] == DIRTY;
+  }
+
+  /**
+   * Clean a card.
+   *
+   * @param card The start of a card
+   */
+  @Inline
+  public static void clean(Address card) {
+    cards[cardIndex(card)] = CLEAN;
+  }
+
+  /**
+   * @param addr An address in the heap
+   * @return The start of the card containing the address
+   */
+  @Inline
+  public static Address cardStart(Address addr) {
+    return addr.toWord().and(CARD_MASK.not()).toAddress();
+  }
+
+  @Inline
+  private static int cardIndex(Address addr) {
+    return addr.diff(HEAP_START).toWord().rshl(LOG_BYTES_IN_CARD).toInt();
+  }
+}
@@ -23,6 +23,8 @@ import org.mmtk.utility.heap.VMRequest;
 import org.mmtk.utility.heap.layout.HeapLayout;
 import org.mmtk.utility.Log;
 import org.mmtk.utility.options.Options;
+import org.mmtk.utility.options.SitePretenureSurvival;
+import org.mmtk.utility.options.SitePretenuring;
 import org.mmtk.utility.sanitychecker.SanityChecker;
 import org.mmtk.utility.statistics.*;
 
@@ -64,7 +66,9 @@ public abstract class Gen extends StopTheWorld {
   public static final boolean USE_NON_HEAP_OBJECT_REFERENCE_WRITE_BARRIER = false;
   public static final boolean USE_OBJECT_BARRIER_FOR_AASTORE = false; // choose between slot and object barriers
   public static final boolean USE_OBJECT_BARRIER_FOR_PUTFIELD = false; // choose between slot and object barriers
-  public static final boolean USE_OBJECT_BARRIER = USE_OBJECT_BARRIER_FOR_AASTORE || USE_OBJECT_BARRIER_FOR_PUTFIELD;
+  public static final boolean USE_CARD_BARRIER = false; // log objects and mark cards instead of remembering slots
+  public static final boolean CONDITIONAL_CARD_MARKING = true; // only store to a card that is not already dirty
+  public static final boolean USE_OBJECT_BARRIER = USE_OBJECT_BARRIER_FOR_AASTORE || USE_OBJECT_BARRIER_FOR_PUTFIELD || USE_CARD_BARRIER;
 
   /** Fraction of available virtual memory to give to the nursery (if contiguous) */
   protected static final float NURSERY_VM_FRACTION = 0.15f;
@@ -152,6 +156,14 @@ public abstract class Gen extends StopTheWorld {
     }
   }
 
+  /**
+   * Constructor
+   */
+  public Gen() {
+    Options.sitePretenuring = new SitePretenuring();
+    Options.sitePretenureSurvival = new SitePretenureSurvival();
+  }
+
   /*****************************************************************************
    *
    * Collection
@@ -444,5 +456,20 @@ public abstract class Gen extends StopTheWorld {
   public void fullyBooted() {
     super.fullyBooted();
     nurserySpace.setZeroingApproach(Options.nurseryZeroing.getNonTemporal(), Options.nurseryZeroing.getConcurrent());
+    SiteSurvival.boot();
+  }
+
+  /**
+   * {@inheritDoc}<p>
+   *
+   * Sites that have already been found to be long lived allocate directly
+   * into the mature space.
+   */
+  @Override
+  public int adviseAllocator(int allocator, int site) {
+    if (allocator == ALLOC_NURSERY && SiteSurvival.isPretenured(site)) {
+      return ALLOC_MATURE;
+    }
+    return allocator;
   }
 }
@@ -56,6 +56,12 @@ import org.vmmagic.unboxed.*;
   protected final WriteBuffer remset;           /* remember modified array fields */
   protected final AddressPairDeque arrayRemset; /* remember modified array ranges */
 
+  /* Allocation site sampling (see SiteSurvival) */
+  private int sampleCountdown = 1 << SiteSurvival.LOG_SAMPLE_BYTES;
+  private final int[] sampleSites = new int[SiteSurvival.MAX_SAMPLES_PER_MUTATOR];
+  private final AddressArray sampleRegions = AddressArray.create(SiteSurvival.MAX_SAMPLES_PER_MUTATOR);
+  private int samples = 0;
+
   /****************************************************************************
    *
    * Initialization
@@ -88,11 +94,54 @@ import org.vmmagic.unboxed.*;
   public Address alloc(int bytes, int align, int offset, int allocator, int site) {
     if (allocator == Gen.ALLOC_NURSERY) {
       if (Stats.GATHER_MARK_CONS_STATS) Gen.nurseryCons.inc(bytes);
-      return nursery.alloc(bytes, align, offset);
+      Address region = nursery.alloc(bytes, align, offset);
+      sampleCountdown -= bytes;
+      if (sampleCountdown < 0) sampleSite(region, site);
+      return region;
     }
     return super.alloc(bytes, align, offset, allocator, site);
   }
 
+  /**
+   * Remember the site of a nursery allocation so that its survival can be
+   * checked at the next collection.
+   *
+   * @param region The start of the sampled object
+   * @param site The allocation site
+   */
+  @NoInline
+  private void sampleSite(Address region, int site) {
+    if (!SiteSurvival.isEnabled()) {
+      sampleCountdown = Integer.MAX_VALUE;
+      return;
+    }
+    sampleCountdown = 1 << SiteSurvival.LOG_SAMPLE_BYTES;
+    if (site >= 0 && samples < SiteSurvival.MAX_SAMPLES_PER_MUTATOR) {
+      sampleSites[samples] = site;
+      sampleRegions.set(samples, region);
+      samples++;
+    }
+  }
+
+  /**
+   * {@inheritDoc}<p>
+   *
+   * In this case, nursery allocations from sites that have been pretenured
+   * (by <code>SiteSurvival</code>, or by the compiler, which passes
+   * <code>ALLOC_MATURE</code> for such sites) go to the mature space,
+   * unless they are large enough to go to the large object space.
+   */
+  @Override
+  @Inline
+  public int checkAllocator(int bytes, int align, int allocator, int site) {
+    boolean pretenure = allocator == Gen.ALLOC_MATURE;
+    int result = super.checkAllocator(bytes, align, pretenure ? Gen.ALLOC_NURSERY : allocator, site);
+    if (result == Gen.ALLOC_NURSERY && (pretenure || SiteSurvival.isPretenured(site))) {
+      return Gen.ALLOC_MATURE;
+    }
+    return result;
+  }
+
   @Override
   @Inline
   public void postAlloc(ObjectReference ref, ObjectReference typeRef,
@@ -126,7 +175,13 @@ import org.vmmagic.unboxed.*;
   @Inline
   private void fastPath(ObjectReference src, Address slot, ObjectReference tgt, int mode) {
     if (Gen.GATHER_WRITE_BARRIER_STATS) Gen.wbFast.inc();
-    if ((mode == ARRAY_ELEMENT && USE_OBJECT_BARRIER_FOR_AASTORE) ||
+    if (Gen.USE_CARD_BARRIER) {
+      if (!Gen.inNursery(slot) && Gen.inNursery(tgt)) {
+        if (Gen.GATHER_WRITE_BARRIER_STATS) Gen.wbSlow.inc();
+        if (mode == ARRAY_ELEMENT) CardTable.mark(slot);
+        logObject(src);
+      }
+    } else if ((mode == ARRAY_ELEMENT && USE_OBJECT_BARRIER_FOR_AASTORE) ||
         (mode == INSTANCE_FIELD && USE_OBJECT_BARRIER_FOR_PUTFIELD)) {
       if (HeaderByte.isUnlogged(src)) {
         if (Gen.GATHER_WRITE_BARRIER_STATS) Gen.wbSlow.inc();
@@ -141,6 +196,20 @@ import org.vmmagic.unboxed.*;
     }
   }
 
+  /**
+   * Log an object, so that the next nursery collection rescans it (or,
+   * with the card barrier, the dirty cards of it if it is an array).
+   *
+   * @param src The object to be logged
+   */
+  @Inline
+  private void logObject(ObjectReference src) {
+    if (HeaderByte.isUnlogged(src)) {
+      HeaderByte.markAsLogged(src);
+      modbuf.insert(src);
+    }
+  }
+
   /**
    * {@inheritDoc}<p>
    *
@@ -211,14 +280,20 @@ import org.vmmagic.unboxed.*;
    * {@inheritDoc}<p>
    *
    * In this case, we remember the mutated source address range and
-   * will scan that address range at GC time.
+   * will scan that address range at GC time.  With the card barrier we
+   * instead dirty the cards of the range and log the destination array.
    */
   @Inline
   @Override
   public final boolean objectReferenceBulkCopy(ObjectReference src, Offset srcOffset, ObjectReference dst, Offset dstOffset, int bytes) {
     if (!Gen.inNursery(dst)) {
       Address start = dst.toAddress().plus(dstOffset);
-      arrayRemset.insert(start, start.plus(bytes));
+      if (Gen.USE_CARD_BARRIER) {
+        CardTable.markRange(start, start.plus(bytes));
+        logObject(dst);
+      } else {
+        arrayRemset.insert(start, start.plus(bytes));
+      }
     }
     return false;
   }
@@ -266,6 +341,10 @@ import org.vmmagic.unboxed.*;
     }
 
     if (phaseId == Gen.RELEASE) {
+      if (samples > 0) {
+        SiteSurvival.recordSamples(sampleSites, sampleRegions, samples);
+        samples = 0;
+      }
       if (global().traceFullHeap()) {
         super.collectionPhase(phaseId, primary);
       }
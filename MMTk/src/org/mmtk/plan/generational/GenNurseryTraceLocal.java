@@ -91,7 +91,11 @@ public final class GenNurseryTraceLocal extends TraceLocal {
     while (!(obj = modbuf.pop()).isNull()) {
       if (VM.DEBUG) VM.debugging.modbufEntry(obj);
       HeaderByte.markAsUnlogged(obj);
-      scanObject(obj);
+      if (Gen.USE_CARD_BARRIER && VM.objectModel.isArray(obj) && !VM.objectModel.isPrimitiveArray(obj)) {
+        scanDirtyCards(obj);
+      } else {
+        scanObject(obj);
+      }
     }
     logMessage(5, "processing remset");
     while (!remset.isEmpty()) {
@@ -112,6 +116,26 @@ public final class GenNurseryTraceLocal extends TraceLocal {
     }
   }
 
+  /**
+   * Scan the elements of a logged reference array that lie in dirty cards,
+   * cleaning those cards.  Cards at either end of the array may also hold
+   * (dirty) slots of a neighbouring object, so they are left dirty and may
+   * be rescanned when that object is processed.
+   *
+   * @param array The logged reference array
+   */
+  private void scanDirtyCards(ObjectReference array) {
+    Address start = VM.objectModel.objectStartRef(array);
+    Address end = VM.objectModel.getObjectEndAddress(array);
+    for (Address card = CardTable.cardStart(start); card.LT(end); card = card.plus(CardTable.BYTES_IN_CARD)) {
+      if (CardTable.isDirty(card)) {
+        Address next = card.plus(CardTable.BYTES_IN_CARD);
+        if (card.GE(start) && next.LE(end)) CardTable.clean(card);
+        VM.scanning.scanArrayRange(this, array, card, next);
+      }
+    }
+  }
+
   /**
    * Will the object move from now on during the collection.
    *
@@ -0,0 +1,236 @@
+/*
+ *  This file is part of the Jikes RVM project (http://jikesrvm.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  See the COPYRIGHT.txt file distributed with this work for information
+ *  regarding copyright ownership.
+ */
+package org.mmtk.plan.generational;
+
+import org.mmtk.utility.Log;
+import org.mmtk.utility.options.Options;
+import org.mmtk.vm.Lock;
+import org.mmtk.vm.VM;
+
+import org.vmmagic.pragma.*;
+import org.vmmagic.unboxed.*;
+
+/**
+ * This class tracks, per allocation site, how many of the objects allocated
+ * in the nursery survive a nursery collection, and decides which sites
+ * should instead allocate directly into the mature space.<p>
+ *
+ * Each mutator samples one nursery allocation in every
+ * <code>2^LOG_SAMPLE_BYTES</code> bytes, remembering the site and the
+ * address of the sampled object.  When the nursery is collected, the
+ * samples are checked against the nursery (a sample survived if it was
+ * copied) and accumulated here.  Once a site has enough samples and its
+ * survival rate reaches <code>Options.sitePretenureSurvival</code>, it is
+ * pretenured: <code>GenMutator.checkAllocator</code> redirects its
+ * allocations to the mature space, and the compiler may bake the mature
+ * allocator into code compiled from then on.  A pretenured site no longer
+ * produces samples, so the decision is final.<p>
+ *
+ * Sites are tracked in a fixed-size table, indexed by a hash of the site
+ * so that any site identifier can be tracked.  When there is no free entry
+ * among the first few probed, the sample replaces the entry with the fewest
+ * samples that has not been pretenured.
+ *
+ * @see GenMutator
+ */
+@Uninterruptible
+public final class SiteSurvival {
+
+  /** Log of the number of sites that can be tracked at once */
+  private static final int LOG_TABLE_SIZE = 14;
+  private static final int TABLE_SIZE = 1 << LOG_TABLE_SIZE;
+  private static final int TABLE_MASK = TABLE_SIZE - 1;
+  /** The number of entries searched for a site */
+  private static final int MAX_PROBES = 8;
+  /** Log of the number of bytes of nursery allocation per sample */
+  public static final int LOG_SAMPLE_BYTES = 12;
+  /** The number of samples a mutator can hold between collections */
+  public static final int MAX_SAMPLES_PER_MUTATOR = 512;
+  /** The number of samples needed before a decision is made for a site */
+  private static final int MIN_SAMPLES = 32;
+  /** Counts are halved when a site reaches this number of samples */
+  private static final int MAX_SAMPLES = 1 << 20;
+
+  private static final Lock lock = VM.newLock("siteSurvival");
+
+  /** The site of each entry plus one, or zero if the entry has never been used */
+  private static final int[] sites = new int[TABLE_SIZE];
+  private static final int[] sampled = new int[TABLE_SIZE];
+  private static final int[] survived = new int[TABLE_SIZE];
+  private static final boolean[] pretenured = new boolean[TABLE_SIZE];
+  private static int pretenuredSites = 0;
+
+  /** Cached value of <code>Options.sitePretenuring</code> */
+  private static boolean enabled = false;
+
+  private SiteSurvival() {}
+
+  /**
+   * Read the options.  Called once the VM is fully booted.
+   */
+  @Interruptible
+  static void boot() {
+    enabled = Options.sitePretenuring.getValue();
+  }
+
+  /**
+   * @return {@code true} if allocation sites are being sampled
+   */
+  @Inline
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * @param site an allocation site
+   * @return {@code true} if objects allocated at this site should go
+   * directly into the mature space
+   */
+  @Inline
+  public static boolean isPretenured(int site) {
+    int entry = find(site);
+    return entry >= 0 && pretenured[entry];
+  }
+
+  @Inline
+  private static int hash(int site) {
+    return (site * 0x9E3779B1) >>> (32 - LOG_TABLE_SIZE);
+  }
+
+  /**
+   * @param site an allocation site
+   * @return the index of the site's entry, or -1 if it is not tracked
+   */
+  @Inline
+  private static int find(int site) {
+    if (site < 0) return -1;
+    int entry = hash(site);
+    for (int probe = 0; probe < MAX_PROBES; probe++) {
+      int key = sites[entry];
+      if (key == site + 1) return entry;
+      if (key == 0) return -1;
+      entry = (entry + 1) & TABLE_MASK;
+    }
+    return -1;
+  }
+
+  /**
+   * Find the entry for a site, creating it if necessary.  Entries are
+   * never emptied, so a site that is not found before an unused entry is
+   * not in the table.  If all the probed entries are in use by other
+   * sites, the one with the fewest samples that has not been pretenured
+   * is given to this site.
+   *
+   * @param site an allocation site
+   * @return the index of the site's entry, or -1 if all the probed
+   * entries belong to pretenured sites
+   */
+  private static int findOrCreate(int site) {
+    int entry = hash(site);
+    int victim = -1;
+    for (int probe = 0; probe < MAX_PROBES; probe++) {
+      int key = sites[entry];
+      if (key == site + 1) return entry;
+      if (key == 0) {
+        victim = entry;
+        break;
+      }
+      if (!pretenured[entry] && (victim == -1 || sampled[entry] < sampled[victim])) {
+        victim = entry;
+      }
+      entry = (entry + 1) & TABLE_MASK;
+    }
+    if (victim != -1) {
+      sites[victim] = site + 1;
+      sampled[victim] = 0;
+      survived[victim] = 0;
+    }
+    return victim;
+  }
+
+  /**
+   * Accumulate a mutator's samples once the nursery has been traced, and
+   * pretenure any site that has become long lived.
+   *
+   * @param sites the site of each sample
+   * @param regions the start address of each sampled object
+   * @param count the number of samples
+   */
+  static void recordSamples(int[] sites, AddressArray regions, int count) {
+    float threshold = Options.sitePretenureSurvival.getValue();
+    lock.acquire();
+    for (int i = 0; i < count; i++) {
+      ObjectReference object = VM.objectModel.getObjectFromStartAddress(regions.get(i));
+      recordSample(sites[i], Gen.nurserySpace.isLive(object), threshold);
+    }
+    lock.release();
+  }
+
+  /**
+   * Accumulate one sample, and pretenure its site if it has become long
+   * lived.  The caller must hold the lock.
+   *
+   * @param site the site of the sample
+   * @param live {@code true} if the sampled object survived
+   * @param threshold the survival rate at which a site is pretenured
+   */
+  static void recordSample(int site, boolean live, float threshold) {
+    int entry = findOrCreate(site);
+    if (entry < 0) return;
+    if (sampled[entry] == MAX_SAMPLES) {
+      sampled[entry] >>= 1;
+      survived[entry] >>= 1;
+    }
+    sampled[entry]++;
+    if (live) {
+      survived[entry]++;
+    }
+    if (!pretenured[entry] && sampled[entry] >= MIN_SAMPLES &&
+        survived[entry] >= threshold * sampled[entry]) {
+      pretenured[entry] = true;
+      pretenuredSites++;
+      if (Options.verbose.getValue() >= 2) {
+        Log.write("[Pretenuring site ", site);
+        Log.write(": ", survived[entry]);
+        Log.write("/", sampled[entry]);
+        Log.writeln(" samples survived]");
+      }
+    }
+  }
+
+  /**
+   * @param site an allocation site
+   * @return the number of objects sampled at the site
+   */
+  public static int getSampled(int site) {
+    int entry = find(site);
+    return entry >= 0 ? sampled[entry] : 0;
+  }
+
+  /**
+   * @param site an allocation site
+   * @return the number of sampled objects from the site that survived
+   * a nursery collection
+   */
+  public static int getSurvived(int site) {
+    int entry = find(site);
+    return entry >= 0 ? survived[entry] : 0;
+  }
+
+  /**
+   * @return the number of sites that have been pretenured
+   */
+  public static int getPretenuredSites() {
+    return pretenuredSites;
+  }
+}
@@ -12,9 +12,11 @@
  */
 package org.mmtk.plan.generational.copying;
 
+import org.mmtk.plan.generational.Gen;
 import org.mmtk.plan.generational.GenMutator;
 import org.mmtk.policy.CopyLocal;
 import org.mmtk.policy.Space;
+import org.mmtk.utility.HeaderByte;
 import org.mmtk.utility.alloc.Allocator;
 import org.mmtk.vm.VM;
 
@@ -96,8 +98,10 @@ public class GenCopyMutator extends GenMutator {
   @Inline
   public final void postAlloc(ObjectReference object, ObjectReference typeRef,
       int bytes, int allocator) {
-    // nothing to be done
-    if (allocator == GenCopy.ALLOC_MATURE) return;
+    if (allocator == GenCopy.ALLOC_MATURE) {
+      if (Gen.USE_OBJECT_BARRIER) HeaderByte.markAsUnlogged(object);
+      return;
+    }
     super.postAlloc(object, typeRef, bytes, allocator);
   }
 
@@ -15,6 +15,7 @@ package org.mmtk.plan.generational.marksweep;
 import org.mmtk.plan.generational.*;
 import org.mmtk.policy.MarkSweepLocal;
 import org.mmtk.policy.Space;
+import org.mmtk.utility.HeaderByte;
 import org.mmtk.utility.alloc.Allocator;
 
 import org.mmtk.vm.VM;
@@ -90,6 +91,7 @@ public class GenMSMutator extends GenMutator {
       int bytes, int allocator) {
     if (allocator == GenMS.ALLOC_MATURE) {
       GenMS.msSpace.initializeHeader(ref, true);
+      if (Gen.USE_OBJECT_BARRIER) HeaderByte.markAsUnlogged(ref);
     } else {
       super.postAlloc(ref, typeRef, bytes, allocator);
     }
@@ -151,7 +151,7 @@ import org.vmmagic.unboxed.ObjectReference;
     if (phaseId == PREPARE_FORWARD) {
       super.collectionPhase(PREPARE);
       forwardTrace.prepare();
-      mcSpace.prepare();
+      // The mark bitmap must survive until compaction
       return;
     }
     if (phaseId == RELEASE_FORWARD) {
@@ -17,6 +17,7 @@ import org.mmtk.plan.StopTheWorld;
 import org.mmtk.plan.Trace;
 import org.mmtk.plan.refcount.backuptrace.BTFreeLargeObjectSweeper;
 import org.mmtk.plan.refcount.backuptrace.BTSweeper;
+import org.mmtk.plan.refcount.trialdeletion.TDCycleDetector;
 import org.mmtk.policy.ExplicitFreeListSpace;
 import org.mmtk.policy.ExplicitLargeObjectSpace;
 import org.mmtk.policy.Space;
@@ -24,6 +25,8 @@ import org.mmtk.utility.Log;
 import org.mmtk.utility.alloc.LinearScan;
 import org.mmtk.utility.deque.SharedDeque;
 import org.mmtk.utility.heap.VMRequest;
+import org.mmtk.utility.options.ConcurrentDecrements;
+import org.mmtk.utility.options.DecrementBacklogLimit;
 import org.mmtk.utility.options.Options;
 import org.mmtk.utility.sanitychecker.SanityChecker;
 import org.mmtk.vm.VM;
@@ -37,6 +40,22 @@ import org.vmmagic.unboxed.ObjectReference;
  * here (http://dx.doi.org/10.1145/2258996.2259008).  See Chapter 4 of
  * Daniel Frampton's PhD thesis for details of and rationale for the cycle
  * collection strategy used by this collector.
+ * <p>
+ * Cycles are normally reclaimed by trial deletion (see
+ * {@link org.mmtk.plan.refcount.trialdeletion.TDCycleDetector}) of the
+ * objects whose counts have been decremented, when the volume of such
+ * objects reaches <code>cycleMetaDataLimit</code> or available space falls
+ * below <code>cycleFilterThreshold</code>.  A backup trace of the whole heap
+ * is used when space is shorter still (<code>cycleTriggerThreshold</code>),
+ * and for emergency and forced full heap collections.
+ * <p>
+ * Unless <code>concurrentDecrements</code> is disabled, only increments and
+ * root processing are performed in the pause of an ordinary collection.
+ * The decrements (and the recursive freeing they trigger) are handed to the
+ * concurrent workers, which process them while the mutators run.  Any that
+ * are still outstanding when the next collection starts are processed by
+ * that collection, in the pause for as long as more than
+ * <code>decrementBacklogLimit</code> of them remain.
  */
 @Uninterruptible
 public class RCBase extends StopTheWorld {
@@ -44,15 +63,21 @@ public class RCBase extends StopTheWorld {
   public static final short PROCESS_NEWROOTBUFFER  = Phase.createSimple("new-root");
   public static final short PROCESS_MODBUFFER      = Phase.createSimple("mods");
   public static final short PROCESS_DECBUFFER      = Phase.createSimple("decs");
+  public static final short PROCESS_CYCLES         = Phase.createSimple("cycles");
 
   /** Is cycle collection enabled? */
   public static final boolean CC_ENABLED           = true;
   /** Force full cycle collection at each GC? */
   public static boolean ccForceFull        = false;
-  /** Use backup tracing for cycle collection (currently the only option) */
+  /** Use backup tracing for cycle collection when trial deletion is not enough */
   public static final boolean CC_BACKUP_TRACE      = true;
+  /** Use trial deletion for cycle collection */
+  public static final boolean CC_TRIAL_DELETION    = true;
 
   public static boolean performCycleCollection;
+  public static boolean performTrialDeletion;
+  /** Are the decrements of this collection processed concurrently? */
+  public static boolean deferDecrements;
   public static final short BT_CLOSURE             = Phase.createSimple("closure-bt");
 
   /** True if we are building for generational RC */
@@ -74,6 +99,8 @@ public class RCBase extends StopTheWorld {
       Phase.scheduleMutator    (PROCESS_DECBUFFER),
       Phase.scheduleGlobal     (PROCESS_DECBUFFER),
       Phase.scheduleCollector  (PROCESS_DECBUFFER),
+      Phase.scheduleGlobal     (PROCESS_CYCLES),
+      Phase.scheduleCollector  (PROCESS_CYCLES),
       Phase.scheduleGlobal     (BT_CLOSURE),
       Phase.scheduleCollector  (BT_CLOSURE));
 
@@ -85,6 +112,8 @@ public class RCBase extends StopTheWorld {
       Phase.scheduleMutator    (PROCESS_DECBUFFER),
       Phase.scheduleGlobal     (PROCESS_DECBUFFER),
       Phase.scheduleCollector  (PROCESS_DECBUFFER),
+      Phase.scheduleGlobal     (PROCESS_CYCLES),
+      Phase.scheduleCollector  (PROCESS_CYCLES),
       Phase.scheduleGlobal     (BT_CLOSURE),
       Phase.scheduleCollector  (BT_CLOSURE));
 
@@ -151,8 +180,13 @@ public class RCBase extends StopTheWorld {
 
   public final SharedDeque modPool = new SharedDeque("mod", metaDataSpace, 1);
   public final SharedDeque decPool = new SharedDeque("dec", metaDataSpace, 1);
+  public final SharedDeque deferredDecPool = new SharedDeque("deferredDec", metaDataSpace, 1);
   public final SharedDeque newRootPool = new SharedDeque("newRoot", metaDataSpace, 1);
   public final SharedDeque oldRootPool = new SharedDeque("oldRoot", metaDataSpace, 1);
+  public final SharedDeque purplePool = new SharedDeque("purple", metaDataSpace, 1);
+  public final SharedDeque cycleRootPool = new SharedDeque("cycleRoot", metaDataSpace, 1);
+  public final SharedDeque cycleWorkPool = new SharedDeque("cycleWork", metaDataSpace, 1);
+  public final SharedDeque cycleBlackPool = new SharedDeque("cycleBlack", metaDataSpace, 1);
 
   /*****************************************************************************
    *
@@ -173,6 +207,8 @@ public class RCBase extends StopTheWorld {
   public RCBase() {
     Options.noReferenceTypes.setDefaultValue(true);
     Options.noFinalizer.setDefaultValue(true);
+    Options.concurrentDecrements = new ConcurrentDecrements();
+    Options.decrementBacklogLimit = new DecrementBacklogLimit();
     rootTrace = new Trace(metaDataSpace);
     backupTrace = new Trace(metaDataSpace);
     rcSweeper = new BTSweeper();
@@ -219,6 +255,12 @@ public class RCBase extends StopTheWorld {
         else performCycleCollection |= (collectionAttempt > 1) || emergencyCollection || ccForceFull;
         if (performCycleCollection && Options.verbose.getValue() > 0) Log.write(" [CC] ");
       }
+      if (CC_TRIAL_DELETION) {
+        performTrialDeletion = !performCycleCollection &&
+          (purplePool.enqueuedPages() >= Options.cycleMetaDataLimit.getPages() ||
+           getPagesAvail() < Options.cycleFilterThreshold.getPages());
+        if (performTrialDeletion && Options.verbose.getValue() > 0) Log.write(" [TD] ");
+      }
       return;
     }
 
@@ -250,6 +292,9 @@ public class RCBase extends StopTheWorld {
 
     if (phaseId == PROCESS_OLDROOTBUFFER) {
       oldRootPool.prepare();
+      if (CC_TRIAL_DELETION && CC_BACKUP_TRACE && performCycleCollection) {
+        purplePool.prepare();
+      }
       return;
     }
 
@@ -265,7 +310,26 @@ public class RCBase extends StopTheWorld {
     }
 
     if (phaseId == PROCESS_DECBUFFER) {
-      decPool.prepare();
+      // Decrements left over from the last concurrent phase are processed with this collection's
+      deferredDecPool.transferTo(decPool);
+      deferDecrements = Options.concurrentDecrements.getValue() && !emergencyCollection &&
+        !performCycleCollection && !performTrialDeletion;
+      if (deferDecrements) {
+        // Collectors stop popping at the backlog limit, so none may block waiting for the others
+        decPool.prepareNonBlocking();
+      } else {
+        decPool.prepare();
+      }
+      return;
+    }
+
+    if (phaseId == PROCESS_CYCLES) {
+      if (CC_TRIAL_DELETION && (performTrialDeletion || TDCycleDetector.hasBufferedDeaths())) {
+        purplePool.prepareNonBlocking();
+        cycleRootPool.prepareNonBlocking();
+        cycleWorkPool.prepareNonBlocking();
+        cycleBlackPool.prepareNonBlocking();
+      }
       return;
     }
 
@@ -278,6 +342,17 @@ public class RCBase extends StopTheWorld {
       } else {
         rcSpace.release();
       }
+      if (deferDecrements) {
+        decPool.transferTo(deferredDecPool);
+        if (deferredDecPool.enqueuedPages() > 0) {
+          if (Options.verbose.getValue() >= 2) {
+            Log.write("[RC: ", deferredDecPool.enqueuedPages());
+            Log.write(" pages of decrements deferred] ");
+          }
+          deferredDecPool.prepareNonBlocking();
+          controlCollectorContext.requestConcurrentCollection();
+        }
+      }
       if (!BUILD_FOR_GENRC) performCycleCollection = getPagesAvail() < Options.cycleTriggerThreshold.getPages();
       return;
     }
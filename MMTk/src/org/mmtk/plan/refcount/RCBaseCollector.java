@@ -18,12 +18,15 @@ import org.mmtk.plan.StopTheWorldCollector;
 import org.mmtk.plan.TraceLocal;
 import org.mmtk.plan.TransitiveClosure;
 import org.mmtk.plan.refcount.backuptrace.BTTraceLocal;
+import org.mmtk.plan.refcount.trialdeletion.TDCycleDetector;
 import org.mmtk.policy.Space;
 import org.mmtk.policy.ExplicitFreeListSpace;
 import org.mmtk.utility.deque.ObjectReferenceDeque;
+import org.mmtk.utility.options.Options;
 import org.mmtk.vm.VM;
 import org.vmmagic.pragma.Inline;
 import org.vmmagic.pragma.Uninterruptible;
+import org.vmmagic.pragma.Unpreemptible;
 import org.vmmagic.unboxed.ObjectReference;
 
 /**
@@ -48,7 +51,9 @@ public abstract class RCBaseCollector extends StopTheWorldCollector {
   private final ObjectReferenceDeque modBuffer;
   private final ObjectReferenceDeque oldRootBuffer;
   private final RCDecBuffer decBuffer;
+  private final RCDecBuffer deferredDecBuffer;
   private final RCZero zero;
+  private final TDCycleDetector cycleDetector;
 
   /**
    * Constructor.
@@ -58,8 +63,11 @@ public abstract class RCBaseCollector extends StopTheWorldCollector {
     oldRootBuffer = new ObjectReferenceDeque("old-root", global().oldRootPool);
     modBuffer = new ObjectReferenceDeque("mod buf", global().modPool);
     decBuffer = new RCDecBuffer(global().decPool);
+    deferredDecBuffer = new RCDecBuffer(global().deferredDecPool);
     backupTrace = new BTTraceLocal(global().backupTrace);
     zero = new RCZero();
+    cycleDetector = new TDCycleDetector(global().purplePool, global().cycleRootPool,
+        global().cycleWorkPool, global().cycleBlackPool);
   }
 
   /**
@@ -77,6 +85,39 @@ public abstract class RCBaseCollector extends StopTheWorldCollector {
    * Collection
    */
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  @Unpreemptible
+  public void run() {
+    bindToNumaNode();
+    while (true) {
+      park();
+      if (Plan.concurrentWorkers.isMember(this)) {
+        processDeferredDecrements();
+      } else {
+        collect();
+      }
+    }
+  }
+
+  /**
+   * Process the decrements deferred by the last collection, concurrently
+   * with the mutators.  If a collection is requested we stop early and
+   * leave the remaining decrements to it.
+   */
+  @Unpreemptible
+  private void processDeferredDecrements() {
+    if (VM.VERIFY_ASSERTIONS) VM.assertions._assert(!Plan.gcInProgress());
+    ObjectReference current;
+    while (!group.isAborted() && !(current = deferredDecBuffer.pop()).isNull()) {
+      processDecrement(deferredDecBuffer, current);
+    }
+    deferredDecBuffer.flushLocal();
+    if (RCBase.CC_TRIAL_DELETION) cycleDetector.flush();
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -117,7 +158,14 @@ public abstract class RCBaseCollector extends StopTheWorldCollector {
     }
 
     if (phaseId == RCBase.PROCESS_OLDROOTBUFFER) {
-      if (RCBase.CC_BACKUP_TRACE && RCBase.performCycleCollection) return;
+      if (RCBase.CC_BACKUP_TRACE && RCBase.performCycleCollection) {
+        if (RCBase.CC_TRIAL_DELETION) {
+          // The backup trace reclaims any garbage among the possible cycle
+          // roots, and needs the mark bits that record they are buffered
+          cycleDetector.discardRoots();
+        }
+        return;
+      }
       ObjectReference current;
       while ((!(current = oldRootBuffer.pop()).isNull())) {
         decBuffer.push(current);
@@ -198,39 +246,28 @@ public abstract class RCBaseCollector extends StopTheWorldCollector {
         }
         return;
       }
-      while (!(current = decBuffer.pop()).isNull()) {
-        if (RCBase.BUILD_FOR_GENRC) {
-          if (RCHeader.decRC(current) == RCHeader.DEC_KILL) {
-            decBuffer.processChildren(current);
-            if (Space.isInSpace(RCBase.REF_COUNT, current)) {
-              RCBase.rcSpace.free(current);
-            } else if (Space.isInSpace(RCBase.REF_COUNT_LOS, current)) {
-              RCBase.rcloSpace.free(current);
-            } else if (Space.isInSpace(RCBase.IMMORTAL, current)) {
-              VM.scanning.scanObject(zero, current);
-            }
-          }
+      if (RCBase.deferDecrements) {
+        // Back-pressure: work off any backlog beyond the limit before deferring the rest
+        int limit = Options.decrementBacklogLimit.getPages();
+        while (global().decPool.enqueuedPages() > limit && !(current = decBuffer.pop()).isNull()) {
+          processDecrement(decBuffer, current);
+        }
+        decBuffer.flushLocal();
+      } else {
+        while (!(current = decBuffer.pop()).isNull()) {
+          processDecrement(decBuffer, current);
+        }
+      }
+      if (RCBase.CC_TRIAL_DELETION) cycleDetector.flush();
+      return;
+    }
+
+    if (phaseId == RCBase.PROCESS_CYCLES) {
+      if (RCBase.CC_TRIAL_DELETION) {
+        if (RCBase.performTrialDeletion) {
+          cycleDetector.collectCycles(primary);
         } else {
-          if (RCHeader.isNew(current)) {
-            if (Space.isInSpace(RCBase.REF_COUNT, current)) {
-              RCBase.rcSpace.free(current);
-            } else if (Space.isInSpace(RCBase.REF_COUNT_LOS, current)) {
-              RCBase.rcloSpace.free(current);
-            } else if (Space.isInSpace(RCBase.IMMORTAL, current)) {
-              VM.scanning.scanObject(zero, current);
-            }
-          } else {
-            if (RCHeader.decRC(current) == RCHeader.DEC_KILL) {
-              decBuffer.processChildren(current);
-              if (Space.isInSpace(RCBase.REF_COUNT, current)) {
-                RCBase.rcSpace.free(current);
-              } else if (Space.isInSpace(RCBase.REF_COUNT_LOS, current)) {
-                RCBase.rcloSpace.free(current);
-              } else if (Space.isInSpace(RCBase.IMMORTAL, current)) {
-                VM.scanning.scanObject(zero, current);
-              }
-            }
-          }
+          cycleDetector.freeBufferedDeaths(primary);
         }
       }
       return;
@@ -254,6 +291,59 @@ public abstract class RCBaseCollector extends StopTheWorldCollector {
     super.collectionPhase(phaseId, primary);
   }
 
+  /**
+   * Apply a buffered decrement, freeing the object and decrementing its
+   * children if its count drops to zero.
+   *
+   * @param buffer The buffer to which the children's decrements are added
+   * @param current The object to decrement
+   */
+  private void processDecrement(RCDecBuffer buffer, ObjectReference current) {
+    if (RCBase.BUILD_FOR_GENRC) {
+      if (RCHeader.decRC(current) != RCHeader.DEC_KILL) {
+        if (RCBase.CC_TRIAL_DELETION) cycleDetector.possibleCycleRoot(current);
+      } else {
+        buffer.processChildren(current);
+        if (RCBase.CC_TRIAL_DELETION && RCHeader.isBuffered(current)) {
+          // Freed by the cycle detector once it is out of the purple buffer
+          TDCycleDetector.bufferedDeath();
+        } else if (Space.isInSpace(RCBase.REF_COUNT, current)) {
+          RCBase.rcSpace.free(current);
+        } else if (Space.isInSpace(RCBase.REF_COUNT_LOS, current)) {
+          RCBase.rcloSpace.free(current);
+        } else if (Space.isInSpace(RCBase.IMMORTAL, current)) {
+          VM.scanning.scanObject(zero, current);
+        }
+      }
+    } else {
+      if (RCHeader.isNew(current)) {
+        if (Space.isInSpace(RCBase.REF_COUNT, current)) {
+          RCBase.rcSpace.free(current);
+        } else if (Space.isInSpace(RCBase.REF_COUNT_LOS, current)) {
+          RCBase.rcloSpace.free(current);
+        } else if (Space.isInSpace(RCBase.IMMORTAL, current)) {
+          VM.scanning.scanObject(zero, current);
+        }
+      } else {
+        if (RCHeader.decRC(current) != RCHeader.DEC_KILL) {
+          if (RCBase.CC_TRIAL_DELETION) cycleDetector.possibleCycleRoot(current);
+        } else {
+          buffer.processChildren(current);
+          if (RCBase.CC_TRIAL_DELETION && RCHeader.isBuffered(current)) {
+            // Freed by the cycle detector once it is out of the purple buffer
+            TDCycleDetector.bufferedDeath();
+          } else if (Space.isInSpace(RCBase.REF_COUNT, current)) {
+            RCBase.rcSpace.free(current);
+          } else if (Space.isInSpace(RCBase.REF_COUNT_LOS, current)) {
+            RCBase.rcloSpace.free(current);
+          } else if (Space.isInSpace(RCBase.IMMORTAL, current)) {
+            VM.scanning.scanObject(zero, current);
+          }
+        }
+      }
+    }
+  }
+
   /****************************************************************************
    *
    * Miscellaneous
@@ -42,6 +42,10 @@ public class RCBaseConstraints extends StopTheWorldConstraints {
     return MAX_FREELIST_OBJECT_BYTES;
   }
   @Override
+  public boolean needsConcurrentWorkers() {
+    return true;
+  }
+  @Override
   public boolean objectReferenceBulkCopySupported() {
     return true;
   }
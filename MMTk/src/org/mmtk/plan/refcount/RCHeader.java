@@ -128,7 +128,11 @@ public class RCHeader {
    * RC header word
    */
 
-  /** The mark bit used for backup tracing. */
+  /**
+   * The mark bit used for backup tracing. Between traces, the trial deletion
+   * cycle detector uses it to record that an object is in its purple buffer
+   * (see {@link #attemptToBuffer(ObjectReference)}).
+   */
   public static final int MARK_BIT = LOG_BIT + 2;
   public static final Word MARK_BIT_MASK = Word.one().lsh(MARK_BIT);
 
@@ -215,6 +219,40 @@ public class RCHeader {
     return true;
   }
 
+  /**
+   * Between traces, the mark bit records that an object is in the purple
+   * buffer. The cycle detector clears it before the backup trace or trial
+   * deletion marks any object, so no further header bit is needed.
+   *
+   * @param object an object
+   * @return whether the object is in the purple buffer
+   */
+  @Inline
+  public static boolean isBuffered(ObjectReference object) {
+    return isMarked(object);
+  }
+
+  /**
+   * Attempts to atomically record that this object is in the purple buffer.
+   *
+   * @param object the object to buffer
+   * @return {@code true} if the object was not already buffered
+   */
+  @Inline
+  public static boolean attemptToBuffer(ObjectReference object) {
+    return testAndMark(object);
+  }
+
+  /**
+   * Records that this object has been removed from the purple buffer.
+   *
+   * @param object the object
+   */
+  @Inline
+  public static void clearBuffered(ObjectReference object) {
+    clearMarked(object);
+  }
+
   /**
    * @param object an object
    * @return whether the object has been marked as new
@@ -401,6 +439,47 @@ public class RCHeader {
     return rtn;
   }
 
+  /**
+   * Decrement the reference count of an object during trial deletion.
+   * Unlike {@link #decRC(ObjectReference)} the count may reach zero
+   * without the object being considered dead.
+   * <p>
+   * The count of an object is never smaller than the number of references
+   * to it from reference counted objects, so trial deletion, which removes
+   * one count per such reference, never decrements a zero count. This and
+   * {@link #trialIncRC(ObjectReference)} are exact inverses: both leave a
+   * stuck count alone, and neither can make a count stuck.
+   *
+   * @param object The object whose RC is to be decremented.
+   */
+  @Inline
+  public static void trialDecRC(ObjectReference object) {
+    Word oldValue, newValue;
+    do {
+      oldValue = VM.objectModel.prepareAvailableBits(object);
+      if (isStuck(oldValue)) return;
+      if (VM.VERIFY_ASSERTIONS) VM.assertions._assert(oldValue.and(READ_MASK).GE(INCREMENT));
+      newValue = oldValue.minus(INCREMENT);
+    } while (!VM.objectModel.attemptAvailableBits(object, oldValue, newValue));
+  }
+
+  /**
+   * Restore a reference count decremented by {@link #trialDecRC(ObjectReference)}.
+   * As the count was not stuck when it was decremented, restoring it cannot
+   * make it stuck.
+   *
+   * @param object The object whose RC is to be incremented.
+   */
+  @Inline
+  public static void trialIncRC(ObjectReference object) {
+    Word oldValue, newValue;
+    do {
+      oldValue = VM.objectModel.prepareAvailableBits(object);
+      if (isStuck(oldValue)) return;
+      newValue = oldValue.plus(INCREMENT);
+    } while (!VM.objectModel.attemptAvailableBits(object, oldValue, newValue));
+  }
+
   /**
    * @param value a word
    * @return whether the word contains a sticky marking
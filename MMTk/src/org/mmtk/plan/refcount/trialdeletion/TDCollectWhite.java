@@ -0,0 +1,43 @@
+/*
+ *  This file is part of the Jikes RVM project (http://jikesrvm.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  See the COPYRIGHT.txt file distributed with this work for information
+ *  regarding copyright ownership.
+ */
+package org.mmtk.plan.refcount.trialdeletion;
+
+import org.mmtk.plan.TransitiveClosure;
+import org.mmtk.plan.refcount.RCBase;
+import org.mmtk.utility.deque.ObjectReferenceDeque;
+
+import org.vmmagic.pragma.*;
+import org.vmmagic.unboxed.*;
+
+/**
+ * The collect-white step of trial deletion: queues the white children of a
+ * garbage object so that they are reclaimed too.
+ */
+@Uninterruptible
+public final class TDCollectWhite extends TransitiveClosure {
+
+  private final ObjectReferenceDeque workQueue;
+
+  public TDCollectWhite(ObjectReferenceDeque workQueue) {
+    this.workQueue = workQueue;
+  }
+
+  @Override
+  @Inline
+  public void processEdge(ObjectReference source, Address slot) {
+    ObjectReference object = slot.loadObjectReference();
+    if (RCBase.isRCObject(object) && TDCycleDetector.attemptToCollect(object)) {
+      workQueue.push(object);
+    }
+  }
+}
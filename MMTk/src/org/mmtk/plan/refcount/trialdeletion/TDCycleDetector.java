@@ -0,0 +1,322 @@
+/*
+ *  This file is part of the Jikes RVM project (http://jikesrvm.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  See the COPYRIGHT.txt file distributed with this work for information
+ *  regarding copyright ownership.
+ */
+package org.mmtk.plan.refcount.trialdeletion;
+
+import org.mmtk.plan.refcount.RCBase;
+import org.mmtk.plan.refcount.RCHeader;
+import org.mmtk.policy.Space;
+import org.mmtk.utility.CycleDetector;
+import org.mmtk.utility.Log;
+import org.mmtk.utility.deque.ObjectReferenceDeque;
+import org.mmtk.utility.deque.SharedDeque;
+import org.mmtk.utility.options.Options;
+import org.mmtk.vm.VM;
+
+import org.vmmagic.pragma.*;
+import org.vmmagic.unboxed.*;
+
+/**
+ * A synchronous trial deletion cycle detector (Bacon and Rajan, "Concurrent
+ * Cycle Collection in Reference Counted Systems", ECOOP 2001).
+ * <p>
+ * Objects whose reference count is decremented to a non-zero value are
+ * possible roots of garbage cycles, and are recorded in the purple buffer
+ * (objects that cannot reference other objects are filtered out, and an
+ * object is only buffered once, see {@link RCHeader#isBuffered}). When
+ * triggered, the primary collector thread
+ * <ol>
+ * <li>removes the possible roots from the buffer, clearing their mark
+ * bits;</li>
+ * <li>colors the subgraph reachable from each purple root gray, removing
+ * the counts due to references internal to the subgraph (mark gray);</li>
+ * <li>colors black, restoring their counts, the gray objects that are still
+ * referenced from outside the subgraph and everything they reach, and colors
+ * the remaining gray objects white (scan);</li>
+ * <li>reclaims the white objects (collect white).</li>
+ * </ol>
+ * Only the subgraphs reachable from the purple roots are visited, rather than
+ * the whole heap as with the backup trace.
+ * <p>
+ * An object whose count drops to zero while it is in the purple buffer is
+ * freed in the cycles phase of the collection in which it dies, whether or
+ * not trial deletion runs in that collection.
+ * <p>
+ * Between collections, the mark bit of an object records that it is in the
+ * purple buffer.  During trial deletion gray and white are encoded with the
+ * mark bit and the reference count: gray objects are marked, white objects
+ * are unmarked with a count of zero.  All objects are unmarked again once the
+ * cycle detector has finished.  The buffer is discarded, and the marks
+ * cleared, before the backup trace marks any object.  Objects with a stuck count
+ * are never found to be garbage; they are left to the backup trace.
+ */
+@Uninterruptible
+public final class TDCycleDetector extends CycleDetector {
+
+  /** Has an object died while in the purple buffer since it was last filtered? */
+  private static boolean bufferedDeaths;
+
+  /** Possible cycle roots */
+  private final ObjectReferenceDeque purpleBuffer;
+  /** Possible cycle roots that have been marked gray */
+  private final ObjectReferenceDeque rootBuffer;
+  /** Objects being marked gray, scanned or collected */
+  private final ObjectReferenceDeque workQueue;
+  /** Objects being colored black */
+  private final ObjectReferenceDeque blackQueue;
+
+  private final TDMarkGray markGray;
+  private final TDScan scan;
+  private final TDScanBlack scanBlack;
+  private final TDCollectWhite collectWhite;
+
+  /**
+   * Constructor
+   *
+   * @param purplePool the pool of possible cycle roots
+   * @param rootPool the pool for possible cycle roots while they are processed
+   * @param workPool the pool for objects being marked, scanned or collected
+   * @param blackPool the pool for objects being colored black
+   */
+  public TDCycleDetector(SharedDeque purplePool, SharedDeque rootPool, SharedDeque workPool, SharedDeque blackPool) {
+    purpleBuffer = new ObjectReferenceDeque("purple", purplePool);
+    rootBuffer = new ObjectReferenceDeque("cycle-root", rootPool);
+    workQueue = new ObjectReferenceDeque("cycle-work", workPool);
+    blackQueue = new ObjectReferenceDeque("cycle-black", blackPool);
+    markGray = new TDMarkGray(workQueue);
+    scan = new TDScan(workQueue);
+    scanBlack = new TDScanBlack(blackQueue);
+    collectWhite = new TDCollectWhite(workQueue);
+  }
+
+  @Override
+  @Inline
+  public void possibleCycleRoot(ObjectReference object) {
+    if (!RCBase.isRCObject(object) || VM.objectModel.isPrimitiveArray(object)) return;
+    if (RCHeader.attemptToBuffer(object)) {
+      purpleBuffer.push(object);
+    }
+  }
+
+  /**
+   * Make the possible cycle roots recorded by this thread visible to the
+   * thread that will process them.
+   */
+  public void flush() {
+    purpleBuffer.flushLocal();
+  }
+
+  /**
+   * Record that the count of an object in the purple buffer has dropped to
+   * zero. The object cannot be freed while the buffer refers to it; it is
+   * freed by {@link #freeBufferedDeaths(boolean)} in the next collection
+   * phase that filters the buffer.
+   */
+  public static void bufferedDeath() {
+    bufferedDeaths = true;
+  }
+
+  /**
+   * @return {@code true} if an object has died while in the purple buffer
+   *  since the buffer was last filtered
+   */
+  public static boolean hasBufferedDeaths() {
+    return bufferedDeaths;
+  }
+
+  /**
+   * Free the objects in the purple buffer whose count has dropped to zero,
+   * so that they do not stay allocated until the next trial deletion.
+   *
+   * @param primary Is this the primary collector thread?
+   */
+  public void freeBufferedDeaths(boolean primary) {
+    if (!primary || !bufferedDeaths) return;
+    bufferedDeaths = false;
+    ObjectReference object;
+    while (!(object = purpleBuffer.pop()).isNull()) {
+      if (RCHeader.getRC(object) == 0) {
+        RCHeader.clearBuffered(object);
+        free(object);
+      } else {
+        rootBuffer.push(object);
+      }
+    }
+    while (!(object = rootBuffer.pop()).isNull()) {
+      purpleBuffer.push(object);
+    }
+    purpleBuffer.flushLocal();
+  }
+
+  /**
+   * Drop the possible cycle roots, because a backup trace is reclaiming
+   * cycles in this collection.
+   */
+  public void discardRoots() {
+    bufferedDeaths = false;
+    ObjectReference object;
+    while (!(object = purpleBuffer.pop()).isNull()) {
+      RCHeader.clearBuffered(object);
+    }
+  }
+
+  /**
+   * @return {@code true} if there are no possible cycle roots
+   */
+  public boolean isEmpty() {
+    return purpleBuffer.isEmpty();
+  }
+
+  @Override
+  public boolean collectCycles(boolean primary) {
+    if (!primary) return false;
+    bufferedDeaths = false;
+    unbufferRoots();
+    markRoots();
+    scanRoots();
+    int freed = collectRoots();
+    if (Options.verbose.getValue() >= 2) {
+      Log.write("[TD: ", freed);
+      Log.write(" freed] ");
+    }
+    return freed > 0;
+  }
+
+  /**
+   * Clear the mark bits that record that the possible roots are buffered,
+   * so that trial deletion can use them. The roots stay in the purple buffer.
+   */
+  private void unbufferRoots() {
+    ObjectReference root;
+    while (!(root = purpleBuffer.pop()).isNull()) {
+      RCHeader.clearBuffered(root);
+      rootBuffer.push(root);
+    }
+    while (!(root = rootBuffer.pop()).isNull()) {
+      purpleBuffer.push(root);
+    }
+  }
+
+  /**
+   * Mark gray the subgraphs reachable from the purple roots. Roots that have
+   * already been marked from another root are removed, as are roots whose
+   * count has dropped to zero, which are reclaimed.
+   */
+  private void markRoots() {
+    ObjectReference root;
+    while (!(root = purpleBuffer.pop()).isNull()) {
+      if (RCHeader.isMarked(root)) continue;
+      if (RCHeader.getRC(root) == 0) {
+        // Died while buffered; its children have already been decremented
+        free(root);
+      } else {
+        RCHeader.testAndMark(root);
+        workQueue.push(root);
+        ObjectReference object;
+        while (!(object = workQueue.pop()).isNull()) {
+          VM.scanning.scanObject(markGray, object);
+        }
+        rootBuffer.push(root);
+      }
+    }
+  }
+
+  /**
+   * Color black or white the subgraphs reachable from the roots. The roots
+   * are returned to the purple buffer for {@link #collectRoots()}.
+   */
+  private void scanRoots() {
+    ObjectReference root;
+    while (!(root = rootBuffer.pop()).isNull()) {
+      workQueue.push(root);
+      ObjectReference object;
+      while (!(object = workQueue.pop()).isNull()) {
+        if (!RCHeader.isMarked(object)) continue;
+        if (RCHeader.getRC(object) > 0) {
+          scanBlack(object);
+        } else {
+          RCHeader.clearMarked(object);
+          VM.scanning.scanObject(scan, object);
+        }
+      }
+      purpleBuffer.push(root);
+    }
+  }
+
+  /**
+   * Color black a gray object that is still referenced from outside its
+   * subgraph, and everything reachable from it that is not black.
+   *
+   * @param object the object
+   */
+  private void scanBlack(ObjectReference object) {
+    RCHeader.clearMarked(object);
+    blackQueue.push(object);
+    while (!(object = blackQueue.pop()).isNull()) {
+      VM.scanning.scanObject(scanBlack, object);
+    }
+  }
+
+  /**
+   * Reclaim the white objects reachable from the roots and empty the
+   * purple buffer.
+   *
+   * @return the number of objects reclaimed
+   */
+  private int collectRoots() {
+    ObjectReference object;
+    while (!(object = purpleBuffer.pop()).isNull()) {
+      if (attemptToCollect(object)) {
+        workQueue.push(object);
+        while (!(object = workQueue.pop()).isNull()) {
+          VM.scanning.scanObject(collectWhite, object);
+          rootBuffer.push(object);
+        }
+      }
+    }
+    /* Only free once all the roots have been visited */
+    int freed = 0;
+    while (!(object = rootBuffer.pop()).isNull()) {
+      RCHeader.clearMarked(object);
+      free(object);
+      freed++;
+    }
+    return freed;
+  }
+
+  /**
+   * Attempt to claim a white object for reclamation. A white root may be
+   * claimed from another root before it is visited itself; it is then
+   * found marked and skipped, as nothing is freed until all the roots have
+   * been visited.
+   *
+   * @param object the object
+   * @return {@code true} if the object is white and has been claimed
+   */
+  @Inline
+  static boolean attemptToCollect(ObjectReference object) {
+    return !RCHeader.isMarked(object) && RCHeader.getRC(object) == 0 && RCHeader.testAndMark(object);
+  }
+
+  /**
+   * Return a garbage object to its space.
+   *
+   * @param object the object
+   */
+  private static void free(ObjectReference object) {
+    if (Space.isInSpace(RCBase.REF_COUNT, object)) {
+      RCBase.rcSpace.free(object);
+    } else if (Space.isInSpace(RCBase.REF_COUNT_LOS, object)) {
+      RCBase.rcloSpace.free(object);
+    }
+  }
+}
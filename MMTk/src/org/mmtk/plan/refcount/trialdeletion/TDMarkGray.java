@@ -0,0 +1,47 @@
+/*
+ *  This file is part of the Jikes RVM project (http://jikesrvm.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  See the COPYRIGHT.txt file distributed with this work for information
+ *  regarding copyright ownership.
+ */
+package org.mmtk.plan.refcount.trialdeletion;
+
+import org.mmtk.plan.TransitiveClosure;
+import org.mmtk.plan.refcount.RCBase;
+import org.mmtk.plan.refcount.RCHeader;
+import org.mmtk.utility.deque.ObjectReferenceDeque;
+
+import org.vmmagic.pragma.*;
+import org.vmmagic.unboxed.*;
+
+/**
+ * The mark-gray step of trial deletion: removes the counts contributed by
+ * the references from a gray object, and colors its children gray.
+ */
+@Uninterruptible
+public final class TDMarkGray extends TransitiveClosure {
+
+  private final ObjectReferenceDeque workQueue;
+
+  public TDMarkGray(ObjectReferenceDeque workQueue) {
+    this.workQueue = workQueue;
+  }
+
+  @Override
+  @Inline
+  public void processEdge(ObjectReference source, Address slot) {
+    ObjectReference object = slot.loadObjectReference();
+    if (RCBase.isRCObject(object)) {
+      RCHeader.trialDecRC(object);
+      if (RCHeader.testAndMark(object)) {
+        workQueue.push(object);
+      }
+    }
+  }
+}
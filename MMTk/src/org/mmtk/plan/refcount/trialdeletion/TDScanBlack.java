@@ -0,0 +1,51 @@
+/*
+ *  This file is part of the Jikes RVM project (http://jikesrvm.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  See the COPYRIGHT.txt file distributed with this work for information
+ *  regarding copyright ownership.
+ */
+package org.mmtk.plan.refcount.trialdeletion;
+
+import org.mmtk.plan.TransitiveClosure;
+import org.mmtk.plan.refcount.RCBase;
+import org.mmtk.plan.refcount.RCHeader;
+import org.mmtk.utility.deque.ObjectReferenceDeque;
+
+import org.vmmagic.pragma.*;
+import org.vmmagic.unboxed.*;
+
+/**
+ * The scan-black step of trial deletion: restores the counts contributed by
+ * the references from an object found to be live, and colors its gray and
+ * white children black.
+ */
+@Uninterruptible
+public final class TDScanBlack extends TransitiveClosure {
+
+  private final ObjectReferenceDeque blackQueue;
+
+  public TDScanBlack(ObjectReferenceDeque blackQueue) {
+    this.blackQueue = blackQueue;
+  }
+
+  @Override
+  @Inline
+  public void processEdge(ObjectReference source, Address slot) {
+    ObjectReference object = slot.loadObjectReference();
+    if (RCBase.isRCObject(object)) {
+      boolean marked = RCHeader.isMarked(object);
+      boolean black = !marked && RCHeader.getRC(object) > 0;
+      RCHeader.trialIncRC(object);
+      if (!black) {
+        if (marked) RCHeader.clearMarked(object);
+        blackQueue.push(object);
+      }
+    }
+  }
+}
@@ -12,7 +12,6 @@
  */
 package org.mmtk.policy;
 
-import org.mmtk.plan.markcompact.MC;
 import org.mmtk.utility.Log;
 import org.mmtk.utility.alloc.Allocator;
 import org.mmtk.utility.alloc.BumpPointer;
@@ -373,14 +372,14 @@ public final class MarkCompactCollector {
     }
 
     /**
-     * Copy an object to an address within this cursor's region.
+     * Copy an object to an address within this cursor's region, filling
+     * the gap between the cursor and the start of the copy.
      * @param from The source object
      * @param to The target object
      */
     @Inline
     void copy(ObjectReference from, ObjectReference to) {
       if (VM.VERIFY_ASSERTIONS) {
-        VM.assertions._assert(MarkCompactSpace.getForwardingPointer(from).toAddress().EQ(to.toAddress()));
         VM.assertions._assert(cursor.GT(region) && cursor.LE(limit));
       }
       Address savedCursor = Address.zero();
@@ -396,7 +395,7 @@ public final class MarkCompactCollector {
         }
         VM.assertions._assert(cursor.GT(region) && cursor.LE(limit));
       }
-      MarkCompactSpace.setForwardingPointer(to, ObjectReference.nullReference());
+      MarkCompactSpace.clearScanned(to);
       if (VM.VERIFY_ASSERTIONS)
         VM.assertions._assert(VM.objectModel.getObjectEndAddress(to).LE(limit));
     }
@@ -432,6 +431,11 @@ public final class MarkCompactCollector {
    * lockstep until the first dead object is encountered.  After that, the to cursor
    * trails the from cursor.<p>
    *
+   * Rather than storing a forwarding pointer in each object, we record the
+   * position of the 'to' cursor at the first live object of each summary block
+   * (see {@link MarkCompactSpace}), from which the forwarding trace recomputes
+   * forwarding addresses on demand.<p>
+   *
    * The outer loop advances the 'from' pointer
    */
   public void calculateForwardingPointers() {
@@ -445,60 +449,88 @@ public final class MarkCompactCollector {
     fromCursor.init(regions);
     toCursor.init(regions);
 
-    if (VM.VERIFY_ASSERTIONS) VM.assertions._assert(true);
-
     /* Loop through active regions or until the last region */
     while (fromCursor.isValid()) {
       if (VERBOSE) {
         fromCursor.print();
         toCursor.print();
       }
+      MarkCompactSpace.setRegionContaining(fromCursor.getRegion());
+      Address lastSummaryBlock = Address.zero();
 
       /* Loop through the objects in the current 'from' region */
       while (fromCursor.hasMoreObjects()) {
         ObjectReference current = fromCursor.advanceToObject();
         fromCursor.advanceToObjectEnd(current);
 
-        if (MarkCompactSpace.toBeCompacted(current)) {
-          if (VM.VERIFY_ASSERTIONS) VM.assertions._assert(MarkCompactSpace.getForwardingPointer(current).isNull());
-
-          // Fake - allocate it.
-          int size = VM.objectModel.getSizeWhenCopied(current);
-          int align = VM.objectModel.getAlignWhenCopied(current);
-          int offset = VM.objectModel.getAlignOffsetWhenCopied(current);
-          // Move to the (aligned) start of the next object
-          toCursor.incTo(Allocator.alignAllocationNoFill(toCursor.get(), align, offset));
-
-          /*
-           * If we're allocating into separate regions, and we've allocated beyond the end of the
-           * current region, advance to the next one.  We always allocate into regions we have
-           * scanned in this collector.
-           */
-          if (!toCursor.sameRegion(fromCursor) && !toCursor.isAvailable(size)) {
-            // The 'to' pointer always trails the 'from' pointer, guaranteeing that
-            // there's a next region to advance to.
-            toCursor.advanceToNextRegion();
-            toCursor.incTo(Allocator.alignAllocationNoFill(toCursor.get(), align, offset));
-          }
-
-          ObjectReference target = VM.objectModel.getReferenceWhenCopiedTo(current, toCursor.get());
-          if (toCursor.sameRegion(fromCursor) && target.toAddress().GE(current.toAddress())) {
-            // Don't move the object.
-            MarkCompactSpace.setForwardingPointer(current, current);
-            toCursor.incTo(VM.objectModel.getObjectEndAddress(current));
-          } else {
-            MarkCompactSpace.setForwardingPointer(current, target);
-            toCursor.inc(size);
+        if (MarkCompactSpace.isMarked(current)) {
+          Address block = MarkCompactSpace.getSummaryBlock(VM.objectModel.objectStartRef(current));
+          if (block.NE(lastSummaryBlock)) {
+            MarkCompactSpace.setSummary(block, toCursor.get());
+            lastSummaryBlock = block;
           }
+          place(current, false);
         }
       }
       fromCursor.advanceToNextForwardableRegion(space);
     }
   }
 
+  /**
+   * Work out where a live object goes, advancing the 'to' cursor past it.
+   * {@link MarkCompactSpace#getForwardingPointer} replays exactly this
+   * computation, so the two must be kept in step.
+   *
+   * @param current The object being placed, in the region of the 'from' cursor
+   * @param compact {@code true} if the object is to be copied to its new
+   *   location, {@code false} if its location is only being calculated
+   * @return The new location of the object, which is {@code current} itself
+   *   if it does not move
+   */
+  @Inline
+  private ObjectReference place(ObjectReference current, boolean compact) {
+    int size = VM.objectModel.getSizeWhenCopied(current);
+    int align = VM.objectModel.getAlignWhenCopied(current);
+    int offset = VM.objectModel.getAlignOffsetWhenCopied(current);
+    // The (aligned) start of the next object
+    Address start = Allocator.alignAllocationNoFill(toCursor.get(), align, offset);
+
+    /*
+     * If we're allocating into separate regions, and we've allocated beyond the end of the
+     * current region, advance to the next one.  We always allocate into regions we have
+     * scanned in this collector.
+     */
+    if (!toCursor.sameRegion(fromCursor) && start.plus(size).GT(toCursor.getLimit())) {
+      // The 'to' pointer always trails the 'from' pointer, guaranteeing that
+      // there's a next region to advance to.
+      if (compact) {
+        toCursor.finishAndAdvanceToNextRegion();
+      } else {
+        toCursor.advanceToNextRegion();
+      }
+      start = Allocator.alignAllocationNoFill(toCursor.get(), align, offset);
+    }
+
+    ObjectReference target = VM.objectModel.getReferenceWhenCopiedTo(current, start);
+    boolean moves = !toCursor.sameRegion(fromCursor) || target.toAddress().LT(current.toAddress());
+    if (!moves) {
+      // Don't move the object.
+      target = current;
+    }
+    if (compact) {
+      toCursor.copy(current, target);
+    } else if (moves) {
+      toCursor.incTo(start.plus(size));
+    } else {
+      toCursor.incTo(VM.objectModel.getObjectEndAddress(current));
+    }
+    return target;
+  }
 
   /**
-   * Perform the compacting phase of the collection.
+   * Perform the compacting phase of the collection.  The live objects are
+   * visited in the same order as in {@link #calculateForwardingPointers}, so
+   * their new locations are simply recalculated as they are copied.
    */
   public void compact() {
     if (regions.isZero()) return;
@@ -518,26 +550,9 @@ public final class MarkCompactCollector {
         ObjectReference current = fromCursor.advanceToObject();
         fromCursor.advanceToObjectEnd(current);
 
-        ObjectReference copyTo = MarkCompactSpace.getForwardingPointer(current);
-        if (VM.VERIFY_ASSERTIONS) VM.assertions._assert(!copyTo.toAddress().EQ(Address.fromIntZeroExtend(VM.ALIGNMENT_VALUE)));
-
-        if (!copyTo.isNull() && Space.isInSpace(MC.MARK_COMPACT, copyTo)) {
-          if (VM.VERIFY_ASSERTIONS) {
-            if (MarkCompactSpace.isMarked(current)) {
-              Log.write("Object ", current);
-              Log.writeln(" is marked during the compact phase");
-              VM.objectModel.dumpObject(current);
-            }
-            VM.assertions._assert(!MarkCompactSpace.isMarked(current));
-          }
-          if (!toCursor.isInRegion(copyTo)) {
-            // Update metadata and move on
-            toCursor.finishAndAdvanceToNextRegion();
-          }
-          if (VM.VERIFY_ASSERTIONS) VM.assertions._assert(toCursor.isInRegion(copyTo));
-          toCursor.copy(current, copyTo);
+        if (MarkCompactSpace.isMarked(current)) {
+          ObjectReference copyTo = place(current, true);
           if (VM.VERIFY_ASSERTIONS) VM.assertions._assert(toCursor.isInRegion(copyTo));
-          MarkCompactSpace.setForwardingPointer(copyTo, ObjectReference.nullReference());
         }
       }
       fromCursor.advanceToNextRegion();
@@ -27,6 +27,9 @@ import org.vmmagic.unboxed.Extent;
 @Uninterruptible
 public final class MarkCompactLocal extends BumpPointer {
 
+  /** The (log of the) granularity at which regions are allocated and aligned */
+  static final int LOG_BYTES_IN_REGION_BLOCK = LOG_BLOCK_SIZE;
+
   /**
    * Constructor
    *
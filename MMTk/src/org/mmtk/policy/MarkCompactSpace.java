@@ -12,10 +12,16 @@
  */
 package org.mmtk.policy;
 
+import static org.mmtk.utility.Constants.*;
+
 import org.mmtk.plan.TraceLocal;
 import org.mmtk.plan.TransitiveClosure;
+import org.mmtk.utility.alloc.Allocator;
 import org.mmtk.utility.alloc.BumpPointer;
+import org.mmtk.utility.alloc.EmbeddedMetaData;
 import org.mmtk.utility.heap.*;
+import org.mmtk.utility.heap.layout.HeapLayout;
+import org.mmtk.utility.Conversions;
 import org.mmtk.utility.Log;
 
 import org.mmtk.vm.Lock;
@@ -26,7 +32,24 @@ import org.vmmagic.pragma.*;
 
 /**
  * This class implements functionality for a simple sliding mark-compact
- * space.
+ * space.<p>
+ *
+ * The space does not use a header word for forwarding.  Instead, in the
+ * style of the Compressor, all of the per-collection state is kept in side
+ * metadata embedded at the start of each {@link EmbeddedMetaData} region:
+ * <ul>
+ *  <li>a mark bitmap, with one bit per minimum alignment unit, set at the
+ *   start address of each object reached by the mark trace;</li>
+ *  <li>a summary table, with one entry per {@code 2^LOG_BYTES_IN_SUMMARY_BLOCK}
+ *   bytes, holding the position of the compaction cursor immediately before
+ *   the first live object starting in that block was placed;</li>
+ *  <li>a region table, with one entry per bump pointer block, mapping the
+ *   block to the start of the region that contains it.</li>
+ * </ul>
+ * The forwarding address of an object is computed on demand, by replaying
+ * the placement of the (at most a summary block's worth of) live objects
+ * that precede it in its summary block.  The one available header bit is
+ * used to record that an object has been scanned by the forwarding trace.
  */
 @Uninterruptible public final class MarkCompactSpace extends Space {
 
@@ -40,10 +63,39 @@ import org.vmmagic.pragma.*;
    */
   public static final int LOCAL_GC_BITS_REQUIRED = 1;
   public static final int GLOBAL_GC_BITS_REQUIRED = 0;
-  public static final int GC_HEADER_WORDS_REQUIRED = 1;
+  public static final int GC_HEADER_WORDS_REQUIRED = 0;
+
+  /** Set in the header of an object once it has been scanned by the forwarding trace */
+  private static final Word GC_SCANNED_BIT_MASK = Word.one();
+
+  /* Mark bitmap: one bit per minimum alignment unit */
+  private static final int LOG_MARK_COVERAGE = LOG_MIN_ALIGNMENT + LOG_BITS_IN_BYTE;
+  private static final int MARK_BYTES_PER_REGION = 1 << (EmbeddedMetaData.LOG_BYTES_IN_REGION - LOG_MARK_COVERAGE);
+  private static final int LOG_MARK_WORD_STRIDE = LOG_MARK_COVERAGE + LOG_BYTES_IN_WORD;
+  private static final Word MARK_WORD_STRIDE_MASK = Word.one().lsh(LOG_MARK_WORD_STRIDE).minus(Word.one());
+  private static final int WORD_SHIFT_MASK = BITS_IN_WORD - 1;
 
-  private static final Word GC_MARK_BIT_MASK = Word.one();
-  private static final Offset FORWARDING_POINTER_OFFSET = VM.objectModel.GC_HEADER_OFFSET();
+  /* Summary table: one address per summary block */
+  public static final int LOG_BYTES_IN_SUMMARY_BLOCK = 9;
+  private static final Word SUMMARY_BLOCK_MASK = Word.one().lsh(LOG_BYTES_IN_SUMMARY_BLOCK).minus(Word.one());
+  private static final int SUMMARY_BYTES_PER_REGION = 1 << (EmbeddedMetaData.LOG_BYTES_IN_REGION - LOG_BYTES_IN_SUMMARY_BLOCK + LOG_BYTES_IN_ADDRESS);
+  private static final Extent SUMMARY_OFFSET = Extent.fromIntSignExtend(MARK_BYTES_PER_REGION);
+
+  /* Region table: one address per bump pointer block */
+  private static final int LOG_BYTES_IN_BLOCK = MarkCompactLocal.LOG_BYTES_IN_REGION_BLOCK;
+  private static final int REGION_TABLE_BYTES_PER_REGION = 1 << (EmbeddedMetaData.LOG_BYTES_IN_REGION - LOG_BYTES_IN_BLOCK + LOG_BYTES_IN_ADDRESS);
+  private static final Extent REGION_TABLE_OFFSET = SUMMARY_OFFSET.plus(SUMMARY_BYTES_PER_REGION);
+
+  /**
+   * Pages of metadata at the start of each embedded metadata region.  Rounded up
+   * to a whole number of bump pointer blocks so that regions remain block aligned.
+   */
+  private static final int META_DATA_PAGES_PER_REGION;
+  static {
+    int pages = Conversions.bytesToPages(Extent.fromIntSignExtend(MARK_BYTES_PER_REGION + SUMMARY_BYTES_PER_REGION + REGION_TABLE_BYTES_PER_REGION));
+    int blockPages = 1 << (LOG_BYTES_IN_BLOCK - LOG_BYTES_IN_PAGE);
+    META_DATA_PAGES_PER_REGION = (pages + blockPages - 1) & ~(blockPages - 1);
+  }
 
   private static final Lock lock = VM.newLock("mcSpace");
 
@@ -74,16 +126,38 @@ import org.vmmagic.pragma.*;
   public MarkCompactSpace(String name, VMRequest vmRequest) {
     super(name, true, false, true, vmRequest);
     if (vmRequest.isDiscontiguous()) {
-      pr = new FreeListPageResource(this, 0);
+      pr = new FreeListPageResource(this, META_DATA_PAGES_PER_REGION);
     } else {
-      pr = new FreeListPageResource(this, start, extent, 0);
+      pr = new FreeListPageResource(this, start, extent, META_DATA_PAGES_PER_REGION);
     }
   }
 
   /**
-   * Prepare for a collection
+   * Prepare for a collection: clear the mark bitmap.  Called before
+   * the mark trace, but not before the forwarding trace, which relies
+   * on the marks.
    */
   public void prepare() {
+    if (contiguous) {
+      clearMarks(start, ((FreeListPageResource)pr).getHighWater());
+    } else {
+      for (Address region = headDiscontiguousRegion; !region.isZero(); region = HeapLayout.vmMap.getNextContiguousRegion(region)) {
+        clearMarks(region, region.plus(HeapLayout.vmMap.getContiguousRegionSize(region)));
+      }
+    }
+  }
+
+  /**
+   * Clear the mark bitmap of each metadata region in a range.
+   *
+   * @param start The start of the range, aligned to a metadata region
+   * @param end The end of the range
+   */
+  private void clearMarks(Address start, Address end) {
+    Extent bytes = Extent.fromIntSignExtend(MARK_BYTES_PER_REGION);
+    for (Address cursor = start; cursor.LT(end); cursor = cursor.plus(EmbeddedMetaData.BYTES_IN_REGION)) {
+      VM.memory.zero(false, EmbeddedMetaData.getMetaDataBase(cursor), bytes);
+    }
   }
 
   /**
@@ -124,47 +198,36 @@ import org.vmmagic.pragma.*;
   }
 
   /**
-   * Trace an object under a copying collection policy.
-   * If the object is already copied, the copy is returned.
-   * Otherwise, a copy is created and returned.
-   * In either case, the object will be marked on return.
+   * Trace an object during the mark phase.  If the object is not
+   * already marked, mark it in the bitmap and enqueue it for scanning.
    *
    * @param trace The trace being conducted.
-   * @param object The object to be forwarded.
-   * @return The forwarded object.
+   * @param object The object to be marked.
+   * @return The object (which does not move during this trace).
    */
   @Inline
   public ObjectReference traceMarkObject(TraceLocal trace, ObjectReference object) {
     if (MarkCompactCollector.VERY_VERBOSE) {
-      Log.write("marking ", object);
+      Log.writeln("marking ", object);
     }
     if (testAndMark(object)) {
       trace.processNode(object);
-    } else if (!getForwardingPointer(object).isNull()) {
-      if (MarkCompactCollector.VERY_VERBOSE) {
-        Log.writeln(" -> ", getForwardingPointer(object));
-      }
-      return getForwardingPointer(object);
-    }
-    if (MarkCompactCollector.VERY_VERBOSE) {
-      Log.writeln();
     }
     return object;
   }
 
   /**
-   * Trace an object under a copying collection policy.
-   * If the object is already copied, the copy is returned.
-   * Otherwise, a copy is created and returned.
-   * In either case, the object will be marked on return.
+   * Trace an object during the forwarding phase.  If the object has
+   * not yet been scanned by this trace, enqueue it for scanning.
    *
    * @param trace The trace being conducted.
    * @param object The object to be forwarded.
-   * @return The forwarded object.
+   * @return The address the object will have after compaction.
    */
   @Inline
   public ObjectReference traceForwardObject(TraceLocal trace, ObjectReference object) {
-    if (testAndClearMark(object)) {
+    if (VM.VERIFY_ASSERTIONS) VM.assertions._assert(isMarked(object));
+    if (testAndSetScanned(object)) {
       trace.processNode(object);
     }
     ObjectReference newObject = getForwardingPointer(object);
@@ -173,7 +236,7 @@ import org.vmmagic.pragma.*;
       Log.writeln(" -> ", newObject);
     }
     if (VM.VERIFY_ASSERTIONS) VM.assertions._assert(!newObject.isNull());
-    return getForwardingPointer(object);
+    return newObject;
   }
 
   @Override
@@ -204,43 +267,64 @@ import org.vmmagic.pragma.*;
   }
 
   /**
-   * Non-atomic read of forwarding pointer
+   * Initialise the header of the object.
    *
-   * @param object The object whose forwarding pointer is to be read
-   * @return The forwarding pointer stored in <code>object</code>'s
-   * header.
+   * @param object The object to initialise
    */
   @Inline
-  public static ObjectReference getForwardingPointer(ObjectReference object) {
-    return object.toAddress().loadObjectReference(FORWARDING_POINTER_OFFSET);
+  public void initializeHeader(ObjectReference object) {
+    // nothing to do
   }
 
   /**
-   * Initialise the header of the object.
+   * Atomically set the scanned bit in the header of an object.
    *
-   * @param object The object to initialise
+   * @param object The object to be scanned
+   * @return {@code true} if the bit was set by this call
    */
   @Inline
-  public void initializeHeader(ObjectReference object) {
-    // nothing to do
+  private static boolean testAndSetScanned(ObjectReference object) {
+    Word oldValue;
+    do {
+      oldValue = VM.objectModel.prepareAvailableBits(object);
+      if (!oldValue.and(GC_SCANNED_BIT_MASK).isZero()) return false;
+    } while (!VM.objectModel.attemptAvailableBits(object, oldValue,
+                                                oldValue.or(GC_SCANNED_BIT_MASK)));
+    return true;
+  }
+
+  /**
+   * Clear the scanned bit in the header of a (compacted) object.
+   *
+   * @param object The object in question
+   */
+  @Inline
+  public static void clearScanned(ObjectReference object) {
+    Word oldValue = VM.objectModel.readAvailableBitsWord(object);
+    VM.objectModel.writeAvailableBitsWord(object, oldValue.and(GC_SCANNED_BIT_MASK.not()));
   }
 
+  /****************************************************************************
+   *
+   * Mark bitmap
+   */
+
   /**
-   * Used to mark boot image objects during a parallel scan of objects
-   * during GC.
+   * Atomically set the mark bit of an object.
    *
    * @param object The object to be marked
    * @return {@code true} if marking was done.
    */
   @Inline
   public static boolean testAndMark(ObjectReference object) {
+    Address start = VM.objectModel.objectStartRef(object);
+    Address markWord = getMarkWordAddress(start);
+    Word mask = getMarkMask(start);
     Word oldValue;
     do {
-      oldValue = VM.objectModel.prepareAvailableBits(object);
-      Word markBit = oldValue.and(GC_MARK_BIT_MASK);
-      if (!markBit.isZero()) return false;
-    } while (!VM.objectModel.attemptAvailableBits(object, oldValue,
-                                                oldValue.or(GC_MARK_BIT_MASK)));
+      oldValue = markWord.prepareWord();
+      if (!oldValue.and(mask).isZero()) return false;
+    } while (!markWord.attempt(oldValue, oldValue.or(mask)));
     return true;
   }
 
@@ -250,69 +334,152 @@ import org.vmmagic.pragma.*;
    */
   @Inline
   public static boolean isMarked(ObjectReference object) {
-    Word oldValue = VM.objectModel.readAvailableBitsWord(object);
-    Word markBit = oldValue.and(GC_MARK_BIT_MASK);
-    return (!markBit.isZero());
+    Address start = VM.objectModel.objectStartRef(object);
+    return !getMarkWordAddress(start).loadWord().and(getMarkMask(start)).isZero();
   }
 
   /**
-   * Used to mark boot image objects during a parallel scan of objects
-   * during GC Returns true if marking was done.
+   * Find the first object start at or after {@code from}, and before
+   * {@code limit}, whose mark bit is set.  Whole words of clear bits
+   * are skipped at once.
    *
-   * @param object The object to be marked
-   * @return {@code true} if marking was done, {@code false} otherwise
+   * @param from The address at which to start searching
+   * @param limit The address at which to stop searching
+   * @return The start address of the first marked object, or {@code limit}
+   *   if there is none.
    */
   @Inline
-  private static boolean testAndClearMark(ObjectReference object) {
-    Word oldValue;
-    do {
-      oldValue = VM.objectModel.prepareAvailableBits(object);
-      Word markBit = oldValue.and(GC_MARK_BIT_MASK);
-      if (markBit.isZero()) return false;
-    } while (!VM.objectModel.attemptAvailableBits(object, oldValue,
-                                                oldValue.and(GC_MARK_BIT_MASK.not())));
-    return true;
+  static Address nextMarked(Address from, Address limit) {
+    Address cursor = from;
+    while (cursor.LT(limit)) {
+      Word bits = getMarkWordAddress(cursor).loadWord().rshl(getMarkShift(cursor));
+      if (bits.isZero()) {
+        cursor = cursor.toWord().and(MARK_WORD_STRIDE_MASK.not()).toAddress().plus(1 << LOG_MARK_WORD_STRIDE);
+      } else if (bits.and(Word.one()).isZero()) {
+        cursor = cursor.plus(MIN_ALIGNMENT);
+      } else {
+        return cursor;
+      }
+    }
+    return limit;
   }
 
+  @Inline
+  private static int getMarkShift(Address address) {
+    return address.toWord().rshl(LOG_MIN_ALIGNMENT).and(Word.fromIntZeroExtend(WORD_SHIFT_MASK)).toInt();
+  }
 
   @Inline
-  public static boolean toBeCompacted(ObjectReference object) {
-    Word oldValue = VM.objectModel.readAvailableBitsWord(object);
-    Word markBit = oldValue.and(GC_MARK_BIT_MASK);
-    return !markBit.isZero() && getForwardingPointer(object).isNull();
+  private static Word getMarkMask(Address address) {
+    return Word.one().lsh(getMarkShift(address));
   }
 
   @Inline
-  public static void clearMark(ObjectReference object) {
-    Word oldValue = VM.objectModel.readAvailableBitsWord(object);
-    VM.objectModel.writeAvailableBitsWord(object, oldValue.and(GC_MARK_BIT_MASK.not()));
+  private static Address getMarkWordAddress(Address address) {
+    return EmbeddedMetaData.getMetaDataBase(address).plus(
+        EmbeddedMetaData.getMetaDataOffset(address, LOG_MARK_COVERAGE, LOG_BYTES_IN_WORD));
   }
 
+  /****************************************************************************
+   *
+   * Summary and region tables
+   */
+
   /**
-   * Non-atomic write of forwarding pointer word (assumption, thread
-   * doing the set has done attempt to forward and owns the right to
-   * copy the object)
+   * @param address An address in this space
+   * @return The start of the summary block containing {@code address}
+   */
+  @Inline
+  static Address getSummaryBlock(Address address) {
+    return address.toWord().and(SUMMARY_BLOCK_MASK.not()).toAddress();
+  }
+
+  /**
+   * Record the position of the compaction cursor before the first live
+   * object in a summary block is placed.
    *
-   * @param object The object whose forwarding pointer is to be set
-   * @param ptr The forwarding pointer to be stored in the object's
-   * forwarding word
+   * @param block The summary block
+   * @param cursor The (unaligned) compaction cursor
    */
   @Inline
-  public static void setForwardingPointer(ObjectReference object,
-                                           ObjectReference ptr) {
-    object.toAddress().store(ptr.toAddress(), FORWARDING_POINTER_OFFSET);
+  static void setSummary(Address block, Address cursor) {
+    getSummaryAddress(block).store(cursor);
+  }
+
+  @Inline
+  private static Address getSummaryAddress(Address address) {
+    return EmbeddedMetaData.getMetaDataBase(address).plus(SUMMARY_OFFSET).plus(
+        EmbeddedMetaData.getMetaDataOffset(address, LOG_BYTES_IN_SUMMARY_BLOCK - LOG_BYTES_IN_ADDRESS, LOG_BYTES_IN_ADDRESS));
   }
 
   /**
-   * Non-atomic clear of forwarding pointer word (assumption, thread
-   * doing the set has done attempt to forward and owns the right to
-   * copy the object)
+   * Record the blocks that make up a region, so that the region can be
+   * found from any address within it.
    *
-   * @param object The object whose forwarding pointer is to be set
+   * @param region The region
+   */
+  static void setRegionContaining(Address region) {
+    Address limit = BumpPointer.getRegionLimit(region);
+    for (Address block = region; block.LT(limit); block = block.plus(1 << LOG_BYTES_IN_BLOCK)) {
+      getRegionTableAddress(block).store(region);
+    }
+  }
+
+  /**
+   * @param address An address strictly inside a region, or at its limit
+   * @return The region containing the address
    */
   @Inline
-  public static void clearForwardingPointer(ObjectReference object) {
-    object.toAddress().store(Address.zero(), FORWARDING_POINTER_OFFSET);
+  static Address getRegionContaining(Address address) {
+    return getRegionTableAddress(address.minus(1)).loadAddress();
+  }
+
+  @Inline
+  private static Address getRegionTableAddress(Address address) {
+    return EmbeddedMetaData.getMetaDataBase(address).plus(REGION_TABLE_OFFSET).plus(
+        EmbeddedMetaData.getMetaDataOffset(address, LOG_BYTES_IN_BLOCK - LOG_BYTES_IN_ADDRESS, LOG_BYTES_IN_ADDRESS));
+  }
+
+  /**
+   * Compute the address an object will be moved to by the compaction.<p>
+   *
+   * Starting from the summary entry of the object's summary block, replay
+   * the placement of each marked object in the block up to this one, in
+   * exactly the way {@link MarkCompactCollector#calculateForwardingPointers}
+   * placed them.
+   *
+   * @param object The object in question, which must be marked
+   * @return The new address of the object, which is the object itself if it
+   *   does not move.
+   */
+  public static ObjectReference getForwardingPointer(ObjectReference object) {
+    Address objectStart = VM.objectModel.objectStartRef(object);
+    Address block = getSummaryBlock(objectStart);
+    Address fromRegion = getRegionContaining(objectStart.plus(1));
+    Address cursor = getSummaryAddress(block).loadAddress();
+    Address toRegion = getRegionContaining(cursor);
+    if (VM.VERIFY_ASSERTIONS) VM.assertions._assert(!cursor.isZero() && !toRegion.isZero());
+
+    Address scan = nextMarked(block, objectStart.plus(MIN_ALIGNMENT));
+    while (true) {
+      ObjectReference current = VM.objectModel.getObjectFromStartAddress(scan);
+      int size = VM.objectModel.getSizeWhenCopied(current);
+      int align = VM.objectModel.getAlignWhenCopied(current);
+      int offset = VM.objectModel.getAlignOffsetWhenCopied(current);
+      Address start = Allocator.alignAllocationNoFill(cursor, align, offset);
+      if (toRegion.NE(fromRegion) && start.plus(size).GT(BumpPointer.getRegionLimit(toRegion))) {
+        toRegion = BumpPointer.getNextRegion(toRegion);
+        start = Allocator.alignAllocationNoFill(BumpPointer.getDataStart(toRegion), align, offset);
+      }
+      ObjectReference target = VM.objectModel.getReferenceWhenCopiedTo(current, start);
+      boolean moves = toRegion.NE(fromRegion) || target.toAddress().LT(current.toAddress());
+      if (scan.EQ(objectStart)) {
+        return moves ? target : current;
+      }
+      cursor = moves ? start.plus(size) : VM.objectModel.getObjectEndAddress(current);
+      scan = nextMarked(VM.objectModel.getObjectEndAddress(current), objectStart.plus(MIN_ALIGNMENT));
+      if (VM.VERIFY_ASSERTIONS) VM.assertions._assert(scan.LE(objectStart));
+    }
   }
 
   /**
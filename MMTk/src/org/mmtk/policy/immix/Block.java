@@ -79,6 +79,20 @@ public class Block  {
     setBlockState(address, REUSED_BLOCK_STATE);
   }
 
+  /**
+   * @param address an address within the block
+   * @return whether the block has been chosen for evacuation by a
+   * region-based collector
+   */
+  public static boolean inCollectionSet(Address address) {
+    return getBlockMarkState(address) == COLLECTION_SET_BLOCK_STATE;
+  }
+
+  static void setStateAsCollectionSet(Address cursor) {
+    if (VM.VERIFY_ASSERTIONS) VM.assertions._assert(cursor.loadShort() > 0 && cursor.loadShort() <= MAX_BLOCK_MARK_STATE);
+    cursor.store(COLLECTION_SET_BLOCK_STATE);
+  }
+
   static void setBlockAsUnallocated(Address address) {
     if (VM.VERIFY_ASSERTIONS) VM.assertions._assert(!isUnused(address));
     getBlockMarkStateAddress(address).store(UNALLOCATED_BLOCK_STATE);
@@ -208,6 +222,8 @@ public class Block  {
   private static final short UNALLOCATED_BLOCK_STATE = 0;
   private static final short UNMARKED_BLOCK_STATE = (short) (MAX_BLOCK_MARK_STATE + 1);
   private static final short REUSED_BLOCK_STATE = (short) (MAX_BLOCK_MARK_STATE + 2);
+  /* never usable for allocation; overwritten by the sweep that ends the collection */
+  private static final short COLLECTION_SET_BLOCK_STATE = (short) (MAX_BLOCK_MARK_STATE + 3);
 
   private static final short BLOCK_IS_NOT_DEFRAG_SOURCE = 0;
   private static final short BLOCK_IS_DEFRAG_SOURCE = 1;
@@ -72,6 +72,56 @@ public class Chunk {
     }
   }
 
+  /**
+   * Count the blocks of a chunk that are candidates for evacuation, by
+   * the number of lines found live by the last sweep.
+   *
+   * @param chunk the chunk
+   * @param end the high water mark of the chunk
+   * @param histogram the histogram to be populated, indexed by live lines
+   * @param maxLiveLines blocks with more live lines are not candidates
+   */
+  static void countCollectionSetCandidates(Address chunk, Address end, int[] histogram, short maxLiveLines) {
+    if (VM.VERIFY_ASSERTIONS) VM.assertions._assert(isAligned(chunk));
+    Address cursor = Block.getBlockMarkStateAddress(getFirstUsableBlock(chunk));
+    for (int index = FIRST_USABLE_BLOCK_INDEX; index < BLOCKS_IN_CHUNK; index++) {
+      Address block = chunk.plus(index << LOG_BYTES_IN_BLOCK);
+      if (block.GT(end)) break;
+      short marked = Block.getMarkState(cursor);
+      if (marked > 0 && marked <= maxLiveLines) histogram[marked]++;
+      cursor = cursor.plus(Block.BYTES_IN_BLOCK_STATE_ENTRY);
+    }
+  }
+
+  /**
+   * Add the blocks of a chunk with at most <code>cutoff</code> live lines
+   * to the collection set, together with up to <code>extraBlocks</code>
+   * blocks with <code>cutoff + 1</code> live lines.
+   *
+   * @param chunk the chunk
+   * @param end the high water mark of the chunk
+   * @param cutoff blocks with at most this many live lines are all chosen
+   * @param extraBlocks the number of blocks with one more live line that may be chosen
+   * @return the number of extra blocks that may still be chosen
+   */
+  static int selectCollectionSet(Address chunk, Address end, short cutoff, int extraBlocks) {
+    if (VM.VERIFY_ASSERTIONS) VM.assertions._assert(isAligned(chunk));
+    Address cursor = Block.getBlockMarkStateAddress(getFirstUsableBlock(chunk));
+    for (int index = FIRST_USABLE_BLOCK_INDEX; index < BLOCKS_IN_CHUNK; index++) {
+      Address block = chunk.plus(index << LOG_BYTES_IN_BLOCK);
+      if (block.GT(end)) break;
+      short marked = Block.getMarkState(cursor);
+      if (marked > 0 && marked <= cutoff) {
+        Block.setStateAsCollectionSet(cursor);
+      } else if (marked == cutoff + 1 && extraBlocks > 0) {
+        Block.setStateAsCollectionSet(cursor);
+        extraBlocks--;
+      }
+      cursor = cursor.plus(Block.BYTES_IN_BLOCK_STATE_ENTRY);
+    }
+    return extraBlocks;
+  }
+
   static void clearMetaData(Address chunk) {
     if (VM.VERIFY_ASSERTIONS) {
       VM.assertions._assert(isAligned(chunk));
@@ -109,6 +109,19 @@ public class Defrag {
     availableCleanPagesForDefrag += VM.activePlan.global().getCollectionReserve();
   }
 
+  /**
+   * Budget the clean blocks that may be used to evacuate the collection set
+   * of a region-based collector, which is done outside of a defragmenting
+   * collection.
+   */
+  void prepareEvacuation() {
+    if (VM.VERIFY_ASSERTIONS) VM.assertions._assert(!inDefragCollection);
+    availableCleanPagesForDefrag = VM.activePlan.global().getTotalPages() - VM.activePlan.global().getPagesReserved() +
+        VM.activePlan.global().getCollectionReserve();
+    if (availableCleanPagesForDefrag < 0) availableCleanPagesForDefrag = 0;
+    defragSpaceExhausted = false;
+  }
+
   void globalRelease() {
     if (inDefragCollection && Options.verbose.getValue() > 2) {
       Log.write("(Defrag summary: cu: ");
@@ -79,6 +79,10 @@ public final class ImmixSpace extends Space {
   private final ChunkList chunkMap = new ChunkList();
   private final Defrag defrag;
 
+  /** The mark state of objects found live by marking, while a collection set is evacuated */
+  private byte evacuationSourceMarkState;
+  private final int[] collectionSetHistogram = new int[MAX_BLOCK_MARK_STATE + 1];
+
   /****************************************************************************
    *
    * Initialization
@@ -385,6 +389,21 @@ public final class ImmixSpace extends Space {
     if (VM.VERIFY_ASSERTIONS) VM.assertions._assert(!ForwardingWord.isForwardedOrBeingForwarded(object));
   }
 
+ /**
+  * Perform any required post allocation initialization for an object
+  * allocated while a concurrent mark is in progress, which must be born
+  * marked (and its lines with it) since the marking trace will not visit it.
+  *
+  * @param object the object ref to the storage to be initialized
+  * @param bytes size of the allocated object in bytes
+  */
+  @Inline
+  public void postAllocMarked(ObjectReference object, int bytes) {
+    if (VM.VERIFY_ASSERTIONS) VM.assertions._assert(ObjectHeader.isNewObject(object));
+    ObjectHeader.writeMarkState(object, markState, bytes > BYTES_IN_LINE);
+    markLines(object);
+  }
+
  /**
   * Perform any required post copy (i.e. in-GC allocation) initialization.
   * This is relevant (for example) when Squish is used as the mature space in
@@ -699,6 +718,129 @@ public final class ImmixSpace extends Space {
     return usableLines;
   }
 
+  /****************************************************************************
+   *
+   * Incremental evacuation
+   */
+
+  /**
+   * Choose the blocks to be evacuated by a region-based collection,
+   * preferring those with the fewest live lines, as established by the
+   * last sweep.  Chosen blocks are not used for allocation until the sweep
+   * at the end of the collection.  Must follow {@link #prepare(boolean)}.
+   *
+   * @param maxLiveLines Blocks with more live lines are never chosen
+   * @param budgetLines The number of live lines that may be evacuated
+   * @return The number of live lines in the chosen blocks
+   */
+  public int selectCollectionSet(short maxLiveLines, int budgetLines) {
+    if (VM.VERIFY_ASSERTIONS) VM.assertions._assert(maxLiveLines <= MAX_BLOCK_MARK_STATE);
+    for (int i = 0; i <= MAX_BLOCK_MARK_STATE; i++) collectionSetHistogram[i] = 0;
+    Address chunk = chunkMap.firstChunk(0, 1);
+    while (!chunk.isZero()) {
+      Chunk.countCollectionSetCandidates(chunk, Chunk.getHighWater(chunk), collectionSetHistogram, maxLiveLines);
+      chunk = chunkMap.nextChunk(chunk, 0, 1);
+    }
+
+    /* take whole buckets, emptiest first, then as many blocks of the next bucket as fit */
+    short cutoff = 0;
+    int selectedLines = 0;
+    while (cutoff < maxLiveLines) {
+      int bucketLines = (cutoff + 1) * collectionSetHistogram[cutoff + 1];
+      if (selectedLines + bucketLines > budgetLines) break;
+      selectedLines += bucketLines;
+      cutoff++;
+    }
+    int extraBlocks = cutoff < maxLiveLines ? (budgetLines - selectedLines) / (cutoff + 1) : 0;
+    if (cutoff == 0 && extraBlocks == 0) return 0;
+
+    int unusedBlocks = extraBlocks;
+    chunk = chunkMap.firstChunk(0, 1);
+    while (!chunk.isZero()) {
+      unusedBlocks = Chunk.selectCollectionSet(chunk, Chunk.getHighWater(chunk), cutoff, unusedBlocks);
+      chunk = chunkMap.nextChunk(chunk, 0, 1);
+    }
+    selectedLines += (extraBlocks - unusedBlocks) * (cutoff + 1);
+    if (Options.verbose.getValue() >= 2) {
+      Log.write("[cset: ", selectedLines);
+      Log.write(" lines, cutoff ", cutoff);
+      Log.write("]");
+    }
+    return selectedLines;
+  }
+
+  /**
+   * Prepare to evacuate the collection set, once marking is complete.
+   * Objects that are evacuated or retained in place are given a fresh
+   * mark state, so they can be told apart from those that were merely
+   * marked.
+   */
+  public void prepareEvacuation() {
+    evacuationSourceMarkState = markState;
+    markState = ObjectHeader.deltaMarkState(markState, true);
+    chunkMap.reset(); // sweep the chunks acquired while marking
+    defrag.prepareEvacuation();
+  }
+
+  /**
+   * @param object An object in this space
+   * @return {@code true} if the object is in a block chosen for evacuation
+   */
+  @Inline
+  public boolean inCollectionSet(ObjectReference object) {
+    return Block.inCollectionSet(VM.objectModel.refToAddress(object));
+  }
+
+  /**
+   * Trace a reference to an object in the collection set, evacuating the
+   * object unless it is pinned or there is no more space to copy into.
+   * Objects that were not marked are left untouched.
+   *
+   * @param trace The trace performing the evacuation
+   * @param object The object to be traced
+   * @param allocator The allocator to which any copying should be directed
+   * @return Either the object or a forwarded object, if it was forwarded.
+   */
+  @Inline
+  public ObjectReference evacuateObject(TransitiveClosure trace, ObjectReference object, int allocator) {
+    if (VM.VERIFY_ASSERTIONS) VM.assertions._assert(inCollectionSet(object));
+
+    /* Race to be the (potential) forwarder */
+    Word priorStatusWord = ForwardingWord.attemptToForward(object);
+    if (ForwardingWord.stateIsForwardedOrBeingForwarded(priorStatusWord)) {
+      return ForwardingWord.spinAndGetForwardedObject(object, priorStatusWord);
+    }
+    byte priorState = (byte) (priorStatusWord.toInt() & 0xFF);
+    if (!ObjectHeader.testMarkState(priorState, evacuationSourceMarkState)) {
+      /* either unmarked (and reached through a dead remembered slot), or already retained in place */
+      ObjectHeader.returnToPriorStateAndEnsureUnlogged(object, priorState);
+      return object;
+    }
+    ObjectReference newObject;
+    if (ObjectHeader.isPinnedObject(object) || defrag.spaceExhausted()) {
+      ObjectHeader.setMarkStateUnlogAndUnlock(object, priorState, markState);
+      newObject = object;
+    } else {
+      newObject = ForwardingWord.forwardObject(object, allocator);
+    }
+    trace.processNode(newObject);
+    return newObject;
+  }
+
+  /**
+   * Test the liveness of an object while a collection set is evacuated
+   *
+   * @param object The object in question
+   * @return {@code true} if this object is known to be live
+   */
+  @Inline
+  public boolean evacuationIsLive(ObjectReference object) {
+    if (inCollectionSet(object))
+      return ForwardingWord.isForwardedOrBeingForwarded(object) || ObjectHeader.testMarkState(object, markState);
+    else
+      return ObjectHeader.testMarkState(object, evacuationSourceMarkState) || ObjectHeader.testMarkState(object, markState);
+  }
+
   /****************************************************************************
    *
    * Object state
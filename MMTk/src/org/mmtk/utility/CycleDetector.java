@@ -12,21 +12,29 @@
  */
 package org.mmtk.utility;
 
-import org.mmtk.utility.options.*;
-
 import org.vmmagic.unboxed.*;
 import org.vmmagic.pragma.*;
 
-/*
+/**
+ * A cycle detector for a reference counting collector.  Objects that may
+ * be part of garbage cycles are recorded with {@link #possibleCycleRoot},
+ * and {@link #collectCycles} reclaims the cycles among them.
  */
-@Uninterruptible abstract class CycleDetector {
+@Uninterruptible public abstract class CycleDetector {
 
-  static {
-    Options.cycleFilterThreshold = new CycleFilterThreshold();
-    Options.cycleMetaDataLimit = new CycleMetaDataLimit();
-    Options.cycleTriggerThreshold = new CycleTriggerThreshold();
-  }
+  /**
+   * Collect the garbage cycles reachable from the possible cycle roots.
+   *
+   * @param primary Is this the primary collector thread?
+   * @return {@code true} if any garbage was reclaimed
+   */
+  public abstract boolean collectCycles(boolean primary);
 
-  abstract boolean collectCycles(boolean primary, boolean time);
-  abstract void possibleCycleRoot(ObjectReference object);
+  /**
+   * Record an object whose reference count has been decremented to a
+   * non-zero value, which may therefore be part of a garbage cycle.
+   *
+   * @param object The object
+   */
+  public abstract void possibleCycleRoot(ObjectReference object);
 }
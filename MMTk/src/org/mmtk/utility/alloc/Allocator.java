@@ -294,7 +294,7 @@ public abstract class Allocator {
        * current thread and the mutator context. This is possible for
        * VMs that dynamically multiplex Java threads onto multiple mutator
        * contexts, */
-      current = VM.activePlan.mutator().getAllocatorFromSpace(space);
+      current = VM.activePlan.mutator().getAllocatorFromSpace(space, current);
 
       /*
        * Record whether last collection was an Emergency collection.
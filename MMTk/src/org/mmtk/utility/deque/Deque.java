@@ -80,7 +80,8 @@ import org.vmmagic.pragma.*;
   protected static final int BUFFER_SIZE = 1 << LOG_BUFFER_SIZE;
   protected static final Word BUFFER_MASK = Word.one().lsh(LOG_BUFFER_SIZE).minus(Word.one());
   protected static final int NEXT_FIELD_OFFSET = BYTES_IN_ADDRESS;
-  protected static final int META_DATA_SIZE = 2 * BYTES_IN_ADDRESS;
+  /* next and prev pointers, and the NUMA node of the producer */
+  protected static final int META_DATA_SIZE = 3 * BYTES_IN_ADDRESS;
   protected static final int USABLE_BUFFER_BYTES = BUFFER_SIZE - META_DATA_SIZE;
   protected static final Address TAIL_INITIAL_VALUE = Address.zero();
   protected static final Address HEAD_INITIAL_VALUE = Address.zero();
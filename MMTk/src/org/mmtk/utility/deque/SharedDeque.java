@@ -17,6 +17,7 @@ import static org.mmtk.utility.Constants.*;
 import org.mmtk.policy.RawPageSpace;
 import org.mmtk.policy.Space;
 import org.mmtk.utility.Log;
+import org.mmtk.utility.heap.Numa;
 import org.mmtk.vm.Lock;
 import org.mmtk.vm.VM;
 import org.vmmagic.pragma.Entrypoint;
@@ -35,6 +36,10 @@ public class SharedDeque extends Deque {
   private static final boolean DISABLE_WAITING = true;
   private static final Offset NEXT_OFFSET = Offset.zero();
   private static final Offset PREV_OFFSET = Offset.fromIntSignExtend(BYTES_IN_ADDRESS);
+  private static final Offset NODE_OFFSET = Offset.fromIntSignExtend(2 * BYTES_IN_ADDRESS);
+
+  /** How many buffers to search for one produced on the consumer's NUMA node */
+  private static final int NUMA_SEARCH_LIMIT = 16;
 
   private static final boolean TRACE = false;
   private static final boolean TRACE_DETAIL = false;
@@ -75,6 +80,7 @@ public class SharedDeque extends Deque {
    */
   final void enqueue(Address buf, int arity, boolean toTail) {
     if (VM.VERIFY_ASSERTIONS) VM.assertions._assert(arity == this.arity);
+    if (Numa.isEnabled()) buf.store(Numa.currentNode(), NODE_OFFSET);
     lock();
     if (toTail) {
       // Add to the tail of the queue
@@ -200,6 +206,35 @@ public class SharedDeque extends Deque {
     return bufsenqueued * PAGES_PER_BUFFER;
   }
 
+  /**
+   * Move all buffers of this deque to the tail of another deque without
+   * copying their contents. Entries held in thread-local buffers are not
+   * moved; they must be flushed first.
+   *
+   * @param other The deque to receive the buffers
+   */
+  public final void transferTo(SharedDeque other) {
+    if (VM.VERIFY_ASSERTIONS) VM.assertions._assert(other != this && other.arity == arity);
+    lock();
+    if (!head.isZero()) {
+      other.lock();
+      if (other.tail.isZero()) {
+        other.setHead(head);
+      } else {
+        setNext(other.tail, head);
+        setPrev(head, other.tail);
+      }
+      other.setTail(tail);
+      other.bufsenqueued += bufsenqueued;
+      if (VM.VERIFY_ASSERTIONS) VM.assertions._assert(other.checkDequeLength(other.bufsenqueued));
+      other.unlock();
+      setHead(Address.zero());
+      setTail(Address.zero());
+      bufsenqueued = 0;
+    }
+    unlock();
+  }
+
   /****************************************************************************
    *
    * Private instance methods and fields
@@ -302,6 +337,16 @@ public class SharedDeque extends Deque {
         return Address.zero();
       }
     }
+    if (Numa.isEnabled()) {
+      Address local = findLocal(rtn, fromTail, Numa.currentNode());
+      if (!local.isZero() && local.NE(rtn)) {
+        // take a buffer from our own node rather than steal from another
+        unlink(local);
+        bufsenqueued--;
+        unlock();
+        return local;
+      }
+    }
     if (fromTail) {
       // dequeue the tail buffer
       setTail(getPrev(tail));
@@ -326,6 +371,37 @@ public class SharedDeque extends Deque {
     return rtn;
   }
 
+  /**
+   * Search a few buffers from one end of the queue for one produced on
+   * the given NUMA node.  Must be called with the lock held.
+   *
+   * @param end The buffer at the end of the queue to search from
+   * @param fromTail Whether to search from the tail towards the head
+   * @param node The node of the consumer
+   * @return The first buffer produced on the node, or zero if none was found
+   */
+  private Address findLocal(Address end, boolean fromTail, int node) {
+    Address buf = end;
+    for (int i = 0; i < NUMA_SEARCH_LIMIT && !buf.isZero(); i++) {
+      if (buf.loadInt(NODE_OFFSET) == node) return buf;
+      buf = fromTail ? getPrev(buf) : getNext(buf);
+    }
+    return Address.zero();
+  }
+
+  /**
+   * Remove a buffer from anywhere in the queue.  Must be called with
+   * the lock held.
+   *
+   * @param buf The buffer to remove
+   */
+  private void unlink(Address buf) {
+    Address prev = getPrev(buf);
+    Address next = getNext(buf);
+    if (prev.isZero()) setHead(next); else setNext(prev, next);
+    if (next.isZero()) setTail(prev); else setPrev(next, prev);
+  }
+
   /**
    * Spinwait for GC work to arrive
    *
@@ -182,6 +182,8 @@ public final class FreeListPageResource extends PageResource {
       space.growSpace(rtn, bytes, newChunk);
       unlock();
       HeapLayout.mmapper.ensureMapped(rtn, requiredPages);
+      HugePages.advise(space, rtn, requiredPages);
+      if (newChunk) Numa.bindChunks(rtn, requiredPages);
       if (zeroed)
         VM.memory.zero(zeroNT, rtn, bytes);
       VM.events.tracePageAcquired(space, rtn, requiredPages);
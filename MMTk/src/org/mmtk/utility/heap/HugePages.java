@@ -0,0 +1,165 @@
+/*
+ *  This file is part of the Jikes RVM project (http://jikesrvm.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  See the COPYRIGHT.txt file distributed with this work for information
+ *  regarding copyright ownership.
+ */
+package org.mmtk.utility.heap;
+
+import static org.mmtk.utility.Constants.*;
+import static org.mmtk.utility.heap.layout.VMLayoutConstants.LOG_BYTES_IN_CHUNK;
+
+import org.mmtk.policy.Space;
+import org.mmtk.utility.Conversions;
+import org.mmtk.utility.Log;
+import org.mmtk.utility.heap.layout.HeapLayout;
+import org.mmtk.utility.options.Options;
+
+import org.mmtk.vm.VM;
+
+import org.vmmagic.pragma.*;
+import org.vmmagic.unboxed.*;
+
+/**
+ * This class backs the spaces named by {@link Options#hugePageSpaces}
+ * with transparent huge pages.<p>
+ *
+ * Whenever a page resource of such a space hands out pages, the huge pages
+ * covering them are mapped in full and advised (<code>madvise(MADV_HUGEPAGE)</code>)
+ * before they are first touched.  Chunks are aligned to a multiple of the
+ * huge page size, so a huge page never straddles two spaces.  At exit,
+ * <code>-X:gc:verbose</code> reports how much of each space the kernel
+ * actually backed with huge pages.
+ */
+@Uninterruptible
+public final class HugePages {
+
+  /** Log of the size of a huge page */
+  public static final int LOG_BYTES_IN_HUGE_PAGE = 21;
+  public static final int BYTES_IN_HUGE_PAGE = 1 << LOG_BYTES_IN_HUGE_PAGE;
+  private static final Word HUGE_PAGE_MASK = Word.fromIntZeroExtend(BYTES_IN_HUGE_PAGE - 1);
+
+  static {
+    if (VM.VERIFY_ASSERTIONS) VM.assertions._assert(LOG_BYTES_IN_CHUNK >= LOG_BYTES_IN_HUGE_PAGE);
+  }
+
+  /** Is any space backed by huge pages? */
+  private static boolean enabled = false;
+
+  /** Which spaces (by index) are backed by huge pages */
+  private static boolean[] spaceEnabled;
+
+  /** The range last advised for each space, to avoid repeating the advice */
+  private static AddressArray lastStart;
+  private static AddressArray lastEnd;
+
+  /** Statistics (approximate, unsynchronized) */
+  private static int advised;
+  private static int failed;
+
+  /**
+   * Select the spaces to back with huge pages.  Called once the command
+   * line options are known.
+   */
+  @Interruptible
+  public static void boot() {
+    String names = Options.hugePageSpaces.getValue();
+    if (names == null || names.length() == 0) return;
+    String list = "," + names + ",";
+    boolean all = list.indexOf(",all,") >= 0;
+    int count = Space.getSpaceCount();
+    Space[] spaces = Space.getSpaces();
+    spaceEnabled = new boolean[count];
+    lastStart = AddressArray.create(count);
+    lastEnd = AddressArray.create(count);
+    for (int i = 0; i < count; i++) {
+      Space space = spaces[i];
+      if (all || list.indexOf("," + space.getName() + ",") >= 0) {
+        spaceEnabled[i] = true;
+        enabled = true;
+        if (Options.verbose.getValue() > 0) {
+          Log.write("[Huge pages: backing ");
+          Log.write(space.getName());
+          Log.writeln("]");
+        }
+      }
+    }
+  }
+
+  /**
+   * Back newly acquired pages with huge pages, if their space asks for
+   * them.  Must be called after the pages are mapped and before they are
+   * first touched.
+   *
+   * @param space The space acquiring the pages
+   * @param start The start of the pages
+   * @param pages The number of pages
+   */
+  public static void advise(Space space, Address start, int pages) {
+    int index = space.getIndex();
+    if (!enabled || !spaceEnabled[index]) return;
+    Address from = start.toWord().and(HUGE_PAGE_MASK.not()).toAddress();
+    Address to = start.plus(Conversions.pagesToBytes(pages)).plus(BYTES_IN_HUGE_PAGE - 1).toWord().and(HUGE_PAGE_MASK.not()).toAddress();
+    if (from.GE(lastStart.get(index)) && to.LE(lastEnd.get(index))) return;
+    /* a partially mapped huge page would never be backed by a huge page */
+    int bytes = to.diff(from).toInt();
+    HeapLayout.mmapper.ensureMapped(from, bytes >>> LOG_BYTES_IN_PAGE);
+    if (VM.memory.adviseHugePages(from, bytes)) {
+      advised += bytes >>> LOG_BYTES_IN_HUGE_PAGE;
+    } else {
+      failed++;
+    }
+    lastStart.set(index, from);
+    lastEnd.set(index, to);
+  }
+
+  /**
+   * Print, for each space backed by huge pages, how many of its chunks'
+   * worth of memory the kernel backed with huge pages.
+   */
+  public static void printStats() {
+    if (!enabled) return;
+    Log.write("[Huge pages: ", advised);
+    Log.write(" advised, ", failed);
+    Log.writeln(" requests failed]");
+    int count = Space.getSpaceCount();
+    Space[] spaces = Space.getSpaces();
+    for (int i = 0; i < count; i++) {
+      Space space = spaces[i];
+      if (!spaceEnabled[i]) continue;
+      long backed = 0;
+      int chunks = 0;
+      if (SpaceDescriptor.isContiguous(space.getDescriptor())) {
+        Address start = space.getStart();
+        backed = VM.memory.getHugePageBytes(start, start.plus(space.getExtent()));
+        chunks = space.getExtent().toWord().rshl(LOG_BYTES_IN_CHUNK).toInt();
+      } else {
+        for (Address region = space.getHeadDiscontiguousRegion(); !region.isZero();
+             region = HeapLayout.vmMap.getNextContiguousRegion(region)) {
+          long bytes = VM.memory.getHugePageBytes(region, region.plus(HeapLayout.vmMap.getContiguousRegionSize(region)));
+          if (bytes < 0 || backed < 0) {
+            backed = -1;
+          } else {
+            backed += bytes;
+          }
+          chunks += HeapLayout.vmMap.getContiguousRegionChunks(region);
+        }
+      }
+      Log.write("  ");
+      Log.write(space.getName());
+      if (backed < 0) {
+        Log.writeln(": huge page backing unknown");
+      } else {
+        Log.write(": ", backed >>> LOG_BYTES_IN_CHUNK);
+        Log.write(" of ", chunks);
+        Log.writeln(" chunks backed by huge pages");
+      }
+    }
+  }
+}
@@ -27,6 +27,7 @@ import org.mmtk.vm.VM;
 import org.vmmagic.pragma.Inline;
 import org.vmmagic.pragma.Uninterruptible;
 import org.vmmagic.unboxed.Address;
+import org.vmmagic.unboxed.AddressArray;
 import org.vmmagic.unboxed.Extent;
 import org.vmmagic.unboxed.Offset;
 import org.vmmagic.unboxed.Word;
@@ -35,7 +36,13 @@ import org.vmmagic.unboxed.Word;
  * This class manages the allocation of pages for a space.  When a
  * page is requested by the space both a page budget and the use of
  * virtual address space are checked.  If the request for space can't
- * be satisfied (for either reason) a GC may be triggered.
+ * be satisfied (for either reason) a GC may be triggered.<p>
+ *
+ * When there is more than one NUMA node, the address range of a
+ * contiguous resource is divided into a chunk-aligned slice per node
+ * when it is first reset, each with its own cursor, and pages are taken
+ * from the slice of the node of the acquiring thread before those of
+ * other nodes (see {@link Numa}).
  */
 @Uninterruptible
 public final class MonotonePageResource extends PageResource {
@@ -63,6 +70,18 @@ public final class MonotonePageResource extends PageResource {
   /** Current limit of zeroing.  If zeroingCursor < zeroingSentinel, zeroing is still happening. */
   private Address zeroingSentinel;
 
+  /** Has the address range been divided among the NUMA nodes? */
+  private boolean partitioned;
+
+  /** The start of the slice of each NUMA node */
+  private final AddressArray nodeStart;
+
+  /** Pointer to the next block to be allocated in the slice of each NUMA node */
+  private final AddressArray nodeCursor;
+
+  /** The limit of the slice of each NUMA node */
+  private final AddressArray nodeSentinel;
+
   /**
    * Constructor
    *
@@ -83,6 +102,9 @@ public final class MonotonePageResource extends PageResource {
     this.zeroingCursor = this.sentinel;
     this.zeroingSentinel = start;
     this.metaDataPagesPerRegion = metaDataPagesPerRegion;
+    this.nodeStart = AddressArray.create(Numa.MAX_NODES);
+    this.nodeCursor = AddressArray.create(Numa.MAX_NODES);
+    this.nodeSentinel = AddressArray.create(Numa.MAX_NODES);
   }
 
   /**
@@ -102,11 +124,21 @@ public final class MonotonePageResource extends PageResource {
     this.currentChunk = Address.zero();
     this.sentinel = Address.zero();
     this.metaDataPagesPerRegion = metaDataPagesPerRegion;
+    this.nodeStart = null;
+    this.nodeCursor = null;
+    this.nodeSentinel = null;
   }
 
 
   @Override
   public int getAvailablePhysicalPages() {
+    if (partitioned) {
+      int rtn = 0;
+      for (int node = 0; node < Numa.nodes(); node++) {
+        rtn += Conversions.bytesToPages(nodeSentinel.get(node).diff(nodeCursor.get(node)));
+      }
+      return rtn;
+    }
     int rtn = Conversions.bytesToPages(sentinel.diff(cursor));
     if (!contiguous)
       rtn += HeapLayout.vmMap.getAvailableDiscontiguousChunks() * VMLayoutConstants.PAGES_IN_CHUNK;
@@ -129,6 +161,7 @@ public final class MonotonePageResource extends PageResource {
   @Override
   @Inline
   protected Address allocPages(int reservedPages, int requiredPages, boolean zeroed) {
+    if (partitioned) return allocNodePages(reservedPages, requiredPages, zeroed);
     boolean newChunk = false;
     lock();
     Address rtn = cursor;
@@ -188,6 +221,8 @@ public final class MonotonePageResource extends PageResource {
       space.growSpace(old, bytes, newChunk);
       unlock();
       HeapLayout.mmapper.ensureMapped(old, requiredPages);
+      HugePages.advise(space, old, requiredPages);
+      if (newChunk) Numa.bindChunks(old, requiredPages);
       if (zeroed) {
         if (!zeroConcurrent) {
           VM.memory.zero(zeroNT, old, bytes);
@@ -200,6 +235,74 @@ public final class MonotonePageResource extends PageResource {
     }
   }
 
+  /**
+   * Allocate <code>pages</code> pages from the slice of the NUMA node of
+   * the current thread, or from the slice of another node if that slice
+   * is full.  The slices are bound to their nodes when they are created,
+   * so nothing needs to be bound here.
+   *
+   * @param reservedPages The number of pages reserved due to the initial request.
+   * @param requiredPages The number of pages required to be allocated.
+   * @param zeroed If true allocated pages are zeroed.
+   * @return The start of the first page if successful, zero on
+   * failure.
+   */
+  private Address allocNodePages(int reservedPages, int requiredPages, boolean zeroed) {
+    int home = Numa.currentNode();
+    lock();
+    for (int i = 0; i < Numa.nodes(); i++) {
+      int node = (home + i) % Numa.nodes();
+      Address old = nodeCursor.get(node);
+      Address rtn = old;
+      int pages = requiredPages;
+      if (metaDataPagesPerRegion != 0) {
+        /* adjust allocation for metadata */
+        Address regionStart = getRegionStart(old.plus(Conversions.pagesToBytes(pages)));
+        Offset regionDelta = regionStart.diff(old);
+        if (regionDelta.sGE(Offset.zero())) {
+          pages += Conversions.bytesToPages(regionDelta) + metaDataPagesPerRegion;
+          rtn = regionStart.plus(Conversions.pagesToBytes(metaDataPagesPerRegion));
+        }
+      }
+      Extent bytes = Conversions.pagesToBytes(pages);
+      Address tmp = old.plus(bytes);
+      if (tmp.LE(nodeSentinel.get(node))) {
+        nodeCursor.set(node, tmp);
+        commitPages(reservedPages, pages);
+        space.growSpace(old, bytes, false);
+        unlock();
+        HeapLayout.mmapper.ensureMapped(old, pages);
+        HugePages.advise(space, old, pages);
+        if (zeroed) VM.memory.zero(zeroNT, old, bytes);
+        VM.events.tracePageAcquired(space, rtn, pages);
+        return rtn;
+      }
+    }
+    unlock();
+    return Address.zero();
+  }
+
+  /**
+   * Divide the address range among the NUMA nodes, in chunk-aligned
+   * slices, and bind each slice to its node.  Resources that are zeroed
+   * concurrently are not divided, as the zeroing thread follows a single
+   * cursor.
+   */
+  private void partition() {
+    int nodes = Numa.nodes();
+    int chunks = sentinel.diff(start).toWord().rshl(VMLayoutConstants.LOG_BYTES_IN_CHUNK).toInt();
+    if (zeroConcurrent || chunks < nodes) return;
+    for (int node = 0; node < nodes; node++) {
+      Address first = start.plus(Word.fromIntZeroExtend((chunks * node) / nodes).lsh(VMLayoutConstants.LOG_BYTES_IN_CHUNK).toExtent());
+      Address last = node == nodes - 1 ? sentinel :
+        start.plus(Word.fromIntZeroExtend((chunks * (node + 1)) / nodes).lsh(VMLayoutConstants.LOG_BYTES_IN_CHUNK).toExtent());
+      nodeStart.set(node, first);
+      nodeSentinel.set(node, last);
+      Numa.bind(first, Conversions.bytesToPages(last.diff(first)), node);
+    }
+    partitioned = true;
+  }
+
   /**
    * {@inheritDoc}<p>
    *
@@ -293,6 +396,12 @@ public final class MonotonePageResource extends PageResource {
       zeroingCursor = start;
       cursor = start;
       currentChunk = Conversions.chunkAlign(start, true);
+      if (!partitioned && Numa.isEnabled()) partition();
+      if (partitioned) {
+        for (int node = 0; node < Numa.nodes(); node++) {
+          nodeCursor.set(node, nodeStart.get(node));
+        }
+      }
     } else { /* Not contiguous */
       if (!cursor.isZero()) {
         do {
@@ -0,0 +1,218 @@
+/*
+ *  This file is part of the Jikes RVM project (http://jikesrvm.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  See the COPYRIGHT.txt file distributed with this work for information
+ *  regarding copyright ownership.
+ */
+package org.mmtk.utility.heap;
+
+import static org.mmtk.utility.Constants.*;
+
+import org.mmtk.utility.Conversions;
+import org.mmtk.utility.Log;
+import org.mmtk.utility.options.Options;
+
+import org.mmtk.vm.VM;
+
+import org.vmmagic.pragma.*;
+import org.vmmagic.unboxed.*;
+
+/**
+ * This class places the heap and the collector threads on the NUMA
+ * nodes of the host.<p>
+ *
+ * When there is more than one node, the address range of each contiguous
+ * monotone page resource (nurseries and copy spaces) is divided into one
+ * chunk-aligned slice per node, each bound to its node once, and a thread
+ * acquires pages from the slice of its own node before those of other
+ * nodes (see {@link MonotonePageResource}), so nursery regions and
+ * thread-local allocation buffers are local to the mutator allocating into
+ * them, and copy regions are local to the collector copying into them.
+ * Chunks acquired by the other page resources are bound to the node of the
+ * thread that acquires them, once per acquisition of the chunk rather than
+ * once per acquisition of pages.  Binding moves pages of the range that
+ * have already been touched.  Collector threads are bound to the processors of each
+ * node in turn, and the shared work queues give a collector work produced on
+ * its own node before work produced on other nodes (see
+ * {@link org.mmtk.utility.deque.SharedDeque}).<p>
+ *
+ * Asking for more nodes than the host has (see {@link Options#numaNodes})
+ * simulates that topology: the processors are divided evenly among the
+ * nodes and pages are accounted to a node rather than bound to it.
+ */
+@Uninterruptible
+public final class Numa {
+
+  /** The largest number of nodes that can be used */
+  public static final int MAX_NODES = 64;
+
+  /** The largest number of pages bound by a single request to the host */
+  private static final int MAX_PAGES_PER_BIND = 1 << (30 - LOG_BYTES_IN_PAGE);
+
+  /** The number of nodes in use */
+  private static int nodes = 1;
+
+  /** Is the topology simulated rather than that of the host? */
+  private static boolean simulated = false;
+
+  /** The node of each processor */
+  private static int[] cpuNode;
+
+  /** The number of pages bound to each node (approximate, unsynchronized) */
+  private static int[] pagesBound;
+
+  /**
+   * Determine the topology.  Called once the command line options are known.
+   */
+  @Interruptible
+  public static void boot() {
+    int hostNodes = VM.memory.getNumaNodes();
+    int cpus = VM.collection.getDefaultThreads();
+    int requested = Options.numaNodes.getValue();
+    setTopology(requested == 0 ? hostNodes : requested, hostNodes, cpus);
+    if (isEnabled() && Options.verbose.getValue() > 0) {
+      Log.write("[NUMA: ", nodes);
+      Log.write(simulated ? " simulated nodes over " : " nodes over ", cpus);
+      Log.writeln(" processors]");
+    }
+  }
+
+  /**
+   * Set the topology in use.
+   *
+   * @param requested The number of nodes to use
+   * @param hostNodes The number of nodes of the host
+   * @param cpus The number of processors
+   */
+  @Interruptible
+  static void setTopology(int requested, int hostNodes, int cpus) {
+    nodes = requested;
+    if (nodes > cpus) nodes = cpus;
+    if (nodes > MAX_NODES) nodes = MAX_NODES;
+    if (nodes <= 1) {
+      nodes = 1;
+      simulated = false;
+      return;
+    }
+    simulated = nodes != hostNodes;
+    cpuNode = new int[cpus];
+    for (int cpu = 0; cpu < cpus; cpu++) {
+      cpuNode[cpu] = simulated ? (cpu * nodes) / cpus : VM.memory.getNumaNodeOfCpu(cpu);
+    }
+    pagesBound = new int[nodes];
+  }
+
+  /**
+   * @return {@code true} if there is more than one node
+   */
+  @Inline
+  public static boolean isEnabled() {
+    return nodes > 1;
+  }
+
+  /**
+   * @return The number of nodes in use
+   */
+  @Inline
+  public static int nodes() {
+    return nodes;
+  }
+
+  /**
+   * @return The node of the processor the current thread is running on
+   */
+  public static int currentNode() {
+    if (!isEnabled()) return 0;
+    int cpu = VM.collection.getCurrentCpu();
+    if (cpu < 0 || cpu >= cpuNode.length) return 0;
+    return cpuNode[cpu];
+  }
+
+  /**
+   * Bind a range of pages to a node, moving the pages of the range that
+   * have already been touched.  This is a system call, so page resources
+   * bind each range once rather than on every acquisition of its pages.
+   *
+   * @param start The start of the pages
+   * @param pages The number of pages
+   * @param node The node
+   */
+  public static void bind(Address start, int pages, int node) {
+    if (!isEnabled()) return;
+    pagesBound[node] += pages;
+    if (simulated) return;
+    while (pages > 0) {
+      int bound = pages < MAX_PAGES_PER_BIND ? pages : MAX_PAGES_PER_BIND;
+      VM.memory.bindToNumaNode(start, bound << LOG_BYTES_IN_PAGE, node);
+      start = start.plus(bound << LOG_BYTES_IN_PAGE);
+      pages -= bound;
+    }
+  }
+
+  /**
+   * Bind newly acquired chunks to the node of the current thread.
+   *
+   * @param start The start of the chunks
+   * @param pages The number of pages acquired from the chunks
+   */
+  public static void bindChunks(Address start, int pages) {
+    if (!isEnabled()) return;
+    Address first = Conversions.chunkAlign(start, true);
+    Address last = Conversions.chunkAlign(start.plus(Conversions.pagesToBytes(pages)), false);
+    bind(first, Conversions.bytesToPages(last.diff(first)), currentNode());
+  }
+
+  /**
+   * @param node A node
+   * @return The number of pages bound to the node
+   */
+  public static int getPagesBound(int node) {
+    return isEnabled() ? pagesBound[node] : 0;
+  }
+
+  /**
+   * Bind the current collector thread to a processor.  Collectors are
+   * spread over the nodes in turn, and over the processors of a node.
+   *
+   * @param ordinal The index of the collector within its group
+   */
+  public static void bindCollector(int ordinal) {
+    if (!isEnabled()) return;
+    int node = ordinal % nodes;
+    int nodeCpus = 0;
+    for (int cpu = 0; cpu < cpuNode.length; cpu++) {
+      if (cpuNode[cpu] == node) nodeCpus++;
+    }
+    if (nodeCpus == 0) return;
+    int index = (ordinal / nodes) % nodeCpus;
+    for (int cpu = 0; cpu < cpuNode.length; cpu++) {
+      if (cpuNode[cpu] == node && index-- == 0) {
+        boolean bound = VM.collection.bindCurrentThread(cpu);
+        if (Options.verbose.getValue() >= 2) {
+          Log.write("[NUMA: collector ", ordinal);
+          Log.write(bound ? " bound to processor " : " could not be bound to processor ", cpu);
+          Log.writeln(" on node ", node);
+        }
+        return;
+      }
+    }
+  }
+
+  /**
+   * Print the number of pages bound to each node.
+   */
+  public static void printPlacement() {
+    if (!isEnabled()) return;
+    Log.write("[NUMA pages bound:");
+    for (int node = 0; node < nodes; node++) {
+      Log.write(" ", pagesBound[node]);
+    }
+    Log.writeln("]");
+  }
+}
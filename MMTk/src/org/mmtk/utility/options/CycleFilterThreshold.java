@@ -21,7 +21,7 @@ public final class CycleFilterThreshold extends org.vmutil.options.PagesOption {
    */
   public CycleFilterThreshold() {
     super(Options.set, "Cycle Filter Threshold",
-        "Trigger cycle buffer filtering if the space available falls below this threshold",
-        512);
+        "Run trial deletion cycle detection if the space available falls below this threshold",
+        2048);
   }
 }
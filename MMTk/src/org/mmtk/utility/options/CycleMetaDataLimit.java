@@ -21,7 +21,7 @@ public final class CycleMetaDataLimit extends org.vmutil.options.PagesOption {
    */
   public CycleMetaDataLimit() {
     super(Options.set, "Cycle Meta Data Limit",
-        "Trigger cycle detection if the meta data volume grows to this limit",
+        "Run trial deletion cycle detection if the possible cycle roots grow to this volume",
         4096);
   }
 }
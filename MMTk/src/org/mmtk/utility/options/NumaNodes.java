@@ -0,0 +1,37 @@
+/*
+ *  This file is part of the Jikes RVM project (http://jikesrvm.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  See the COPYRIGHT.txt file distributed with this work for information
+ *  regarding copyright ownership.
+ */
+package org.mmtk.utility.options;
+
+/**
+ * The number of NUMA nodes to place the heap and the collector threads
+ * on.  Zero uses the nodes of the host; a larger number than the host
+ * has simulates that topology by dividing the processors among the nodes.
+ */
+public final class NumaNodes extends org.vmutil.options.IntOption {
+  /**
+   * Create the option.
+   */
+  public NumaNodes() {
+    super(Options.set, "Numa Nodes",
+          "Number of NUMA nodes to place the heap and collector threads on (0 uses the host topology)",
+          0);
+  }
+
+  /**
+   * Only accept non-negative values.
+   */
+  @Override
+  protected void validate() {
+    failIf(this.value < 0, "Unreasonable number of NUMA nodes");
+  }
+}
@@ -21,11 +21,13 @@ public final class Options {
   public static OptionSet set;
 
   /* Other options */
+  public static ConcurrentDecrements concurrentDecrements;
   public static ConcurrentTrigger concurrentTrigger;
   public static CycleFilterThreshold cycleFilterThreshold;
   public static CycleMetaDataLimit cycleMetaDataLimit;
   public static CycleTriggerThreshold cycleTriggerThreshold;
   public static DebugAddress debugAddress;
+  public static DecrementBacklogLimit decrementBacklogLimit;
   public static NurseryZeroing nurseryZeroing;
   public static DummyEnum dummyEnum;
   public static DefragHeadroom defragHeadroom;
@@ -45,18 +47,23 @@ public final class Options {
   public static GCTimeCap gcTimeCap;
   public static GenCycleDetection genCycleDetection;
   public static HarnessAll harnessAll;
+  public static HugePageSpaces hugePageSpaces;
   public static IgnoreSystemGC ignoreSystemGC;
   public static LineReuseRatio lineReuseRatio;
   public static MarkSweepMarkBits markSweepMarkBits;
   public static MetaDataLimit metaDataLimit;
   public static NoFinalizer noFinalizer;
   public static NoReferenceTypes noReferenceTypes;
+  public static NumaNodes numaNodes;
   public static NurserySize nurserySize;
+  public static PauseTarget pauseTarget;
   public static PerfEvents perfEvents;
   public static PretenureThresholdFraction pretenureThresholdFraction;
   public static PrintPhaseStats printPhaseStats;
   public static ProtectOnRelease protectOnRelease;
   public static SanityCheck sanityCheck;
+  public static SitePretenureSurvival sitePretenureSurvival;
+  public static SitePretenuring sitePretenuring;
   public static StressFactor stressFactor;
   public static Threads threads;
   public static TraceRate traceRate;
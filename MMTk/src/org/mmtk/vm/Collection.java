@@ -86,6 +86,25 @@ import org.vmmagic.pragma.*;
    */
   public abstract int getActiveThreads();
 
+  /**
+   * @return The processor the current thread is running on, or -1 if
+   * it is not known.
+   */
+  public int getCurrentCpu() {
+    return -1;
+  }
+
+  /**
+   * Binds the current thread to a processor.  The default
+   * implementation does nothing.
+   *
+   * @param cpu the processor
+   * @return <code>true</code> if the thread was bound
+   */
+  public boolean bindCurrentThread(int cpu) {
+    return false;
+  }
+
   /**
    * Block for the garbage collector.
    */
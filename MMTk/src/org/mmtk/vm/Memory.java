@@ -97,6 +97,60 @@ import org.vmmagic.pragma.*;
    */
   public abstract boolean munprotect(Address start, int size);
 
+  /**
+   * @return The number of NUMA nodes in the system.  The default
+   * implementation reports a single node.
+   */
+  public int getNumaNodes() {
+    return 1;
+  }
+
+  /**
+   * @param cpu a processor
+   * @return The NUMA node the processor belongs to.
+   */
+  public int getNumaNodeOfCpu(int cpu) {
+    return 0;
+  }
+
+  /**
+   * Asks that the pages of an area of virtual memory are placed on a
+   * NUMA node, moving those that have already been touched.  The default
+   * implementation does nothing.
+   *
+   * @param start the address of the start of the area
+   * @param size the size, in bytes, of the area
+   * @param node the node on which to place the pages
+   * @return <code>true</code> if successful, otherwise
+   * <code>false</code>
+   */
+  public boolean bindToNumaNode(Address start, int size, int node) {
+    return false;
+  }
+
+  /**
+   * Asks that an area of virtual memory be backed by (transparent) huge
+   * pages.  The default implementation does nothing.
+   *
+   * @param start the address of the start of the area
+   * @param size the size, in bytes, of the area
+   * @return <code>true</code> if successful, otherwise
+   * <code>false</code>
+   */
+  public boolean adviseHugePages(Address start, int size) {
+    return false;
+  }
+
+  /**
+   * @param start the address of the start of an area of virtual memory
+   * @param end the address of the end of the area
+   * @return The number of bytes of the area currently backed by huge
+   * pages, or -1 if this is not known.
+   */
+  public long getHugePageBytes(Address start, Address end) {
+    return -1;
+  }
+
 
   /**
    * Zero a region of memory.
@@ -52,4 +52,18 @@ public abstract class ReferenceProcessor {
    * @return the number of references objects on the queue
    */
   public abstract int countWaitingReferences();
+
+  /**
+   * Does this processor share the work of {@code scan} and {@code forward}
+   * between the collector threads?  If so, every collector thread calls these
+   * methods (with its own trace) and the processor partitions the work using
+   * the collector context's parallel worker ordinal; otherwise only the
+   * primary collector thread calls them.
+   *
+   * @return {@code true} if {@code scan} and {@code forward} should be called
+   *  by every collector thread
+   */
+  public boolean isParallel() {
+    return false;
+  }
 }
@@ -28,6 +28,21 @@ import org.vmmagic.unboxed.*;
    */
   public abstract void scanObject(TransitiveClosure trace, ObjectReference object);
 
+  /**
+   * Delegated scanning of the part of a reference array that lies in
+   * the address range <code>[start, end)</code>, processing each element
+   * in the range.  The range may extend beyond the elements of the array.
+   * The default implementation conservatively scans the whole array.
+   *
+   * @param trace the trace to use for scanning
+   * @param array The reference array to be scanned
+   * @param start The start of the address range
+   * @param end The end (exclusive) of the address range
+   */
+  public void scanArrayRange(TransitiveClosure trace, ObjectReference array, Address start, Address end) {
+    scanObject(trace, array);
+  }
+
   /**
    * Invoke a specialized scan method. Note that these methods must have been allocated
    * explicitly through Plan and PlanConstraints.
@@ -150,4 +165,29 @@ import org.vmmagic.unboxed.*;
    * @return true if the runtime supports a return barrier
    */
   public abstract boolean supportsReturnBarrier();
+
+  /**
+   * Called at the start of every full heap trace.  If this returns
+   * {@code true}, each object scanned by the trace is passed to
+   * {@link #countLiveObject} and {@link #finishLiveObjectCount} is called
+   * once the trace has completed.  The default is not to count.
+   *
+   * @return {@code true} if the runtime wants the live objects counted
+   */
+  public boolean startLiveObjectCount() {
+    return false;
+  }
+
+  /**
+   * Count an object found live by a full heap trace.  May be called
+   * concurrently by several collector threads.
+   *
+   * @param object The live object
+   */
+  public void countLiveObject(ObjectReference object) {}
+
+  /**
+   * Called once a full heap trace whose objects were counted has completed.
+   */
+  public void finishLiveObjectCount() {}
 }
@@ -21,6 +21,7 @@ import org.jikesrvm.adaptive.util.CompilerAdvice;
 import org.jikesrvm.architecture.StackFrameLayout;
 import org.jikesrvm.classloader.Atom;
 import org.jikesrvm.classloader.BootstrapClassLoader;
+import org.jikesrvm.classloader.ClassFilePrefetcher;
 import org.jikesrvm.classloader.JMXSupport;
 import org.jikesrvm.classloader.RVMClass;
 import org.jikesrvm.classloader.RVMClassLoader;
@@ -487,6 +488,11 @@ public class VM extends Properties {
         VM.sysExit(EXIT_STATUS_BOGUS_COMMAND_LINE_ARG);
     }
 
+    if (VM.prefetchClassFiles) {
+      if (verboseBoot >= 1) VM.sysWriteln("Starting class file prefetcher");
+      ClassFilePrefetcher.boot();
+    }
+
     if (verboseBoot >= 1) VM.sysWriteln("Initializing Application Class Loader");
     RVMClassLoader.getApplicationClassLoader();
     RVMClassLoader.declareApplicationClassLoaderIsReady();
@@ -30,6 +30,10 @@ public final class AosEntrypoints {
       getField(org.jikesrvm.adaptive.measurements.listeners.EdgeListener.class, "updateCalled", int.class);
   public static final RVMField edgeListenerSamplesTakenField =
       getField(org.jikesrvm.adaptive.measurements.listeners.EdgeListener.class, "samplesTaken", int.class);
+  public static final RVMField stackSampleListenerSamplesTakenField =
+      getField(org.jikesrvm.adaptive.measurements.listeners.StackSampleListener.class, "samplesTaken", int.class);
+  public static final RVMField stackSampleListenerSamplesDroppedField =
+      getField(org.jikesrvm.adaptive.measurements.listeners.StackSampleListener.class, "samplesDropped", int.class);
   public static final RVMField yieldCountListenerNumYieldsField =
       getField(org.jikesrvm.adaptive.measurements.listeners.YieldCounterListener.class, "numYields", int.class);
   public static final RVMField counterArrayManagerCounterArraysField =
@@ -31,6 +31,7 @@ import org.jikesrvm.adaptive.util.AOSOptions;
 import org.jikesrvm.adaptive.util.BlockingPriorityQueue;
 import org.jikesrvm.compilers.baseline.EdgeCounts;
 import org.jikesrvm.compilers.common.RecompilationManager;
+import org.jikesrvm.compilers.opt.runtimesupport.OptCompiledMethod;
 import org.jikesrvm.runtime.Callbacks;
 import org.jikesrvm.scheduler.RVMThread;
 import org.jikesrvm.scheduler.SoftLatch;
@@ -151,6 +152,11 @@ public class Controller implements Callbacks.ExitMonitor,
     // RuntimeCompiler checks this flag
     enabled = true;
 
+    if (options.STACK_PROFILE && (options.STACK_PROFILE_BUFFER_SIZE < 1 || options.STACK_PROFILE_MAX_DEPTH < 1)) {
+      VM.sysWriteln("vm: -X:aos:stack_profile_buffer_size and -X:aos:stack_profile_max_depth must be at least 1");
+      VM.sysExit(EXIT_STATUS_BOGUS_COMMAND_LINE_ARG);
+    }
+
     // Initialize the controller input queue
     controllerInputQueue = new BlockingPriorityQueue(new BlockingPriorityQueue.CallBack() {
       @Override
@@ -305,5 +311,19 @@ public class Controller implements Callbacks.ExitMonitor,
     return dcg != null;
   }
 
+  /**
+   * Called when the current opt compiled code of a method has been
+   * invalidated by class loading. Queues the recompilation of the method
+   * at the same opt level, so that it does not have to become hot again
+   * before it runs optimized code.
+   *
+   * @param cm the invalidated compiled method
+   */
+  public static void notifyInvalidation(OptCompiledMethod cm) {
+    if (!enabled || !options.RECOMPILE_ON_INVALIDATION || !options.ENABLE_RECOMPILATION || !options.sampling()) {
+      return;
+    }
+    controllerInputQueue.insert(InvalidationRecompilationEvent.PRIORITY, new InvalidationRecompilationEvent(cm));
+  }
 }
 
@@ -235,7 +235,7 @@ public final class ControllerMemory {
    *  @param method the method of interest
    *  @return whether the method should be considered or not
    */
-  static synchronized boolean shouldConsiderForInitialRecompilation(RVMMethod method) {
+  public static synchronized boolean shouldConsiderForInitialRecompilation(RVMMethod method) {
     LinkedList<ControllerPlan> planList = findPlan(method);
     if (planList == null) {
       return true;
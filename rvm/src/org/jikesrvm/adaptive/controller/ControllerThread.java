@@ -20,10 +20,12 @@ import org.jikesrvm.adaptive.database.methodsamples.MethodCountData;
 import org.jikesrvm.adaptive.measurements.listeners.EdgeListener;
 import org.jikesrvm.adaptive.measurements.listeners.YieldCounterListener;
 import org.jikesrvm.adaptive.measurements.organizers.AccumulatingMethodSampleOrganizer;
+import org.jikesrvm.adaptive.measurements.organizers.CollectorSampleOrganizer;
 import org.jikesrvm.adaptive.measurements.organizers.DecayOrganizer;
 import org.jikesrvm.adaptive.measurements.organizers.DynamicCallGraphOrganizer;
 import org.jikesrvm.adaptive.measurements.organizers.MethodSampleOrganizer;
 import org.jikesrvm.adaptive.measurements.organizers.Organizer;
+import org.jikesrvm.adaptive.measurements.organizers.StackSampleOrganizer;
 import org.jikesrvm.adaptive.recompilation.CompilationThread;
 import org.jikesrvm.adaptive.recompilation.CompilerDNA;
 import org.jikesrvm.adaptive.recompilation.InvocationCounts;
@@ -234,7 +236,7 @@ public final class ControllerThread extends SystemThread {
    */
   private void createDynamicCallGraphOrganizer() {
     if (dcgOrg == null) {
-      dcgOrg = new DynamicCallGraphOrganizer(new EdgeListener());
+      dcgOrg = new DynamicCallGraphOrganizer(new EdgeListener(Controller.options.DCG_CONTEXT_DEPTH));
       Controller.organizers.add(dcgOrg);
     }
   }
@@ -249,6 +251,12 @@ public final class ControllerThread extends SystemThread {
 
       createDynamicCallGraphOrganizer();
     }
+    if (Controller.options.GC_SAMPLING) {
+      Controller.organizers.add(new CollectorSampleOrganizer());
+    }
+    if (Controller.options.STACK_PROFILE) {
+      Controller.organizers.add(new StackSampleOrganizer());
+    }
   }
 
   /**
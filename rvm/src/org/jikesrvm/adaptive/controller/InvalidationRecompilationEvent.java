@@ -0,0 +1,80 @@
+/*
+ *  This file is part of the Jikes RVM project (http://jikesrvm.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  See the COPYRIGHT.txt file distributed with this work for information
+ *  regarding copyright ownership.
+ */
+package org.jikesrvm.adaptive.controller;
+
+import org.jikesrvm.classloader.NormalMethod;
+import org.jikesrvm.classloader.RVMMethod;
+import org.jikesrvm.compilers.common.CompiledMethod;
+import org.jikesrvm.compilers.opt.driver.CompilationPlan;
+import org.jikesrvm.compilers.opt.runtimesupport.OptCompiledMethod;
+
+/**
+ * Event used to notify the controller that the current opt compiled code
+ * of a method has been invalidated because a class hierarchy assumption
+ * it depended on no longer holds (see {@link Controller#notifyInvalidation}).
+ * <p>
+ * The method is recompiled at the opt level of the invalidated code with
+ * the new class hierarchy, ahead of the recompilations of hot methods,
+ * rather than running its baseline code until it is found to be hot again.
+ */
+public final class InvalidationRecompilationEvent implements ControllerInputEvent {
+
+  /**
+   * Priority of the event and of the recompilation, higher than that of
+   * any hot method
+   */
+  static final double PRIORITY = Double.MAX_VALUE;
+
+  /**
+   * The invalidated compiled method
+   */
+  private final OptCompiledMethod cm;
+
+  /**
+   * @param cm the invalidated compiled method
+   */
+  InvalidationRecompilationEvent(OptCompiledMethod cm) {
+    this.cm = cm;
+  }
+
+  @Override
+  public String toString() {
+    return "InvalidationRecompilationEvent: " + cm.getMethod() + " (cmid " + cm.getId() + ", O" + cm.getOptLevel() + ")";
+  }
+
+  /**
+   * {@inheritDoc}
+   * In this case, the method recompiles the method at the opt level of the
+   * invalidated code unless the method is already being recompiled or has
+   * since been compiled at that level or higher.
+   */
+  @Override
+  public void process() {
+    RVMMethod method = cm.getMethod();
+    int optLevel = Math.min(cm.getOptLevel(), Controller.options.DERIVED_MAX_OPT_LEVEL);
+    if (optLevel < 0) return;
+
+    ControllerPlan latest = ControllerMemory.findLatestPlan(method);
+    if (latest != null && latest.getStatus() == ControllerPlan.IN_PROGRESS) return;
+    CompiledMethod current = method.getCurrentCompiledMethod();
+    if (current != null && current.getCompilerType() == CompiledMethod.OPT &&
+        ((OptCompiledMethod) current).getOptLevel() >= optLevel) {
+      return;
+    }
+
+    CompilationPlan compPlan =
+        Controller.recompilationStrategy.createCompilationPlan((NormalMethod) method, optLevel, null);
+    ControllerPlan plan = new ControllerPlan(compPlan, Controller.controllerClock, cm.getId(), 1.0, 0.0, PRIORITY);
+    plan.execute();
+  }
+}
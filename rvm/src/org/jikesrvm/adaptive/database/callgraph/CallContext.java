@@ -0,0 +1,118 @@
+/*
+ *  This file is part of the Jikes RVM project (http://jikesrvm.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  See the COPYRIGHT.txt file distributed with this work for information
+ *  regarding copyright ownership.
+ */
+package org.jikesrvm.adaptive.database.callgraph;
+
+import org.jikesrvm.classloader.RVMMethod;
+
+/**
+ * A calling context of a call site: the call site itself followed by
+ * the call sites of its enclosing calls, innermost first.
+ * A context of length 1 is just a {@link CallSite}.
+ */
+public final class CallContext {
+
+  /**
+   * Method of each call site
+   */
+  private final RVMMethod[] methods;
+
+  /**
+   * Bytecode index of each call site in its method
+   */
+  private final int[] bcIndices;
+
+  /**
+   * @param methods the methods containing the call sites, innermost first
+   * @param bcIndices the bytecode indices of the call sites
+   * @param length the number of call sites of the context
+   */
+  public CallContext(RVMMethod[] methods, int[] bcIndices, int length) {
+    if (org.jikesrvm.VM.VerifyAssertions) org.jikesrvm.VM._assert(length > 0);
+    this.methods = new RVMMethod[length];
+    this.bcIndices = new int[length];
+    for (int i = 0; i < length; i++) {
+      if (org.jikesrvm.VM.VerifyAssertions) org.jikesrvm.VM._assert(methods[i] != null);
+      this.methods[i] = methods[i];
+      this.bcIndices[i] = bcIndices[i];
+    }
+  }
+
+  /**
+   * @return the number of call sites of the context
+   */
+  public int getLength() {
+    return methods.length;
+  }
+
+  /**
+   * @param i the index of a call site, 0 being the innermost
+   * @return the method containing the call site
+   */
+  public RVMMethod getMethod(int i) {
+    return methods[i];
+  }
+
+  /**
+   * @param i the index of a call site, 0 being the innermost
+   * @return the call site's bytecode index in its method
+   */
+  public int getBytecodeIndex(int i) {
+    return bcIndices[i];
+  }
+
+  /**
+   * @return string representation of the context
+   */
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < methods.length; i++) {
+      if (i > 0) sb.append(" <- ");
+      sb.append('<').append(methods[i]).append(", ").append(bcIndices[i]).append('>');
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Determine if two contexts are the same.  Exact match: no wild cards.
+   *
+   * @param obj context to compare to
+   * @return {@code true} if the contexts have the same call sites; otherwise,
+   *  return {@code false}
+   */
+  @Override
+  public boolean equals(Object obj) {
+    if (obj instanceof CallContext) {
+      CallContext cc = (CallContext) obj;
+      if (cc.methods.length != methods.length) return false;
+      for (int i = 0; i < methods.length; i++) {
+        if (!methods[i].equals(cc.methods[i]) || bcIndices[i] != cc.bcIndices[i]) return false;
+      }
+      return true;
+    } else {
+      return false;
+    }
+  }
+
+  /**
+   * @return hash code
+   */
+  @Override
+  public int hashCode() {
+    int hash = 0;
+    for (int i = 0; i < methods.length; i++) {
+      hash = 31 * hash + bcIndices[i] + methods[i].hashCode();
+    }
+    return hash;
+  }
+}
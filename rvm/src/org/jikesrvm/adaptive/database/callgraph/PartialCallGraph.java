@@ -32,6 +32,13 @@ import org.jikesrvm.classloader.MethodReference;
 /**
  * A partial call graph (PCG) is a partial mapping from callsites
  * to weighted targets.
+ * <p>
+ * When {@code -X:aos:dcg_context_depth} is k &gt; 0, the PCG additionally
+ * maps the calling contexts of callsites, up to k enclosing callsites
+ * deep, to the weighted targets sampled in them. A sample is added to every
+ * prefix of its context, so the targets of a context of length l are the
+ * sum over all longer contexts that extend it, and a context can be looked
+ * up with as many enclosing callsites as the caller knows.
  */
 public final class PartialCallGraph implements Decayable, Reportable {
 
@@ -44,6 +51,15 @@ public final class PartialCallGraph implements Decayable, Reportable {
   private final HashMap<UnResolvedCallSite, UnResolvedWeightedCallTargets> unresolvedCallGraph =
       new HashMap<UnResolvedCallSite, UnResolvedWeightedCallTargets>();
 
+  /**
+   * The context-sensitive call graph, which is a mapping from
+   * CallContexts of length 2 or more to WeightedCallTargets.
+   * The weights are not included in totalEdgeWeights as they
+   * duplicate the weights of the callsites.
+   */
+  private final HashMap<CallContext, WeightedCallTargets> contextCallGraph =
+      new HashMap<CallContext, WeightedCallTargets>();
+
   /**
    * sum of all edge weights in the call graph
    */
@@ -70,6 +86,7 @@ public final class PartialCallGraph implements Decayable, Reportable {
   @Override
   public synchronized void reset() {
     callGraph.clear();
+    contextCallGraph.clear();
     totalEdgeWeights = seedWeight;
   }
 
@@ -93,6 +110,9 @@ public final class PartialCallGraph implements Decayable, Reportable {
     for (WeightedCallTargets ct : callGraph.values()) {
       ct.decay(rate);
     }
+    for (WeightedCallTargets ct : contextCallGraph.values()) {
+      ct.decay(rate);
+    }
     totalEdgeWeights /= rate;
   }
 
@@ -131,6 +151,45 @@ public final class PartialCallGraph implements Decayable, Reportable {
     return callGraph.get(callSite);
   }
 
+  /**
+   * @param context the calling context to look for
+   * @return the WeightedCallTargets currently associated with the context,
+   *  or with the callsite if the context has length 1
+   */
+  public synchronized WeightedCallTargets getCallTargets(CallContext context) {
+    if (context.getLength() == 1) {
+      return callGraph.get(new CallSite(context.getMethod(0), context.getBytecodeIndex(0)));
+    }
+    return contextCallGraph.get(context);
+  }
+
+  /**
+   * Increment the edges from all calling contexts of length 2 up to the
+   * given length to the callee, creating them if they are not already
+   * in the call graph. The edge from the innermost callsite alone is
+   * not incremented.
+   *
+   * @param callers   methods making the calls, innermost first
+   * @param bcIndices the call sites in the callers
+   * @param length    the length of the longest context
+   * @param callee    method called at the innermost call site
+   */
+  public synchronized void incrementContextEdges(RVMMethod[] callers, int[] bcIndices, int length, RVMMethod callee) {
+    for (int l = 2; l <= length; l++) {
+      CallContext context = new CallContext(callers, bcIndices, l);
+      WeightedCallTargets targets = contextCallGraph.get(context);
+      if (targets == null) {
+        contextCallGraph.put(context, WeightedCallTargets.create(callee, 1));
+      } else {
+        WeightedCallTargets orig = targets;
+        targets = targets.augmentCount(callee, 1);
+        if (orig != targets) {
+          contextCallGraph.put(context, targets);
+        }
+      }
+    }
+  }
+
   /**
    * Increment the edge represented by the input parameters,
    * creating it if it is not already in the call graph.
@@ -217,6 +276,9 @@ public final class PartialCallGraph implements Decayable, Reportable {
   public synchronized void report() {
     System.out.println("Partial Call Graph");
     System.out.println("  Number of callsites " + callGraph.size() + ", total weight: " + totalEdgeWeights);
+    if (!contextCallGraph.isEmpty()) {
+      System.out.println("  Number of calling contexts " + contextCallGraph.size());
+    }
     System.out.println();
 
     TreeSet<CallSite> tmp = new TreeSet<CallSite>(new OrderByTotalWeight());
@@ -12,19 +12,25 @@
  */
 package org.jikesrvm.adaptive.measurements;
 
+import static org.jikesrvm.runtime.UnboxedSizeConstants.BYTES_IN_ADDRESS;
+
 import java.util.Vector;
 
 import org.jikesrvm.adaptive.controller.Controller;
+import org.jikesrvm.adaptive.measurements.listeners.CollectorSampleListener;
 import org.jikesrvm.adaptive.measurements.listeners.ContextListener;
 import org.jikesrvm.adaptive.measurements.listeners.MethodListener;
 import org.jikesrvm.adaptive.measurements.listeners.NullListener;
+import org.jikesrvm.adaptive.measurements.listeners.StackSampleListener;
 import org.jikesrvm.adaptive.util.AOSLogging;
 import org.jikesrvm.architecture.StackFrameLayout;
 import org.jikesrvm.compilers.common.CompiledMethod;
 import org.jikesrvm.compilers.common.CompiledMethods;
 import org.jikesrvm.runtime.Magic;
+import org.jikesrvm.scheduler.RVMThread;
 import org.vmmagic.pragma.Uninterruptible;
 import org.vmmagic.unboxed.Address;
+import org.vmmagic.unboxed.Offset;
 
 /**
  * RuntimeMeasurements manages listeners, decayable objects, and
@@ -67,6 +73,11 @@ public abstract class RuntimeMeasurements {
    */
   private static NullListener[] timerNullListeners = new NullListener[0];
 
+  /**
+   * listeners on timer ticks for whole stacks
+   */
+  private static StackSampleListener[] timerStackSampleListeners = new StackSampleListener[0];
+
   /**
    * Install a method listener on timer ticks
    * @param s method listener to be installed
@@ -109,6 +120,20 @@ public abstract class RuntimeMeasurements {
     timerNullListeners = tmp;
   }
 
+  /**
+   * Install a stack sample listener on timer ticks
+   * @param s stack sample listener to be installed
+   */
+  public static synchronized void installTimerStackSampleListener(StackSampleListener s) {
+    int numListeners = timerStackSampleListeners.length;
+    StackSampleListener[] tmp = new StackSampleListener[numListeners + 1];
+    for (int i = 0; i < numListeners; i++) {
+      tmp[i] = timerStackSampleListeners[i];
+    }
+    tmp[numListeners] = s;
+    timerStackSampleListeners = tmp;
+  }
+
   /**
    * Called from Thread.yieldpoint every time it is invoked due to
    * a timer interrupt.
@@ -161,6 +186,15 @@ public abstract class RuntimeMeasurements {
         }
       }
     }
+    if (timerStackSampleListeners.length > 0) {
+      // instruction at which the yieldpoint was taken
+      Address ypTakenAt = Magic.getReturnAddress(yieldpointServiceMethodFP);
+      for (StackSampleListener aSl : timerStackSampleListeners) {
+        if (aSl.isActive()) {
+          aSl.update(ypTakenAt, ypTakenInFP);
+        }
+      }
+    }
   }
 
   /////////////////////////////////////////////////////////////////////////
@@ -277,6 +311,60 @@ public abstract class RuntimeMeasurements {
     }
   }
 
+  /////////////////////////////////////////////////////////////////////////
+  // Support for gathering profile data on collector threads
+  /////////////////////////////////////////////////////////////////////////
+
+  /**
+   * listeners on samples of the collector threads
+   */
+  private static CollectorSampleListener[] collectorSampleListeners = new CollectorSampleListener[0];
+
+  /**
+   * Install a listener on samples of the collector threads
+   * @param s collector sample listener to be installed
+   */
+  public static synchronized void installCollectorSampleListener(CollectorSampleListener s) {
+    int numListeners = collectorSampleListeners.length;
+    CollectorSampleListener[] tmp = new CollectorSampleListener[numListeners + 1];
+    for (int i = 0; i < numListeners; i++) {
+      tmp[i] = collectorSampleListeners[i];
+    }
+    tmp[numListeners] = s;
+    collectorSampleListeners = tmp;
+  }
+
+  /**
+   * Called at the end of each collection to hand the samples that the
+   * collector threads' CPU timers recorded during the collection (see
+   * {@link RVMThread#collectorSamples}) to the registered listeners.
+   * Samples taken while no listener is active are discarded.
+   */
+  @Uninterruptible
+  public static void takeCollectorSamples() {
+    RVMThread.acctLock.lockNoHandshake();
+    for (int i = 0; i < RVMThread.numThreads; i++) {
+      RVMThread t = RVMThread.threads[i];
+      if (t == null || t.collectorSamples.isZero()) continue;
+      int n = t.collectorSampleCount;
+      if (n > t.collectorSampleLimit) n = t.collectorSampleLimit;
+      for (int s = 0; s < n; s++) {
+        Address sample = t.collectorSamples.plus(s * RVMThread.COLLECTOR_SAMPLE_WORDS * BYTES_IN_ADDRESS);
+        Address ip = sample.loadAddress();
+        int cmid = sample.loadWord(Offset.fromIntSignExtend(BYTES_IN_ADDRESS)).toInt();
+        Address returnAddress = sample.loadAddress(Offset.fromIntSignExtend(2 * BYTES_IN_ADDRESS));
+        int callerCmid = sample.loadWord(Offset.fromIntSignExtend(3 * BYTES_IN_ADDRESS)).toInt();
+        for (CollectorSampleListener listener : collectorSampleListeners) {
+          if (listener.isActive()) {
+            listener.update(ip, cmid, returnAddress, callerCmid);
+          }
+        }
+      }
+      t.collectorSampleCount = 0;
+    }
+    RVMThread.acctLock.unlock();
+  }
+
   /////////////////////////////////////////////////////////////////////////
   // Support for decay
   /////////////////////////////////////////////////////////////////////////
@@ -369,9 +457,12 @@ public abstract class RuntimeMeasurements {
     timerMethodListeners = new MethodListener[0];
     timerContextListeners = new ContextListener[0];
     timerNullListeners = new NullListener[0];
+    timerStackSampleListeners = new StackSampleListener[0];
 
     cbsMethodListeners = new MethodListener[0];
     cbsContextListeners = new ContextListener[0];
+
+    collectorSampleListeners = new CollectorSampleListener[0];
   }
 
   /**
@@ -0,0 +1,138 @@
+/*
+ *  This file is part of the Jikes RVM project (http://jikesrvm.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  See the COPYRIGHT.txt file distributed with this work for information
+ *  regarding copyright ownership.
+ */
+package org.jikesrvm.adaptive.measurements.listeners;
+
+import org.jikesrvm.compilers.common.CompiledMethod;
+import org.jikesrvm.compilers.common.CompiledMethods;
+import org.vmmagic.pragma.Uninterruptible;
+import org.vmmagic.unboxed.Address;
+
+/**
+ * A CollectorSampleListener collects the samples taken of the collector
+ * threads by their CPU timers.
+ * <p>
+ * Collector code has no yieldpoints, so the samples are recorded by the
+ * timer's signal handler and handed to the listener at the end of each
+ * collection (see {@code RuntimeMeasurements.takeCollectorSamples}).
+ * The listener communicates with its organizer through an integer array,
+ * buffer, of quadruples &lt;cmid, offset, caller cmid, caller offset&gt;:
+ * the sampled compiled method and machine code offset, and the compiled
+ * method and return address offset of its caller (zero if unknown).
+ * When the buffer is full the organizer is activated.
+ */
+@Uninterruptible
+public final class CollectorSampleListener extends Listener {
+
+  /** Number of ints per sample in the buffer */
+  public static final int SAMPLE_INTS = 4;
+
+  /** Number of samples to be gathered before they are processed */
+  private final int sampleSize;
+
+  /** The sample buffer */
+  private final int[] buffer;
+
+  /** Number of samples taken so far */
+  private int numSamples;
+
+  /**
+   * Number of samples that could not be attributed to a compiled method,
+   * e.g. because the collector was in native code or in a prologue
+   */
+  private int unattributed;
+
+  /**
+   * @param sampleSize the number of samples to gather before
+   *  activating the organizer
+   */
+  public CollectorSampleListener(int sampleSize) {
+    this.sampleSize = sampleSize;
+    buffer = new int[sampleSize * SAMPLE_INTS];
+  }
+
+  /**
+   * Record a sample of a collector thread. Only called by the collector
+   * thread that ends a collection, so needs no synchronization.
+   *
+   * @param ip the sampled instruction
+   * @param cmid the compiled method id of the frame that was current
+   * @param returnAddress the return address into the caller
+   * @param callerCmid the compiled method id of the caller's frame
+   */
+  public void update(Address ip, int cmid, Address returnAddress, int callerCmid) {
+    if (numSamples >= sampleSize) return;
+    CompiledMethod cm = lookup(cmid, ip);
+    if (cm == null) {
+      unattributed++;
+      return;
+    }
+    int idx = numSamples * SAMPLE_INTS;
+    buffer[idx] = cmid;
+    buffer[idx + 1] = cm.getInstructionOffset(ip).toInt();
+    CompiledMethod caller = lookup(callerCmid, returnAddress);
+    if (caller != null) {
+      buffer[idx + 2] = callerCmid;
+      buffer[idx + 3] = caller.getInstructionOffset(returnAddress).toInt();
+    } else {
+      buffer[idx + 2] = 0;
+      buffer[idx + 3] = 0;
+    }
+    numSamples++;
+    if (numSamples == sampleSize) {
+      activateOrganizer();
+    }
+  }
+
+  /**
+   * @param cmid a compiled method id read from a stack frame
+   * @param ip an instruction address
+   * @return the compiled method, if {@code cmid} is valid and its code
+   *  contains {@code ip}, {@code null} otherwise
+   */
+  private static CompiledMethod lookup(int cmid, Address ip) {
+    if (cmid <= 0 || cmid >= CompiledMethods.numCompiledMethods()) return null;
+    CompiledMethod cm = CompiledMethods.getCompiledMethodUnchecked(cmid);
+    if (cm == null || !cm.isCompiled() || !cm.containsReturnAddress(ip)) return null;
+    return cm;
+  }
+
+  @Override
+  public void report() { }
+
+  @Override
+  public void reset() {
+    numSamples = 0;
+  }
+
+  /**
+   * @return the buffer of samples
+   */
+  public int[] getSamples() {
+    return buffer;
+  }
+
+  /**
+   * @return how many samples in the array returned by getSamples are valid
+   */
+  public int getNumSamples() {
+    return numSamples;
+  }
+
+  /**
+   * @return the number of samples dropped because they could not be
+   *  attributed to a compiled method
+   */
+  public int getUnattributed() {
+    return unattributed;
+  }
+}
@@ -36,7 +36,14 @@ import org.vmmagic.unboxed.Offset;
  * EdgeListener communicates with an organizer through a
  * integer array, buffer.  Each time this listener is called,
  * it places a triple of integers in buffer that correspond to
- * the callee, caller, and machine code offset of the call site
+ * the callee, caller, and machine code offset of the call site.
+ * <p>
+ * With a context depth k &gt; 0, each triple is followed by k pairs
+ * of compiled method id and return address offset of the frames that
+ * enclose the caller's, innermost first, so that the organizer can
+ * recover the calling context of the call site. Pairs beyond the
+ * bottom of the stack or beyond a frame that cannot be attributed
+ * (native code, hardware traps) are zero.
  */
 @Uninterruptible
 public class EdgeListener extends ContextListener {
@@ -53,6 +60,16 @@ public class EdgeListener extends ContextListener {
    */
   private int[] buffer;
 
+  /**
+   * Number of frames enclosing the caller's recorded per sample
+   */
+  private final int contextDepth;
+
+  /**
+   * Number of ints per sample in the buffer
+   */
+  private final int recordSize;
+
   /**
    * Number of samples to be taken before issuing callback to controller
    */
@@ -74,8 +91,32 @@ public class EdgeListener extends ContextListener {
    * Constructor
    */
   public EdgeListener() {
+    this(0);
+  }
+
+  /**
+   * @param contextDepth the number of frames enclosing the caller's to
+   *  record per sample
+   */
+  public EdgeListener(int contextDepth) {
     buffer = null;
     desiredSamples = 0;
+    this.contextDepth = contextDepth;
+    recordSize = 3 + 2 * contextDepth;
+  }
+
+  /**
+   * @return the number of frames enclosing the caller's recorded per sample
+   */
+  public int getContextDepth() {
+    return contextDepth;
+  }
+
+  /**
+   * @return the number of ints per sample in the buffer
+   */
+  public int getRecordSize() {
+    return recordSize;
   }
 
   /**
@@ -91,12 +132,12 @@ public class EdgeListener extends ContextListener {
    * the buffer.
    *
    * @param buffer the allocated buffer to contain the samples, size should
-   *      be a muliple of 3
+   *      be a muliple of the record size
    */
   public void setBuffer(int[] buffer) {
     // ensure buffer is proper length
     if (VM.VerifyAssertions) {
-      VM._assert(buffer.length % 3 == 0);
+      VM._assert(buffer.length % recordSize == 0);
     }
 
     if (DEBUG) {
@@ -104,7 +145,7 @@ public class EdgeListener extends ContextListener {
     }
 
     this.buffer = buffer;
-    desiredSamples = buffer.length / 3;
+    desiredSamples = buffer.length / recordSize;
     resetBuffer();
   }
 
@@ -192,7 +233,7 @@ public class EdgeListener extends ContextListener {
     // Find out what sample we are.
     int sampleNumber =
         Synchronization.fetchAndAdd(this, AosEntrypoints.edgeListenerSamplesTakenField.getOffset(), 1);
-    int idx = 3 * sampleNumber;
+    int idx = recordSize * sampleNumber;
 
     // If we got buffer slots that are beyond the end of the buffer, that means
     // that we're actually not supposed to take the sample at all (the system
@@ -200,6 +241,28 @@ public class EdgeListener extends ContextListener {
     if (idx < buffer.length) {
       buffer[idx + 1] = callerCMID;
       buffer[idx + 2] = callSite.toInt();
+      boolean walking = true;
+      for (int i = 0; i < contextDepth; i++) {
+        int outerCMID = 0;
+        Offset outerCallSite = Offset.zero();
+        if (walking && !sfp.loadAddress().EQ(StackFrameLayout.getStackFrameSentinelFP())) {
+          returnAddress = Magic.getReturnAddress(sfp);
+          sfp = Magic.getCallerFramePointer(sfp);
+          int cmid = Magic.getCompiledMethodID(sfp);
+          if (cmid != StackFrameLayout.getInvisibleMethodID()) {
+            CompiledMethod cm = CompiledMethods.getCompiledMethod(cmid);
+            if (cm.getCompilerType() != CompiledMethod.TRAP && cm.getCompilerType() != CompiledMethod.JNI) {
+              outerCMID = cmid;
+              outerCallSite = cm.getInstructionOffset(returnAddress);
+            }
+          }
+        }
+        buffer[idx + 3 + 2 * i] = outerCMID;
+        buffer[idx + 4 + 2 * i] = outerCallSite.toInt();
+        // stop walking at the first frame that cannot be attributed,
+        // but clear the remaining pairs
+        walking = outerCMID != 0;
+      }
       Magic.fence();
       buffer[idx + 0] = calleeCMID;
 
@@ -0,0 +1,194 @@
+/*
+ *  This file is part of the Jikes RVM project (http://jikesrvm.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  See the COPYRIGHT.txt file distributed with this work for information
+ *  regarding copyright ownership.
+ */
+package org.jikesrvm.adaptive.measurements.listeners;
+
+import org.jikesrvm.adaptive.AosEntrypoints;
+import org.jikesrvm.architecture.StackFrameLayout;
+import org.jikesrvm.compilers.common.CompiledMethod;
+import org.jikesrvm.compilers.common.CompiledMethods;
+import org.jikesrvm.runtime.Magic;
+import org.jikesrvm.scheduler.Synchronization;
+import org.vmmagic.pragma.Entrypoint;
+import org.vmmagic.pragma.Uninterruptible;
+import org.vmmagic.unboxed.Address;
+import org.vmmagic.unboxed.Offset;
+
+/**
+ * A StackSampleListener records the call stack of the thread that takes
+ * a timer yieldpoint, for the continuous stack profile.
+ * <p>
+ * The samples go to a ring of fixed size slots that the listener fills
+ * without locking while its organizer drains it concurrently. A slot is
+ * laid out as &lt;stamp, depth, (cmid, offset)*&gt;, innermost frame
+ * first, where offset is the machine code offset of the frame's current
+ * instruction or -1 if it is unknown. Sample number {@code n} is written
+ * to slot {@code n % numSlots}, and its stamp {@code n + 1} is stored
+ * last, so a slot whose stamp does not match has not been completely
+ * written. When the organizer falls a full ring behind, new samples are
+ * dropped, without taking a sample number, rather than overwriting
+ * samples that have not been read; every sample number that is taken is
+ * therefore eventually written.
+ */
+@Uninterruptible
+public final class StackSampleListener extends Listener {
+
+  /** Number of ints at the start of a slot before its frames */
+  public static final int HEADER_INTS = 2;
+
+  /** The ring of sample slots */
+  private final int[] ring;
+
+  /** Number of slots in the ring */
+  private final int numSlots;
+
+  /** Maximum number of frames recorded per sample */
+  private final int maxDepth;
+
+  /** Number of ints per slot */
+  private final int slotInts;
+
+  /**
+   * Number of samples that have been started; the next sample number
+   */
+  @Entrypoint
+  private int samplesTaken;
+
+  /**
+   * Number of samples dropped because the ring was full
+   */
+  @Entrypoint
+  private int samplesDropped;
+
+  /**
+   * Number of samples that the organizer has finished reading
+   */
+  private int samplesConsumed;
+
+  /**
+   * @param numSlots the number of samples the ring can hold
+   * @param maxDepth the maximum number of frames to record per sample
+   */
+  public StackSampleListener(int numSlots, int maxDepth) {
+    this.numSlots = numSlots;
+    this.maxDepth = maxDepth;
+    slotInts = HEADER_INTS + 2 * maxDepth;
+    ring = new int[numSlots * slotInts];
+  }
+
+  /**
+   * Record the stack of the current thread.
+   * <p>
+   * NOTE: This method is uninterruptible, therefore we don't need to disable
+   *       thread switching during stackframe inspection.
+   *
+   * @param ip the address of the instruction at which the yieldpoint
+   *  was taken
+   * @param fp the frame pointer of the method that took the yieldpoint
+   */
+  public void update(Address ip, Address fp) {
+    Offset takenOffset = AosEntrypoints.stackSampleListenerSamplesTakenField.getOffset();
+    int n;
+    do {
+      n = samplesTaken;
+      if (n - samplesConsumed >= numSlots) {
+        // The ring is full
+        Synchronization.fetchAndAdd(this, AosEntrypoints.stackSampleListenerSamplesDroppedField.getOffset(), 1);
+        return;
+      }
+    } while (!Synchronization.tryCompareAndSwap(this, takenOffset, n, n + 1));
+    int base = ((n & Integer.MAX_VALUE) % numSlots) * slotInts;
+    int depth = 0;
+    while (depth < maxDepth && !fp.loadAddress().EQ(StackFrameLayout.getStackFrameSentinelFP())) {
+      int cmid = Magic.getCompiledMethodID(fp);
+      if (cmid != StackFrameLayout.getInvisibleMethodID()) {
+        CompiledMethod cm = CompiledMethods.getCompiledMethod(cmid);
+        if (cm != null && cm.getCompilerType() != CompiledMethod.TRAP) {
+          int idx = base + HEADER_INTS + 2 * depth;
+          ring[idx] = cmid;
+          ring[idx + 1] = cm.containsReturnAddress(ip) ? cm.getInstructionOffset(ip).toInt() : -1;
+          depth++;
+        }
+      }
+      ip = Magic.getReturnAddress(fp);
+      fp = Magic.getCallerFramePointer(fp);
+    }
+    ring[base + 1] = depth;
+    Magic.fence();
+    ring[base] = n + 1;
+  }
+
+  /**
+   * @return the number of samples started so far
+   */
+  public int getSamplesTaken() {
+    return samplesTaken;
+  }
+
+  /**
+   * @return the number of samples dropped because the ring was full
+   */
+  public int getSamplesDropped() {
+    return samplesDropped;
+  }
+
+  /**
+   * @return the number of samples the organizer has read
+   */
+  public int getSamplesConsumed() {
+    return samplesConsumed;
+  }
+
+  /**
+   * Release the slots of all samples up to the given one for reuse.
+   * Called by the organizer once it has read them, so all of the
+   * samples must have been completely written.
+   *
+   * @param n the number of samples read so far
+   */
+  public void setSamplesConsumed(int n) {
+    Magic.fence();
+    samplesConsumed = n;
+  }
+
+  /**
+   * @param n a sample number
+   * @return the index in the ring of the slot of the sample, if the sample
+   *  has been completely written, -1 otherwise
+   */
+  public int getSlot(int n) {
+    int base = ((n & Integer.MAX_VALUE) % numSlots) * slotInts;
+    if (ring[base] != n + 1) return -1;
+    Magic.fence();
+    return base;
+  }
+
+  /**
+   * @return the ring of samples
+   */
+  public int[] getRing() {
+    return ring;
+  }
+
+  /**
+   * @return the number of slots in the ring
+   */
+  public int getNumSlots() {
+    return numSlots;
+  }
+
+  @Override
+  public void report() { }
+
+  @Override
+  public void reset() { }
+}
@@ -0,0 +1,230 @@
+/*
+ *  This file is part of the Jikes RVM project (http://jikesrvm.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  See the COPYRIGHT.txt file distributed with this work for information
+ *  regarding copyright ownership.
+ */
+package org.jikesrvm.adaptive.measurements.organizers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import org.jikesrvm.VM;
+import org.jikesrvm.adaptive.controller.Controller;
+import org.jikesrvm.adaptive.controller.ControllerMemory;
+import org.jikesrvm.adaptive.controller.ControllerPlan;
+import org.jikesrvm.adaptive.measurements.RuntimeMeasurements;
+import org.jikesrvm.adaptive.measurements.listeners.CollectorSampleListener;
+import org.jikesrvm.adaptive.util.AOSLogging;
+import org.jikesrvm.classloader.NormalMethod;
+import org.jikesrvm.classloader.RVMClass;
+import org.jikesrvm.classloader.RVMMethod;
+import org.jikesrvm.compilers.baseline.BaselineCompiledMethod;
+import org.jikesrvm.compilers.common.CompiledMethod;
+import org.jikesrvm.compilers.common.CompiledMethods;
+import org.jikesrvm.compilers.opt.driver.CompilationPlan;
+import org.jikesrvm.compilers.opt.runtimesupport.OptCompiledMethod;
+import org.jikesrvm.compilers.opt.runtimesupport.OptMachineCodeMap;
+import org.vmmagic.pragma.NonMoving;
+import org.vmmagic.unboxed.Offset;
+
+/**
+ * An organizer for the samples taken of the collector threads
+ * (enabled with {@code -X:aos:gc_sampling=true}).
+ * <p>
+ * The samples are added to the global method sample data and their call
+ * edges to the dynamic call graph, so that the collector's hot paths are
+ * visible to the adaptive system like any other code. Samples are also
+ * accumulated per method for the collector hotness report printed at exit.
+ * <p>
+ * With {@code -X:aos:gc_recompilation=true}, collector methods that
+ * receive at least {@code GC_HOT_METHOD_THRESHOLD} of the samples are
+ * recompiled once at the maximum opt level, with the call graph guiding
+ * inlining, and the new code is used from the next collection on. Only
+ * methods of the memory manager that are still running their boot image
+ * code are recompiled: the boot image code is never reclaimed, so a
+ * collector thread that is still executing it (collector stacks are not
+ * scanned for obsolete code) remains safe.
+ */
+@NonMoving
+public final class CollectorSampleOrganizer extends Organizer {
+
+  /** How many methods to report */
+  private static final int REPORT_SIZE = 30;
+
+  /** Samples per compiled method, for the report and for recompilation */
+  private final HashMap<RVMMethod, int[]> methodSamples = new HashMap<RVMMethod, int[]>();
+
+  /** Methods that have been recompiled because they were hot in the collector */
+  private final HashSet<RVMMethod> recompiled = new HashSet<RVMMethod>();
+
+  /** Scratch space for the compiled method ids of a window of samples */
+  private int[] cmids;
+
+  /** Total number of samples processed */
+  private int totalSamples;
+
+  @Override
+  public void initialize() {
+    CollectorSampleListener collectorListener = new CollectorSampleListener(Controller.options.GC_SAMPLE_SIZE);
+    cmids = new int[Controller.options.GC_SAMPLE_SIZE];
+    listener = collectorListener;
+    listener.setOrganizer(this);
+    RuntimeMeasurements.installCollectorSampleListener(collectorListener);
+  }
+
+  @Override
+  void thresholdReached() {
+    AOSLogging.logger.organizerThresholdReached();
+
+    int numSamples = ((CollectorSampleListener) listener).getNumSamples();
+    int[] samples = ((CollectorSampleListener) listener).getSamples();
+
+    for (int i = 0; i < numSamples; i++) {
+      int idx = i * CollectorSampleListener.SAMPLE_INTS;
+      cmids[i] = samples[idx];
+      CompiledMethod cm = CompiledMethods.getCompiledMethod(samples[idx]);
+      if (cm == null) continue;
+      RVMMethod callee = cm.getMethod();
+      synchronized (this) {
+        int[] count = methodSamples.get(callee);
+        if (count == null) {
+          count = new int[1];
+          methodSamples.put(callee, count);
+        }
+        count[0]++;
+        totalSamples++;
+      }
+      if (Controller.dcg != null && samples[idx + 2] != 0) {
+        addEdge(samples[idx + 2], Offset.fromIntSignExtend(samples[idx + 3]), callee);
+      }
+    }
+
+    // Make the samples visible to the rest of the adaptive system
+    if (Controller.methodSamples != null) {
+      Controller.methodSamples.update(cmids, numSamples);
+    }
+
+    if (Controller.options.GC_RECOMPILATION && Controller.options.sampling() &&
+        Controller.options.ENABLE_RECOMPILATION) {
+      recompileHotMethods();
+    }
+  }
+
+  /**
+   * Add the call edge from the call site at the given return address
+   * offset to the callee to the dynamic call graph.
+   *
+   * @param callerCmid the compiled method id of the caller
+   * @param offset the offset of the return address in the caller
+   * @param callee the method that was called
+   */
+  private void addEdge(int callerCmid, Offset offset, RVMMethod callee) {
+    CompiledMethod callerCM = CompiledMethods.getCompiledMethod(callerCmid);
+    if (callerCM == null) return;
+    RVMMethod caller;
+    int bytecodeIndex;
+    switch (callerCM.getCompilerType()) {
+      case CompiledMethod.BASELINE:
+        caller = callerCM.getMethod();
+        bytecodeIndex = ((BaselineCompiledMethod) callerCM).findBytecodeIndexForInstruction(offset);
+        break;
+      case CompiledMethod.OPT: {
+        OptMachineCodeMap mcMap = ((OptCompiledMethod) callerCM).getMCMap();
+        bytecodeIndex = mcMap.getBytecodeIndexForMCOffset(offset);
+        caller = mcMap.getMethodForMCOffset(offset);
+        break;
+      }
+      default:
+        return;
+    }
+    if (caller == null || bytecodeIndex == -1) return;
+    Controller.dcg.incrementEdge(caller, bytecodeIndex, callee);
+  }
+
+  /**
+   * Schedule the recompilation of the memory manager methods that account
+   * for at least {@code GC_HOT_METHOD_THRESHOLD} of the collector samples.
+   */
+  private void recompileHotMethods() {
+    ArrayList<RVMMethod> hot = new ArrayList<RVMMethod>();
+    synchronized (this) {
+      double threshold = Controller.options.GC_HOT_METHOD_THRESHOLD * totalSamples;
+      for (Map.Entry<RVMMethod, int[]> entry : methodSamples.entrySet()) {
+        if (entry.getValue()[0] >= threshold && !recompiled.contains(entry.getKey())) {
+          hot.add(entry.getKey());
+        }
+      }
+    }
+    for (RVMMethod method : hot) {
+      if (!canRecompile(method)) continue;
+      CompiledMethod cm = method.getCurrentCompiledMethod();
+      CompilationPlan compPlan =
+          Controller.recompilationStrategy.createCompilationPlan((NormalMethod) method,
+                                                                 Controller.options.DERIVED_MAX_OPT_LEVEL,
+                                                                 null);
+      double priority;
+      synchronized (this) {
+        priority = methodSamples.get(method)[0];
+        recompiled.add(method);
+      }
+      ControllerPlan plan = new ControllerPlan(compPlan, Controller.controllerClock, cm.getId(), 1.0, 0.0, priority);
+      plan.execute();
+    }
+  }
+
+  /**
+   * @param method a method that is hot in the collector
+   * @return whether the method is memory manager code that is still running
+   *  the code of the boot image and may be recompiled
+   */
+  private static boolean canRecompile(RVMMethod method) {
+    if (!(method instanceof NormalMethod) || method.hasNoOptCompileAnnotation()) return false;
+    RVMClass cls = method.getDeclaringClass();
+    if (!cls.isInBootImage() || cls.hasDynamicBridgeAnnotation() || cls.hasBridgeFromNativeAnnotation()) {
+      return false;
+    }
+    String pkg = cls.getPackageName();
+    if (!pkg.startsWith("org.mmtk") && !pkg.startsWith("org.jikesrvm.mm")) return false;
+    if (method.getCurrentCompiledMethod() == null) return false;
+    // Any code other than the boot image's was compiled by an AOS plan
+    return ControllerMemory.shouldConsiderForInitialRecompilation(method);
+  }
+
+  /**
+   * Report the methods in which the collector threads spent the most time,
+   * most expensive first.
+   */
+  @Override
+  public synchronized void report() {
+    VM.sysWriteln();
+    VM.sysWrite("Collector method hotness: ", totalSamples, " samples");
+    VM.sysWriteln(", ", ((CollectorSampleListener) listener).getUnattributed(), " unattributed");
+    ArrayList<Map.Entry<RVMMethod, int[]>> entries = new ArrayList<Map.Entry<RVMMethod, int[]>>(methodSamples.entrySet());
+    for (int rank = 1; rank <= REPORT_SIZE && !entries.isEmpty(); rank++) {
+      int best = 0;
+      for (int i = 1; i < entries.size(); i++) {
+        if (entries.get(i).getValue()[0] > entries.get(best).getValue()[0]) best = i;
+      }
+      Map.Entry<RVMMethod, int[]> entry = entries.remove(best);
+      int count = entry.getValue()[0];
+      VM.sysWrite(rank, ": ");
+      VM.sysWrite(count, " samples (");
+      VM.sysWrite(100.0 * count / totalSamples);
+      VM.sysWrite("%) ");
+      VM.sysWrite(entry.getKey());
+      if (recompiled.contains(entry.getKey())) {
+        VM.sysWrite(" [recompiled]");
+      }
+      VM.sysWriteln();
+    }
+  }
+}
@@ -16,12 +16,14 @@ import org.jikesrvm.VM;
 import org.jikesrvm.adaptive.controller.Controller;
 import org.jikesrvm.adaptive.measurements.RuntimeMeasurements;
 import org.jikesrvm.adaptive.measurements.listeners.EdgeListener;
+import org.jikesrvm.classloader.MemberReference;
 import org.jikesrvm.classloader.RVMMethod;
 import org.jikesrvm.compilers.baseline.BaselineCompiledMethod;
 import org.jikesrvm.compilers.common.CompiledMethod;
 import org.jikesrvm.compilers.common.CompiledMethods;
 import org.jikesrvm.compilers.opt.OptimizingCompilerException;
 import org.jikesrvm.compilers.opt.runtimesupport.OptCompiledMethod;
+import org.jikesrvm.compilers.opt.runtimesupport.OptEncodedCallSiteTree;
 import org.jikesrvm.compilers.opt.runtimesupport.OptMachineCodeMap;
 import org.jikesrvm.scheduler.RVMThread;
 import org.vmmagic.unboxed.Offset;
@@ -36,6 +38,12 @@ import org.vmmagic.pragma.NonMoving;
  * via threshold reached, it processes the sequence of triples
  * that are contained in buffer.
  * <p>
+ * With {@code -X:aos:dcg_context_depth} k &gt; 0, each triple is followed by
+ * the frames that enclose the caller's, from which the organizer recovers
+ * up to k callsites of the calling context of the edge, including those of
+ * methods inlined into opt compiled frames, and adds the edge to the
+ * context-sensitive part of the call graph as well.
+ * <p>
  * After processing the buffer and updating the dynamic call graph,
  * it optionally notifies the AdaptiveInliningOrganizer who is responsible
  * for analyzing the dynamic call graph for the purposes of
@@ -72,6 +80,13 @@ public class DynamicCallGraphOrganizer extends Organizer {
   private int bufferSize;
   /** the maximum number of triples contained in buffer */
   private int numberOfBufferTriples;
+  /** the number of ints per triple and its context in buffer */
+  private int recordSize;
+
+  /** scratch space for the methods of the calling context of a sample */
+  private RVMMethod[] contextMethods;
+  /** scratch space for the bytecode indices of the calling context of a sample */
+  private int[] contextBCIndices;
 
   /**
    * Countdown of times we have to have called thresholdReached before
@@ -105,8 +120,14 @@ public class DynamicCallGraphOrganizer extends Organizer {
       numberOfBufferTriples = Controller.options.DCG_SAMPLE_SIZE;
     }
     numberOfBufferTriples *= RVMThread.availableProcessors;
-    bufferSize = numberOfBufferTriples * 3;
+    recordSize = ((EdgeListener) listener).getRecordSize();
+    bufferSize = numberOfBufferTriples * recordSize;
     buffer = new int[bufferSize];
+    int contextDepth = ((EdgeListener) listener).getContextDepth();
+    if (contextDepth > 0) {
+      contextMethods = new RVMMethod[contextDepth + 1];
+      contextBCIndices = new int[contextDepth + 1];
+    }
 
     ((EdgeListener) listener).setBuffer(buffer);
 
@@ -136,7 +157,7 @@ public class DynamicCallGraphOrganizer extends Organizer {
   void thresholdReached() {
     if (DEBUG) VM.sysWriteln("DCG_Organizer.thresholdReached()");
 
-    for (int i = 0; i < bufferSize; i = i + 3) {
+    for (int i = 0; i < bufferSize; i = i + recordSize) {
       int calleeCMID = 0;
       // FIXME: This is necessary but hacky and may not even be correct.
       while (calleeCMID == 0) {
@@ -240,12 +261,85 @@ public class DynamicCallGraphOrganizer extends Organizer {
 
       // increment the call graph edge, adding it if needed
       Controller.dcg.incrementEdge(caller, bytecodeIndex, callee);
+
+      if (contextMethods != null) {
+        addContextEdges(i, compiledMethod, MCOffset, callee);
+      }
     }
     if (thresholdReachedCount > 0) {
       thresholdReachedCount--;
     }
   }
 
+  /**
+   * Recover the calling context of the sample at the given index of
+   * buffer and add its edges to the dynamic call graph.
+   *
+   * @param idx the index of the sample in buffer
+   * @param callerCM the compiled method of the caller's frame
+   * @param callerOffset the offset of the call site in the caller's frame
+   * @param callee the method called
+   */
+  private void addContextEdges(int idx, CompiledMethod callerCM, Offset callerOffset, RVMMethod callee) {
+    int length = addContextSites(callerCM, callerOffset, 0);
+    for (int j = idx + 3; j < idx + recordSize && length > 0 && length < contextMethods.length; j += 2) {
+      if (buffer[j] == 0) break;
+      CompiledMethod cm = CompiledMethods.getCompiledMethod(buffer[j]);
+      if (cm == null) break;
+      int newLength = addContextSites(cm, Offset.fromIntSignExtend(buffer[j + 1]), length);
+      if (newLength == -1) break;
+      length = newLength;
+    }
+    if (length > 1) {
+      Controller.dcg.incrementContextEdges(contextMethods, contextBCIndices, length, callee);
+    }
+  }
+
+  /**
+   * Append the callsites of a frame to the calling context, innermost
+   * first. An opt compiled frame has a callsite for each method that is
+   * inlined at the offset.
+   *
+   * @param cm the compiled method of the frame
+   * @param offset the offset of the call site in the frame
+   * @param length the length of the context so far
+   * @return the new length of the context, or -1 if the frame could not
+   *  be attributed to callsites
+   */
+  private int addContextSites(CompiledMethod cm, Offset offset, int length) {
+    switch (cm.getCompilerType()) {
+      case CompiledMethod.BASELINE: {
+        int bci = ((BaselineCompiledMethod) cm).findBytecodeIndexForInstruction(offset);
+        if (bci == -1) return -1;
+        contextMethods[length] = cm.getMethod();
+        contextBCIndices[length] = bci;
+        return length + 1;
+      }
+      case CompiledMethod.OPT: {
+        OptMachineCodeMap mcMap = ((OptCompiledMethod) cm).getMCMap();
+        int iei = mcMap.getInlineEncodingForMCOffset(offset);
+        if (iei < 0) return -1;
+        int bci = mcMap.getBytecodeIndexForMCOffset(offset);
+        if (bci == -1) return -1;
+        int[] inlineEncoding = mcMap.inlineEncoding;
+        for (int j = iei; j >= 0 && length < contextMethods.length; j = OptEncodedCallSiteTree.getParent(j, inlineEncoding)) {
+          int mid = OptEncodedCallSiteTree.getMethodID(j, inlineEncoding);
+          RVMMethod m = MemberReference.getMethodRef(mid).peekResolvedMethod();
+          if (m == null) return -1;
+          contextMethods[length] = m;
+          contextBCIndices[length] = bci;
+          length++;
+          if (j > 0) {
+            bci = OptEncodedCallSiteTree.getByteCodeOffset(j, inlineEncoding);
+          }
+        }
+        return length;
+      }
+      default:
+        return -1;
+    }
+  }
+
   /**
    * Checks if the dynamic call graph organizer has gathered and processed enough samples to support decisions.
    * @return {@code true} if enough data is available, {@code false} otherwise
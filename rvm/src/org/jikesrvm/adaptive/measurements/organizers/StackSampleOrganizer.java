@@ -0,0 +1,226 @@
+/*
+ *  This file is part of the Jikes RVM project (http://jikesrvm.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  See the COPYRIGHT.txt file distributed with this work for information
+ *  regarding copyright ownership.
+ */
+package org.jikesrvm.adaptive.measurements.organizers;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jikesrvm.VM;
+import org.jikesrvm.adaptive.controller.Controller;
+import org.jikesrvm.adaptive.measurements.RuntimeMeasurements;
+import org.jikesrvm.adaptive.measurements.listeners.StackSampleListener;
+import org.jikesrvm.classloader.MemberReference;
+import org.jikesrvm.classloader.RVMMethod;
+import org.jikesrvm.compilers.common.CompiledMethod;
+import org.jikesrvm.compilers.common.CompiledMethods;
+import org.jikesrvm.compilers.opt.runtimesupport.OptCompiledMethod;
+import org.jikesrvm.compilers.opt.runtimesupport.OptEncodedCallSiteTree;
+import org.jikesrvm.compilers.opt.runtimesupport.OptMachineCodeMap;
+import org.jikesrvm.runtime.Time;
+import org.jikesrvm.scheduler.RVMThread;
+import org.vmmagic.pragma.NonMoving;
+import org.vmmagic.unboxed.Offset;
+
+/**
+ * An organizer that turns the stack samples taken at timer yieldpoints
+ * into a continuous profile (enabled with {@code -X:aos:stack_profile=true}).
+ * <p>
+ * Unlike the other organizers it is not activated by its listener: the
+ * listener stays active and fills its ring of samples while the organizer
+ * drains the ring periodically. The samples are folded into counts per
+ * distinct stack, with the frames of methods inlined by the opt compiler
+ * expanded, and every {@code STACK_PROFILE_INTERVAL} milliseconds, and at
+ * exit, the counts gathered since the last write are appended to
+ * {@code STACK_PROFILE_FILE} in the collapsed-stack format: one line per
+ * stack, holding its frames from the outermost to the innermost separated
+ * by semicolons, a space and the number of samples. The counts are then
+ * discarded, so the organizer only holds the stacks of one interval and a
+ * stack may appear on several lines of the file; the usual flame graph
+ * tools, whose input format this is, add up the lines of the same stack.
+ */
+@NonMoving
+public final class StackSampleOrganizer extends Organizer {
+
+  /** How many milliseconds to sleep between drains of the ring */
+  private static final int DRAIN_PERIOD = 100;
+
+  /** Samples per stack since the last write, keyed by the collapsed stack */
+  private final HashMap<String, int[]> stacks = new HashMap<String, int[]>();
+
+  /** Scratch space for the frames of one machine code frame */
+  private final ArrayList<RVMMethod> inlined = new ArrayList<RVMMethod>();
+
+  /** Number of samples folded into the profile */
+  private int totalSamples;
+
+  /** Number of lines written to the profile */
+  private int linesWritten;
+
+  /** Whether the profile file has been created */
+  private boolean fileCreated;
+
+  @Override
+  public void initialize() {
+    StackSampleListener stackListener =
+        new StackSampleListener(Controller.options.STACK_PROFILE_BUFFER_SIZE, Controller.options.STACK_PROFILE_MAX_DEPTH);
+    listener = stackListener;
+    listener.setOrganizer(this);
+    RuntimeMeasurements.installTimerStackSampleListener(stackListener);
+  }
+
+  /**
+   * Drain the listener's ring every {@link #DRAIN_PERIOD} milliseconds
+   * and write the profile every {@code STACK_PROFILE_INTERVAL} milliseconds.
+   * The listener is never passivated, so sampling continues while the
+   * ring is drained.
+   */
+  @Override
+  public void run() {
+    initialize();
+    listener.activate();
+    long nextWrite = Time.currentTimeMillis() + Controller.options.STACK_PROFILE_INTERVAL;
+    while (true) {
+      try {
+        RVMThread.sleep(DRAIN_PERIOD * 1000L * 1000L);
+      } catch (InterruptedException e) {
+        // Drain early
+      }
+      try {
+        thresholdReached();
+        if (Time.currentTimeMillis() >= nextWrite) {
+          writeProfile();
+          nextWrite = Time.currentTimeMillis() + Controller.options.STACK_PROFILE_INTERVAL;
+        }
+      } catch (Exception e) {
+        e.printStackTrace();
+        if (VM.ErrorsFatal) VM.sysFail("Exception in organizer " + this);
+      }
+    }
+  }
+
+  /**
+   * Fold the samples in the listener's ring into the profile and release
+   * their slots. We stop at the first sample that is still being written,
+   * since its slot must not be handed back to the listener; it is read by
+   * the next drain.
+   */
+  @Override
+  synchronized void thresholdReached() {
+    StackSampleListener stackListener = (StackSampleListener) listener;
+    int[] ring = stackListener.getRing();
+    int first = stackListener.getSamplesConsumed();
+    int last = stackListener.getSamplesTaken();
+    StringBuilder stack = new StringBuilder();
+    int n;
+    for (n = first; n != last; n++) {
+      int base = stackListener.getSlot(n);
+      if (base == -1) {
+        // Still being written by another processor
+        break;
+      }
+      stack.setLength(0);
+      int depth = ring[base + 1];
+      for (int i = depth - 1; i >= 0; i--) {
+        int idx = base + StackSampleListener.HEADER_INTS + 2 * i;
+        appendFrames(stack, ring[idx], ring[idx + 1]);
+      }
+      if (stack.length() == 0) continue;
+      String key = stack.toString();
+      int[] count = stacks.get(key);
+      if (count == null) {
+        count = new int[1];
+        stacks.put(key, count);
+      }
+      count[0]++;
+      totalSamples++;
+    }
+    stackListener.setSamplesConsumed(n);
+  }
+
+  /**
+   * Append the frames of a machine code frame to a collapsed stack,
+   * outermost first. A frame of opt compiled code has one frame per
+   * method that is inlined at its current instruction.
+   *
+   * @param stack the collapsed stack
+   * @param cmid the compiled method id of the frame
+   * @param offset the machine code offset of the frame's current
+   *  instruction, -1 if unknown
+   */
+  private void appendFrames(StringBuilder stack, int cmid, int offset) {
+    CompiledMethod cm = CompiledMethods.getCompiledMethod(cmid);
+    if (cm == null) return;
+    inlined.clear();
+    if (cm.getCompilerType() == CompiledMethod.OPT && offset != -1) {
+      OptMachineCodeMap mcMap = ((OptCompiledMethod) cm).getMCMap();
+      int iei = mcMap.getInlineEncodingForMCOffset(Offset.fromIntSignExtend(offset));
+      if (iei >= 0) {
+        int[] inlineEncoding = mcMap.inlineEncoding;
+        for (int j = iei; j >= 0; j = OptEncodedCallSiteTree.getParent(j, inlineEncoding)) {
+          int mid = OptEncodedCallSiteTree.getMethodID(j, inlineEncoding);
+          RVMMethod m = MemberReference.getMethodRef(mid).peekResolvedMethod();
+          if (m != null) inlined.add(m);
+        }
+      }
+    }
+    if (inlined.isEmpty()) {
+      inlined.add(cm.getMethod());
+    }
+    for (int i = inlined.size() - 1; i >= 0; i--) {
+      RVMMethod m = inlined.get(i);
+      if (stack.length() > 0) stack.append(';');
+      stack.append(m.getDeclaringClass().toString()).append('.').append(m.getName().toString());
+    }
+  }
+
+  /**
+   * Append the collapsed stacks gathered since the last write to
+   * {@code STACK_PROFILE_FILE}, which the first write truncates, and
+   * forget them.
+   */
+  private synchronized void writeProfile() {
+    try {
+      PrintStream out = new PrintStream(new FileOutputStream(Controller.options.STACK_PROFILE_FILE, fileCreated));
+      fileCreated = true;
+      for (Map.Entry<String, int[]> entry : stacks.entrySet()) {
+        out.print(entry.getKey());
+        out.print(' ');
+        out.println(entry.getValue()[0]);
+      }
+      out.close();
+      linesWritten += stacks.size();
+    } catch (IOException e) {
+      VM.sysWriteln("IOException caught while writing the stack profile to " + Controller.options.STACK_PROFILE_FILE);
+    }
+    stacks.clear();
+  }
+
+  /**
+   * Drain the remaining samples and write the final profile.
+   */
+  @Override
+  public void report() {
+    if (listener == null) return;
+    thresholdReached();
+    writeProfile();
+    VM.sysWriteln();
+    VM.sysWrite("Stack profile: ", totalSamples, " samples");
+    VM.sysWrite(", ", ((StackSampleListener) listener).getSamplesDropped(), " dropped, ");
+    VM.sysWrite(linesWritten, " stacks written to ");
+    VM.sysWriteln(Controller.options.STACK_PROFILE_FILE);
+  }
+}
@@ -16,6 +16,8 @@ import java.io.File;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.security.CodeSource;
+import java.security.cert.Certificate;
 import java.util.StringTokenizer;
 
 import org.jikesrvm.VM;
@@ -88,6 +90,34 @@ public class ApplicationClassLoader extends URLClassLoader {
           "JikesRVM: ApplicationClassLoader: Initialization Failed with a MalformedURLException; there was an error setting the application's classpath: " +
           e);
     }
+    if (VM.runningVM && (VM.classDataArchive != null || VM.dumpClassDataArchive != null)) {
+      ClassDataArchive.boot(this);
+    }
+  }
+
+  /**
+   * Define classes from the {@link ClassDataArchive}, if one is in use,
+   * before searching the class path. A class from the archive gets the
+   * protection domain of the class path entry it was loaded from by the
+   * dump run.
+   */
+  @Override
+  protected Class<?> findClass(String className) throws ClassNotFoundException {
+    if (VM.classDataArchive != null) {
+      ClassDataArchive.Entry entry = ClassDataArchive.lookup(className);
+      if (entry != null) {
+        int lastDot = className.lastIndexOf('.');
+        if (lastDot != -1) {
+          String packageName = className.substring(0, lastDot);
+          if (getPackage(packageName) == null) {
+            definePackage(packageName, null, null, null, null, null, null, null);
+          }
+        }
+        CodeSource source = new CodeSource(ClassDataArchive.getSource(entry.source), (Certificate[]) null);
+        return defineClass(className, entry.getClassFile(), source);
+      }
+    }
+    return super.findClass(className);
   }
 
   /** Name of the Application Class Loader.  Actually used by Jikes RVM's
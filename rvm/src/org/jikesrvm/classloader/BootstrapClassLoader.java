@@ -12,6 +12,7 @@
  */
 package org.jikesrvm.classloader;
 
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -101,6 +102,14 @@ public final class BootstrapClassLoader extends java.lang.ClassLoader {
     return bootstrapClassLoader;
   }
 
+  /**
+   * @param className the name of a class
+   * @return whether this class loader has loaded the class
+   */
+  boolean hasLoaded(String className) {
+    return loaded.get(className) != null;
+  }
+
   /**
    * Backdoor for use by TypeReference.resolve when !VM.runningVM.
    * As of this writing, it is not used by any other classes.
@@ -189,7 +198,12 @@ public final class BootstrapClassLoader extends java.lang.ClassLoader {
         if (className.startsWith("L") && className.endsWith(";")) {
           className = className.substring(1, className.length() - 2);
         }
-        InputStream is = getResourceAsStream(className.replace('.', File.separatorChar) + ".class");
+        InputStream is;
+        if (VM.prefetchClassFiles) {
+          is = getClassFileAsStream(className);
+        } else {
+          is = getResourceAsStream(className.replace('.', File.separatorChar) + ".class");
+        }
         if (is == null) throw new ClassNotFoundException(className);
         DataInputStream dataInputStream = new DataInputStream(is);
         Class<?> cls = null;
@@ -236,6 +250,39 @@ public final class BootstrapClassLoader extends java.lang.ClassLoader {
     T getResult();
   }
 
+  /**
+   * Find the class file of a class on the bootstrap class path, using the
+   * copy prefetched by the {@link ClassFilePrefetcher} if it was read from
+   * the class path entry that defines the class.
+   *
+   * @param className the name of the class
+   * @return a stream on the class file or {@code null} if it was not found
+   */
+  private InputStream getClassFileAsStream(final String className) {
+    Handler<InputStream> findStream = new Handler<InputStream>() {
+      InputStream stream;
+
+      @Override
+      public InputStream getResult() {
+        return stream;
+      }
+
+      @Override
+      public void process(ZipFile zf, ZipEntry ze) throws Exception {
+        byte[] prefetched = ClassFilePrefetcher.take(className, zf.getName());
+        stream = prefetched != null ? new ByteArrayInputStream(prefetched) : zf.getInputStream(ze);
+      }
+
+      @Override
+      public void process(File file) throws Exception {
+        ClassFilePrefetcher.take(className, null);
+        stream = new FileInputStream(file);
+      }
+    };
+
+    return getResourceInternal(className.replace('.', File.separatorChar) + ".class", findStream, false);
+  }
+
   @Override
   public InputStream getResourceAsStream(final String name) {
     Handler<InputStream> findStream = new Handler<InputStream>() {
@@ -0,0 +1,356 @@
+/*
+ *  This file is part of the Jikes RVM project (http://jikesrvm.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  See the COPYRIGHT.txt file distributed with this work for information
+ *  regarding copyright ownership.
+ */
+package org.jikesrvm.classloader;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.jikesrvm.VM;
+import org.jikesrvm.runtime.Callbacks;
+
+/**
+ * An archive of the application classes loaded by a previous run of the VM.
+ * <p>
+ * A dump run ({@code -X:vm:dumpClassDataArchive=<file>}) records the class
+ * file of every class successfully defined by the application class loader
+ * from its class path, in definition order, and writes them to a single
+ * archive at exit. A later run with {@code -X:vm:classDataArchive=<file>}
+ * maps the archive read-only and the {@link ApplicationClassLoader} defines
+ * classes from it, without searching the class path or inflating jar
+ * entries. Because the archive is mapped rather than read, VMs on the same
+ * host share its pages.
+ * <p>
+ * The archive is only used when the application class path matches the one
+ * of the dump run and no jar or zip file on it has been modified since;
+ * otherwise it is ignored. A class loaded from a directory is only taken
+ * from the archive if its class file has not been modified since.
+ * <p>
+ * Archive format (big endian, as written by {@link DataOutputStream}):
+ * <pre>
+ *   int    MAGIC
+ *   int    VERSION
+ *   UTF    application class path of the dump run
+ *   int    number of class path entries
+ *   { long last modified; long size } *     (-1 for directories)
+ *   int    number of classes
+ *   { UTF class name; int class path entry;
+ *     long last modified; long size;        (-1 for classes from a jar)
+ *     int length; byte[length] class file } *
+ * </pre>
+ */
+public final class ClassDataArchive implements Callbacks.ExitMonitor {
+
+  private static final int MAGIC = 0x4a434441; // "JCDA"
+  private static final int VERSION = 2;
+
+  /** The application class loader */
+  private static ApplicationClassLoader loader;
+
+  /** Class names recorded during a dump run, in definition order */
+  private static ArrayList<String> dumpNames;
+  /** Classes recorded during a dump run, parallel to dumpNames */
+  private static ArrayList<Entry> dumpEntries;
+
+  /** The mapped archive, or {@code null} if no archive is in use */
+  private static MappedByteBuffer archive;
+  /** The classes of the mapped archive */
+  private static HashMap<String, Entry> index;
+
+  /** Statistics */
+  private static int classesDefined;
+
+  /**
+   * A class of the archive.
+   */
+  static final class Entry {
+    /** Index of the class path entry the class was loaded from */
+    final int source;
+    /** Modification time of the class file, or -1 if it is in a jar */
+    final long lastModified;
+    /** Size of the class file, or -1 if it is in a jar */
+    final long size;
+    /** The class file during a dump run */
+    final byte[] bytes;
+    /** Position and length of the class file in the mapped archive */
+    final int position;
+    final int length;
+
+    Entry(int source, long lastModified, long size, byte[] bytes, int position, int length) {
+      this.source = source;
+      this.lastModified = lastModified;
+      this.size = size;
+      this.bytes = bytes;
+      this.position = position;
+      this.length = length;
+    }
+
+    /**
+     * @return a read-only view of the class file in the mapped archive
+     */
+    ByteBuffer getClassFile() {
+      // The buffer's position is shared, so work on a private view of it
+      ByteBuffer view = archive.asReadOnlyBuffer();
+      view.limit(position + length);
+      view.position(position);
+      return view;
+    }
+  }
+
+  /**
+   * Initialize the archive support. Called when the application class
+   * loader is created, once the application class path is known.
+   *
+   * @param cl the application class loader
+   */
+  static synchronized void boot(ApplicationClassLoader cl) {
+    loader = cl;
+    if (VM.dumpClassDataArchive != null && dumpNames == null) {
+      dumpNames = new ArrayList<String>();
+      dumpEntries = new ArrayList<Entry>();
+      Callbacks.addExitMonitor(new ClassDataArchive());
+    }
+    if (VM.classDataArchive != null && archive == null) {
+      try {
+        map(VM.classDataArchive);
+      } catch (IOException e) {
+        if (VM.TraceClassLoading) {
+          VM.sysWriteln("[ClassDataArchive: unable to map ", VM.classDataArchive, ": " + e + "]");
+        }
+        archive = null;
+        index = null;
+      }
+    }
+  }
+
+  private static void map(String fileName) throws IOException {
+    RandomAccessFile file = new RandomAccessFile(fileName, "r");
+    try {
+      FileChannel channel = file.getChannel();
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+        throw new IOException("not a class data archive");
+      }
+      String classpath = readUTF(buffer);
+      if (!classpath.equals(RVMClassLoader.getApplicationRepositories())) {
+        throw new IOException("archive was dumped with a different class path (" + classpath + ")");
+      }
+      URL[] urls = loader.getURLs();
+      if (buffer.getInt() != urls.length) {
+        throw new IOException("archive was dumped with a different class path");
+      }
+      for (URL url : urls) {
+        long lastModified = buffer.getLong();
+        long size = buffer.getLong();
+        if (!isDirectory(url)) {
+          checkJar(url, lastModified, size);
+        }
+      }
+      int count = buffer.getInt();
+      HashMap<String, Entry> map = new HashMap<String, Entry>();
+      for (int i = 0; i < count; i++) {
+        String name = readUTF(buffer);
+        int source = buffer.getInt();
+        long lastModified = buffer.getLong();
+        long size = buffer.getLong();
+        int length = buffer.getInt();
+        if (source < 0 || source >= urls.length) {
+          throw new IOException("corrupt class data archive");
+        }
+        map.put(name, new Entry(source, lastModified, size, null, buffer.position(), length));
+        buffer.position(buffer.position() + length);
+      }
+      archive = buffer;
+      index = map;
+      if (VM.TraceClassLoading) {
+        VM.sysWriteln("[ClassDataArchive: mapped ", count, " classes]");
+      }
+    } finally {
+      file.close();
+    }
+  }
+
+  private static String readUTF(ByteBuffer buffer) throws IOException {
+    byte[] utf = new byte[buffer.getShort() & 0xFFFF];
+    buffer.get(utf);
+    return UTF8Convert.fromUTF8(utf);
+  }
+
+  /**
+   * Check that a jar on the class path has not been modified since the
+   * dump run.
+   *
+   * @param url the jar
+   * @param lastModified the modification time of the jar in the dump run
+   * @param size the size of the jar in the dump run
+   * @throws IOException if the jar has been modified
+   */
+  static void checkJar(URL url, long lastModified, long size) throws IOException {
+    File jar = new File(url.getPath());
+    if (jar.lastModified() != lastModified || jar.length() != size) {
+      throw new IOException(jar + " has been modified since the archive was dumped");
+    }
+  }
+
+  /**
+   * @param entry an archived class
+   * @param source the class path entry the class was loaded from
+   * @param className the name of the class
+   * @return {@code false} if the class was loaded from a directory and its
+   *  class file has been modified since the dump run
+   */
+  static boolean isCurrent(Entry entry, URL source, String className) {
+    if (entry.lastModified == -1) return true;
+    File f = classFile(source, className);
+    return f.lastModified() == entry.lastModified && f.length() == entry.size;
+  }
+
+  private static boolean isDirectory(URL url) {
+    return url.getPath().endsWith("/");
+  }
+
+  private static File classFile(URL directory, String className) {
+    return new File(directory.getPath(), className.replace('.', '/') + ".class");
+  }
+
+  /**
+   * Return the entry for the given class in the archive. A class that was
+   * loaded from a directory is not returned if its class file has been
+   * modified since the dump run.
+   *
+   * @param className the binary name of the class
+   * @return the entry or {@code null} if the class is not in the archive
+   */
+  static Entry lookup(String className) {
+    Entry entry;
+    synchronized (ClassDataArchive.class) {
+      if (index == null) return null;
+      entry = index.remove(className);
+      if (entry == null) return null;
+    }
+    if (!isCurrent(entry, loader.getURLs()[entry.source], className)) {
+      return null;
+    }
+    synchronized (ClassDataArchive.class) {
+      classesDefined++;
+    }
+    return entry;
+  }
+
+  /**
+   * @param source the index of a class path entry of an archived class
+   * @return the class path entry
+   */
+  static URL getSource(int source) {
+    return loader.getURLs()[source];
+  }
+
+  /**
+   * Record a class successfully defined by the application class loader
+   * during a dump run. Only classes whose class file is found on the class
+   * path are recorded.
+   *
+   * @param className the name of the class
+   * @param classRep the buffer holding the class file
+   * @param offset the offset of the class file in {@code classRep}
+   * @param length the length of the class file
+   * @param classloader the defining class loader
+   */
+  static void record(String className, byte[] classRep, int offset, int length, ClassLoader classloader) {
+    if (dumpNames == null || classloader != loader) return;
+    URL resource = loader.findResource(className.replace('.', '/') + ".class");
+    if (resource == null) return;
+    String location = resource.toString();
+    URL[] urls = loader.getURLs();
+    for (int i = 0; i < urls.length; i++) {
+      long lastModified;
+      long size;
+      if (isDirectory(urls[i]) && location.startsWith(urls[i].toString())) {
+        File f = classFile(urls[i], className);
+        lastModified = f.lastModified();
+        size = f.length();
+      } else if (location.startsWith("jar:" + urls[i] + "!/")) {
+        lastModified = -1;
+        size = -1;
+      } else {
+        continue;
+      }
+      byte[] copy = new byte[length];
+      System.arraycopy(classRep, offset, copy, 0, length);
+      synchronized (ClassDataArchive.class) {
+        dumpNames.add(className);
+        dumpEntries.add(new Entry(i, lastModified, size, copy, 0, length));
+      }
+      return;
+    }
+  }
+
+  @Override
+  public void notifyExit(int value) {
+    if (archive != null && VM.TraceClassLoading) {
+      VM.sysWriteln("[ClassDataArchive: defined ", classesDefined, " classes from the archive]");
+    }
+    if (dumpNames != null) {
+      dump(VM.dumpClassDataArchive);
+    }
+  }
+
+  private static synchronized void dump(String fileName) {
+    try {
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)));
+      try {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(RVMClassLoader.getApplicationRepositories());
+        URL[] urls = loader.getURLs();
+        out.writeInt(urls.length);
+        for (URL url : urls) {
+          if (isDirectory(url)) {
+            out.writeLong(-1);
+            out.writeLong(-1);
+          } else {
+            File jar = new File(url.getPath());
+            out.writeLong(jar.lastModified());
+            out.writeLong(jar.length());
+          }
+        }
+        out.writeInt(dumpNames.size());
+        for (int i = 0; i < dumpNames.size(); i++) {
+          Entry entry = dumpEntries.get(i);
+          out.writeUTF(dumpNames.get(i));
+          out.writeInt(entry.source);
+          out.writeLong(entry.lastModified);
+          out.writeLong(entry.size);
+          out.writeInt(entry.length);
+          out.write(entry.bytes);
+        }
+      } finally {
+        out.close();
+      }
+      if (VM.TraceClassLoading) {
+        VM.sysWriteln("[ClassDataArchive: dumped ", dumpNames.size(), " classes]");
+      }
+    } catch (IOException e) {
+      VM.sysWriteln("ClassDataArchive.dump: Error writing ", fileName);
+    }
+  }
+}
@@ -0,0 +1,306 @@
+/*
+ *  This file is part of the Jikes RVM project (http://jikesrvm.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  See the COPYRIGHT.txt file distributed with this work for information
+ *  regarding copyright ownership.
+ */
+package org.jikesrvm.classloader;
+
+import static org.jikesrvm.runtime.ExitStatus.EXIT_STATUS_BOGUS_COMMAND_LINE_ARG;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.StringTokenizer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.jikesrvm.VM;
+import org.jikesrvm.scheduler.SystemThread;
+import org.vmmagic.pragma.NonMoving;
+
+/**
+ * Reads class files from the jars on the bootstrap and application class
+ * paths on background threads, ahead of their first use.
+ * <p>
+ * Enabled with {@code -X:vm:prefetchClassFiles=true}. For every class file
+ * in a jar's index, the prefetcher decodes the constant pool and interns its
+ * UTF8 entries as atoms (see {@link ClassFileReader#prefetchConstantPoolAtoms}),
+ * which is the bulk of the work of pass 1 of constant pool parsing. Class
+ * files from the bootstrap class path are additionally kept in memory (up to
+ * {@code -X:vm:prefetchClassFileCacheSize} bytes) so that
+ * {@link BootstrapClassLoader#findClass} does not have to inflate them again.
+ * The bootstrap class loader still searches its class path in order,
+ * directories included, and only uses a cached class file if it comes from
+ * the entry the search found; a class file shadowed by an earlier entry is
+ * dropped from the cache. Class files whose class has not been loaded within
+ * {@code -X:vm:prefetchClassFileCacheLifetime} milliseconds of being cached
+ * are dropped too, so the cache does not stay pinned for the life of the VM.
+ * <p>
+ * The prefetcher never creates type or member references and never defines,
+ * resolves or initializes a class: all of that still happens on the
+ * requesting thread, in the order in which the program asks for the classes.
+ */
+@NonMoving
+public final class ClassFilePrefetcher extends SystemThread {
+
+  private static final int verbose = 0;
+
+  /** Jars still to be processed; guarded by the class monitor */
+  private static final ArrayList<String> pendingJars = new ArrayList<String>();
+  /** Number of entries of pendingJars that belong to the bootstrap class path */
+  private static int bootstrapJars;
+  /** Index of the next jar to hand out; guarded by the class monitor */
+  private static int nextJar;
+  /** Number of prefetcher threads still reading jars; guarded by the class monitor */
+  private static int activeThreads;
+
+  /**
+   * Prefetched bootstrap class files, keyed by class name, oldest first.
+   * If several jars hold a class, the one from the earliest jar is kept.
+   * Guarded by the class monitor.
+   */
+  private static final LinkedHashMap<String, CachedClassFile> cache = new LinkedHashMap<String, CachedClassFile>();
+  /** Number of bytes currently held in the cache; guarded by the class monitor */
+  private static int cachedBytes;
+
+  /** Statistics, reported with -X:vm:verboseTraceClassLoading */
+  private static int prefetchedClasses;
+  private static int prefetchedAtoms;
+  private static int cacheHits;
+
+  /** A prefetched class file */
+  private static final class CachedClassFile {
+    /** Path of the jar holding the class file */
+    final String path;
+    /** Position of the jar on the class path */
+    final int jar;
+    /** Contents of the class file */
+    final byte[] bytes;
+    /** Time at which the class file was cached, in milliseconds */
+    final long cachedAt;
+
+    CachedClassFile(String path, int jar, byte[] bytes, long cachedAt) {
+      this.path = path;
+      this.jar = jar;
+      this.bytes = bytes;
+      this.cachedAt = cachedAt;
+    }
+  }
+
+  /**
+   * Start the prefetcher threads. Called from VM.boot once the
+   * application class path is known.
+   */
+  public static void boot() {
+    if (VM.prefetchClassFileCacheLifetime <= 0) {
+      VM.sysWriteln("vm: -X:vm:prefetchClassFileCacheLifetime must be at least 1 when prefetching class files");
+      VM.sysExit(EXIT_STATUS_BOGUS_COMMAND_LINE_ARG);
+    }
+    synchronized (ClassFilePrefetcher.class) {
+      addJars(BootstrapClassLoader.getBootstrapRepositories());
+      bootstrapJars = pendingJars.size();
+      addJars(RVMClassLoader.getApplicationRepositories());
+    }
+    int threads = Math.max(1, Math.min(VM.prefetchClassFileThreads, pendingJars.size()));
+    activeThreads = threads;
+    for (int i = 0; i < threads; i++) {
+      new ClassFilePrefetcher(i).start();
+    }
+  }
+
+  private static void addJars(String classpath) {
+    if (classpath == null) return;
+    StringTokenizer tok = new StringTokenizer(classpath, File.pathSeparator);
+    while (tok.hasMoreElements()) {
+      String path = tok.nextToken();
+      if ((path.endsWith(".jar") || path.endsWith(".zip")) && !pendingJars.contains(path)) {
+        pendingJars.add(path);
+      }
+    }
+  }
+
+  /**
+   * Remove the prefetched class file for the given bootstrap class from the
+   * cache and return it if it was read from the given class path entry.
+   *
+   * @param className the name of the class, as passed to
+   *  {@link BootstrapClassLoader#findClass}
+   * @param path the bootstrap class path entry that defines the class, or
+   *  {@code null} if it is not a jar
+   * @return the contents of the class file or {@code null} if the class
+   *  has not been prefetched from {@code path}
+   */
+  static byte[] take(String className, String path) {
+    if (!VM.prefetchClassFiles) return null;
+    synchronized (ClassFilePrefetcher.class) {
+      evictExpired(System.currentTimeMillis());
+      CachedClassFile cached = cache.remove(className);
+      if (cached == null) return null;
+      cachedBytes -= cached.bytes.length;
+      if (path == null || !path.equals(cached.path)) {
+        // shadowed by an earlier class path entry
+        return null;
+      }
+      cacheHits++;
+      return cached.bytes;
+    }
+  }
+
+  /**
+   * Cache a prefetched bootstrap class file, unless the class has already
+   * been loaded, the cache already holds the class file from an earlier jar
+   * or the cache is full.
+   *
+   * @param className the name of the class
+   * @param path the jar holding the class file
+   * @param jar the position of the jar on the class path
+   * @param bytes the contents of the class file
+   * @param now the current time, in milliseconds
+   */
+  static synchronized void cache(String className, String path, int jar, byte[] bytes, long now) {
+    if (BootstrapClassLoader.getBootstrapClassLoader().hasLoaded(className)) return;
+    CachedClassFile cached = cache.get(className);
+    int freed = cached == null ? 0 : cached.bytes.length;
+    if ((cached == null || cached.jar > jar) &&
+        cachedBytes - freed + bytes.length <= VM.prefetchClassFileCacheSize) {
+      // Remove first so that the new entry goes to the end of the eviction order
+      cache.remove(className);
+      cache.put(className, new CachedClassFile(path, jar, bytes, now));
+      cachedBytes += bytes.length - freed;
+    }
+  }
+
+  /**
+   * Drop the class files that have been cached for longer than
+   * {@code -X:vm:prefetchClassFileCacheLifetime} milliseconds.
+   *
+   * @param now the current time, in milliseconds
+   * @return the number of class files still cached
+   */
+  static synchronized int evictExpired(long now) {
+    Iterator<CachedClassFile> it = cache.values().iterator();
+    while (it.hasNext()) {
+      CachedClassFile cached = it.next();
+      if (now - cached.cachedAt < VM.prefetchClassFileCacheLifetime) break;
+      it.remove();
+      cachedBytes -= cached.bytes.length;
+    }
+    return cache.size();
+  }
+
+  /**
+   * @return the number of class files prefetched so far
+   */
+  static synchronized int getPrefetchedClasses() {
+    return prefetchedClasses;
+  }
+
+  private static synchronized int nextJar() {
+    return nextJar < pendingJars.size() ? nextJar++ : -1;
+  }
+
+  private ClassFilePrefetcher(int id) {
+    super("ClassFilePrefetcher-" + id);
+  }
+
+  @Override
+  public void run() {
+    for (int jar = nextJar(); jar != -1; jar = nextJar()) {
+      String path;
+      synchronized (ClassFilePrefetcher.class) {
+        path = pendingJars.get(jar);
+      }
+      try {
+        prefetchJar(path, jar, jar < bootstrapJars);
+      } catch (Throwable e) {
+        // Prefetching is purely an optimization; the class loaders will
+        // report any real problem when the class is actually requested.
+        if (verbose >= 1) VM.sysWriteln("ClassFilePrefetcher: skipping ", path, ": " + e);
+      }
+    }
+    if (VM.TraceClassLoading) {
+      VM.sysWrite("[ClassFilePrefetcher: ", prefetchedClasses, " classes, ");
+      VM.sysWrite(prefetchedAtoms, " atoms, ");
+      VM.sysWriteln(cacheHits, " cache hits so far]");
+    }
+    boolean last;
+    synchronized (ClassFilePrefetcher.class) {
+      last = --activeThreads == 0;
+    }
+    if (last) {
+      // Drop the class files that are not asked for in time, even if no
+      // further bootstrap class is loaded
+      while (evictExpired(System.currentTimeMillis()) != 0) {
+        try {
+          Thread.sleep(VM.prefetchClassFileCacheLifetime);
+        } catch (InterruptedException e) {
+          break;
+        }
+      }
+    }
+  }
+
+  static void prefetchJar(String path, int jar, boolean bootstrap) throws IOException {
+    ZipFile zf = new ZipFile(path);
+    try {
+      for (Enumeration<? extends ZipEntry> e = zf.entries(); e.hasMoreElements();) {
+        ZipEntry ze = e.nextElement();
+        String name = ze.getName();
+        if (ze.isDirectory() || !name.endsWith(".class")) continue;
+        String className = name.substring(0, name.length() - ".class".length()).replace('/', '.');
+        if (bootstrap && BootstrapClassLoader.getBootstrapClassLoader().hasLoaded(className)) {
+          // Already loaded (typically written into the boot image)
+          continue;
+        }
+        byte[] bytes = readFully(zf.getInputStream(ze), (int) ze.getSize());
+        if (bytes == null) continue;
+        int atoms;
+        try {
+          atoms = ClassFileReader.prefetchConstantPoolAtoms(new DataInputStream(new ByteArrayInputStream(bytes)));
+        } catch (ClassFormatError cfe) {
+          // leave it to the class loader to report
+          continue;
+        }
+        synchronized (ClassFilePrefetcher.class) {
+          prefetchedClasses++;
+          prefetchedAtoms += atoms;
+          if (bootstrap) {
+            cache(className, path, jar, bytes, System.currentTimeMillis());
+          }
+        }
+        if (verbose >= 2) VM.sysWriteln("ClassFilePrefetcher: prefetched ", name);
+      }
+    } finally {
+      zf.close();
+    }
+  }
+
+  private static byte[] readFully(InputStream is, int size) throws IOException {
+    if (size < 0) return null;
+    try {
+      byte[] bytes = new byte[size];
+      int read = 0;
+      while (read < size) {
+        int n = is.read(bytes, read, size - read);
+        if (n < 0) return null;
+        read += n;
+      }
+      return bytes;
+    } finally {
+      is.close();
+    }
+  }
+}
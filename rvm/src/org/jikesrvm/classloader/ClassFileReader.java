@@ -233,6 +233,66 @@ public class ClassFileReader {
     return constantPool;
   }
 
+  /**
+   * Decode the UTF8 entries of a class file's constant pool and intern
+   * them as atoms, ahead of the class being defined. No type references,
+   * member references or literals are created, so running this for a
+   * class has no effect on the order in which classes are resolved; it
+   * only means that pass 1 of {@link #readConstantPool} will find its
+   * atoms already in the dictionary.
+   *
+   * @param input the data stream from which to read the class file
+   * @return the number of atoms looked up or created
+   * @throws IOException if it occurs during reading of the input stream
+   * @throws ClassFormatError when the class file is malformed
+   */
+  static int prefetchConstantPoolAtoms(DataInputStream input) throws ClassFormatError, IOException {
+    int magic = input.readInt();
+    if (magic != 0xCAFEBABE) {
+      throw new ClassFormatError("bad magic number " + Integer.toHexString(magic));
+    }
+    input.readUnsignedShort(); // minor
+    input.readUnsignedShort(); // major
+
+    int atoms = 0;
+    int constantPoolLength = input.readUnsignedShort();
+    for (int i = 1; i < constantPoolLength; i++) {
+      byte tag = input.readByte();
+      switch (tag) {
+        case TAG_UTF: {
+          byte[] utf = new byte[input.readUnsignedShort()];
+          input.readFully(utf);
+          Atom.findOrCreateUtf8Atom(utf);
+          atoms++;
+          break;
+        }
+        case TAG_INT:
+        case TAG_FLOAT:
+        case TAG_FIELDREF:
+        case TAG_METHODREF:
+        case TAG_INTERFACE_METHODREF:
+        case TAG_MEMBERNAME_AND_DESCRIPTOR:
+          input.readInt();
+          break;
+
+        case TAG_LONG:
+        case TAG_DOUBLE:
+          input.readLong();
+          i++;
+          break;
+
+        case TAG_TYPEREF:
+        case TAG_STRING:
+          input.readUnsignedShort();
+          break;
+
+        default:
+          throw new ClassFormatError("bad constant pool");
+      }
+    }
+    return atoms;
+  }
+
   /**
    * Read the class' TypeReference
    * @param typeRef the type reference that we're expecting to read
@@ -304,7 +304,11 @@ public class RVMClassLoader {
 
   public static RVMType defineClassInternal(String className, byte[] classRep, int offset, int length,
                                             ClassLoader classloader) throws ClassFormatError {
-    return defineClassInternal(className, new ByteArrayInputStream(classRep, offset, length), classloader);
+    RVMType type = defineClassInternal(className, new ByteArrayInputStream(classRep, offset, length), classloader);
+    if (VM.dumpClassDataArchive != null && type.isClassType()) {
+      ClassDataArchive.record(type.getDescriptor().classNameFromDescriptor(), classRep, offset, length, classloader);
+    }
+    return type;
   }
 
   public static RVMType defineClassInternal(String className, InputStream is, ClassLoader classloader)
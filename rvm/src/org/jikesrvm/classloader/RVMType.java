@@ -234,6 +234,23 @@ public abstract class RVMType extends AnnotatedElement {
    */
   protected int[] doesImplement;
 
+  /**
+   * Number of times in the current bias epoch that the bias of a lock on
+   * an instance of this type had to be revoked by a thread other than the
+   * bias owner (see {@link org.jikesrvm.scheduler.ThinLock}). Updated
+   * without synchronization, so the count is approximate.
+   */
+  private int biasRevocations;
+
+  /** The bias epoch that biasRevocations counts revocations of */
+  private int biasRevocationEpoch;
+
+  /**
+   * Has biased locking been disabled for instances of this type because
+   * their biases were revoked too often?
+   */
+  private boolean biasingDisabled;
+
   /**
    * Create an instance of a {@link RVMType}
    * @param typeRef The canonical type reference for this type.
@@ -341,6 +358,47 @@ public abstract class RVMType extends AnnotatedElement {
     return typeRef.getClassLoader();
   }
 
+  /**
+   * Records that the bias of a lock on an instance of this type was revoked.
+   * The count starts again from zero in each bias epoch.
+   *
+   * @param epoch the current bias epoch
+   * @return the number of revocations recorded so far in the epoch
+   */
+  @Uninterruptible
+  public final int recordBiasRevocation(int epoch) {
+    if (biasRevocationEpoch != epoch) {
+      biasRevocationEpoch = epoch;
+      biasRevocations = 0;
+    }
+    return ++biasRevocations;
+  }
+
+  /**
+   * @param epoch the current bias epoch
+   * @return the number of bias revocations recorded in the epoch
+   */
+  @Uninterruptible
+  public final int getBiasRevocations(int epoch) {
+    return biasRevocationEpoch == epoch ? biasRevocations : 0;
+  }
+
+  /**
+   * @return {@code true} if locks on instances of this type must not be biased
+   */
+  @Uninterruptible
+  public final boolean isBiasingDisabled() {
+    return biasingDisabled;
+  }
+
+  /**
+   * Stop biasing locks on instances of this type.
+   */
+  @Uninterruptible
+  public final void disableBiasing() {
+    biasingDisabled = true;
+  }
+
   /**
    * Should assertions be enabled on this type?
    * @return {@code false}
@@ -12,14 +12,29 @@
  */
 package org.jikesrvm.compilers.baseline;
 
+import static org.jikesrvm.classloader.BytecodeConstants.JBC_bipush;
 import static org.jikesrvm.classloader.BytecodeConstants.JBC_caload;
 import static org.jikesrvm.classloader.BytecodeConstants.JBC_getfield;
+import static org.jikesrvm.classloader.BytecodeConstants.JBC_iadd;
+import static org.jikesrvm.classloader.BytecodeConstants.JBC_iand;
+import static org.jikesrvm.classloader.BytecodeConstants.JBC_iconst_0;
+import static org.jikesrvm.classloader.BytecodeConstants.JBC_iconst_5;
+import static org.jikesrvm.classloader.BytecodeConstants.JBC_iconst_m1;
+import static org.jikesrvm.classloader.BytecodeConstants.JBC_if_icmpeq;
+import static org.jikesrvm.classloader.BytecodeConstants.JBC_if_icmple;
 import static org.jikesrvm.classloader.BytecodeConstants.JBC_ifeq;
 import static org.jikesrvm.classloader.BytecodeConstants.JBC_ifge;
 import static org.jikesrvm.classloader.BytecodeConstants.JBC_ifgt;
 import static org.jikesrvm.classloader.BytecodeConstants.JBC_ifle;
 import static org.jikesrvm.classloader.BytecodeConstants.JBC_iflt;
 import static org.jikesrvm.classloader.BytecodeConstants.JBC_ifne;
+import static org.jikesrvm.classloader.BytecodeConstants.JBC_iload;
+import static org.jikesrvm.classloader.BytecodeConstants.JBC_iload_0;
+import static org.jikesrvm.classloader.BytecodeConstants.JBC_iload_3;
+import static org.jikesrvm.classloader.BytecodeConstants.JBC_ior;
+import static org.jikesrvm.classloader.BytecodeConstants.JBC_isub;
+import static org.jikesrvm.classloader.BytecodeConstants.JBC_ixor;
+import static org.jikesrvm.classloader.BytecodeConstants.JBC_sipush;
 import static org.jikesrvm.runtime.ExitStatus.EXIT_STATUS_BOGUS_COMMAND_LINE_ARG;
 import static org.jikesrvm.runtime.UnboxedSizeConstants.LOG_BYTES_IN_ADDRESS;
 
@@ -56,6 +71,12 @@ public abstract class BaselineCompiler extends TemplateCompilerFramework {
    */
   private static final boolean mergeBytecodes = true;
 
+  /**
+   * Branch conditions in the order of the opcodes of the if.. and
+   * if_icmp.. bytecodes
+   */
+  private static final BranchCondition[] branchConditions = BranchCondition.values();
+
   private static long gcMapNanos;
   private static long osrSetupNanos;
   private static long codeGenNanos;
@@ -71,6 +92,26 @@ public abstract class BaselineCompiler extends TemplateCompilerFramework {
    */
   protected int edgeCounterIdx;
 
+  /**
+   * Next type profile site to allocate
+   */
+  protected int typeProfileIdx;
+
+  /**
+   * Bytecode indices of the type profile sites allocated so far
+   */
+  private int[] typeProfileSites;
+
+  /**
+   * Next value profile site to allocate
+   */
+  protected int valueProfileIdx;
+
+  /**
+   * Bytecode indices of the value profile sites allocated so far
+   */
+  private int[] valueProfileSites;
+
   /**
    * Reference maps for method being compiled
    */
@@ -84,6 +125,27 @@ public abstract class BaselineCompiler extends TemplateCompilerFramework {
     return method.getId();
   }
 
+  /**
+   * Allocate a type profile site for the current bytecode.
+   *
+   * @return the index of the site in the method's type profile
+   */
+  protected final int allocateTypeProfileSite() {
+    typeProfileSites[typeProfileIdx] = biStart;
+    return typeProfileIdx++;
+  }
+
+  /**
+   * Allocate a value profile site for a bytecode.
+   *
+   * @param bcIndex the index of the bytecode
+   * @return the index of the site in the method's value profile
+   */
+  protected final int allocateValueProfileSite(int bcIndex) {
+    valueProfileSites[valueProfileIdx] = bcIndex;
+    return valueProfileIdx++;
+  }
+
   /**
    * The types that locals can take.
    * There are two types of locals:
@@ -289,6 +351,22 @@ public abstract class BaselineCompiler extends TemplateCompilerFramework {
         ((BaselineCompiledMethod) compiledMethod).setHasCounterArray(); // yes, we will inject counters for this method.
       }
 
+      // determine if we are going to record the types seen at virtual calls and type checks
+      if (options.PROFILE_TYPES && isInterruptible &&
+          !method.getDeclaringClass().hasBridgeFromNativeAnnotation() &&
+          !(VM.BuildForAdaptiveSystem && method.isForOsrSpecialization())) {
+        profileTypes = true;
+        typeProfileSites = new int[bcodes.length()];
+      }
+
+      // determine if we are going to record the values loaded from fields and array lengths
+      if (options.PROFILE_VALUES && isInterruptible &&
+          !method.getDeclaringClass().hasBridgeFromNativeAnnotation() &&
+          !(VM.BuildForAdaptiveSystem && method.isForOsrSpecialization())) {
+        profileValues = true;
+        valueProfileSites = new int[bcodes.length()];
+      }
+
       //do platform specific tasks before generating code;
       initializeCompiler();
 
@@ -341,6 +419,12 @@ public abstract class BaselineCompiler extends TemplateCompilerFramework {
       if (edgeCounterIdx > 0) {
         EdgeCounts.allocateCounters(method, edgeCounterIdx);
       }
+      if (typeProfileIdx > 0) {
+        TypeProfiles.allocateProfiles(method, typeProfileSites, typeProfileIdx);
+      }
+      if (valueProfileIdx > 0) {
+        ValueProfiles.allocateProfiles(method, valueProfileSites, valueProfileIdx);
+      }
       if (shouldPrint) {
         ((BaselineCompiledMethod) compiledMethod).printExceptionTable();
         printEndHeader(method);
@@ -383,22 +467,125 @@ public abstract class BaselineCompiler extends TemplateCompilerFramework {
    */
   @Override
   protected final void emit_iload(int index) {
-    if (!mergeBytecodes || basicBlockBoundary()) {
+    if (!mergeBytecodes) {
       emit_regular_iload(index);
+    } else if (!basicBlockBoundary() && bcodes.peekNextOpcode() == JBC_caload) {
+      if (shouldPrint) getLister().noteBytecode(biStart, "caload");
+      bytecodeMap[bcodes.index()] = getAssembler().getMachineCodeIndex();
+      bcodes.nextInstruction(); // skip opcode
+      emit_iload_caload(index);
+    } else if (!mergeIntOperation(index)) {
+      emit_regular_iload(index);
+    }
+  }
+
+  /**
+   * Merges an iload with the bytecodes that consume the loaded value, so
+   * that the value is kept in a register rather than being pushed on the
+   * expression stack. The patterns are {@code iload; if..},
+   * {@code iload; (iload|iconst); if_icmp..} and
+   * {@code iload; (iload|iconst); (iadd|isub|iand|ior|ixor)}.
+   * <p>
+   * The merged bytecodes must be in the basic block of the iload, so
+   * nothing branches into the middle of the sequence. The merged code
+   * contains no GC points. Backward branches are not merged: their
+   * yieldpoint is a GC point whose reference map and OSR state are those
+   * of the branch, with its operands on the expression stack. (javac
+   * tests the condition of a for or while loop at the loop head, with a
+   * forward branch out of the loop, so only do-while conditions are
+   * affected.)
+   *
+   * @param index the local index to load
+   * @return whether the iload was merged with the bytecodes following it
+   */
+  private boolean mergeIntOperation(int index) {
+    if (!options.MERGE_INT_OPERATIONS) return false;
+    int secondStart = bcodes.index();
+    if (!inCurrentBlock(secondStart)) return false;
+    int second = bcodes.nextInstruction();
+    if (second >= JBC_ifeq && second <= JBC_ifle) {
+      BranchCondition bc = branchConditions[second - JBC_ifeq];
+      int offset = bcodes.getBranchOffset();
+      int bTarget = secondStart + offset;
+      if (offset <= 0) {
+        bcodes.reset(secondStart);
+        return false;
+      }
+      bytecodeMap[secondStart] = getAssembler().getMachineCodeIndex();
+      if (shouldPrint) getLister().noteBranchBytecode(secondStart, "if" + bc, offset, bTarget);
+      emit_iload_if(index, bTarget, bc);
+      return true;
+    }
+
+    // The second operand: a local or a constant
+    int local = -1;
+    int constant = 0;
+    if (second == JBC_iload) {
+      local = bcodes.getLocalNumber();
+    } else if (second >= JBC_iload_0 && second <= JBC_iload_3) {
+      local = second - JBC_iload_0;
+    } else if (second >= JBC_iconst_m1 && second <= JBC_iconst_5) {
+      constant = second - JBC_iconst_0;
+    } else if (second == JBC_bipush) {
+      constant = bcodes.getByteValue();
+    } else if (second == JBC_sipush) {
+      constant = bcodes.getShortValue();
     } else {
-      int nextBC = bcodes.peekNextOpcode();
-      switch (nextBC) {
-      case JBC_caload:
-        if (shouldPrint) getLister().noteBytecode(biStart, "caload");
-        bytecodeMap[bcodes.index()] = getAssembler().getMachineCodeIndex();
-        bcodes.nextInstruction(); // skip opcode
-        emit_iload_caload(index);
-        break;
-      default:
-        emit_regular_iload(index);
-        break;
+      bcodes.reset(secondStart);
+      return false;
+    }
+
+    int thirdStart = bcodes.index();
+    if (!inCurrentBlock(thirdStart)) {
+      bcodes.reset(secondStart);
+      return false;
+    }
+    int third = bcodes.nextInstruction();
+    if (third >= JBC_if_icmpeq && third <= JBC_if_icmple) {
+      BranchCondition bc = branchConditions[third - JBC_if_icmpeq];
+      int offset = bcodes.getBranchOffset();
+      int bTarget = thirdStart + offset;
+      if (offset <= 0) {
+        bcodes.reset(secondStart);
+        return false;
+      }
+      bytecodeMap[secondStart] = getAssembler().getMachineCodeIndex();
+      bytecodeMap[thirdStart] = getAssembler().getMachineCodeIndex();
+      if (shouldPrint) {
+        getLister().noteBytecode(secondStart, local >= 0 ? "iload" : "iconst");
+        getLister().noteBranchBytecode(thirdStart, "if_icmp" + bc, offset, bTarget);
+      }
+      if (local >= 0) {
+        emit_iload_iload_if_icmp(index, local, bTarget, bc);
+      } else {
+        emit_iload_iconst_if_icmp(index, constant, bTarget, bc);
       }
+      return true;
     }
+    if (third == JBC_iadd || third == JBC_isub || third == JBC_iand || third == JBC_ior || third == JBC_ixor) {
+      bytecodeMap[secondStart] = getAssembler().getMachineCodeIndex();
+      bytecodeMap[thirdStart] = getAssembler().getMachineCodeIndex();
+      if (shouldPrint) {
+        getLister().noteBytecode(secondStart, local >= 0 ? "iload" : "iconst");
+        getLister().noteBytecode(thirdStart, "ialu");
+      }
+      if (local >= 0) {
+        emit_iload_iload_ialu(index, local, third);
+      } else {
+        emit_iload_iconst_ialu(index, constant, third);
+      }
+      return true;
+    }
+    bcodes.reset(secondStart);
+    return false;
+  }
+
+  /**
+   * @param index the index of a bytecode
+   * @return whether the bytecode is in the same basic block as the current one
+   */
+  private boolean inCurrentBlock(int index) {
+    return index < bcodes.length() && refMaps.byteToBlockMap[index] == refMaps.byteToBlockMap[biStart];
   }
 
   /**
@@ -421,6 +608,121 @@ public abstract class BaselineCompiler extends TemplateCompilerFramework {
     emit_caload();
   }
 
+  /**
+   * Emits code to load an int local variable and branch on its comparison
+   * with zero.
+   * <p>
+   * By default, this method emits code for iload and then for if... Subclasses
+   * that want to implement bytecode merging for this pattern must override
+   * this method.
+   *
+   * @param index the local index to load
+   * @param bTarget target bytecode of the branch
+   * @param bc branch condition
+   */
+  protected void emit_iload_if(int index, int bTarget, BranchCondition bc) {
+    emit_regular_iload(index);
+    emit_if(bTarget, bc);
+  }
+
+  /**
+   * Emits code to load two int local variables and branch on their comparison.
+   * <p>
+   * By default, this method emits code for both iloads and then for if_icmp...
+   * Subclasses that want to implement bytecode merging for this pattern must
+   * override this method.
+   *
+   * @param index1 the local index of the first operand
+   * @param index2 the local index of the second operand
+   * @param bTarget target bytecode of the branch
+   * @param bc branch condition
+   */
+  protected void emit_iload_iload_if_icmp(int index1, int index2, int bTarget, BranchCondition bc) {
+    emit_regular_iload(index1);
+    emit_regular_iload(index2);
+    emit_if_icmp(bTarget, bc);
+  }
+
+  /**
+   * Emits code to load an int local variable and branch on its comparison
+   * with a constant.
+   * <p>
+   * By default, this method emits code for iload, iconst and then for
+   * if_icmp... Subclasses that want to implement bytecode merging for this
+   * pattern must override this method.
+   *
+   * @param index the local index of the first operand
+   * @param val the second operand
+   * @param bTarget target bytecode of the branch
+   * @param bc branch condition
+   */
+  protected void emit_iload_iconst_if_icmp(int index, int val, int bTarget, BranchCondition bc) {
+    emit_regular_iload(index);
+    emit_iconst(val);
+    emit_if_icmp(bTarget, bc);
+  }
+
+  /**
+   * Emits code to load two int local variables and combine them with
+   * iadd, isub, iand, ior or ixor.
+   * <p>
+   * By default, this method emits code for both iloads and then for the
+   * operation. Subclasses that want to implement bytecode merging for this
+   * pattern must override this method.
+   *
+   * @param index1 the local index of the first operand
+   * @param index2 the local index of the second operand
+   * @param opcode the opcode of the operation
+   */
+  protected void emit_iload_iload_ialu(int index1, int index2, int opcode) {
+    emit_regular_iload(index1);
+    emit_regular_iload(index2);
+    emit_ialu(opcode);
+  }
+
+  /**
+   * Emits code to load an int local variable and combine it with a
+   * constant using iadd, isub, iand, ior or ixor.
+   * <p>
+   * By default, this method emits code for iload, iconst and then for the
+   * operation. Subclasses that want to implement bytecode merging for this
+   * pattern must override this method.
+   *
+   * @param index the local index of the first operand
+   * @param val the second operand
+   * @param opcode the opcode of the operation
+   */
+  protected void emit_iload_iconst_ialu(int index, int val, int opcode) {
+    emit_regular_iload(index);
+    emit_iconst(val);
+    emit_ialu(opcode);
+  }
+
+  /**
+   * Emits code for one of the int operations that can be merged with loads.
+   * @param opcode iadd, isub, iand, ior or ixor
+   */
+  private void emit_ialu(int opcode) {
+    switch (opcode) {
+      case JBC_iadd:
+        emit_iadd();
+        break;
+      case JBC_isub:
+        emit_isub();
+        break;
+      case JBC_iand:
+        emit_iand();
+        break;
+      case JBC_ior:
+        emit_ior();
+        break;
+      default:
+        if (VM.VerifyAssertions) VM._assert(opcode == JBC_ixor);
+        emit_ixor();
+        break;
+    }
+  }
+
   /**
    * Emits code to load a reference local variable
    * @param index the local index to load
@@ -443,6 +745,7 @@ public abstract class BaselineCompiler extends TemplateCompilerFramework {
           bytecodeMap[gfIndex] = getAssembler().getMachineCodeIndex();
           if (shouldPrint) getLister().noteBytecode(biStart, "getfield", fieldRef);
           emit_aload_resolved_getfield(index, fieldRef);
+          if (profileValues && fieldRef.getFieldContentsType().isIntLikeType()) emit_value_profile(gfIndex);
         }
         break;
       }
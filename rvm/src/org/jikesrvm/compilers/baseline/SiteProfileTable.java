@@ -0,0 +1,118 @@
+/*
+ *  This file is part of the Jikes RVM project (http://jikesrvm.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  See the COPYRIGHT.txt file distributed with this work for information
+ *  regarding copyright ownership.
+ */
+package org.jikesrvm.compilers.baseline;
+
+import org.jikesrvm.classloader.NormalMethod;
+import org.jikesrvm.runtime.Magic;
+import org.vmmagic.pragma.Inline;
+import org.vmmagic.pragma.Uninterruptible;
+
+/**
+ * The profiles of the sites of baseline compiled methods, per method, as
+ * kept by {@link TypeProfiles} and {@link ValueProfiles}.
+ * <p>
+ * The profile of a method is an array with a fixed number of ints per
+ * profiled site, in bytecode order. The first int of a site's entry is
+ * its bytecode index; the rest belongs to the kind of profile.
+ */
+final class SiteProfileTable {
+
+  /** Number of ints per site */
+  private final int entrySize;
+
+  /**
+   * Array of profiles. The first index is the ID of the method, the
+   * second the index of the site times entrySize plus the offset in the
+   * entry.
+   */
+  private int[][] data;
+
+  /**
+   * @param entrySize the number of ints per site, including its bytecode index
+   */
+  SiteProfileTable(int entrySize) {
+    this.entrySize = entrySize;
+  }
+
+  /**
+   * @param methodId the ID of a method whose profile has been allocated
+   * @return the method's profile
+   */
+  @Inline
+  @Uninterruptible
+  int[] getProfile(int methodId) {
+    return data[methodId];
+  }
+
+  /**
+   * Allocate the profile of a method once it has been compiled.
+   *
+   * @param m the method
+   * @param sites the bytecode indices of the profiled sites, in order
+   * @param numSites the number of profiled sites
+   */
+  synchronized void allocateProfile(NormalMethod m, int[] sites, int numSites) {
+    int[] profile = new int[numSites * entrySize];
+    for (int i = 0; i < numSites; i++) {
+      profile[i * entrySize] = sites[i];
+    }
+    int id = m.getId();
+    if (data == null) {
+      data = new int[id + 500][];
+    }
+    if (id >= data.length) {
+      int newSize = data.length * 2;
+      if (newSize <= id) newSize = id + 500;
+      int[][] tmp = new int[newSize][];
+      System.arraycopy(data, 0, tmp, 0, data.length);
+      Magic.fence();
+      data = tmp;
+    }
+    data[id] = profile;
+  }
+
+  /**
+   * @param m a method
+   * @return the method's profile, or {@code null} if it has none
+   */
+  int[] findProfile(NormalMethod m) {
+    int[][] d = data;
+    int id = m.getId();
+    if (d == null || id >= d.length) return null;
+    return d[id];
+  }
+
+  /**
+   * @param profile the profile of a method
+   * @param bcIndex a bytecode index in the method
+   * @return the index in the profile of the entry of the site at the
+   *  bytecode index, or -1 if the site was not profiled
+   */
+  int findEntry(int[] profile, int bcIndex) {
+    int low = 0;
+    int high = profile.length / entrySize - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      int entry = middle * entrySize;
+      int bci = profile[entry];
+      if (bci == bcIndex) {
+        return entry;
+      } else if (bci < bcIndex) {
+        low = middle + 1;
+      } else {
+        high = middle - 1;
+      }
+    }
+    return -1;
+  }
+}
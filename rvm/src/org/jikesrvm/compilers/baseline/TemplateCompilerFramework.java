@@ -103,6 +103,18 @@ public abstract class TemplateCompilerFramework {
    */
   protected final boolean doesCheckStore;
 
+  /**
+   * Should the types of the objects at virtual calls, interface calls,
+   * checkcasts and instanceofs be recorded (see {@link TypeProfiles})?
+   */
+  protected boolean profileTypes;
+
+  /**
+   * Should the int values loaded by getfields, getstatics and arraylengths
+   * be recorded (see {@link ValueProfiles})?
+   */
+  protected boolean profileValues;
+
   /**
    * Is the method currently being compiled uninterruptible?
    */
@@ -1374,6 +1386,7 @@ public abstract class TemplateCompilerFramework {
           } else {
             emit_resolved_getstatic(fieldRef);
           }
+          if (profileValues && fieldRef.getFieldContentsType().isIntLikeType()) emit_value_profile(biStart);
           break;
         }
 
@@ -1402,6 +1415,7 @@ public abstract class TemplateCompilerFramework {
           } else {
             emit_resolved_getfield(fieldRef);
           }
+          if (profileValues && fieldRef.getFieldContentsType().isIntLikeType()) emit_value_profile(biStart);
           break;
         }
 
@@ -1439,6 +1453,10 @@ public abstract class TemplateCompilerFramework {
             }
           }
 
+          if (profileTypes && !methodRef.getType().isMagicType()) {
+            emit_type_profile(methodRef.getParameterWords());
+          }
+
           if (methodRef.isMiranda()) {
             /* Special case of abstract interface method should generate
              * an invokeinterface, despite the compiler claiming it should
@@ -1549,6 +1567,7 @@ public abstract class TemplateCompilerFramework {
           // Forbidden from uninterruptible code as interface invocation
           // causes runtime checks that can be interrupted
           if (VM.VerifyUnint && !isInterruptible) forbiddenBytecode("invokeinterface ", methodRef, bcodes.index());
+          if (profileTypes) emit_type_profile(methodRef.getParameterWords());
           emit_invokeinterface(methodRef);
 
           if (xx != null) {
@@ -1645,6 +1664,7 @@ public abstract class TemplateCompilerFramework {
         case JBC_arraylength: {
           if (shouldPrint) lister.noteBytecode(biStart, "arraylength");
           emit_arraylength();
+          if (profileValues) emit_value_profile(biStart);
           break;
         }
 
@@ -1669,6 +1689,7 @@ public abstract class TemplateCompilerFramework {
                 emit_checkcast_final(cType);
                 break;
               } else if (cType.isResolved()) {
+                if (profileTypes) emit_type_profile(0);
                 if (cType.isInterface()) {
                   emit_checkcast_resolvedInterface(cType);
                 } else {
@@ -1692,6 +1713,7 @@ public abstract class TemplateCompilerFramework {
           // Forbidden from uninterruptible code as it may throw an exception
           // that executes via interruptible code
           if (VM.VerifyUnint && !isInterruptible) forbiddenBytecode("checkcast ", typeRef, bcodes.index());
+          if (profileTypes) emit_type_profile(0);
           emit_checkcast(typeRef);
           break;
         }
@@ -1707,6 +1729,7 @@ public abstract class TemplateCompilerFramework {
                 emit_instanceof_final(type);
                 break;
               } else if (cType.isResolved()) {
+                if (profileTypes) emit_type_profile(0);
                 if (cType.isInterface()) {
                   emit_instanceof_resolvedInterface(cType);
                 } else {
@@ -1726,6 +1749,7 @@ public abstract class TemplateCompilerFramework {
           // Forbidden from uninterruptible code as calls interruptible runtime
           // for its implementation
           if (VM.VerifyUnint && !isInterruptible) forbiddenBytecode("instanceof ", typeRef, bcodes.index());
+          if (profileTypes) emit_type_profile(0);
           emit_instanceof(typeRef);
           break;
         }
@@ -2992,6 +3016,22 @@ public abstract class TemplateCompilerFramework {
    */
   protected abstract void emit_athrow();
 
+  /**
+   * Emit code to record the type of an object on the expression stack
+   * in the type profile of the current bytecode (see {@link TypeProfiles}).
+   * The expression stack is left unchanged.
+   * @param depth the depth of the object on the expression stack, in words
+   */
+  protected abstract void emit_type_profile(int depth);
+
+  /**
+   * Emit code to record the int value on top of the expression stack
+   * in the value profile of a bytecode (see {@link ValueProfiles}).
+   * The expression stack is left unchanged.
+   * @param bcIndex the index of the bytecode that loaded the value
+   */
+  protected abstract void emit_value_profile(int bcIndex);
+
   /**
    * Emit code to implement the checkcast bytecode
    * @param typeRef the LHS type
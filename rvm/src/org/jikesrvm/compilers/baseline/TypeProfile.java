@@ -0,0 +1,108 @@
+/*
+ *  This file is part of the Jikes RVM project (http://jikesrvm.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  See the COPYRIGHT.txt file distributed with this work for information
+ *  regarding copyright ownership.
+ */
+package org.jikesrvm.compilers.baseline;
+
+import org.jikesrvm.classloader.RVMType;
+
+/**
+ * The types seen at a virtual call, interface call, checkcast or
+ * instanceof of a baseline compiled method: a snapshot of its entry
+ * in {@link TypeProfiles}.
+ */
+public final class TypeProfile {
+
+  /**
+   * Number of objects that must have been seen at a site before its
+   * profile is trusted
+   */
+  public static final int MIN_OBSERVATIONS = 100;
+
+  /** The bytecode index of the site */
+  private final int bci;
+
+  /** The types seen at the site */
+  private final RVMType[] types;
+
+  /** The number of objects of each type */
+  private final int[] counts;
+
+  /** The number of objects seen, including those of other types */
+  private final long total;
+
+  /**
+   * @param bci the bytecode index of the site
+   * @param profile the type profile of the method
+   * @param entry the start of the site's entry in the profile
+   */
+  TypeProfile(int bci, int[] profile, int entry) {
+    this.bci = bci;
+    int n = 0;
+    for (int i = 0; i < TypeProfiles.TYPES_PER_SITE; i++) {
+      if (profile[entry + 1 + 2 * i] != 0) n++;
+    }
+    types = new RVMType[n];
+    counts = new int[n];
+    long sum = profile[entry + TypeProfiles.OTHER];
+    for (int i = 0; i < n; i++) {
+      types[i] = RVMType.getType(profile[entry + 1 + 2 * i]);
+      counts[i] = profile[entry + 2 + 2 * i];
+      sum += counts[i];
+    }
+    total = sum;
+  }
+
+  public int getBytecodeIndex() {
+    return bci;
+  }
+
+  /**
+   * @return the number of distinct types recorded for the site
+   */
+  public int getNumberOfTypes() {
+    return types.length;
+  }
+
+  public RVMType getType(int i) {
+    return types[i];
+  }
+
+  /**
+   * @param i the index of a recorded type
+   * @return the fraction of the objects seen at the site that were of
+   *  the type
+   */
+  public double getFraction(int i) {
+    return total == 0 ? 0.0 : (double) counts[i] / total;
+  }
+
+  /**
+   * @return whether enough objects have been seen to trust the profile
+   */
+  public boolean isMature() {
+    return total >= MIN_OBSERVATIONS;
+  }
+
+  /**
+   * @param fraction the minimum fraction of the objects
+   * @return the type of at least the given fraction of the objects seen
+   *  at the site, or {@code null} if there is no such type or the profile
+   *  is not mature
+   */
+  public RVMType getDominantType(double fraction) {
+    if (!isMature()) return null;
+    for (int i = 0; i < types.length; i++) {
+      if (getFraction(i) >= fraction) return types[i];
+    }
+    return null;
+  }
+}
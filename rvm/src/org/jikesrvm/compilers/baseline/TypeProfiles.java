@@ -0,0 +1,107 @@
+/*
+ *  This file is part of the Jikes RVM project (http://jikesrvm.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  See the COPYRIGHT.txt file distributed with this work for information
+ *  regarding copyright ownership.
+ */
+package org.jikesrvm.compilers.baseline;
+
+import org.jikesrvm.classloader.NormalMethod;
+import org.jikesrvm.runtime.Magic;
+import org.vmmagic.pragma.Entrypoint;
+import org.vmmagic.pragma.Uninterruptible;
+
+/**
+ * A repository of the types of the objects seen at the virtual calls,
+ * interface calls, checkcasts and instanceofs of baseline compiled methods
+ * (enabled with {@code -X:base:profile_types=true}).
+ * <p>
+ * The profile of a method is an array with {@link #ENTRY_SIZE} ints per
+ * profiled site, in bytecode order: the bytecode index of the site,
+ * {@link #TYPES_PER_SITE} pairs of type id and count for the first types
+ * seen at the site, and the count of all other objects. The counters are
+ * updated without synchronization, so a race can only lose precision.
+ */
+public final class TypeProfiles {
+
+  /** Number of distinct types recorded per site */
+  public static final int TYPES_PER_SITE = 2;
+
+  /** Offset in an entry of the count of the objects of other types */
+  static final int OTHER = 1 + 2 * TYPES_PER_SITE;
+
+  /** Number of ints per site */
+  static final int ENTRY_SIZE = OTHER + 1;
+
+  /** The profiles of the methods */
+  private static final SiteProfileTable table = new SiteProfileTable(ENTRY_SIZE);
+
+  /**
+   * Record the type of an object at a profiled site. Called by
+   * baseline compiled code before the bytecode at the site.
+   *
+   * @param obj the receiver or the object being tested
+   * @param methodId the ID of the method containing the site
+   * @param site the index of the site in the method's profile
+   */
+  @Entrypoint
+  @Uninterruptible
+  static void record(Object obj, int methodId, int site) {
+    if (obj == null) return;
+    int[] profile = table.getProfile(methodId);
+    int typeId = Magic.getObjectType(obj).getId();
+    int idx = site * ENTRY_SIZE + 1;
+    for (int i = 0; i < TYPES_PER_SITE; i++, idx += 2) {
+      int seen = profile[idx];
+      if (seen == 0) {
+        profile[idx] = typeId;
+        seen = typeId;
+      }
+      if (seen == typeId) {
+        increment(profile, idx + 1);
+        return;
+      }
+    }
+    increment(profile, site * ENTRY_SIZE + OTHER);
+  }
+
+  @Uninterruptible
+  private static void increment(int[] profile, int idx) {
+    int count = profile[idx];
+    if (count != Integer.MAX_VALUE) {
+      profile[idx] = count + 1;
+    }
+  }
+
+  /**
+   * Allocate the profile of a method once it has been compiled.
+   *
+   * @param m the method
+   * @param sites the bytecode indices of the profiled sites, in order
+   * @param numSites the number of profiled sites
+   */
+  static void allocateProfiles(NormalMethod m, int[] sites, int numSites) {
+    table.allocateProfile(m, sites, numSites);
+  }
+
+  /**
+   * @param m a method
+   * @param bcIndex the bytecode index of a virtual call, interface call,
+   *  checkcast or instanceof in the method
+   * @return the types seen at the site by the baseline compiled code
+   *  of the method, or {@code null} if the site was not profiled
+   */
+  public static TypeProfile getTypeProfile(NormalMethod m, int bcIndex) {
+    int[] profile = table.findProfile(m);
+    if (profile == null) return null;
+    int entry = table.findEntry(profile, bcIndex);
+    if (entry == -1) return null;
+    return new TypeProfile(bcIndex, profile, entry);
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ *  This file is part of the Jikes RVM project (http://jikesrvm.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  See the COPYRIGHT.txt file distributed with this work for information
+ *  regarding copyright ownership.
+ */
+package org.jikesrvm.compilers.baseline;
+
+/**
+ * The int values loaded by a getfield, getstatic or arraylength of a
+ * baseline compiled method: a snapshot of its entry in
+ * {@link ValueProfiles}.
+ */
+public final class ValueProfile {
+
+  /**
+   * Number of values that must have been seen at a site before its
+   * profile is trusted
+   */
+  public static final int MIN_OBSERVATIONS = 1000;
+
+  /** The bytecode index of the site */
+  private final int bci;
+
+  /** The value that won the majority vote */
+  private final int value;
+
+  /** The number of votes left for the value */
+  private final int count;
+
+  /** The number of values seen */
+  private final int total;
+
+  /** Whether a speculation on the value failed */
+  private final boolean failed;
+
+  ValueProfile(int bci, int value, int count, int total, boolean failed) {
+    this.bci = bci;
+    this.value = value;
+    this.count = count;
+    this.total = total;
+    this.failed = failed;
+  }
+
+  public int getBytecodeIndex() {
+    return bci;
+  }
+
+  /**
+   * @return the value that was loaded most often, if any value was loaded
+   *  more than half of the time
+   */
+  public int getValue() {
+    return value;
+  }
+
+  /**
+   * Estimate how dominant the value is. If it was loaded a fraction f of
+   * the time, the estimate lies between 2f - 1 and f, so it is only close
+   * to 1 when the value was almost always loaded.
+   *
+   * @return a conservative estimate of the fraction of the loads that
+   *  produced the value
+   */
+  public double getFraction() {
+    return total == 0 ? 0.0 : (double) count / total;
+  }
+
+  /**
+   * @return whether opt compiled code speculated on a value at the site
+   *  and found a different one, see {@link ValueProfiles#speculationFailed}
+   */
+  public boolean hasSpeculationFailed() {
+    return failed;
+  }
+
+  /**
+   * @return whether enough values have been seen to trust the profile
+   */
+  public boolean isMature() {
+    return total >= MIN_OBSERVATIONS;
+  }
+
+  /**
+   * @param fraction the minimum estimated fraction of the loads
+   * @return whether the profile is mature and the value was loaded at
+   *  least the given fraction of the time
+   */
+  public boolean isDominant(double fraction) {
+    return isMature() && getFraction() >= fraction;
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ *  This file is part of the Jikes RVM project (http://jikesrvm.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  See the COPYRIGHT.txt file distributed with this work for information
+ *  regarding copyright ownership.
+ */
+package org.jikesrvm.compilers.baseline;
+
+import org.jikesrvm.classloader.NormalMethod;
+import org.vmmagic.pragma.Entrypoint;
+import org.vmmagic.pragma.Uninterruptible;
+
+/**
+ * A repository of the int values loaded by the getfields, getstatics and
+ * arraylengths of baseline compiled methods (enabled with
+ * {@code -X:base:profile_values=true}).
+ * <p>
+ * The profile of a method is an array with {@link #ENTRY_SIZE} ints per
+ * profiled site, in bytecode order: the bytecode index of the site, a
+ * candidate value, its count, the number of values seen and whether a
+ * speculation on the site has failed. The candidate
+ * is maintained by majority vote: a value equal to the candidate increments
+ * its count, any other value decrements it, and a count of zero lets the
+ * next value become the candidate. A value that is loaded most of the time
+ * thus ends up as the candidate whatever the order of the loads. The counters
+ * are updated without synchronization, so a race can only lose precision.
+ * <p>
+ * Once opt compiled code finds that a speculated value has changed, the
+ * site is blacklisted: its value is not speculated on again, whatever its
+ * profile says afterwards.
+ */
+public final class ValueProfiles {
+
+  /** Offset in an entry of the candidate value */
+  static final int VALUE = 1;
+
+  /** Offset in an entry of the count of the candidate value */
+  static final int COUNT = 2;
+
+  /** Offset in an entry of the number of values seen */
+  static final int TOTAL = 3;
+
+  /** Offset in an entry of the flag set when a speculation failed */
+  static final int FAILED = 4;
+
+  /** Number of ints per site */
+  static final int ENTRY_SIZE = FAILED + 1;
+
+  /** The profiles of the methods */
+  private static final SiteProfileTable table = new SiteProfileTable(ENTRY_SIZE);
+
+  /**
+   * Record a value loaded at a profiled site. Called by baseline compiled
+   * code after the bytecode at the site.
+   *
+   * @param value the value that was loaded
+   * @param methodId the ID of the method containing the site
+   * @param site the index of the site in the method's profile
+   */
+  @Entrypoint
+  @Uninterruptible
+  static void record(int value, int methodId, int site) {
+    int[] profile = table.getProfile(methodId);
+    int idx = site * ENTRY_SIZE;
+    int total = profile[idx + TOTAL];
+    if (total == Integer.MAX_VALUE) return;
+    profile[idx + TOTAL] = total + 1;
+    int count = profile[idx + COUNT];
+    if (count == 0) {
+      profile[idx + VALUE] = value;
+      profile[idx + COUNT] = 1;
+    } else if (profile[idx + VALUE] == value) {
+      profile[idx + COUNT] = count + 1;
+    } else {
+      profile[idx + COUNT] = count - 1;
+    }
+  }
+
+  /**
+   * Allocate the profile of a method once it has been compiled.
+   *
+   * @param m the method
+   * @param sites the bytecode indices of the profiled sites, in order
+   * @param numSites the number of profiled sites
+   */
+  static void allocateProfiles(NormalMethod m, int[] sites, int numSites) {
+    table.allocateProfile(m, sites, numSites);
+  }
+
+  /**
+   * @param m a method
+   * @param bcIndex the bytecode index of a getfield, getstatic or
+   *  arraylength in the method
+   * @return the values loaded at the site by the baseline compiled code
+   *  of the method, or {@code null} if the site was not profiled
+   */
+  public static ValueProfile getValueProfile(NormalMethod m, int bcIndex) {
+    int[] profile = table.findProfile(m);
+    if (profile == null) return null;
+    int entry = table.findEntry(profile, bcIndex);
+    if (entry == -1) return null;
+    return new ValueProfile(bcIndex, profile[entry + VALUE], profile[entry + COUNT], profile[entry + TOTAL],
+                            profile[entry + FAILED] != 0);
+  }
+
+  /**
+   * Blacklist a site after the guard of a speculation on its value failed.
+   * Does nothing if the site was not profiled, e.g. when an OSR point of
+   * guarded inlining was taken.
+   *
+   * @param m a method
+   * @param bcIndex the bytecode index of the site in the method
+   */
+  public static void speculationFailed(NormalMethod m, int bcIndex) {
+    int[] profile = table.findProfile(m);
+    if (profile == null) return;
+    int entry = table.findEntry(profile, bcIndex);
+    if (entry == -1) return;
+    profile[entry + FAILED] = 1;
+  }
+}
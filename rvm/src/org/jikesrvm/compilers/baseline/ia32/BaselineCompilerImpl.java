@@ -12,6 +12,11 @@
  */
 package org.jikesrvm.compilers.baseline.ia32;
 
+import static org.jikesrvm.classloader.BytecodeConstants.JBC_iadd;
+import static org.jikesrvm.classloader.BytecodeConstants.JBC_iand;
+import static org.jikesrvm.classloader.BytecodeConstants.JBC_ior;
+import static org.jikesrvm.classloader.BytecodeConstants.JBC_isub;
+import static org.jikesrvm.classloader.BytecodeConstants.JBC_ixor;
 import static org.jikesrvm.classloader.ConstantPool.*;
 import static org.jikesrvm.compilers.common.assembler.ia32.AssemblerConstants.*;
 import static org.jikesrvm.ia32.ArchConstants.SSE2_BASE;
@@ -605,6 +610,126 @@ public final class BaselineCompilerImpl extends BaselineCompiler {
     }
   }
 
+  /**
+   * Emits code to load an int local variable and branch on its comparison with zero
+   * @param index the local index to load
+   * @param bTarget target bytecode of the branch
+   * @param bc branch condition
+   */
+  @Override
+  protected void emit_iload_if(int index, int bTarget, BranchCondition bc) {
+    try {
+      asm.emitCMP_RegDisp_Imm(ESP, localOffset(index), 0);
+      genCondBranch(mapCondition(bc), bTarget);
+    } catch (UnreachableBytecodeException e) {
+      asm.emitINT_Imm(TRAP_UNREACHABLE_BYTECODE + RVM_TRAP_BASE);
+    }
+  }
+
+  /**
+   * Emits code to load two int local variables and branch on their comparison
+   * @param index1 the local index of the first operand
+   * @param index2 the local index of the second operand
+   * @param bTarget target bytecode of the branch
+   * @param bc branch condition
+   */
+  @Override
+  protected void emit_iload_iload_if_icmp(int index1, int index2, int bTarget, BranchCondition bc) {
+    try {
+      asm.emitMOV_Reg_RegDisp(T0, ESP, localOffset(index1));
+      asm.emitCMP_Reg_RegDisp(T0, ESP, localOffset(index2));
+      genCondBranch(mapCondition(bc), bTarget);
+    } catch (UnreachableBytecodeException e) {
+      asm.emitINT_Imm(TRAP_UNREACHABLE_BYTECODE + RVM_TRAP_BASE);
+    }
+  }
+
+  /**
+   * Emits code to load an int local variable and branch on its comparison with a constant
+   * @param index the local index of the first operand
+   * @param val the second operand
+   * @param bTarget target bytecode of the branch
+   * @param bc branch condition
+   */
+  @Override
+  protected void emit_iload_iconst_if_icmp(int index, int val, int bTarget, BranchCondition bc) {
+    try {
+      asm.emitCMP_RegDisp_Imm(ESP, localOffset(index), val);
+      genCondBranch(mapCondition(bc), bTarget);
+    } catch (UnreachableBytecodeException e) {
+      asm.emitINT_Imm(TRAP_UNREACHABLE_BYTECODE + RVM_TRAP_BASE);
+    }
+  }
+
+  /**
+   * Emits code to load two int local variables and combine them
+   * @param index1 the local index of the first operand
+   * @param index2 the local index of the second operand
+   * @param opcode iadd, isub, iand, ior or ixor
+   */
+  @Override
+  protected void emit_iload_iload_ialu(int index1, int index2, int opcode) {
+    try {
+      asm.emitMOV_Reg_RegDisp(T0, ESP, localOffset(index1));
+      Offset offset = localOffset(index2);
+      switch (opcode) {
+        case JBC_iadd:
+          asm.emitADD_Reg_RegDisp(T0, ESP, offset);
+          break;
+        case JBC_isub:
+          asm.emitSUB_Reg_RegDisp(T0, ESP, offset);
+          break;
+        case JBC_iand:
+          asm.emitAND_Reg_RegDisp(T0, ESP, offset);
+          break;
+        case JBC_ior:
+          asm.emitOR_Reg_RegDisp(T0, ESP, offset);
+          break;
+        default:
+          if (VM.VerifyAssertions) VM._assert(opcode == JBC_ixor);
+          asm.emitXOR_Reg_RegDisp(T0, ESP, offset);
+          break;
+      }
+      asm.emitPUSH_Reg(T0);
+    } catch (UnreachableBytecodeException e) {
+      asm.emitINT_Imm(TRAP_UNREACHABLE_BYTECODE + RVM_TRAP_BASE);
+    }
+  }
+
+  /**
+   * Emits code to load an int local variable and combine it with a constant
+   * @param index the local index of the first operand
+   * @param val the second operand
+   * @param opcode iadd, isub, iand, ior or ixor
+   */
+  @Override
+  protected void emit_iload_iconst_ialu(int index, int val, int opcode) {
+    try {
+      asm.emitMOV_Reg_RegDisp(T0, ESP, localOffset(index));
+      switch (opcode) {
+        case JBC_iadd:
+          asm.emitADD_Reg_Imm(T0, val);
+          break;
+        case JBC_isub:
+          asm.emitSUB_Reg_Imm(T0, val);
+          break;
+        case JBC_iand:
+          asm.emitAND_Reg_Imm(T0, val);
+          break;
+        case JBC_ior:
+          asm.emitOR_Reg_Imm(T0, val);
+          break;
+        default:
+          if (VM.VerifyAssertions) VM._assert(opcode == JBC_ixor);
+          asm.emitXOR_Reg_Imm(T0, val);
+          break;
+      }
+      asm.emitPUSH_Reg(T0);
+    } catch (UnreachableBytecodeException e) {
+      asm.emitINT_Imm(TRAP_UNREACHABLE_BYTECODE + RVM_TRAP_BASE);
+    }
+  }
+
   @Override
   protected void emit_saload() {
     asm.emitPOP_Reg(T0); // T0 is array index
@@ -3121,7 +3246,7 @@ public final class BaselineCompilerImpl extends BaselineCompiler {
     int whichAllocator = MemoryManager.pickAllocator(typeRef, method);
     int align = ObjectModel.getAlignment(typeRef);
     int offset = ObjectModel.getOffsetForAlignment(typeRef, false);
-    int site = MemoryManager.getAllocationSite(true);
+    int site = MemoryManager.getAllocationSite(method, biStart);
     asm.emitPUSH_Imm(instanceSize);
     asm.generateJTOCpush(tibOffset);                             // put tib on stack
     asm.emitPUSH_Imm(typeRef.hasFinalizer() ? 1 : 0);    // does the class have a finalizer?
@@ -3136,7 +3261,7 @@ public final class BaselineCompilerImpl extends BaselineCompiler {
 
   @Override
   protected void emit_unresolved_new(TypeReference typeRef) {
-    int site = MemoryManager.getAllocationSite(true);
+    int site = MemoryManager.getAllocationSite(method, biStart);
     asm.emitPUSH_Imm(typeRef.getId());
     asm.emitPUSH_Imm(site);            // site
     genParameterRegisterLoad(asm, 2);  // pass 2 parameter words
@@ -3150,7 +3275,7 @@ public final class BaselineCompilerImpl extends BaselineCompiler {
     Offset tibOffset = array.getTibOffset();
     int headerSize = ObjectModel.computeHeaderSize(array);
     int whichAllocator = MemoryManager.pickAllocator(array, method);
-    int site = MemoryManager.getAllocationSite(true);
+    int site = MemoryManager.getAllocationSite(method, biStart);
     int align = ObjectModel.getAlignment(array);
     int offset = ObjectModel.getOffsetForAlignment(array, false);
     // count is already on stack- nothing required
@@ -3168,7 +3293,7 @@ public final class BaselineCompilerImpl extends BaselineCompiler {
 
   @Override
   protected void emit_unresolved_newarray(TypeReference tRef) {
-    int site = MemoryManager.getAllocationSite(true);
+    int site = MemoryManager.getAllocationSite(method, biStart);
     // count is already on stack- nothing required
     asm.emitPUSH_Imm(tRef.getId());
     asm.emitPUSH_Imm(site);           // site
@@ -3219,6 +3344,24 @@ public final class BaselineCompilerImpl extends BaselineCompiler {
     asm.generateJTOCcall(Entrypoints.athrowMethod.getOffset());
   }
 
+  @Override
+  protected void emit_type_profile(int depth) {
+    asm.emitPUSH_RegDisp(SP, Offset.fromIntZeroExtend(depth << LG_WORDSIZE)); // copy the object ref
+    asm.emitPUSH_Imm(method.getId());
+    asm.emitPUSH_Imm(allocateTypeProfileSite());
+    genParameterRegisterLoad(asm, 3);                     // pass 3 parameter words
+    asm.generateJTOCcall(Entrypoints.recordTypeMethod.getOffset()); // record(obj, method id, site)
+  }
+
+  @Override
+  protected void emit_value_profile(int bcIndex) {
+    asm.emitPUSH_RegInd(SP);                        // copy the value
+    asm.emitPUSH_Imm(method.getId());
+    asm.emitPUSH_Imm(allocateValueProfileSite(bcIndex));
+    genParameterRegisterLoad(asm, 3);                     // pass 3 parameter words
+    asm.generateJTOCcall(Entrypoints.recordValueMethod.getOffset()); // record(value, method id, site)
+  }
+
   @Override
   protected void emit_checkcast(TypeReference typeRef) {
     asm.emitPUSH_RegInd(SP);                        // duplicate the object ref on the stack
@@ -2700,7 +2700,7 @@ public final class BaselineCompilerImpl extends BaselineCompiler {
     int whichAllocator = MemoryManager.pickAllocator(typeRef, method);
     int align = ObjectModel.getAlignment(typeRef);
     int offset = ObjectModel.getOffsetForAlignment(typeRef, false);
-    int site = MemoryManager.getAllocationSite(true);
+    int site = MemoryManager.getAllocationSite(method, biStart);
     asm.emitLAddrToc(T0, Entrypoints.resolvedNewScalarMethod.getOffset());
     asm.emitMTCTR(T0);
     asm.emitLVAL(T0, instanceSize);
@@ -2716,7 +2716,7 @@ public final class BaselineCompilerImpl extends BaselineCompiler {
 
   @Override
   protected void emit_unresolved_new(TypeReference typeRef) {
-    int site = MemoryManager.getAllocationSite(true);
+    int site = MemoryManager.getAllocationSite(method, biStart);
     asm.emitLAddrToc(T0, Entrypoints.unresolvedNewScalarMethod.getOffset());
     asm.emitMTCTR(T0);
     asm.emitLVAL(T0, typeRef.getId());
@@ -2731,7 +2731,7 @@ public final class BaselineCompilerImpl extends BaselineCompiler {
     Offset tibOffset = array.getTibOffset();
     int headerSize = ObjectModel.computeArrayHeaderSize(array);
     int whichAllocator = MemoryManager.pickAllocator(array, method);
-    int site = MemoryManager.getAllocationSite(true);
+    int site = MemoryManager.getAllocationSite(method, biStart);
     int align = ObjectModel.getAlignment(array);
     int offset = ObjectModel.getOffsetForAlignment(array, false);
     asm.emitLAddrToc(T0, Entrypoints.resolvedNewArrayMethod.getOffset());
@@ -2750,7 +2750,7 @@ public final class BaselineCompilerImpl extends BaselineCompiler {
 
   @Override
   protected void emit_unresolved_newarray(TypeReference typeRef) {
-    int site = MemoryManager.getAllocationSite(true);
+    int site = MemoryManager.getAllocationSite(method, biStart);
     asm.emitLAddrToc(T0, Entrypoints.unresolvedNewArrayMethod.getOffset());
     asm.emitMTCTR(T0);
     peekInt(T0, 0);                // T0 := number of elements
@@ -2789,6 +2789,26 @@ public final class BaselineCompilerImpl extends BaselineCompiler {
     asm.emitBCCTRL();
   }
 
+  @Override
+  protected void emit_type_profile(int depth) {
+    asm.emitLAddrToc(T0, Entrypoints.recordTypeMethod.getOffset());
+    asm.emitMTCTR(T0);
+    peekAddr(T0, depth); // record(obj, method id, site)
+    asm.emitLVAL(T1, method.getId());
+    asm.emitLVAL(T2, allocateTypeProfileSite());
+    asm.emitBCCTRL();
+  }
+
+  @Override
+  protected void emit_value_profile(int bcIndex) {
+    asm.emitLAddrToc(T0, Entrypoints.recordValueMethod.getOffset());
+    asm.emitMTCTR(T0);
+    peekInt(T0, 0); // record(value, method id, site)
+    asm.emitLVAL(T1, method.getId());
+    asm.emitLVAL(T2, allocateValueProfileSite(bcIndex));
+    asm.emitBCCTRL();
+  }
+
   @Override
   protected void emit_checkcast(TypeReference typeRef) {
     asm.emitLAddrToc(T0, Entrypoints.checkcastMethod.getOffset());
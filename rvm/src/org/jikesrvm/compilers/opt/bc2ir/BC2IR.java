@@ -37,6 +37,8 @@ import org.jikesrvm.classloader.RVMMethod;
 import org.jikesrvm.classloader.RVMType;
 import org.jikesrvm.classloader.TypeReference;
 import org.jikesrvm.compilers.baseline.SwitchBranchProfile;
+import org.jikesrvm.compilers.baseline.ValueProfile;
+import org.jikesrvm.compilers.baseline.ValueProfiles;
 import org.jikesrvm.compilers.common.CompiledMethod;
 import org.jikesrvm.compilers.common.CompiledMethods;
 import org.jikesrvm.compilers.opt.ClassLoaderProxy;
@@ -201,6 +203,17 @@ public final class BC2IR {
   // OSR field
   private boolean osrGuardedInline = false;
 
+  /**
+   * Speculate on the int values that value profiles show to be almost
+   * constant (see {@link ValueGuardExpansion})?
+   */
+  private boolean speculateOnValues = false;
+
+  /**
+   * Minimum estimated fraction of the loads of a value for speculating on it
+   */
+  static final double DOMINANT_VALUE_FRACTION = 0.98;
+
   /**
    * OSR field: TODO rework this mechanism!
    * adjustment of bcIndex of instructions because of
@@ -327,6 +340,13 @@ public final class BC2IR {
        OptimizingCompiler.getAppStarted() &&
        (Controller.options != null) &&
        Controller.options.ENABLE_RECOMPILATION;
+
+    // the OSR points need the barriers of all enclosing call sites
+    this.speculateOnValues = this.osrGuardedInline &&
+       context.getOptions().OSR_VALUE_SPECULATION &&
+       !context.getOriginalMethod().isForOsrSpecialization() &&
+       context.getOriginalMethod().isInterruptible() &&
+       context.getMethod().isInterruptible();
   }
 
   private void finish(GenerationContext context) {
@@ -1625,13 +1645,20 @@ public final class BC2IR {
             }
           }
 
+          ValueProfile speculation = unresolved || fieldOp.mayBeVolatile() ? null : getValueSpeculation(fieldType);
+          Instruction barrier = speculation == null ? null : _createOsrBarrier();
+
           s = GetStatic.create(GETSTATIC, t, offsetOp, fieldOp);
           if (fieldOp.mayBeVolatile()) {
               appendInstruction(s);
               s = Empty.create(READ_CEILING);
           }
 
-          push(t.copyD2U(), fieldType);
+          if (speculation != null) {
+            speculateOnValue(s, t, speculation, barrier);
+          } else {
+            push(t.copyD2U(), fieldType);
+          }
         }
         break;
 
@@ -1699,6 +1726,10 @@ public final class BC2IR {
             }
           }
 
+          // the state for OSR must be taken before the object is popped
+          ValueProfile speculation = unresolved || fieldOp.mayBeVolatile() ? null : getValueSpeculation(fieldType);
+          Instruction barrier = speculation == null ? null : _createOsrBarrier();
+
           Operand op1 = pop();
           clearCurrentGuard();
           if (do_NullCheck(op1)) {
@@ -1730,7 +1761,11 @@ public final class BC2IR {
               s = Empty.create(READ_CEILING);
           }
 
-          push(t.copyD2U(), fieldType);
+          if (speculation != null) {
+            speculateOnValue(s, t, speculation, barrier);
+          } else {
+            push(t.copyD2U(), fieldType);
+          }
         }
         break;
 
@@ -2200,6 +2235,8 @@ public final class BC2IR {
         break;
 
         case JBC_arraylength: {
+          ValueProfile speculation = getValueSpeculation(TypeReference.Int);
+          Instruction barrier = speculation == null ? null : _createOsrBarrier();
           Operand op1 = pop();
           clearCurrentGuard();
           if (do_NullCheck(op1)) {
@@ -2210,7 +2247,11 @@ public final class BC2IR {
           }
           RegisterOperand t = gc.getTemps().makeTempInt();
           s = GuardedUnary.create(ARRAYLENGTH, t, op1, getCurrentGuard());
-          push(t.copyD2U());
+          if (speculation != null) {
+            speculateOnValue(s, t, speculation, barrier);
+          } else {
+            push(t.copyD2U());
+          }
         }
         break;
 
@@ -4955,6 +4996,41 @@ public final class BC2IR {
     return t.copyD2U();
   }
 
+  /**
+   * Decides whether to speculate on the int value loaded by the current
+   * bytecode, based on the value profile of the bytecode in the baseline
+   * compiled code of the method.
+   *
+   * @param type the type of the value
+   * @return the value profile of the current bytecode if its value is
+   *  dominant enough to speculate on and no earlier speculation on it
+   *  failed, {@code null} otherwise
+   */
+  private ValueProfile getValueSpeculation(TypeReference type) {
+    if (!speculateOnValues || !type.isIntLikeType()) return null;
+    ValueProfile profile = ValueProfiles.getValueProfile(gc.getMethod(), instrIndex);
+    if (profile == null || profile.hasSpeculationFailed() || !profile.isDominant(DOMINANT_VALUE_FRACTION)) {
+      return null;
+    }
+    return profile;
+  }
+
+  /**
+   * Pushes the value speculated on instead of the value loaded by the
+   * current bytecode, and records the speculation for
+   * {@link ValueGuardExpansion}, which will guard it.
+   *
+   * @param load the instruction that loads the value
+   * @param result the register that the value is loaded into
+   * @param profile the value profile of the bytecode
+   * @param barrier the OSR barrier describing the state before the bytecode
+   */
+  private void speculateOnValue(Instruction load, RegisterOperand result, ValueProfile profile, Instruction barrier) {
+    Instruction osrPoint = _osrHelper(barrier, gc);
+    gc.saveValueGuard(new ValueGuardExpansion.Guard(load, result, profile.getValue(), osrPoint));
+    push(new IntConstantOperand(profile.getValue()));
+  }
+
   /**
    * Creates an OSR point instruction with its dependent OsrBarrier
    * which provides type and variable information.
@@ -34,11 +34,13 @@ import static org.jikesrvm.compilers.opt.ir.Operators.UNINT_BEGIN;
 import static org.jikesrvm.compilers.opt.ir.Operators.UNINT_END;
 import static org.jikesrvm.compilers.opt.ir.Operators.YIELDPOINT_OSR;
 
+import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.jikesrvm.VM;
@@ -241,6 +243,13 @@ public final class GenerationContext {
    */
   private Map<Instruction, Instruction> instToOSRBarriers;
 
+  /**
+   * The value speculations made by BC2IR, whose guards are inserted by
+   * {@link ValueGuardExpansion}. Like the OSR barriers, they are saved
+   * in the outermost context.
+   */
+  private List<ValueGuardExpansion.Guard> valueGuards;
+
   //////////
   // Main public methods
   /////////
@@ -332,6 +341,7 @@ public final class GenerationContext {
 
     enclosingHandlers = null;
     instToOSRBarriers = new LinkedHashMap<Instruction, Instruction>();
+    valueGuards = new ArrayList<ValueGuardExpansion.Guard>();
 
     completePrologue(true);
     completeEpilogue(true);
@@ -966,6 +976,14 @@ public final class GenerationContext {
     instToOSRBarriers = null;
   }
 
+  void saveValueGuard(ValueGuardExpansion.Guard guard) {
+    getOutermostContext().valueGuards.add(guard);
+  }
+
+  List<ValueGuardExpansion.Guard> getValueGuards() {
+    return getOutermostContext().valueGuards;
+  }
+
 
   ///////////
   // Getters and setters that need to be public
@@ -0,0 +1,135 @@
+/*
+ *  This file is part of the Jikes RVM project (http://jikesrvm.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  See the COPYRIGHT.txt file distributed with this work for information
+ *  regarding copyright ownership.
+ */
+package org.jikesrvm.compilers.opt.bc2ir;
+
+import static org.jikesrvm.compilers.opt.ir.Operators.INT_IFCMP;
+
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+
+import org.jikesrvm.VM;
+import org.jikesrvm.compilers.opt.OptOptions;
+import org.jikesrvm.compilers.opt.driver.CompilerPhase;
+import org.jikesrvm.compilers.opt.ir.BasicBlock;
+import org.jikesrvm.compilers.opt.ir.IR;
+import org.jikesrvm.compilers.opt.ir.IfCmp;
+import org.jikesrvm.compilers.opt.ir.Instruction;
+import org.jikesrvm.compilers.opt.ir.operand.BranchProfileOperand;
+import org.jikesrvm.compilers.opt.ir.operand.ConditionOperand;
+import org.jikesrvm.compilers.opt.ir.operand.IntConstantOperand;
+import org.jikesrvm.compilers.opt.ir.operand.RegisterOperand;
+
+/**
+ * A phase in the OPT compiler that inserts the guards of the value
+ * speculations made by BC2IR.
+ * <p>
+ * When the value profile of a getfield, getstatic or arraylength shows
+ * that it (almost) always loads the same int, BC2IR uses that constant
+ * instead of the loaded value, and records the load, the constant and an
+ * OSR point describing the state before the bytecode. This phase splits
+ * the block after the load and inserts a test of the loaded value: if it
+ * is not the constant, the OSR point transfers execution to baseline code,
+ * which repeats the bytecode. Taking the OSR point also invalidates the
+ * compiled method and blacklists the site, so that the method is
+ * recompiled without the speculation (see
+ * {@link org.jikesrvm.osr.OSRProfiler#notifyInvalidation}). Must run
+ * before {@link OsrPointConstructor}.
+ */
+public final class ValueGuardExpansion extends CompilerPhase {
+
+  /**
+   * A value speculation made by BC2IR
+   */
+  static final class Guard {
+    /** The instruction that loads the value */
+    final Instruction load;
+    /** The definition of the register that holds the loaded value */
+    final RegisterOperand result;
+    /** The value that the rest of the code assumes */
+    final int value;
+    /** The OSR point to take if the loaded value is different */
+    final Instruction osrPoint;
+
+    Guard(Instruction load, RegisterOperand result, int value, Instruction osrPoint) {
+      this.load = load;
+      this.result = result;
+      this.value = value;
+      this.osrPoint = osrPoint;
+    }
+  }
+
+  @Override
+  public boolean shouldPerform(OptOptions options) {
+    return VM.runningVM && options.OSR_GUARDED_INLINING && options.OSR_VALUE_SPECULATION;
+  }
+
+  @Override
+  public String getName() {
+    return "Value Guard Expansion";
+  }
+
+  // This phase contains no instance fields.
+  @Override
+  public CompilerPhase newExecution(IR ir) {
+    return this;
+  }
+
+  @Override
+  public void perform(IR ir) {
+    List<Guard> guards = ir.getGc().getValueGuards();
+    if (guards.isEmpty()) return;
+    // BC2IR discards the instructions of the blocks it regenerates, so
+    // only guard the loads that are still in the IR
+    HashMap<Instruction, Guard> guardsByLoad = new HashMap<Instruction, Guard>();
+    for (Guard guard : guards) {
+      guardsByLoad.put(guard.load, guard);
+    }
+    ArrayList<Guard> live = new ArrayList<Guard>();
+    for (Enumeration<Instruction> e = ir.forwardInstrEnumerator(); e.hasMoreElements();) {
+      Guard guard = guardsByLoad.get(e.nextElement());
+      if (guard != null) live.add(guard);
+    }
+    for (Guard guard : live) {
+      insertGuard(guard, ir);
+    }
+    guards.clear();
+  }
+
+  /**
+   * Insert the test of a speculated value after its load.
+   *
+   * @param guard the speculation
+   * @param ir the IR
+   */
+  private static void insertGuard(Guard guard, IR ir) {
+    Instruction load = guard.load;
+    BasicBlock loadBlock = load.getBasicBlock();
+    BasicBlock failed = loadBlock.createSubBlock(load.getBytecodeIndex(), ir, 0f);
+    loadBlock.splitNodeWithLinksAt(load, ir);
+    guard.osrPoint.copyPosition(load);
+    failed.appendInstruction(guard.osrPoint);
+    failed.insertOut(ir.cfg.exit());
+    failed.setInfrequent();
+    ir.cfg.addLastInCodeOrder(failed);
+    loadBlock.appendInstruction(IfCmp.create(INT_IFCMP,
+                                             ir.regpool.makeTempValidation(),
+                                             guard.result.copyD2U(),
+                                             new IntConstantOperand(guard.value),
+                                             ConditionOperand.NOT_EQUAL(),
+                                             failed.makeJumpTarget(),
+                                             BranchProfileOperand.never()));
+    loadBlock.insertOut(failed);
+  }
+}
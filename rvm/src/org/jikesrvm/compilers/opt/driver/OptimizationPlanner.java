@@ -30,6 +30,7 @@ import org.jikesrvm.compilers.opt.OptOptions;
 import org.jikesrvm.compilers.opt.Simple;
 import org.jikesrvm.compilers.opt.bc2ir.ConvertBCtoHIR;
 import org.jikesrvm.compilers.opt.bc2ir.OsrPointConstructor;
+import org.jikesrvm.compilers.opt.bc2ir.ValueGuardExpansion;
 import org.jikesrvm.compilers.opt.controlflow.BranchOptimizations;
 import org.jikesrvm.compilers.opt.controlflow.BuildLST;
 import org.jikesrvm.compilers.opt.controlflow.CFGTransformations;
@@ -189,7 +190,7 @@ public class OptimizationPlanner {
         // Generate HIR from bytecodes
         new ConvertBCtoHIR(),
 
-        new AdjustBCIndexes(), new OsrPointConstructor(),
+        new AdjustBCIndexes(), new ValueGuardExpansion(), new OsrPointConstructor(),
 
         // Always do initial wave of peephole branch optimizations
         new BranchOptimizations(0, true, false),
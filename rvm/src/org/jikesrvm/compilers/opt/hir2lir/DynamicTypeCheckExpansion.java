@@ -19,6 +19,8 @@ import org.jikesrvm.classloader.DynamicTypeCheck;
 import org.jikesrvm.classloader.RVMMethod;
 import org.jikesrvm.classloader.RVMType;
 import org.jikesrvm.classloader.TypeReference;
+import org.jikesrvm.compilers.baseline.TypeProfile;
+import org.jikesrvm.compilers.baseline.TypeProfiles;
 import org.jikesrvm.compilers.opt.OptimizingCompilerException;
 import org.jikesrvm.compilers.opt.ir.ALoad;
 import org.jikesrvm.compilers.opt.ir.Binary;
@@ -80,6 +82,13 @@ import org.vmmagic.unboxed.Offset;
  */
 abstract class DynamicTypeCheckExpansion extends ConvertToLowLevelIR {
 
+  /**
+   * Fraction of the objects seen by a checkcast or instanceof in baseline
+   * compiled code that must be of a single type for the type check to test
+   * for that type first
+   */
+  private static final double DOMINANT_TYPE_FRACTION = 0.9;
+
   /**
    * Expand an instanceof instruction into the LIR sequence that implements
    * the dynamic type check.  Ref may contain a null ptr at runtime.
@@ -810,6 +819,28 @@ abstract class DynamicTypeCheckExpansion extends ConvertToLowLevelIR {
                                       new BranchProfileOperand());
   }
 
+  /**
+   * Find the type that dominates the baseline type profile of a checkcast
+   * or instanceof, if any.
+   *
+   * @param s an instruction with the position of the type check
+   * @param LHSclass the resolved class being tested against
+   * @return a proper, instantiated subtype of {@code LHSclass} that is the
+   *  type of at least {@link #DOMINANT_TYPE_FRACTION} of the objects seen
+   *  by the type check, or {@code null}
+   */
+  static RVMType getProfiledType(Instruction s, RVMClass LHSclass) {
+    if (s.position() == null) return null;
+    TypeProfile profile = TypeProfiles.getTypeProfile(s.position().getMethod(), s.getBytecodeIndex());
+    if (profile == null) return null;
+    RVMType type = profile.getDominantType(DOMINANT_TYPE_FRACTION);
+    if (type == null || type == LHSclass || !type.isInstantiated() ||
+        !DynamicTypeCheck.instanceOfResolved(LHSclass, type)) {
+      return null;
+    }
+    return type;
+  }
+
   /**
    * Generate a branching dynamic type check.
    * This routine assumes that the CFG and code order are already
@@ -845,6 +876,28 @@ abstract class DynamicTypeCheckExpansion extends ConvertToLowLevelIR {
     if (LHStype.isClassType()) {
       RVMClass LHSclass = (RVMClass) LHStype.peekType();
       if (LHSclass != null && LHSclass.isResolved()) {
+        RVMType profiledType = LHSclass.isFinal() ? null : getProfiledType(continueAt, LHSclass);
+        if (profiledType != null) {
+          // Nearly all objects seen by the baseline compiled code were of a
+          // single subtype of LHSclass: test for it before the full check.
+          Operand profiledTIB = getTIB(continueAt, ir, profiledType);
+          Instruction shortcircuit =
+              IfCmp.create(REF_IFCMP,
+                           oldGuard,
+                           RHStib,
+                           profiledTIB,
+                           ConditionOperand.EQUAL(),
+                           trueBlock.makeJumpTarget(),
+                           BranchProfileOperand.likely());
+          if (oldGuard != null) {
+            oldGuard = oldGuard.copyD2D();
+          }
+          continueAt.insertBefore(shortcircuit);
+          BasicBlock myBlock = shortcircuit.getBasicBlock();
+          myBlock.splitNodeWithLinksAt(shortcircuit, ir);
+          myBlock.insertOut(trueBlock);       // must come after the splitNodeAt
+          RHStib = RHStib.copy();
+        }
         // Cases 4, 5, and 6 of DynamicTypeCheck: LHSclass is a resolved
         // class or interface
         if (LHSclass.isInterface()) {
@@ -18,6 +18,7 @@ import java.io.PrintStream;
 import java.util.Iterator;
 
 import org.jikesrvm.VM;
+import org.jikesrvm.adaptive.controller.Controller;
 import org.jikesrvm.classloader.RVMClass;
 import org.jikesrvm.classloader.ClassLoadingListener;
 import org.jikesrvm.classloader.RVMMethod;
@@ -177,8 +178,17 @@ public final class ClassLoadingDependencyManager implements ClassLoadingListener
     // (3) Inform its RVMMethod that cm is invalid;
     //     This will update all the dispatching entries (TIB, JTOC, IMTs)
     //     so that no new invocations will reach the invalid compiled code.
-    //     It also marks cm as obsolete so it can eventually be reclaimed by GC.
+    //     It also marks cm as obsolete so it can eventually be reclaimed by GC,
+    //     once no thread is executing it any more.
+    boolean wasCurrent = m.getCurrentCompiledMethod() == cm;
     m.invalidateCompiledMethod(cm);
+
+    // (4) If cm was the method's current code, ask the adaptive system to
+    //     recompile the method with the new class hierarchy right away rather
+    //     than wait until it is found to be hot again.
+    if (VM.BuildForAdaptiveSystem && wasCurrent) {
+      Controller.notifyInvalidation((OptCompiledMethod) cm);
+    }
   }
 
   void report(String s) {
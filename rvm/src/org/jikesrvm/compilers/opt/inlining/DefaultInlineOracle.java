@@ -29,10 +29,14 @@ import java.util.Iterator;
 import org.jikesrvm.VM;
 import org.jikesrvm.adaptive.controller.AdaptiveInlining;
 import org.jikesrvm.adaptive.controller.Controller;
+import org.jikesrvm.adaptive.database.callgraph.CallContext;
 import org.jikesrvm.adaptive.database.callgraph.WeightedCallTargets;
 import org.jikesrvm.classloader.NormalMethod;
 import org.jikesrvm.classloader.RVMClass;
 import org.jikesrvm.classloader.RVMMethod;
+import org.jikesrvm.classloader.RVMType;
+import org.jikesrvm.compilers.baseline.TypeProfile;
+import org.jikesrvm.compilers.baseline.TypeProfiles;
 import org.jikesrvm.compilers.common.CompiledMethod;
 import org.jikesrvm.compilers.opt.OptOptions;
 import org.jikesrvm.compilers.opt.driver.OptimizingCompiler;
@@ -137,7 +141,12 @@ public final class DefaultInlineOracle implements InlineOracle {
     WeightedCallTargets targets = null;
     boolean purelyStatic = true;
     if (Controller.dcgAvailable() && Controller.options.ADAPTIVE_INLINING) {
-      targets = Controller.dcg.getCallTargets(caller, bcIndex);
+      targets = getContextTargets(caller, bcIndex, state.getSequence());
+      if (targets != null) {
+        reportProfilingIfVerbose("Found context-sensitive profile data", verbose);
+      } else {
+        targets = Controller.dcg.getCallTargets(caller, bcIndex);
+      }
       if (targets != null) {
         reportProfilingIfVerbose("Found profile data", verbose);
         purelyStatic = false;
@@ -155,6 +164,16 @@ public final class DefaultInlineOracle implements InlineOracle {
         }
       }
     }
+    if (targets == null && !state.getHasPreciseTarget()) {
+      // No call graph samples: use the receiver types seen by the
+      // baseline compiled code of the caller, if they were recorded
+      targets = getProfiledReceiverTargets((NormalMethod) caller, bcIndex, staticCallee, opts);
+      if (targets != null) {
+        reportProfilingIfVerbose("Found receiver type profile", verbose);
+        purelyStatic = false;
+        targets = targets.filter(staticCallee, false);
+      }
+    }
 
     // Critical section: must prevent class hierarchy from changing while
     // we are inspecting it to determine how/whether to do the inline guard.
@@ -533,4 +552,68 @@ public final class DefaultInlineOracle implements InlineOracle {
     }
     return guardCost + inlinedBodyEstimate;
   }
+
+  /**
+   * Look up the targets of a call site in the calling context given by the
+   * enclosing call sites of the inline tree, up to
+   * {@code DCG_CONTEXT_DEPTH} of them. Call sites beyond the root of the
+   * compilation are not known, so the targets are those of all contexts
+   * that extend the given one.
+   *
+   * @param caller the method containing the call site
+   * @param bcIndex the bytecode index of the call site
+   * @param seq the inline sequence of the caller
+   * @return the targets sampled in the calling context, or {@code null} if
+   *  the call graph is not context-sensitive, the caller is the root of
+   *  the compilation or there are no samples in the context
+   */
+  private static WeightedCallTargets getContextTargets(RVMMethod caller, int bcIndex, InlineSequence seq) {
+    int depth = Controller.options.DCG_CONTEXT_DEPTH;
+    if (depth == 0 || seq.getCaller() == null) return null;
+    RVMMethod[] methods = new RVMMethod[depth + 1];
+    int[] bcIndices = new int[depth + 1];
+    methods[0] = caller;
+    bcIndices[0] = bcIndex;
+    int length = 1;
+    for (InlineSequence s = seq; s.getCaller() != null && length <= depth; s = s.getCaller()) {
+      methods[length] = s.getCaller().getMethod();
+      bcIndices[length] = s.getBcIndex();
+      length++;
+    }
+    return Controller.dcg.getCallTargets(new CallContext(methods, bcIndices, length));
+  }
+
+  /**
+   * Fake up "profile data" for a call site without call graph samples from
+   * the receiver types recorded by the baseline compiled code of the caller.
+   * The weights are the fractions of the receivers that were of each type,
+   * so they are never mistaken for hot call graph edges.
+   *
+   * @param caller the method containing the call site
+   * @param bcIndex the bytecode index of the call site
+   * @param staticCallee the callee named at the call site
+   * @param opts controlling options object
+   * @return the targets of the receiver types that account for at least
+   *  {@code INLINE_AI_MIN_CALLSITE_FRACTION} of the receivers, or
+   *  {@code null} if there are none or the call site was not profiled
+   */
+  static WeightedCallTargets getProfiledReceiverTargets(NormalMethod caller, int bcIndex,
+                                                        RVMMethod staticCallee, OptOptions opts) {
+    TypeProfile profile = TypeProfiles.getTypeProfile(caller, bcIndex);
+    if (profile == null || !profile.isMature()) return null;
+    WeightedCallTargets targets = null;
+    for (int i = 0; i < profile.getNumberOfTypes(); i++) {
+      double fraction = profile.getFraction(i);
+      RVMType type = profile.getType(i);
+      if (fraction < opts.INLINE_AI_MIN_CALLSITE_FRACTION || !type.isResolved()) continue;
+      RVMMethod target = type.findVirtualMethod(staticCallee.getName(), staticCallee.getDescriptor());
+      if (target == null || target.isAbstract()) continue;
+      if (targets == null) {
+        targets = WeightedCallTargets.create(target, fraction);
+      } else {
+        targets = targets.augmentCount(target, fraction);
+      }
+    }
+    return targets;
+  }
 }
@@ -0,0 +1,471 @@
+/*
+ *  This file is part of the Jikes RVM project (http://jikesrvm.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  See the COPYRIGHT.txt file distributed with this work for information
+ *  regarding copyright ownership.
+ */
+package org.jikesrvm.mm.mminterface;
+
+import static org.jikesrvm.runtime.ExitStatus.EXIT_STATUS_BOGUS_COMMAND_LINE_ARG;
+import static org.jikesrvm.runtime.JavaSizeConstants.LOG_BYTES_IN_INT;
+import static org.jikesrvm.runtime.JavaSizeConstants.LOG_BYTES_IN_LONG;
+
+import org.jikesrvm.VM;
+import org.jikesrvm.classloader.RVMMethod;
+import org.jikesrvm.classloader.RVMType;
+import org.jikesrvm.objectmodel.ObjectModel;
+import org.jikesrvm.runtime.Callbacks;
+import org.jikesrvm.runtime.Magic;
+import org.jikesrvm.scheduler.RVMThread;
+import org.jikesrvm.scheduler.SpinLock;
+import org.jikesrvm.scheduler.Synchronization;
+import org.mmtk.utility.statistics.Stats;
+import org.vmmagic.pragma.Inline;
+import org.vmmagic.pragma.Interruptible;
+import org.vmmagic.pragma.NoInline;
+import org.vmmagic.pragma.Uninterruptible;
+import org.vmmagic.unboxed.ObjectReference;
+import org.vmmagic.unboxed.Offset;
+
+/**
+ * A sampling allocation profiler and a live heap histogram, cheap enough
+ * to leave enabled in production.
+ * <p>
+ * The allocation profiler is enabled with
+ * {@code -X:vm:allocationSampleInterval=<bytes>}. Every thread counts down
+ * the bytes it allocates, and the allocation that takes the count to zero
+ * is sampled: its type and allocation site (see {@link AllocationSites})
+ * are charged with all the bytes the thread allocated since its previous
+ * sample. Samples are accumulated per (site, type) in a fixed-size table
+ * that is allocated at boot, so sampling never allocates. When the
+ * profiler is disabled, the only cost on the allocation fast path is a
+ * test of a static flag.
+ * <p>
+ * The live heap histogram is enabled with {@code -X:vm:liveHeapHistogram=true}.
+ * MMTk passes every object scanned by a full heap trace to
+ * {@link #countLiveObject}, which counts objects and bytes per type; the
+ * counts of the most recent full heap trace are kept for reporting.
+ * Nursery collections are not counted.
+ * <p>
+ * Both are reported, ranked by bytes, at exit and whenever a debug dump
+ * is requested (e.g. by sending {@code SIGQUIT} to the VM), and can be read
+ * through {@link JMXSupport}.
+ */
+@Uninterruptible
+public final class AllocationProfiler {
+
+  /** How many entries to report */
+  private static final int REPORT_SIZE = 50;
+
+  /** Is the allocation profiler sampling? Tested on every allocation. */
+  static boolean sampling;
+  /** Bytes between samples */
+  private static int interval;
+
+  /** Guards the sample table */
+  private static final SpinLock sampleLock = new SpinLock();
+
+  // The sample table: open addressing, keyed by (site, type id)
+
+  private static int[] sampleSites;
+  private static int[] sampleTypeIds;
+  private static int[] samples;
+  private static long[] sampledBytes;
+  /** Number of entries in use */
+  private static int used;
+  /** Number of samples that did not fit into the table */
+  private static int dropped;
+  /** Scratch space for ranking the entries while reporting */
+  private static int[] sampleOrder;
+
+  /** Guards the live heap histogram */
+  private static final SpinLock histogramLock = new SpinLock();
+
+  /** Live objects and bytes per type id, as counted by the current trace; slot 0 counts all other types */
+  private static int[] countedObjects;
+  private static long[] countedBytes;
+  /** Live objects and bytes per type id, as of the last completed full heap trace */
+  private static int[] liveObjects;
+  private static long[] liveBytes;
+  /** The collection whose counts are held in liveObjects and liveBytes, or 0 if none */
+  private static int histogramGC;
+  /** Scratch space for ranking the entries while reporting */
+  private static int[] histogramOrder;
+
+  private AllocationProfiler() {}
+
+  /**
+   * Allocate the tables and register the exit report. Called from
+   * {@link MemoryManager#fullyBootedVM()}.
+   */
+  @Interruptible
+  static void boot() {
+    boolean enabled = false;
+    if (VM.allocationSampleInterval > 0) {
+      int size = VM.allocationProfileSites;
+      if (size <= 0) {
+        VM.sysWriteln("vm: -X:vm:allocationProfileSites must be at least 1 when sampling allocations");
+        VM.sysExit(EXIT_STATUS_BOGUS_COMMAND_LINE_ARG);
+      }
+      sampleSites = new int[size];
+      sampleTypeIds = new int[size];
+      samples = new int[size];
+      sampledBytes = new long[size];
+      sampleOrder = new int[REPORT_SIZE];
+      interval = VM.allocationSampleInterval;
+      // Threads created from now on start with a full countdown (see the
+      // RVMThread constructor); give one to those that already exist
+      RVMThread.acctLock.lockNoHandshake();
+      for (int i = 0; i < RVMThread.numThreads; i++) {
+        RVMThread t = RVMThread.threads[i];
+        if (t != null) t.allocationSampleCountdown = interval;
+      }
+      RVMThread.acctLock.unlock();
+      sampling = true;
+      enabled = true;
+    }
+    if (VM.liveHeapHistogram) {
+      int size = VM.liveHeapHistogramTypes;
+      if (size <= 0) {
+        VM.sysWriteln("vm: -X:vm:liveHeapHistogramTypes must be at least 1 when counting live objects");
+        VM.sysExit(EXIT_STATUS_BOGUS_COMMAND_LINE_ARG);
+      }
+      allocateHistogram(size);
+      enabled = true;
+    }
+    if (enabled) {
+      Callbacks.addExitMonitor(new Callbacks.ExitMonitor() {
+        @Override
+        public void notifyExit(int value) {
+          report();
+        }
+      });
+    }
+  }
+
+  /****************************************************************************
+   *
+   * Allocation sampling
+   */
+
+  /**
+   * Count an allocation by the current thread, sampling it if the thread's
+   * countdown has expired. Only called while {@link #sampling}.
+   *
+   * @param object the newly allocated object
+   * @param bytes the size of the object
+   * @param site the allocation site
+   */
+  @Inline
+  static void countAllocation(Object object, int bytes, int site) {
+    RVMThread thread = RVMThread.getCurrentThread();
+    int countdown = thread.allocationSampleCountdown - bytes;
+    thread.allocationSampleCountdown = countdown;
+    if (countdown <= 0) {
+      sample(thread, object, site);
+    }
+  }
+
+  @NoInline
+  private static void sample(RVMThread thread, Object object, int site) {
+    long bytes = (long) interval - thread.allocationSampleCountdown;
+    thread.allocationSampleCountdown = interval;
+    int typeId = Magic.getObjectType(object).getId();
+
+    sampleLock.lock();
+    int size = sampleSites.length;
+    int i = ((site * 31 + typeId) & 0x7fffffff) % size;
+    for (int probe = 0; probe < size; probe++) {
+      if (samples[i] == 0) {
+        sampleSites[i] = site;
+        sampleTypeIds[i] = typeId;
+        used++;
+        break;
+      }
+      if (sampleSites[i] == site && sampleTypeIds[i] == typeId) {
+        break;
+      }
+      i = (i + 1) % size;
+    }
+    if (sampleSites[i] == site && sampleTypeIds[i] == typeId) {
+      samples[i]++;
+      sampledBytes[i] += bytes;
+    } else {
+      dropped++;
+    }
+    sampleLock.unlock();
+  }
+
+  /****************************************************************************
+   *
+   * Live heap histogram
+   */
+
+  /**
+   * Allocate the live heap histogram, enabling the counting of live
+   * objects by subsequent full heap traces.
+   *
+   * @param types the number of type ids to count separately
+   */
+  @Interruptible
+  static void allocateHistogram(int types) {
+    countedObjects = new int[types];
+    countedBytes = new long[types];
+    liveObjects = new int[types];
+    liveBytes = new long[types];
+    histogramOrder = new int[REPORT_SIZE];
+  }
+
+  /**
+   * @param type a type
+   * @return the number of live objects of the type as of the last
+   *  completed full heap trace
+   */
+  static int getLiveObjects(RVMType type) {
+    histogramLock.lock();
+    int objects = liveObjects[type.getId()];
+    histogramLock.unlock();
+    return objects;
+  }
+
+  /**
+   * Start counting the objects of a full heap trace.
+   *
+   * @return {@code true} if the live heap histogram is enabled
+   */
+  public static boolean startLiveObjectCount() {
+    if (countedObjects == null) return false;
+    for (int i = 0; i < countedObjects.length; i++) {
+      countedObjects[i] = 0;
+      countedBytes[i] = 0;
+    }
+    return true;
+  }
+
+  /**
+   * Count an object found live by a full heap trace. Called concurrently
+   * by the collector threads.
+   *
+   * @param object the live object
+   */
+  @Inline
+  public static void countLiveObject(ObjectReference object) {
+    Object o = object.toObject();
+    int index = Magic.getObjectType(o).getId();
+    if (index >= countedObjects.length) index = 0;
+    long bytes = ObjectModel.bytesUsed(o);
+    Synchronization.fetchAndAdd(countedObjects, Offset.fromIntZeroExtend(index << LOG_BYTES_IN_INT), 1);
+    Offset offset = Offset.fromIntZeroExtend(index << LOG_BYTES_IN_LONG);
+    long old;
+    do {
+      old = countedBytes[index];
+    } while (!Synchronization.tryCompareAndSwap(countedBytes, offset, old, old + bytes));
+  }
+
+  /**
+   * Publish the counts of a completed full heap trace.
+   */
+  public static void finishLiveObjectCount() {
+    histogramLock.lock();
+    for (int i = 0; i < countedObjects.length; i++) {
+      liveObjects[i] = countedObjects[i];
+      liveBytes[i] = countedBytes[i];
+    }
+    histogramGC = Stats.gcCount();
+    histogramLock.unlock();
+  }
+
+  /****************************************************************************
+   *
+   * Reporting
+   */
+
+  /**
+   * Report the (site, type) pairs with the most sampled bytes and the
+   * types with the most live bytes, largest first.
+   */
+  public static void report() {
+    if (sampleSites != null) {
+      sampleLock.lock();
+      VM.sysWriteln("Allocation profile: ", used, " sites, sampling every ", interval, " bytes");
+      int[] order = rank(sampledBytes, samples, sampleOrder);
+      for (int rank = 0; rank < order.length && order[rank] != -1; rank++) {
+        int best = order[rank];
+        VM.sysWrite(rank + 1, ": ");
+        VM.sysWriteLong(sampledBytes[best]);
+        VM.sysWrite(" bytes (", samples[best], " samples) of ");
+        VM.sysWrite(RVMType.getType(sampleTypeIds[best]).getDescriptor());
+        VM.sysWrite(" at ");
+        writeSite(sampleSites[best]);
+        VM.sysWriteln();
+      }
+      if (dropped > 0) {
+        VM.sysWriteln(dropped, " samples dropped; increase -X:vm:allocationProfileSites");
+      }
+      sampleLock.unlock();
+    }
+    if (liveObjects != null) {
+      histogramLock.lock();
+      if (histogramGC == 0) {
+        VM.sysWriteln("Live heap histogram: no full heap collection yet");
+      } else {
+        long total = 0;
+        for (int i = 0; i < liveBytes.length; i++) {
+          total += liveBytes[i];
+        }
+        VM.sysWrite("Live heap histogram as of collection ", histogramGC, ": ");
+        VM.sysWriteLong(total);
+        VM.sysWriteln(" bytes");
+        int[] order = rank(liveBytes, liveObjects, histogramOrder);
+        for (int rank = 0; rank < order.length && order[rank] != -1; rank++) {
+          int best = order[rank];
+          VM.sysWrite(rank + 1, ": ");
+          VM.sysWriteLong(liveBytes[best]);
+          VM.sysWrite(" bytes in ", liveObjects[best], " instances of ");
+          if (best == 0) {
+            VM.sysWrite("<types beyond -X:vm:liveHeapHistogramTypes>");
+          } else {
+            VM.sysWrite(RVMType.getType(best).getDescriptor());
+          }
+          VM.sysWriteln();
+        }
+      }
+      histogramLock.unlock();
+    }
+  }
+
+  /**
+   * Rank the non-empty entries of a table by bytes.
+   *
+   * @param bytes the bytes of each entry
+   * @param counts the number of samples or objects of each entry
+   * @param order receives the indices of up to {@link #REPORT_SIZE}
+   *  entries, largest first, followed by {@code -1} if there are fewer
+   * @return {@code order}
+   */
+  private static int[] rank(long[] bytes, int[] counts, int[] order) {
+    for (int rank = 0; rank < REPORT_SIZE; rank++) {
+      int best = -1;
+      for (int i = 0; i < counts.length; i++) {
+        if (counts[i] != 0 && !isRanked(order, rank, i) && (best == -1 || bytes[i] > bytes[best])) {
+          best = i;
+        }
+      }
+      order[rank] = best;
+      if (best == -1) break;
+    }
+    return order;
+  }
+
+  private static boolean isRanked(int[] order, int ranked, int i) {
+    for (int rank = 0; rank < ranked; rank++) {
+      if (order[rank] == i) return true;
+    }
+    return false;
+  }
+
+  private static void writeSite(int site) {
+    RVMMethod method = AllocationSites.getSiteMethod(site);
+    if (method == null) {
+      VM.sysWrite("<unknown site ", site, ">");
+      return;
+    }
+    VM.sysWrite(method);
+    VM.sysWrite(" bci ", AllocationSites.getSiteBytecodeIndex(site));
+  }
+
+  /****************************************************************************
+   *
+   * JMX
+   */
+
+  /**
+   * @return the allocation profile in the format of {@link #report()}, or
+   *  {@code null} if the profiler is disabled
+   */
+  @Interruptible
+  static String getAllocationProfile() {
+    if (sampleSites == null) return null;
+    int size = sampleSites.length;
+    int[] sites = new int[size];
+    int[] typeIds = new int[size];
+    int[] counts = new int[size];
+    long[] bytes = new long[size];
+    snapshotSamples(sites, typeIds, counts, bytes);
+    StringBuilder sb = new StringBuilder();
+    int[] order = rank(bytes, counts, new int[REPORT_SIZE]);
+    for (int rank = 0; rank < order.length && order[rank] != -1; rank++) {
+      int best = order[rank];
+      sb.append(rank + 1).append(": ").append(bytes[best]).append(" bytes (");
+      sb.append(counts[best]).append(" samples) of ").append(RVMType.getType(typeIds[best]).getDescriptor());
+      sb.append(" at ");
+      RVMMethod method = AllocationSites.getSiteMethod(sites[best]);
+      if (method == null) {
+        sb.append("<unknown site ").append(sites[best]).append('>');
+      } else {
+        sb.append(method).append(" bci ").append(AllocationSites.getSiteBytecodeIndex(sites[best]));
+      }
+      sb.append('\n');
+    }
+    return sb.toString();
+  }
+
+  private static void snapshotSamples(int[] sites, int[] typeIds, int[] counts, long[] bytes) {
+    sampleLock.lock();
+    for (int i = 0; i < sites.length; i++) {
+      sites[i] = sampleSites[i];
+      typeIds[i] = sampleTypeIds[i];
+      counts[i] = samples[i];
+      bytes[i] = sampledBytes[i];
+    }
+    sampleLock.unlock();
+  }
+
+  /**
+   * @return the live heap histogram in the format of {@link #report()},
+   *  or {@code null} if the histogram is disabled
+   */
+  @Interruptible
+  static String getLiveHeapHistogram() {
+    if (liveObjects == null) return null;
+    int size = liveObjects.length;
+    int[] objects = new int[size];
+    long[] bytes = new long[size];
+    int gc = snapshotHistogram(objects, bytes);
+    StringBuilder sb = new StringBuilder();
+    if (gc == 0) {
+      return sb.append("no full heap collection yet\n").toString();
+    }
+    sb.append("as of collection ").append(gc).append('\n');
+    int[] order = rank(bytes, objects, new int[REPORT_SIZE]);
+    for (int rank = 0; rank < order.length && order[rank] != -1; rank++) {
+      int best = order[rank];
+      sb.append(rank + 1).append(": ").append(bytes[best]).append(" bytes in ");
+      sb.append(objects[best]).append(" instances of ");
+      if (best == 0) {
+        sb.append("<types beyond -X:vm:liveHeapHistogramTypes>");
+      } else {
+        sb.append(RVMType.getType(best).getDescriptor());
+      }
+      sb.append('\n');
+    }
+    return sb.toString();
+  }
+
+  private static int snapshotHistogram(int[] objects, long[] bytes) {
+    histogramLock.lock();
+    for (int i = 0; i < objects.length; i++) {
+      objects[i] = liveObjects[i];
+      bytes[i] = liveBytes[i];
+    }
+    int gc = histogramGC;
+    histogramLock.unlock();
+    return gc;
+  }
+}
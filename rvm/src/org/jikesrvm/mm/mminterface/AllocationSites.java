@@ -0,0 +1,127 @@
+/*
+ *  This file is part of the Jikes RVM project (http://jikesrvm.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  See the COPYRIGHT.txt file distributed with this work for information
+ *  regarding copyright ownership.
+ */
+package org.jikesrvm.mm.mminterface;
+
+import org.jikesrvm.VM;
+import org.jikesrvm.classloader.RVMMethod;
+import org.jikesrvm.runtime.Callbacks;
+import org.jikesrvm.util.HashMapRVM;
+import org.mmtk.plan.Plan;
+import org.mmtk.plan.generational.SiteSurvival;
+import org.mmtk.utility.options.Options;
+import org.vmmagic.pragma.Uninterruptible;
+
+/**
+ * Gives every allocating bytecode a stable allocation site.
+ * <p>
+ * MMTk identifies allocation sites by small integers. Keying them by
+ * (method, bytecode index) means an allocation keeps its site whichever
+ * compiler compiles it and however often it is recompiled. That lets
+ * per-site decisions (such as pretenuring, see {@link SiteSurvival}),
+ * learned while the allocation runs in baseline code, apply to the
+ * optimized code too.
+ * <p>
+ * When site pretenuring is enabled, the survival rate of every sampled
+ * site is reported at exit so the decisions can be audited.
+ */
+public final class AllocationSites implements Callbacks.ExitMonitor {
+
+  /** Site for each (method id, bytecode index) pair */
+  private static final HashMapRVM<Long, Integer> sites = new HashMapRVM<Long, Integer>();
+  /** Method and bytecode index of each site, indexed by site */
+  private static RVMMethod[] siteMethods = new RVMMethod[1024];
+  private static int[] siteBytecodeIndices = new int[1024];
+
+  private AllocationSites() {}
+
+  /**
+   * Register the exit report if site pretenuring is enabled.
+   */
+  static void boot() {
+    if (Options.sitePretenuring != null && Options.sitePretenuring.getValue()) {
+      Callbacks.addExitMonitor(new AllocationSites());
+    }
+  }
+
+  /**
+   * Return the allocation site for an allocating bytecode, creating it
+   * on first request.
+   *
+   * @param method the method containing the bytecode
+   * @param bcIndex the index of the bytecode
+   * @return the allocation site
+   */
+  static synchronized int getSite(RVMMethod method, int bcIndex) {
+    Long key = Long.valueOf(((long) method.getId() << 32) | (bcIndex & 0xFFFFFFFFL));
+    Integer site = sites.get(key);
+    if (site == null) {
+      site = Integer.valueOf(Plan.getAllocationSite(true));
+      sites.put(key, site);
+      int id = site.intValue();
+      while (id >= siteMethods.length) {
+        RVMMethod[] newMethods = new RVMMethod[siteMethods.length * 2];
+        int[] newIndices = new int[siteMethods.length * 2];
+        System.arraycopy(siteMethods, 0, newMethods, 0, siteMethods.length);
+        System.arraycopy(siteBytecodeIndices, 0, newIndices, 0, siteMethods.length);
+        siteMethods = newMethods;
+        siteBytecodeIndices = newIndices;
+      }
+      siteMethods[id] = method;
+      siteBytecodeIndices[id] = bcIndex;
+    }
+    return site.intValue();
+  }
+
+  /**
+   * @param site an allocation site
+   * @return the method containing the site, or {@code null} if the site
+   *  was not created by {@link #getSite}
+   */
+  @Uninterruptible
+  static RVMMethod getSiteMethod(int site) {
+    RVMMethod[] methods = siteMethods;
+    return site >= 0 && site < methods.length ? methods[site] : null;
+  }
+
+  /**
+   * @param site an allocation site created by {@link #getSite}
+   * @return the bytecode index of the site
+   */
+  @Uninterruptible
+  static int getSiteBytecodeIndex(int site) {
+    int[] indices = siteBytecodeIndices;
+    return site >= 0 && site < indices.length ? indices[site] : -1;
+  }
+
+  @Override
+  public void notifyExit(int value) {
+    VM.sysWriteln("Allocation site survival (", SiteSurvival.getPretenuredSites(), " sites pretenured):");
+    for (int site = 0; site < siteMethods.length; site++) {
+      int sampled = SiteSurvival.getSampled(site);
+      if (sampled == 0) continue;
+      int survived = SiteSurvival.getSurvived(site);
+      VM.sysWrite("  site ", site, ": ");
+      if (siteMethods[site] != null) {
+        VM.sysWrite(siteMethods[site]);
+        VM.sysWrite(" bci ", siteBytecodeIndices[site]);
+      } else {
+        VM.sysWrite("<anonymous>");
+      }
+      VM.sysWrite(": ", survived);
+      VM.sysWrite("/", sampled);
+      VM.sysWrite(" survived (", (survived * 100) / sampled, "%)");
+      if (SiteSurvival.isPretenured(site)) VM.sysWrite(" pretenured");
+      VM.sysWriteln();
+    }
+  }
+}
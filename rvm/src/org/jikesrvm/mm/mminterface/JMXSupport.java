@@ -149,6 +149,26 @@ public class JMXSupport {
     return FinalizableProcessor.countReadyForFinalize();
   }
 
+  /**
+   * @return the allocation sites and types that allocated the most bytes,
+   *  one per line, or {@code null} unless {@code -X:vm:allocationSampleInterval}
+   *  is set
+   * @see AllocationProfiler
+   */
+  public static String getAllocationProfile() {
+    return AllocationProfiler.getAllocationProfile();
+  }
+
+  /**
+   * @return the types with the most live bytes as of the last full heap
+   *  collection, one per line, or {@code null} unless
+   *  {@code -X:vm:liveHeapHistogram} is set
+   * @see AllocationProfiler
+   */
+  public static String getLiveHeapHistogram() {
+    return AllocationProfiler.getLiveHeapHistogram();
+  }
+
   public static synchronized boolean isMMTkVerbose() {
     return Options.verbose.getValue() > 0;
   }
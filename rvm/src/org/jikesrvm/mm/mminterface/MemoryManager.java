@@ -57,6 +57,7 @@ import org.mmtk.utility.gcspy.GCspy;
 import org.mmtk.utility.heap.HeapGrowthManager;
 import org.mmtk.utility.heap.layout.HeapLayout;
 import org.mmtk.utility.options.Options;
+import org.mmtk.utility.statistics.Stats;
 import org.vmmagic.pragma.Entrypoint;
 import org.vmmagic.pragma.Inline;
 import org.vmmagic.pragma.Interruptible;
@@ -179,6 +180,8 @@ public final class MemoryManager {
   @Interruptible
   public static void fullyBootedVM() {
     Selected.Plan.get().fullyBooted();
+    AllocationSites.boot();
+    AllocationProfiler.boot();
   }
 
   @Interruptible
@@ -349,6 +352,19 @@ public final class MemoryManager {
     return Plan.getAllocationSite(compileTime);
   }
 
+  /**
+   * Return the allocation site for an allocating bytecode.  The site is
+   * the same each time the bytecode is compiled.
+   *
+   * @param method the method containing the allocation
+   * @param bcIndex the bytecode index of the allocation
+   * @return an allocation site
+   */
+  @Interruptible
+  public static int getAllocationSite(RVMMethod method, int bcIndex) {
+    return AllocationSites.getSite(method, bcIndex);
+  }
+
   /**
    * Returns the appropriate allocation scheme/area for the given
    * type.  This form is deprecated.  Without the RVMMethod argument,
@@ -366,6 +382,21 @@ public final class MemoryManager {
     return pickAllocator(type, null);
   }
 
+  /**
+   * Returns the appropriate allocation scheme/area for the given type,
+   * given method requesting the allocation and allocation site, taking
+   * into account what the plan has learned about the site.
+   *
+   * @param type the type of the object to be allocated
+   * @param method the method requesting the allocation
+   * @param site the allocation site
+   * @return the identifier of the appropriate allocator
+   */
+  @Interruptible
+  public static int pickAllocator(RVMType type, RVMMethod method, int site) {
+    return Selected.Plan.get().adviseAllocator(pickAllocator(type, method), site);
+  }
+
   /**
    * Is string <code>a</code> a prefix of string
    * <code>b</code>. String <code>b</code> is encoded as an ASCII byte
@@ -497,10 +528,11 @@ public final class MemoryManager {
   @Inline
   public static Object allocateScalar(int size, TIB tib, int allocator, int align, int offset, int site) {
     Selected.Mutator mutator = Selected.Mutator.get();
-    allocator = mutator.checkAllocator(org.jikesrvm.runtime.Memory.alignUp(size, MIN_ALIGNMENT), align, allocator);
+    allocator = mutator.checkAllocator(org.jikesrvm.runtime.Memory.alignUp(size, MIN_ALIGNMENT), align, allocator, site);
     Address region = allocateSpace(mutator, size, align, offset, allocator, site);
     Object result = ObjectModel.initializeScalar(region, tib, size);
     mutator.postAlloc(ObjectReference.fromObject(result), ObjectReference.fromObject(tib), size, allocator);
+    if (AllocationProfiler.sampling) AllocationProfiler.countAllocation(result, size, site);
     return result;
   }
 
@@ -563,10 +595,11 @@ public final class MemoryManager {
   private static Object allocateArrayInternal(int numElements, int size, TIB tib, int allocator,
                                               int align, int offset, int site) {
     Selected.Mutator mutator = Selected.Mutator.get();
-    allocator = mutator.checkAllocator(org.jikesrvm.runtime.Memory.alignUp(size, MIN_ALIGNMENT), align, allocator);
+    allocator = mutator.checkAllocator(org.jikesrvm.runtime.Memory.alignUp(size, MIN_ALIGNMENT), align, allocator, site);
     Address region = allocateSpace(mutator, size, align, offset, allocator, site);
     Object result = ObjectModel.initializeArray(region, tib, numElements, size);
     mutator.postAlloc(ObjectReference.fromObject(result), ObjectReference.fromObject(tib), size, allocator);
+    if (AllocationProfiler.sampling) AllocationProfiler.countAllocation(result, size, site);
     return result;
   }
 
@@ -647,7 +680,11 @@ public final class MemoryManager {
    * Allocate a CodeArray into a code space.
    * Currently the interface is fairly primitive;
    * just the number of instructions in the code array and a boolean
-   * to indicate hot or cold code.
+   * to indicate hot or cold code.  Hot code is packed into small code
+   * space blocks that hold no cold code.  A method's code is hot or cold
+   * as a whole: the cold blocks of a hot method are not split off into a
+   * code array of their own, as the machine code maps, exception tables
+   * and stack walking assume a single code array per method.
    * @param numInstrs number of instructions
    * @param isHot is this a request for hot code space allocation?
    * @return The  array
@@ -1069,6 +1106,14 @@ public final class MemoryManager {
     return HeapGrowthManager.getMaxHeapSize();
   }
 
+  /**
+   * @return the number of collections so far, including any in progress
+   */
+  @Uninterruptible
+  public static int getCollectionCount() {
+    return Stats.gcCount();
+  }
+
   /***********************************************************************
    *
    * Miscellaneous
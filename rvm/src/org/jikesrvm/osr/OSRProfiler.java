@@ -19,6 +19,7 @@ import org.jikesrvm.adaptive.controller.ControllerPlan;
 import org.jikesrvm.adaptive.recompilation.InvocationCounts;
 import org.jikesrvm.adaptive.util.AOSLogging;
 import org.jikesrvm.adaptive.util.CompilerAdviceAttribute;
+import org.jikesrvm.compilers.baseline.ValueProfiles;
 import org.jikesrvm.compilers.common.CompiledMethod;
 import org.jikesrvm.compilers.common.CompiledMethods;
 import org.jikesrvm.compilers.common.RuntimeCompiler;
@@ -52,6 +53,10 @@ public class OSRProfiler implements Callbacks.ExitMonitor {
       OSRProfiler.invalidations++;
     }
 
+    // if the OSR point guards a speculated value, the innermost state is
+    // at the load of the value: never speculate on it again
+    ValueProfiles.speculationFailed(state.meth, state.bcIndex);
+
     // find the root state
     while (state.callerState != null) {
       state = state.callerState;
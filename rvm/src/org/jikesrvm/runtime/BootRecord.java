@@ -261,14 +261,21 @@ public class BootRecord {
   public Address sysMMapIP;
   public Address sysMMapErrnoIP;
   public Address sysMProtectIP;
+  public Address sysNumaBindIP;
+  public Address sysMAdviseHugePagesIP;
+  public Address sysHugePageBytesIP;
 
   // threads
   public Address sysNumProcessorsIP;
   public Address sysThreadBindSupportedIP;
   public Address sysThreadBindIP;
+  public Address sysGetCpuIP;
+  public Address sysNumaNodesIP;
+  public Address sysNumaNodeOfCpuIP;
   public Address sysThreadCreateIP;
   public Address sysThreadYieldIP;
   public Address sysGetThreadIdIP;
+  public Address sysStartCpuTimerIP;
   public Address sysStashVMThreadIP;
   public Address sysThreadTerminateIP;
   public Address sysGetThreadPriorityHandleIP;
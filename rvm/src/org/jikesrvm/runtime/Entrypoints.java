@@ -198,6 +198,14 @@ public class Entrypoints {
       getField(org.jikesrvm.scheduler.RVMThread.class, "takeYieldpoint", int.class);
 
   public static final RVMField execStatusField = getField(org.jikesrvm.scheduler.RVMThread.class, "execStatus", int.class);
+  public static final RVMField timeSliceExpiredField =
+      getField(org.jikesrvm.scheduler.RVMThread.class, "timeSliceExpired", int.class);
+  public static final RVMField collectorSamplesField =
+      getField(org.jikesrvm.scheduler.RVMThread.class, "collectorSamples", org.vmmagic.unboxed.Address.class);
+  public static final RVMField collectorSampleCountField =
+      getField(org.jikesrvm.scheduler.RVMThread.class, "collectorSampleCount", int.class);
+  public static final RVMField collectorSampleLimitField =
+      getField(org.jikesrvm.scheduler.RVMThread.class, "collectorSampleLimit", int.class);
 
   public static final RVMField referenceReferentField =
       getField(java.lang.ref.Reference.class, "_referent", org.vmmagic.unboxed.Address.class);
@@ -267,6 +275,10 @@ public class Entrypoints {
   public static final RVMField SQBEField = getField(org.mmtk.utility.deque.SharedDeque.class, "bufsenqueued", int.class);
   public static final RVMField synchronizedCounterField =
       getField(org.jikesrvm.mm.mmtk.SynchronizedCounter.class, "count", int.class);
+  public static final RVMField referenceProcessorMaxIndexField =
+      getField(org.jikesrvm.mm.mmtk.ReferenceProcessor.class, "maxIndex", int.class);
+  public static final RVMField finalizableProcessorMaxIndexField =
+      getField(org.jikesrvm.mm.mmtk.FinalizableProcessor.class, "maxIndex", int.class);
 
   public static final NormalMethod booleanFieldWriteBarrierMethod =
     getMethod(org.jikesrvm.mm.mminterface.Barriers.class, "booleanFieldWrite", "(Ljava/lang/Object;ZLorg/vmmagic/unboxed/Offset;I)V");
@@ -485,6 +497,10 @@ public class Entrypoints {
 
   public static final RVMField edgeCountersField =
       getField(org.jikesrvm.compilers.baseline.EdgeCounts.class, "data", int[][].class);
+  public static final NormalMethod recordTypeMethod =
+      getMethod(org.jikesrvm.compilers.baseline.TypeProfiles.class, "record", "(Ljava/lang/Object;II)V");
+  public static final NormalMethod recordValueMethod =
+      getMethod(org.jikesrvm.compilers.baseline.ValueProfiles.class, "record", "(III)V");
 
   public static final RVMField classLoadedCountField =
       getField(org.jikesrvm.classloader.JMXSupport.class, "classLoadedCount", int.class);
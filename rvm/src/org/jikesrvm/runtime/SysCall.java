@@ -169,6 +169,29 @@ public abstract class SysCall {
   @SysCallTemplate
   public abstract int sysMProtect(Address start, Extent length, int prot);
 
+  /**
+   * Sets the preferred NUMA node for the pages of a region, moving the
+   * pages that have already been touched.
+   * @param start the start of the region
+   * @param length the length of the region
+   * @param node the preferred node
+   * @return 0 on success, -1 on failure
+   */
+  @SysCallTemplate
+  public abstract int sysNumaBind(Address start, Extent length, int node);
+
+  @SysCallTemplate
+  public abstract int sysMAdviseHugePages(Address start, Extent length);
+
+  /**
+   * @param start the start of the region
+   * @param end the end of the region
+   * @return the number of bytes of the region that are backed by
+   *  transparent huge pages, or -1 if this is not known
+   */
+  @SysCallTemplate
+  public abstract long sysHugePageBytes(Address start, Address end);
+
   // threads
   @SysCallTemplate
   public abstract int sysNumProcessors();
@@ -194,12 +217,28 @@ public abstract class SysCall {
   @SysCallTemplate
   public abstract void sysThreadBind(int cpuId);
 
+  /**
+   * @return the processor the calling thread is running on, or -1
+   *  if it cannot be determined
+   */
+  @SysCallTemplate
+  public abstract int sysGetCpu();
+
+  @SysCallTemplate
+  public abstract int sysNumaNodes();
+
+  @SysCallTemplate
+  public abstract int sysNumaNodeOfCpu(int cpuId);
+
   @SysCallTemplate
   public abstract void sysThreadYield();
 
   @SysCallTemplate
   public abstract Word sysGetThreadId();
 
+  @SysCallTemplate
+  public abstract int sysStartCpuTimer(long intervalNanos);
+
   @SysCallTemplate
   public abstract Word sysGetThreadPriorityHandle();
 
@@ -15,6 +15,7 @@ package org.jikesrvm.scheduler;
 import static org.jikesrvm.objectmodel.ThinLockConstants.TL_LOCK_ID_MASK;
 import static org.jikesrvm.objectmodel.ThinLockConstants.TL_LOCK_ID_SHIFT;
 import static org.jikesrvm.objectmodel.ThinLockConstants.TL_THREAD_ID_SHIFT;
+import static org.jikesrvm.runtime.ExitStatus.EXIT_STATUS_BOGUS_COMMAND_LINE_ARG;
 
 import org.jikesrvm.VM;
 import org.jikesrvm.objectmodel.ObjectModel;
@@ -176,6 +177,27 @@ public final class Lock {
   /** Number of deflations */
   public static int deflations;
 
+  // Contention statistics of locks that have been deflated (updated
+  // without synchronization, so they are approximate)
+
+  /** Number of contended acquisitions */
+  private static int totalContendedAcquisitions;
+  /** Number of successful spins */
+  private static int totalSpinSuccesses;
+  /** Number of failed spins */
+  private static int totalSpinFailures;
+  /** Number of times a thread parked */
+  private static int totalParks;
+
+  // Adaptive spinning parameters
+
+  /** Smallest spin budget (in time base ticks) worth spinning for */
+  private static final long MIN_SPIN_BUDGET = 64;
+  /** Number of fractional bits in {@link #averageHoldTime} */
+  private static final int HOLD_TIME_SHIFT = 4;
+  /** Each release contributes 1/2^HOLD_TIME_WEIGHT to the average hold time */
+  private static final int HOLD_TIME_WEIGHT = 3;
+
   /****************************************************************************
    * Instance
    */
@@ -199,6 +221,34 @@ public final class Lock {
   /** Queue for waiting on a notify, guarded by mutex as well. */
   ThreadQueue waiting;
 
+  // Adaptive spinning. All of these are guarded by mutex, except that
+  // spinning threads read ownerId without holding it.
+
+  /** Time base value at which the current owner acquired this lock */
+  private long acquiredAt;
+  /**
+   * Moving average of the time (in time base ticks) for which this lock is
+   * held, as a fixed-point value with HOLD_TIME_SHIFT fractional bits
+   */
+  private long averageHoldTime;
+  /**
+   * How long (in time base ticks) a contending thread may currently spin
+   * for this lock before parking. Doubled after a successful spin, halved
+   * after a failed one and never more than twice the average hold time.
+   */
+  private long spinBudget;
+
+  // Per-lock contention statistics, reported by dumpLocks
+
+  /** Number of acquisitions that found the lock held by another thread */
+  private int contendedAcquisitions;
+  /** Number of spins after which the lock was free */
+  private int spinSuccesses;
+  /** Number of spins that ran out of budget */
+  private int spinFailures;
+  /** Number of times a thread parked on the entering queue */
+  private int parks;
+
   /**
    * A heavy weight lock to handle extreme contention and wait/notify
    * synchronization.
@@ -207,6 +257,7 @@ public final class Lock {
     mutex = new SpinLock();
     entering = new ThreadQueue();
     waiting = new ThreadQueue();
+    spinBudget = MIN_SPIN_BUDGET;
   }
 
   /**
@@ -247,15 +298,48 @@ public final class Lock {
     } else if (ownerId == 0) {
       ownerId = threadId;
       recursionCount = 1;
+      acquiredAt = Magic.getTimeBase();
     } else {
-      entering.enqueue(me);
-      mutex.unlock();
-      me.monitor().lockNoHandshake();
-      while (entering.isQueued(me)) {
-        me.monitor().waitWithHandshake(); // this may spuriously return
+      contendedAcquisitions++;
+      long contendedAt = VM.profileLockContention ? Magic.getTimeBase() : 0;
+      if (shouldSpin()) {
+        long budget = spinBudget;
+        mutex.unlock(); // thread-switching benign
+        boolean released = spinWhileOwned(budget);
+        mutex.lock();
+        if (released) {
+          spinSuccesses++;
+          long grown = budget < MIN_SPIN_BUDGET ? MIN_SPIN_BUDGET : budget << 1;
+          long max = maxSpinBudget();
+          spinBudget = grown < max ? grown : max;
+        } else {
+          spinFailures++;
+          spinBudget = budget >> 1;
+        }
+      }
+      // Park until the lock is handed to us; a thread that barges in
+      // before we run again sends us back to the entering queue.
+      while (lockedObject == o && ownerId != 0) {
+        parks++;
+        entering.enqueue(me);
+        mutex.unlock();
+        me.monitor().lockNoHandshake();
+        while (entering.isQueued(me)) {
+          me.monitor().waitWithHandshake(); // this may spuriously return
+        }
+        me.monitor().unlock();
+        mutex.lock();
+      }
+      if (lockedObject != o) { // lock was deflated while we spun or parked
+        mutex.unlock(); // thread switching benign
+        return false;
+      }
+      ownerId = threadId;
+      recursionCount = 1;
+      acquiredAt = Magic.getTimeBase();
+      if (VM.profileLockContention) {
+        LockContentionProfiler.record(index, o, acquiredAt - contendedAt);
       }
-      me.monitor().unlock();
-      return false;
     }
     mutex.unlock(); // thread-switching benign
     return true;
@@ -287,6 +371,7 @@ public final class Lock {
     }
     if (STATS) unlockOperations++;
     ownerId = 0;
+    recordHoldTime(Magic.getTimeBase() - acquiredAt);
     RVMThread toAwaken = entering.dequeue();
     if (toAwaken == null && entering.isEmpty() && waiting.isEmpty()) { // heavy lock can be deflated
       // Possible project: decide on a heuristic to control when lock should be deflated
@@ -302,6 +387,87 @@ public final class Lock {
     }
   }
 
+  /**
+   * Should a thread that finds this lock held spin rather than park? We only
+   * spin while there is spin budget left, which adapts to the recent success
+   * of spinning on this lock, and while the owner is running Java code; an
+   * owner that is blocked or in native code will not release the lock soon.
+   * <p>
+   * Note: the mutex for this lock is held when this is called.
+   *
+   * @return whether to spin
+   */
+  private boolean shouldSpin() {
+    if (VM.fatLockMaxSpinTicks <= 0 || spinBudget < MIN_SPIN_BUDGET || RVMThread.availableProcessors == 1) {
+      return false;
+    }
+    RVMThread owner = RVMThread.threadBySlot[ownerId >>> TL_THREAD_ID_SHIFT];
+    return owner != null && owner.isInJava();
+  }
+
+  /**
+   * Busy-waits until this lock is released or the given budget is spent.
+   * Note: the mutex for this lock must not be held.
+   *
+   * @param budget the maximum time to spin, in time base ticks
+   * @return whether the lock was released while spinning
+   */
+  @Unpreemptible
+  private boolean spinWhileOwned(long budget) {
+    long start = Magic.getTimeBase();
+    while (ownerId != 0) {
+      if (Magic.getTimeBase() - start > budget) {
+        return false;
+      }
+      Magic.pause();
+      Magic.combinedLoadBarrier();
+    }
+    return true;
+  }
+
+  /**
+   * Folds the hold time of a release into the moving average, and makes
+   * sure that the spin budget stays in line with it: spinning for much
+   * longer than the lock is usually held is wasted effort.
+   * <p>
+   * Note: the mutex for this lock is held when this is called.
+   *
+   * @param holdTime the time the lock was held, in time base ticks
+   */
+  private void recordHoldTime(long holdTime) {
+    averageHoldTime += (holdTime << HOLD_TIME_SHIFT >> HOLD_TIME_WEIGHT) - (averageHoldTime >> HOLD_TIME_WEIGHT);
+    long max = maxSpinBudget();
+    if (spinBudget > max) {
+      spinBudget = max;
+    } else if (spinBudget < MIN_SPIN_BUDGET && (averageHoldTime >> HOLD_TIME_SHIFT) < VM.fatLockMaxSpinTicks) {
+      // failed spins switched spinning off, but the lock is usually held
+      // briefly enough to give it another (short) try
+      spinBudget = MIN_SPIN_BUDGET;
+    }
+  }
+
+  /**
+   * @return the largest spin budget that is currently worthwhile for this lock
+   */
+  private long maxSpinBudget() {
+    long max = (averageHoldTime >> HOLD_TIME_SHIFT) << 1;
+    if (max < MIN_SPIN_BUDGET) max = MIN_SPIN_BUDGET;
+    return max < VM.fatLockMaxSpinTicks ? max : VM.fatLockMaxSpinTicks;
+  }
+
+  /**
+   * Clears the adaptive spinning state and the contention statistics of this
+   * lock before it is associated with a new object.
+   */
+  private void resetContentionState() {
+    averageHoldTime = 0;
+    spinBudget = MIN_SPIN_BUDGET;
+    contendedAcquisitions = 0;
+    spinSuccesses = 0;
+    spinFailures = 0;
+    parks = 0;
+  }
+
   /**
    * Disassociates this heavy-weight lock from the indicated object.
    * This lock is not held, nor are any threads on its queues.  Note:
@@ -320,6 +486,11 @@ public final class Lock {
     if (STATS) deflations++;
     ThinLock.markDeflated(o, lockOffset, index);
     lockedObject = null;
+    totalContendedAcquisitions += contendedAcquisitions;
+    totalSpinSuccesses += spinSuccesses;
+    totalSpinFailures += spinFailures;
+    totalParks += parks;
+    resetContentionState();
     free(this);
   }
 
@@ -361,6 +532,7 @@ public final class Lock {
    */
   public void setLockedObject(Object o) {
     lockedObject = o;
+    acquiredAt = Magic.getTimeBase();
   }
 
   /**
@@ -413,6 +585,20 @@ public final class Lock {
     dumpBlockedThreads();
     dumpWaitingThreads();
 
+    VM.sysWrite(" contended: ");
+    VM.sysWriteInt(contendedAcquisitions);
+    VM.sysWrite(" spins ok/failed: ");
+    VM.sysWriteInt(spinSuccesses);
+    VM.sysWrite("/");
+    VM.sysWriteInt(spinFailures);
+    VM.sysWrite(" parks: ");
+    VM.sysWriteInt(parks);
+    VM.sysWrite(" avg hold ticks: ");
+    VM.sysWriteLong(averageHoldTime >> HOLD_TIME_SHIFT);
+    VM.sysWrite(" spin budget: ");
+    VM.sysWriteLong(spinBudget);
+    VM.sysWriteln();
+
     VM.sysWrite(" mutexLatestContender: ");
     if (mutex.latestContender == null) {
       VM.sysWrite("<null>");
@@ -655,6 +841,36 @@ public final class Lock {
     VM.sysWrite(" locks freed, ");
     VM.sysWriteInt(globalFreeLocks);
     VM.sysWriteln(" free locks");
+    dumpContentionTotals();
+  }
+
+  /**
+   * Reports the contention statistics of all locks, including locks that
+   * have since been deflated.
+   */
+  private static void dumpContentionTotals() {
+    int contended = totalContendedAcquisitions;
+    int spinSuccesses = totalSpinSuccesses;
+    int spinFailures = totalSpinFailures;
+    int parks = totalParks;
+    for (int i = 0; i < numLocks(); i++) {
+      Lock l = getLock(i);
+      if (l != null && l.active) {
+        contended += l.contendedAcquisitions;
+        spinSuccesses += l.spinSuccesses;
+        spinFailures += l.spinFailures;
+        parks += l.parks;
+      }
+    }
+    VM.sysWrite("lock contention stats: ");
+    VM.sysWriteInt(contended);
+    VM.sysWrite(" contended acquisitions, ");
+    VM.sysWriteInt(spinSuccesses);
+    VM.sysWrite(" successful spins, ");
+    VM.sysWriteInt(spinFailures);
+    VM.sysWrite(" failed spins, ");
+    VM.sysWriteInt(parks);
+    VM.sysWriteln(" parks");
   }
 
   /**
@@ -698,6 +914,13 @@ public final class Lock {
    */
   @Interruptible
   public static void boot() {
+    if (VM.biasedLockingEpochCollections <= 0) {
+      VM.sysWriteln("vm: -X:vm:biasedLockingEpochCollections must be at least 1");
+      VM.sysExit(EXIT_STATUS_BOGUS_COMMAND_LINE_ARG);
+    }
+    if (VM.profileLockContention) {
+      LockContentionProfiler.boot();
+    }
     if (STATS) {
       Callbacks.addExitMonitor(new Lock.ExitMonitor());
       Callbacks.addAppRunStartMonitor(new Lock.AppRunStartMonitor());
@@ -749,6 +972,7 @@ public final class Lock {
       VM.sysWrite(" locks freed, ");
       VM.sysWriteInt(globalFreeLocks);
       VM.sysWriteln(" free locks");
+      dumpContentionTotals();
     }
   }
 }
@@ -0,0 +1,311 @@
+/*
+ *  This file is part of the Jikes RVM project (http://jikesrvm.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  See the COPYRIGHT.txt file distributed with this work for information
+ *  regarding copyright ownership.
+ */
+package org.jikesrvm.scheduler;
+
+import static org.jikesrvm.runtime.ExitStatus.EXIT_STATUS_BOGUS_COMMAND_LINE_ARG;
+
+import org.jikesrvm.VM;
+import org.jikesrvm.architecture.StackFrameLayout;
+import org.jikesrvm.classloader.MemberReference;
+import org.jikesrvm.classloader.RVMClass;
+import org.jikesrvm.classloader.RVMMethod;
+import org.jikesrvm.classloader.RVMType;
+import org.jikesrvm.compilers.baseline.BaselineCompiledMethod;
+import org.jikesrvm.compilers.common.CompiledMethod;
+import org.jikesrvm.compilers.common.CompiledMethods;
+import org.jikesrvm.compilers.opt.runtimesupport.OptCompiledMethod;
+import org.jikesrvm.compilers.opt.runtimesupport.OptEncodedCallSiteTree;
+import org.jikesrvm.compilers.opt.runtimesupport.OptMachineCodeMap;
+import org.jikesrvm.objectmodel.JavaHeader;
+import org.jikesrvm.objectmodel.ObjectModel;
+import org.jikesrvm.runtime.Callbacks;
+import org.jikesrvm.runtime.Magic;
+import org.vmmagic.pragma.Interruptible;
+import org.vmmagic.pragma.NoInline;
+import org.vmmagic.pragma.Uninterruptible;
+import org.vmmagic.unboxed.Address;
+import org.vmmagic.unboxed.Offset;
+
+/**
+ * Attributes contention on heavy-weight locks to the locks and to the
+ * call sites that tried to acquire them.
+ * <p>
+ * Enabled with {@code -X:vm:profileLockContention=true}. Whenever a thread
+ * finds a fat lock held by another thread, {@link Lock} reports the time
+ * it spent spinning or parked to {@link #record}, which walks the stack
+ * past the locking code to find the acquiring call site (compiled method
+ * and machine code offset). Samples are accumulated per (lock, call site)
+ * in a fixed-size table that is allocated at boot, so recording never
+ * allocates. When the profiler is disabled, the only cost is a test of the
+ * option on the (already slow) contended path.
+ * <p>
+ * The table is reported, ranked by blocked time, at exit and whenever a
+ * debug dump is requested (e.g. by sending {@code SIGQUIT} to the VM).
+ */
+@Uninterruptible
+public final class LockContentionProfiler {
+
+  /** How many frames to search for the acquiring call site */
+  private static final int MAX_DEPTH = 8;
+  /** How many sites to report */
+  private static final int REPORT_SIZE = 50;
+
+  /** Guards the table */
+  private static final SpinLock tableLock = new SpinLock();
+
+  // The table: open addressing, keyed by (lock index, cmid, machine code offset)
+
+  private static int[] lockIndices;
+  private static int[] typeIds;
+  private static int[] cmids;
+  private static int[] offsets;
+  private static int[] contentions;
+  private static long[] blockedTicks;
+  /** Scratch space for ranking the entries while reporting */
+  private static boolean[] reported;
+  /** Number of entries in use */
+  private static int used;
+  /** Number of samples that did not fit into the table */
+  private static int dropped;
+
+  /** Classes whose frames are part of the locking code rather than the acquiring site */
+  private static RVMClass[] lockingClasses;
+
+  /**
+   * Allocate the table and register the exit report. Called from
+   * {@link Lock#boot()} when the profiler is enabled.
+   */
+  @Interruptible
+  static void boot() {
+    int size = VM.lockContentionProfileSites;
+    if (size <= 0) {
+      VM.sysWriteln("vm: -X:vm:lockContentionProfileSites must be at least 1 when profiling lock contention");
+      VM.sysExit(EXIT_STATUS_BOGUS_COMMAND_LINE_ARG);
+    }
+    allocateTable(size);
+    Callbacks.addExitMonitor(new Callbacks.ExitMonitor() {
+      @Override
+      public void notifyExit(int value) {
+        report();
+      }
+    });
+  }
+
+  /**
+   * Allocate an empty table.
+   *
+   * @param size the number of (lock, call site) pairs the table can hold
+   */
+  @Interruptible
+  static void allocateTable(int size) {
+    lockingClasses = new RVMClass[] {
+        java.lang.JikesRVMSupport.getTypeForClass(Lock.class).asClass(),
+        java.lang.JikesRVMSupport.getTypeForClass(ThinLock.class).asClass(),
+        java.lang.JikesRVMSupport.getTypeForClass(LockContentionProfiler.class).asClass(),
+        java.lang.JikesRVMSupport.getTypeForClass(ObjectModel.class).asClass(),
+        java.lang.JikesRVMSupport.getTypeForClass(JavaHeader.class).asClass()
+    };
+    typeIds = new int[size];
+    cmids = new int[size];
+    offsets = new int[size];
+    contentions = new int[size];
+    blockedTicks = new long[size];
+    reported = new boolean[size];
+    // record() tests lockIndices to see whether the table is ready
+    lockIndices = new int[size];
+  }
+
+  /**
+   * Drop the table, so that nothing more is recorded. Used by tests to undo
+   * {@link #allocateTable(int)}.
+   */
+  @Interruptible
+  static void freeTable() {
+    tableLock.lock();
+    // record() tests lockIndices to see whether the table is ready
+    lockIndices = null;
+    typeIds = null;
+    cmids = null;
+    offsets = null;
+    contentions = null;
+    blockedTicks = null;
+    reported = null;
+    used = 0;
+    dropped = 0;
+    tableLock.unlock();
+  }
+
+  /**
+   * Record a contended acquisition of a fat lock by the current thread.
+   * Called once per acquisition, after the thread has acquired the lock.
+   *
+   * @param lockIndex the index of the contended lock
+   * @param o the object being locked
+   * @param ticks how long (in time base ticks) the thread spun or was parked
+   *  before it acquired the lock
+   */
+  @NoInline
+  static void record(int lockIndex, Object o, long ticks) {
+    if (lockIndices == null) return;
+    int cmid = 0;
+    int offset = 0;
+    Address fp = Magic.getFramePointer();
+    Address ip = Magic.getReturnAddress(fp);
+    fp = Magic.getCallerFramePointer(fp);
+    for (int depth = 0; depth < MAX_DEPTH; depth++) {
+      if (fp.EQ(StackFrameLayout.getStackFrameSentinelFP())) break;
+      int id = Magic.getCompiledMethodID(fp);
+      if (id != StackFrameLayout.getInvisibleMethodID()) {
+        if (id < 1 || id > CompiledMethods.numCompiledMethods()) break;
+        CompiledMethod cm = CompiledMethods.getCompiledMethod(id);
+        if (cm == null) break;
+        if (!isLockingCode(cm.getMethod())) {
+          cmid = id;
+          offset = cm.getInstructionOffset(ip).toInt();
+          break;
+        }
+      }
+      ip = Magic.getReturnAddress(fp);
+      fp = Magic.getCallerFramePointer(fp);
+    }
+    int typeId = Magic.getObjectType(o).getId();
+
+    tableLock.lock();
+    if (lockIndices == null) {
+      // the table was freed while we walked the stack
+      tableLock.unlock();
+      return;
+    }
+    int size = lockIndices.length;
+    int i = hash(lockIndex, cmid, offset) % size;
+    for (int probe = 0; probe < size; probe++) {
+      if (contentions[i] == 0) {
+        lockIndices[i] = lockIndex;
+        typeIds[i] = typeId;
+        cmids[i] = cmid;
+        offsets[i] = offset;
+        used++;
+        break;
+      }
+      if (lockIndices[i] == lockIndex && cmids[i] == cmid && offsets[i] == offset && typeIds[i] == typeId) {
+        break;
+      }
+      i = (i + 1) % size;
+    }
+    if (lockIndices[i] == lockIndex && cmids[i] == cmid && offsets[i] == offset && typeIds[i] == typeId) {
+      contentions[i]++;
+      blockedTicks[i] += ticks;
+    } else {
+      dropped++;
+    }
+    tableLock.unlock();
+  }
+
+  /**
+   * @param type a type
+   * @return the number of contended acquisitions recorded for locks on
+   *  objects of the type, over all call sites
+   */
+  static int getContentions(RVMType type) {
+    if (lockIndices == null) return 0;
+    int typeId = type.getId();
+    int total = 0;
+    tableLock.lock();
+    if (lockIndices == null) {
+      tableLock.unlock();
+      return 0;
+    }
+    for (int i = 0; i < contentions.length; i++) {
+      if (contentions[i] != 0 && typeIds[i] == typeId) total += contentions[i];
+    }
+    tableLock.unlock();
+    return total;
+  }
+
+  private static int hash(int lockIndex, int cmid, int offset) {
+    return ((lockIndex * 31 + cmid) * 17 + offset) & 0x7fffffff;
+  }
+
+  private static boolean isLockingCode(RVMMethod m) {
+    RVMClass cls = m.getDeclaringClass();
+    for (RVMClass lockingClass : lockingClasses) {
+      if (cls == lockingClass) return true;
+    }
+    return false;
+  }
+
+  /**
+   * Report the sites with the most blocked time, most expensive first.
+   */
+  public static void report() {
+    if (lockIndices == null) return;
+    tableLock.lock();
+    if (lockIndices == null) {
+      tableLock.unlock();
+      return;
+    }
+    VM.sysWriteln("Lock contention profile: ", used, " sites");
+    for (int i = 0; i < reported.length; i++) {
+      reported[i] = false;
+    }
+    for (int rank = 1; rank <= REPORT_SIZE; rank++) {
+      int best = -1;
+      for (int i = 0; i < contentions.length; i++) {
+        if (contentions[i] != 0 && !reported[i] && (best == -1 || blockedTicks[i] > blockedTicks[best])) {
+          best = i;
+        }
+      }
+      if (best == -1) break;
+      reported[best] = true;
+      VM.sysWrite(rank, ": ");
+      VM.sysWriteLong(blockedTicks[best]);
+      VM.sysWrite(" ticks blocked, ");
+      VM.sysWrite(contentions[best], " contended acquisitions of lock ");
+      VM.sysWrite(lockIndices[best], " on ");
+      VM.sysWrite(RVMType.getType(typeIds[best]).getDescriptor());
+      VM.sysWrite(" at ");
+      writeSite(cmids[best], Offset.fromIntSignExtend(offsets[best]));
+      VM.sysWriteln();
+    }
+    if (dropped > 0) {
+      VM.sysWriteln(dropped, " samples dropped; increase -X:vm:lockContentionProfileSites");
+    }
+    tableLock.unlock();
+  }
+
+  private static void writeSite(int cmid, Offset offset) {
+    CompiledMethod cm = cmid == 0 ? null : CompiledMethods.getCompiledMethod(cmid);
+    if (cm == null) {
+      VM.sysWrite("<unknown site>");
+      return;
+    }
+    RVMMethod method = cm.getMethod();
+    int bci = -1;
+    if (cm.getCompilerType() == CompiledMethod.BASELINE) {
+      bci = ((BaselineCompiledMethod) cm).findBytecodeIndexForInstruction(offset);
+    } else if (VM.BuildForOptCompiler && cm.getCompilerType() == CompiledMethod.OPT) {
+      OptMachineCodeMap map = ((OptCompiledMethod) cm).getMCMap();
+      int iei = map.getInlineEncodingForMCOffset(offset);
+      bci = map.getBytecodeIndexForMCOffset(offset);
+      if (iei >= 0) {
+        // report the innermost inlined method
+        int mid = OptEncodedCallSiteTree.getMethodID(iei, map.inlineEncoding);
+        method = MemberReference.getMethodRef(mid).getResolvedMember();
+      }
+    }
+    VM.sysWrite(method);
+    VM.sysWrite(" bci ", bci);
+    VM.sysWrite(" (", CompiledMethod.compilerTypeToString(cm.getCompilerType()));
+    VM.sysWrite(" cmid ", cmid, ")");
+  }
+}
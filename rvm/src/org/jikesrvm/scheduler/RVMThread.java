@@ -18,6 +18,7 @@ import static org.jikesrvm.runtime.ExitStatus.EXIT_STATUS_MAIN_THREAD_COULD_NOT_
 import static org.jikesrvm.runtime.ExitStatus.EXIT_STATUS_RECURSIVELY_SHUTTING_DOWN;
 import static org.jikesrvm.runtime.SysCall.sysCall;
 import static org.jikesrvm.objectmodel.ThinLockConstants.TL_THREAD_ID_SHIFT;
+import static org.jikesrvm.runtime.UnboxedSizeConstants.BYTES_IN_ADDRESS;
 
 import java.security.AccessController;
 import java.security.PrivilegedAction;
@@ -25,6 +26,7 @@ import java.security.PrivilegedAction;
 import org.jikesrvm.VM;
 import org.jikesrvm.adaptive.OSRListener;
 import org.jikesrvm.adaptive.OnStackReplacementEvent;
+import org.jikesrvm.adaptive.controller.Controller;
 import org.jikesrvm.adaptive.measurements.RuntimeMeasurements;
 import org.jikesrvm.architecture.AbstractRegisters;
 import org.jikesrvm.architecture.ArchitectureFactory;
@@ -40,6 +42,7 @@ import org.jikesrvm.compilers.opt.runtimesupport.OptCompiledMethod;
 import org.jikesrvm.compilers.opt.runtimesupport.OptEncodedCallSiteTree;
 import org.jikesrvm.compilers.opt.runtimesupport.OptMachineCodeMap;
 import org.jikesrvm.jni.JNIEnvironment;
+import org.jikesrvm.mm.mminterface.AllocationProfiler;
 import org.jikesrvm.mm.mminterface.CollectorThread;
 import org.jikesrvm.mm.mminterface.MemoryManager;
 import org.jikesrvm.mm.mminterface.ThreadContext;
@@ -468,6 +471,18 @@ public final class RVMThread extends ThreadContext {
    */
   public static long timerTicks;
 
+  /**
+   * Is every thread sampled by a timer of its own CPU time (see
+   * {@link #startCpuTimer()}) rather than by the timer thread?
+   */
+  public static boolean cpuTimerSampling;
+
+  /**
+   * Number of threads that could not start their CPU timer and so must
+   * still be sampled by the timer thread
+   */
+  static int cpuTimerFailures;
+
   private long yieldpointsTaken;
 
   private long yieldpointsTakenFully;
@@ -575,6 +590,13 @@ public final class RVMThread extends ThreadContext {
    */
   public int firstCBSMethodSample;
 
+  /**
+   * Bytes this thread may allocate before its next allocation is sampled
+   * by the allocation profiler. Starts at the sampling interval, so the
+   * first sample of a thread is charged with a full interval of bytes.
+   */
+  public int allocationSampleCountdown;
+
   /* --------- BEGIN PPC-specific fields. NOTE: NEED TO REFACTOR --------- */
   /**
    * flag indicating this processor needs to execute a memory synchronization
@@ -1039,10 +1061,38 @@ public final class RVMThread extends ThreadContext {
 
   /**
    * How many times has the "timeslice" expired? This is only used for profiling
-   * and OSR (in particular base-to-opt OSR).
+   * and OSR (in particular base-to-opt OSR).  Incremented by the timer thread,
+   * or by the per-thread CPU timer's signal handler when
+   * {@link #cpuTimerSampling} is set.
    */
+  @Entrypoint
   public int timeSliceExpired;
 
+  /** Is this thread sampled by a timer of its own CPU time? */
+  boolean hasCpuTimer;
+
+  /**
+   * For a collector thread sampled with {@code -X:aos:gc_sampling=true}, a
+   * native buffer into which the CPU timer's signal handler records, for
+   * each sample, the interrupted instruction, the compiled method id of the
+   * current frame, the return address and the compiled method id of the
+   * caller's frame. Zero for all other threads. The buffer is drained at the
+   * end of each collection by {@link RuntimeMeasurements#takeCollectorSamples}.
+   */
+  @Entrypoint
+  public Address collectorSamples;
+
+  /** Number of samples in {@link #collectorSamples} */
+  @Entrypoint
+  public int collectorSampleCount;
+
+  /** Capacity of {@link #collectorSamples}, in samples */
+  @Entrypoint
+  public int collectorSampleLimit;
+
+  /** Number of words recorded per collector sample */
+  public static final int COLLECTOR_SAMPLE_WORDS = 4;
+
   /** Is a running thread permitted to ignore the next park request */
   private boolean parkingPermit;
 
@@ -1463,6 +1513,12 @@ public final class RVMThread extends ThreadContext {
     bindIfRequested();
 
     threadingInitialized = true;
+    if (VM.BuildForAdaptiveSystem && VM.cpuTimerSampling) {
+      cpuTimerSampling = true;
+      getCurrentThread().startCpuTimer();
+      // If the boot thread cannot have a CPU timer, no thread can
+      cpuTimerSampling = getCurrentThread().hasCpuTimer;
+    }
     // Always run timer thread, so we can respond to debug requests
     new TimerThread().start();
     if (VM.BuildForAdaptiveSystem) {
@@ -1642,6 +1698,7 @@ public final class RVMThread extends ThreadContext {
     this.daemon = daemon;
     this.priority = priority;
     this.systemThread = systemThread;
+    this.allocationSampleCountdown = VM.allocationSampleInterval;
 
     this.contextRegisters = this.contextRegistersShadow = ArchitectureFactory.createRegisters();
     this.contextRegistersSave = this.contextRegistersSaveShadow = ArchitectureFactory.createRegisters();
@@ -1877,6 +1934,14 @@ public final class RVMThread extends ThreadContext {
     return execStatus == IN_JAVA;
   }
 
+  /**
+   * @return whether the timer thread needs to sample this thread, i.e.
+   *  whether it is not sampled by a timer of its own CPU time
+   */
+  boolean isSampledByTimerThread() {
+    return !hasCpuTimer;
+  }
+
   /** A variant of checkBlock() that does not save the thread state. */
   @NoInline
   @Unpreemptible("May block if the thread was asked to do so, but otherwise does no actions that would cause blocking")
@@ -2545,6 +2610,10 @@ public final class RVMThread extends ThreadContext {
         VM.sysWriteln("=== Debug requested - attempting safe VM dump ===");
         dumpAcct();
         reportThreadTransitionCounts();
+        if (VM.profileLockContention) {
+          LockContentionProfiler.report();
+        }
+        AllocationProfiler.report();
 
         // FIXME: this code runs concurrently to GC and has no way of stopping
         // it.  hence it is dangerous.  leaving it as-is for now, since it's
@@ -2569,6 +2638,43 @@ public final class RVMThread extends ThreadContext {
     }
   }
 
+  /**
+   * Start a timer that flags this thread for sampling every
+   * {@code interruptQuantum} ms of CPU time it consumes, so that threads
+   * are sampled in proportion to the CPU they use and idle threads cost
+   * nothing. Must be called by the thread itself; the timer is deleted
+   * when the thread terminates.
+   */
+  private void startCpuTimer() {
+    if (VM.VerifyAssertions) VM._assert(this == getCurrentThread());
+    int err = sysCall.sysStartCpuTimer(1000L * 1000L * VM.interruptQuantum);
+    if (err == 0) {
+      hasCpuTimer = true;
+    } else {
+      // Threads without a CPU timer are still sampled by the timer thread
+      acctLock.lockNoHandshake();
+      cpuTimerFailures++;
+      acctLock.unlock();
+      if (traceAcct) VM.sysWriteln("Thread #", threadSlot, ": could not start CPU timer, errno ", err);
+    }
+  }
+
+  /**
+   * Allocate the sample buffer of a collector thread and start its CPU
+   * timer, so that the timer's signal handler records where the collector
+   * spends its time (collector code has no yieldpoints, so it cannot be
+   * sampled like a mutator). Must be called by the collector thread itself.
+   */
+  private void startCollectorSampling() {
+    if (VM.VerifyAssertions) VM._assert(this == getCurrentThread());
+    int limit = Controller.options.GC_SAMPLE_SIZE;
+    Address buffer = sysCall.sysMalloc(limit * COLLECTOR_SAMPLE_WORDS * BYTES_IN_ADDRESS);
+    if (buffer.isZero()) return;
+    collectorSampleLimit = limit;
+    collectorSamples = buffer;
+    startCpuTimer();
+  }
+
   void timerTick() {
     if (shouldBeSampled()) {
       timeSliceExpired++;
@@ -2779,6 +2885,11 @@ public final class RVMThread extends ThreadContext {
 
     currentThread.enableYieldpoints();
     sysCall.sysStashVMThread(currentThread);
+    if (VM.BuildForAdaptiveSystem && currentThread.isCollectorThread() && Controller.options.GC_SAMPLING) {
+      currentThread.startCollectorSampling();
+    } else if (cpuTimerSampling) {
+      currentThread.startCpuTimer();
+    }
     if (traceAcct) {
       VM.sysWriteln("Thread #", currentThread.threadSlot, " with pthread id ",
           currentThread.pthread_id, " running!");
@@ -28,6 +28,8 @@ import static org.jikesrvm.objectmodel.ThinLockConstants.TL_THREAD_ID_SHIFT;
 import static org.jikesrvm.objectmodel.ThinLockConstants.TL_UNLOCK_MASK;
 
 import org.jikesrvm.VM;
+import org.jikesrvm.classloader.RVMType;
+import org.jikesrvm.mm.mminterface.MemoryManager;
 import org.jikesrvm.runtime.Magic;
 import org.jikesrvm.util.Services;
 import org.vmmagic.pragma.Entrypoint;
@@ -114,7 +116,7 @@ public final class ThinLock {
       if (stat.EQ(TL_STAT_BIASABLE)) {
         Word id = old.and(TL_THREAD_ID_MASK);
         if (id.isZero()) {
-          if (ENABLE_BIASED_LOCKING) {
+          if (ENABLE_BIASED_LOCKING && !Magic.getObjectType(o).isBiasingDisabled()) {
             // lock is unbiased, bias it in our favor and grab it
             if (Synchronization.tryCompareAndSwap(
                   o, lockOffset,
@@ -124,8 +126,8 @@ public final class ThinLock {
               return;
             }
           } else {
-            // lock is unbiased but biasing is NOT allowed, so turn it into
-            // a thin lock
+            // lock is unbiased but biasing is NOT allowed (at all, or for
+            // this type), so turn it into a thin lock
             if (Synchronization.tryCompareAndSwap(
                   o, lockOffset,
                   old,
@@ -145,8 +147,14 @@ public final class ThinLock {
             tryToInflate = true;
           }
         } else {
-          if (casFromBiased(o, lockOffset, old, biasBitsToThinBits(old), cnt)) {
-            continue; // don't spin, since it's thin now
+          Word changed = revokedBiasBits(o, old, threadId);
+          if (casFromBiased(o, lockOffset, old, changed, cnt)) {
+            if (changed.and(TL_STAT_MASK).EQ(TL_STAT_BIASABLE)) {
+              if (STATS) rebiasedLocks++;
+            } else {
+              recordBiasRevocation(o);
+            }
+            continue; // don't spin, since it's thin (or biased in our favor) now
           }
         }
       } else if (stat.EQ(TL_STAT_THIN)) {
@@ -505,6 +513,71 @@ public final class ThinLock {
     return changed;
   }
 
+  /**
+   * Computes the lock word that replaces a lock word biased to another
+   * thread when we revoke that bias. Normally the lock becomes thin, but
+   * once instances of the object's type have had their biases revoked
+   * {@code -X:vm:biasedLockingRebiasThreshold} times in the current bias
+   * epoch (see {@link #biasEpoch()}), a lock that is not
+   * currently held is instead rebiased towards the revoking thread: for
+   * such types the lock is typically handed from one thread to the next
+   * (e.g. producer/consumer), and the new thread is likely to acquire it
+   * again.
+   *
+   * @param o the object whose lock is being revoked
+   * @param bits the current (biased) lock word
+   * @param threadId the locking id of the current thread
+   * @return the new lock word
+   */
+  @Inline
+  @Uninterruptible
+  private static Word revokedBiasBits(Object o, Word bits, Word threadId) {
+    RVMType type = Magic.getObjectType(o);
+    if (!type.isBiasingDisabled() &&
+        type.getBiasRevocations(biasEpoch()) >= VM.biasedLockingRebiasThreshold &&
+        bits.and(TL_LOCK_COUNT_MASK).isZero()) {
+      return bits.and(TL_UNLOCK_MASK).or(threadId);
+    }
+    return biasBitsToThinBits(bits);
+  }
+
+  /**
+   * @return the current bias epoch. Bias revocations are counted per
+   *  epoch of {@code -X:vm:biasedLockingEpochCollections} collections, so
+   *  that only types whose biases are revoked often are affected, rather
+   *  than every type that accumulates enough revocations over a long run.
+   */
+  @Inline
+  @Uninterruptible
+  private static int biasEpoch() {
+    return MemoryManager.getCollectionCount() / VM.biasedLockingEpochCollections;
+  }
+
+  /**
+   * Counts a bias revocation that made a lock thin against the type of the
+   * given object; rebiasing a lock is not counted. Once a type reaches
+   * {@code -X:vm:biasedLockingRevokeThreshold} revocations in a bias epoch,
+   * biasing is disabled for all of its instances: locks that are not yet
+   * biased will become thin on first use, and locks that are biased
+   * will become thin when they are next revoked rather than being
+   * rebiased.
+   *
+   * @param o the object whose lock bias was revoked
+   */
+  @Uninterruptible
+  private static void recordBiasRevocation(Object o) {
+    RVMType type = Magic.getObjectType(o);
+    if (type.recordBiasRevocation(biasEpoch()) == VM.biasedLockingRevokeThreshold) {
+      type.disableBiasing();
+      if (STATS) bulkRevocations++;
+      if (trace) {
+        VM.sysWrite("ThinLock: disabling biased locking for ");
+        VM.sysWrite(type.getDescriptor());
+        VM.sysWriteln();
+      }
+    }
+  }
+
   @Inline
   @Uninterruptible
   public static boolean attemptToMarkDeflated(Object o, Offset lockOffset,
@@ -621,11 +694,15 @@ public final class ThinLock {
 
   static int fastLocks;
   static int slowLocks;
+  static int rebiasedLocks;
+  static int bulkRevocations;
 
   static void notifyAppRunStart(String app, int value) {
     if (!STATS) return;
     fastLocks = 0;
     slowLocks = 0;
+    rebiasedLocks = 0;
+    bulkRevocations = 0;
   }
 
   static void notifyExit(int value) {
@@ -638,6 +715,12 @@ public final class ThinLock {
     VM.sysWrite(slowLocks);
     VM.sysWrite(" slow locks");
     Services.percentage(slowLocks, value, "all lock operations");
+    VM.sysWrite("ThinLocks: ");
+    VM.sysWrite(rebiasedLocks);
+    VM.sysWriteln(" locks rebiased on revocation");
+    VM.sysWrite("ThinLocks: ");
+    VM.sysWrite(bulkRevocations);
+    VM.sysWriteln(" types with biasing disabled");
   }
 
 }
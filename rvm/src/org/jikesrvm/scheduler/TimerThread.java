@@ -30,6 +30,13 @@ import org.vmmagic.pragma.UninterruptibleNoWarn;
  * <p>
  * It may be that to make the system scale, more than one timer thread will
  * be needed.  But for now, this should suffice.
+ * <p>
+ * With {@code -X:vm:cpuTimerSampling=true}, each thread is instead flagged
+ * by a timer of its own CPU time (see {@code RVMThread.startCpuTimer}), so
+ * that only threads that actually run are sampled, in proportion to the CPU
+ * they use.  The timer thread then only sweeps the threads that could not
+ * start such a timer, and otherwise just counts ticks and serves debug
+ * requests.
  */
 @Uninterruptible
 @NonMoving
@@ -38,8 +45,9 @@ public class TimerThread extends SystemThread {
   public TimerThread() {
     super("TimerThread");
   }
-  // NOTE: this runs concurrently with stop-the-world GC
-  // TODO: consider allowing GC to be sampled to enable profile-directed optimization of MMTk.
+  // NOTE: this runs concurrently with stop-the-world GC. Collector threads
+  // are not sampled here; with -X:aos:gc_sampling=true their own CPU timers
+  // sample them (see RVMThread.collectorSamples).
   @Override
   public void run() {
     VM.disableYieldpoints();
@@ -49,18 +57,23 @@ public class TimerThread extends SystemThread {
         sysCall.sysNanoSleep(1000L * 1000L * VM.interruptQuantum);
 
         if (VM.BuildForAdaptiveSystem) {
-          // grab the lock to prevent threads from getting GC'd while we are
-          // iterating (since this thread doesn't stop for GC)
-          RVMThread.acctLock.lockNoHandshake();
-          RVMThread.timerTicks++;
-          for (int i = 0; i < RVMThread.numThreads; ++i) {
-            RVMThread candidate = RVMThread.threads[i];
-            if (candidate != null && candidate.shouldBeSampled()) {
-              candidate.timeSliceExpired++;
-              candidate.takeYieldpoint = 1;
+          if (RVMThread.cpuTimerSampling && RVMThread.cpuTimerFailures == 0) {
+            // every thread is flagged by its own CPU timer, see RVMThread.startCpuTimer
+            RVMThread.timerTicks++;
+          } else {
+            // grab the lock to prevent threads from getting GC'd while we are
+            // iterating (since this thread doesn't stop for GC)
+            RVMThread.acctLock.lockNoHandshake();
+            RVMThread.timerTicks++;
+            for (int i = 0; i < RVMThread.numThreads; ++i) {
+              RVMThread candidate = RVMThread.threads[i];
+              if (candidate != null && candidate.shouldBeSampled() && candidate.isSampledByTimerThread()) {
+                candidate.timeSliceExpired++;
+                candidate.takeYieldpoint = 1;
+              }
             }
+            RVMThread.acctLock.unlock();
           }
-          RVMThread.acctLock.unlock();
         }
 
         RVMThread.checkDebugRequest();
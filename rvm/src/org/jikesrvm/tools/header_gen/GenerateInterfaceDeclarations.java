@@ -374,7 +374,18 @@ public class GenerateInterfaceDeclarations {
     pln("RVMThread_jniEnv_offset", offset);
     offset = Entrypoints.execStatusField.getOffset();
     pln("RVMThread_execStatus_offset", offset);
+    offset = Entrypoints.takeYieldpointField.getOffset();
+    pln("RVMThread_takeYieldpoint_offset", offset);
+    offset = Entrypoints.timeSliceExpiredField.getOffset();
+    pln("RVMThread_timeSliceExpired_offset", offset);
+    offset = Entrypoints.collectorSamplesField.getOffset();
+    pln("RVMThread_collectorSamples_offset", offset);
+    offset = Entrypoints.collectorSampleCountField.getOffset();
+    pln("RVMThread_collectorSampleCount_offset", offset);
+    offset = Entrypoints.collectorSampleLimitField.getOffset();
+    pln("RVMThread_collectorSampleLimit_offset", offset);
     // constants in RVMThread
+    pln("RVMThread_IN_JAVA",  RVMThread.IN_JAVA);
     pln("RVMThread_TERMINATED",  RVMThread.TERMINATED);
     // fields in Registers
     //
@@ -0,0 +1,81 @@
+/*
+ *  This file is part of the Jikes RVM project (http://jikesrvm.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  See the COPYRIGHT.txt file distributed with this work for information
+ *  regarding copyright ownership.
+ */
+package org.jikesrvm.adaptive.controller;
+
+import static org.jikesrvm.tests.util.TestingTools.getNormalMethod;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.jikesrvm.classloader.NormalMethod;
+import org.jikesrvm.compilers.common.CompiledMethod;
+import org.jikesrvm.compilers.common.RuntimeCompiler;
+import org.jikesrvm.compilers.opt.runtimesupport.OptCompiledMethod;
+import org.jikesrvm.junit.runners.RequiresBuiltJikesRVM;
+import org.jikesrvm.junit.runners.RequiresOptCompiler;
+import org.jikesrvm.junit.runners.VMRequirements;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+
+@RunWith(VMRequirements.class)
+@Category({RequiresBuiltJikesRVM.class, RequiresOptCompiler.class})
+public class InvalidationRecompilationEventTest {
+
+  public static int invalidated(int x) {
+    return x + 1;
+  }
+
+  public static int stillOptimized(int x) {
+    return x + 2;
+  }
+
+  private static OptCompiledMethod optCompile(NormalMethod method, int optLevel) {
+    int cmid = RuntimeCompiler.recompileWithOpt(method, optLevel);
+    assertTrue(cmid != -1);
+    CompiledMethod cm = method.getCurrentCompiledMethod();
+    assertEquals(CompiledMethod.OPT, cm.getCompilerType());
+    return (OptCompiledMethod) cm;
+  }
+
+  @Test
+  public void invalidatedMethodIsRecompiledAtItsOptLevel() throws Exception {
+    NormalMethod method = getNormalMethod(InvalidationRecompilationEventTest.class, "invalidated", int.class);
+    int optLevel = Math.min(1, Controller.options.DERIVED_MAX_OPT_LEVEL);
+    OptCompiledMethod cm = optCompile(method, optLevel);
+    method.invalidateCompiledMethod(cm);
+
+    new InvalidationRecompilationEvent(cm).process();
+
+    ControllerPlan plan = ControllerMemory.findLatestPlan(method);
+    assertNotNull(plan);
+    assertEquals(cm.getId(), plan.getPrevCMID());
+    assertEquals(optLevel, plan.getCompPlan().options.getOptLevel());
+    assertEquals(InvalidationRecompilationEvent.PRIORITY, plan.getPriority(), 0.0);
+  }
+
+  @Test
+  public void eventIsDroppedWhenTheMethodIsAlreadyOptimizedAtThatLevel() throws Exception {
+    NormalMethod method = getNormalMethod(InvalidationRecompilationEventTest.class, "stillOptimized", int.class);
+    int optLevel = Math.min(1, Controller.options.DERIVED_MAX_OPT_LEVEL);
+    OptCompiledMethod cm = optCompile(method, optLevel);
+    try {
+      new InvalidationRecompilationEvent(cm).process();
+
+      assertNull(ControllerMemory.findLatestPlan(method));
+    } finally {
+      method.invalidateCompiledMethod(cm);
+    }
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ *  This file is part of the Jikes RVM project (http://jikesrvm.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  See the COPYRIGHT.txt file distributed with this work for information
+ *  regarding copyright ownership.
+ */
+package org.jikesrvm.adaptive.database.callgraph;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.jikesrvm.tests.util.TestingTools.getNormalMethod;
+
+import org.jikesrvm.classloader.RVMMethod;
+import org.jikesrvm.junit.runners.RequiresBuiltJikesRVM;
+import org.jikesrvm.junit.runners.RequiresOptCompiler;
+import org.jikesrvm.junit.runners.VMRequirements;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+
+@RunWith(VMRequirements.class)
+@Category({RequiresBuiltJikesRVM.class, RequiresOptCompiler.class})
+public class PartialCallGraphTest {
+
+  public static class Methods {
+    public void inner() {}
+    public void middle() {}
+    public void outer() {}
+    public void other() {}
+    public void callee() {}
+  }
+
+  private PartialCallGraph dcg;
+  private RVMMethod inner;
+  private RVMMethod middle;
+  private RVMMethod outer;
+  private RVMMethod other;
+  private RVMMethod callee;
+
+  @Before
+  public void createCallGraph() throws Exception {
+    dcg = new PartialCallGraph(1.0);
+    inner = getNormalMethod(Methods.class, "inner");
+    middle = getNormalMethod(Methods.class, "middle");
+    outer = getNormalMethod(Methods.class, "outer");
+    other = getNormalMethod(Methods.class, "other");
+    callee = getNormalMethod(Methods.class, "callee");
+  }
+
+  private static CallContext context(RVMMethod[] methods, int[] bcIndices) {
+    return new CallContext(methods, bcIndices, methods.length);
+  }
+
+  @Test
+  public void contextEdgesAreFoundForEveryPrefix() {
+    RVMMethod[] callers = {inner, middle, outer};
+    int[] bcIndices = {3, 7, 11};
+    dcg.incrementContextEdges(callers, bcIndices, 3, callee);
+    dcg.incrementContextEdges(callers, bcIndices, 3, callee);
+
+    WeightedCallTargets two = dcg.getCallTargets(context(new RVMMethod[] {inner, middle}, new int[] {3, 7}));
+    assertNotNull(two);
+    assertEquals(2.0, two.totalWeight(), 0.0);
+    WeightedCallTargets three = dcg.getCallTargets(context(callers, bcIndices));
+    assertNotNull(three);
+    assertEquals(2.0, three.totalWeight(), 0.0);
+  }
+
+  @Test
+  public void contextsDifferingInAnEnclosingSiteAreDistinct() {
+    dcg.incrementContextEdges(new RVMMethod[] {inner, middle}, new int[] {3, 7}, 2, callee);
+
+    assertNull(dcg.getCallTargets(context(new RVMMethod[] {inner, other}, new int[] {3, 7})));
+    assertNull(dcg.getCallTargets(context(new RVMMethod[] {inner, middle}, new int[] {3, 8})));
+  }
+
+  @Test
+  public void singleSiteContextIsTheCallSiteEdge() {
+    dcg.incrementContextEdges(new RVMMethod[] {inner, middle}, new int[] {3, 7}, 2, callee);
+    CallContext site = context(new RVMMethod[] {inner}, new int[] {3});
+    assertNull(dcg.getCallTargets(site));
+
+    dcg.incrementEdge(inner, 3, callee);
+    WeightedCallTargets targets = dcg.getCallTargets(site);
+    assertNotNull(targets);
+    assertEquals(1.0, targets.totalWeight(), 0.0);
+  }
+}
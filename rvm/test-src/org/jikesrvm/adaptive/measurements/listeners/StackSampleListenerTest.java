@@ -0,0 +1,80 @@
+/*
+ *  This file is part of the Jikes RVM project (http://jikesrvm.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  See the COPYRIGHT.txt file distributed with this work for information
+ *  regarding copyright ownership.
+ */
+package org.jikesrvm.adaptive.measurements.listeners;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.jikesrvm.junit.runners.RequiresBuiltJikesRVM;
+import org.jikesrvm.junit.runners.RequiresOptCompiler;
+import org.jikesrvm.junit.runners.VMRequirements;
+import org.jikesrvm.runtime.Magic;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import org.vmmagic.unboxed.Address;
+
+@RunWith(VMRequirements.class)
+@Category({RequiresOptCompiler.class, RequiresBuiltJikesRVM.class})
+public class StackSampleListenerTest {
+
+  private static final int SLOTS = 2;
+  private static final int MAX_DEPTH = 4;
+
+  private StackSampleListener listener;
+
+  @Before
+  public void createListener() {
+    listener = new StackSampleListener(SLOTS, MAX_DEPTH);
+  }
+
+  private void sample() {
+    Address fp = Magic.getFramePointer();
+    listener.update(Magic.getReturnAddress(fp), Magic.getCallerFramePointer(fp));
+  }
+
+  @Test
+  public void samplesAreWrittenToConsecutiveSlots() {
+    sample();
+    sample();
+    assertEquals(2, listener.getSamplesTaken());
+    int first = listener.getSlot(0);
+    int second = listener.getSlot(1);
+    assertTrue(first >= 0);
+    assertTrue(second >= 0);
+    assertTrue(first != second);
+    int depth = listener.getRing()[first + 1];
+    assertTrue(depth > 0 && depth <= MAX_DEPTH);
+  }
+
+  @Test
+  public void unwrittenSampleHasNoSlot() {
+    sample();
+    assertEquals(-1, listener.getSlot(1));
+  }
+
+  @Test
+  public void fullRingDropsSamplesWithoutTakingANumber() {
+    for (int i = 0; i < SLOTS + 3; i++) {
+      sample();
+    }
+    assertEquals(SLOTS, listener.getSamplesTaken());
+    assertEquals(3, listener.getSamplesDropped());
+
+    listener.setSamplesConsumed(SLOTS);
+    sample();
+    assertEquals(SLOTS + 1, listener.getSamplesTaken());
+    assertTrue(listener.getSlot(SLOTS) >= 0);
+  }
+}
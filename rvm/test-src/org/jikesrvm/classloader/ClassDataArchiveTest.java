@@ -0,0 +1,111 @@
+/*
+ *  This file is part of the Jikes RVM project (http://jikesrvm.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  See the COPYRIGHT.txt file distributed with this work for information
+ *  regarding copyright ownership.
+ */
+package org.jikesrvm.classloader;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+
+import org.jikesrvm.junit.runners.RequiresBuiltJikesRVM;
+import org.jikesrvm.junit.runners.VMRequirements;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+
+@RunWith(VMRequirements.class)
+@Category(RequiresBuiltJikesRVM.class)
+public class ClassDataArchiveTest {
+
+  private File directory;
+  private File classFile;
+  private URL source;
+
+  @Before
+  public void createClassPathDirectory() throws Exception {
+    directory = File.createTempFile("archive", "");
+    directory.delete();
+    directory.mkdir();
+    new File(directory, "p").mkdir();
+    classFile = new File(directory, "p" + File.separator + "C.class");
+    write(classFile, 16);
+    source = new URL("file", null, -1, directory.getPath() + File.separator);
+  }
+
+  @After
+  public void deleteClassPathDirectory() {
+    classFile.delete();
+    new File(directory, "p").delete();
+    directory.delete();
+  }
+
+  private static void write(File f, int length) throws IOException {
+    FileOutputStream out = new FileOutputStream(f);
+    try {
+      out.write(new byte[length]);
+    } finally {
+      out.close();
+    }
+  }
+
+  private ClassDataArchive.Entry archivedEntry() {
+    return new ClassDataArchive.Entry(0, classFile.lastModified(), classFile.length(), null, 0, 16);
+  }
+
+  @Test
+  public void unmodifiedClassFileIsCurrent() {
+    assertTrue(ClassDataArchive.isCurrent(archivedEntry(), source, "p.C"));
+  }
+
+  @Test
+  public void modifiedClassFileIsStale() throws Exception {
+    ClassDataArchive.Entry entry = archivedEntry();
+    write(classFile, 32);
+    assertFalse(ClassDataArchive.isCurrent(entry, source, "p.C"));
+  }
+
+  @Test
+  public void touchedClassFileIsStale() {
+    ClassDataArchive.Entry entry = archivedEntry();
+    classFile.setLastModified(classFile.lastModified() - 10000);
+    assertFalse(ClassDataArchive.isCurrent(entry, source, "p.C"));
+  }
+
+  @Test
+  public void classFromAJarIsCheckedWithTheJar() {
+    ClassDataArchive.Entry entry = new ClassDataArchive.Entry(0, -1, -1, null, 0, 16);
+    assertTrue(ClassDataArchive.isCurrent(entry, source, "p.Missing"));
+  }
+
+  @Test
+  public void unmodifiedJarIsAccepted() throws Exception {
+    ClassDataArchive.checkJar(classFileURL(), classFile.lastModified(), classFile.length());
+  }
+
+  @Test(expected = IOException.class)
+  public void modifiedJarIsRejected() throws Exception {
+    long lastModified = classFile.lastModified();
+    long size = classFile.length();
+    write(classFile, 32);
+    ClassDataArchive.checkJar(classFileURL(), lastModified, size);
+  }
+
+  private URL classFileURL() throws Exception {
+    return new URL("file", null, -1, classFile.getPath());
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ *  This file is part of the Jikes RVM project (http://jikesrvm.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  See the COPYRIGHT.txt file distributed with this work for information
+ *  regarding copyright ownership.
+ */
+package org.jikesrvm.classloader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.jikesrvm.VM;
+import org.jikesrvm.junit.runners.RequiresBuiltJikesRVM;
+import org.jikesrvm.junit.runners.VMRequirements;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+
+@RunWith(VMRequirements.class)
+@Category(RequiresBuiltJikesRVM.class)
+public class ClassFilePrefetcherTest {
+
+  private static final byte[] CLASS_FILE = new byte[16];
+
+  private boolean wasPrefetching;
+
+  @Before
+  public void enablePrefetching() {
+    wasPrefetching = VM.prefetchClassFiles;
+    VM.prefetchClassFiles = true;
+  }
+
+  @After
+  public void restorePrefetching() {
+    VM.prefetchClassFiles = wasPrefetching;
+  }
+
+  @Test
+  public void cachedClassFileIsTakenFromItsJar() {
+    ClassFilePrefetcher.cache("test.Taken", "a.jar", 0, CLASS_FILE, System.currentTimeMillis());
+    assertSame(CLASS_FILE, ClassFilePrefetcher.take("test.Taken", "a.jar"));
+    assertNull(ClassFilePrefetcher.take("test.Taken", "a.jar"));
+  }
+
+  @Test
+  public void classFileIsEvictedAfterItsLifetime() {
+    long cachedAt = System.currentTimeMillis() - VM.prefetchClassFileCacheLifetime;
+    ClassFilePrefetcher.cache("test.Expired", "a.jar", 0, CLASS_FILE, cachedAt);
+    assertNull(ClassFilePrefetcher.take("test.Expired", "a.jar"));
+  }
+
+  @Test
+  public void classFileFromTheEarliestJarIsKept() {
+    byte[] later = new byte[8];
+    long now = System.currentTimeMillis();
+    ClassFilePrefetcher.cache("test.Shadowed", "b.jar", 1, later, now);
+    ClassFilePrefetcher.cache("test.Shadowed", "a.jar", 0, CLASS_FILE, now);
+    ClassFilePrefetcher.cache("test.Shadowed", "c.jar", 2, later, now);
+    assertSame(CLASS_FILE, ClassFilePrefetcher.take("test.Shadowed", "a.jar"));
+  }
+
+  @Test
+  public void classFileFromAnotherEntryIsDropped() {
+    ClassFilePrefetcher.cache("test.Other", "b.jar", 1, CLASS_FILE, System.currentTimeMillis());
+    assertNull(ClassFilePrefetcher.take("test.Other", "a.jar"));
+    assertNull(ClassFilePrefetcher.take("test.Other", "b.jar"));
+  }
+
+  @Test
+  public void loadedClassIsNotCached() {
+    String name = ClassFilePrefetcher.class.getName();
+    ClassFilePrefetcher.cache(name, "a.jar", 0, CLASS_FILE, System.currentTimeMillis());
+    assertNull(ClassFilePrefetcher.take(name, "a.jar"));
+  }
+
+  @Test
+  public void classWithNonAsciiNameIsPrefetched() throws Exception {
+    File jar = File.createTempFile("prefetch", ".jar");
+    try {
+      ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar));
+      try {
+        out.putNextEntry(new ZipEntry("test/\u00dcnic\u00f6de.class"));
+        out.write(classFileOf(ClassFilePrefetcherTest.class));
+        out.closeEntry();
+      } finally {
+        out.close();
+      }
+      int before = ClassFilePrefetcher.getPrefetchedClasses();
+      ClassFilePrefetcher.prefetchJar(jar.getPath(), 0, false);
+      assertEquals(before + 1, ClassFilePrefetcher.getPrefetchedClasses());
+    } finally {
+      jar.delete();
+    }
+  }
+
+  private static byte[] classFileOf(Class<?> c) throws Exception {
+    InputStream in = c.getResourceAsStream(c.getSimpleName() + ".class");
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+        bytes.write(buffer, 0, n);
+      }
+      return bytes.toByteArray();
+    } finally {
+      in.close();
+    }
+  }
+}
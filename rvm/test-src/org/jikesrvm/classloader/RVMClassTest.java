@@ -52,6 +52,19 @@ public class RVMClassTest {
     assertThat(subClassesList.size(), is(2));
   }
 
+  @Test
+  public void biasRevocationsAreCountedPerEpoch() throws ClassNotFoundException {
+    RVMClass javaLangObject = JikesRVMSupport.getTypeForClass(Class.forName("java.lang.Object")).asClass();
+    RVMClass type = createRVMClass("ClassForBiasRevocationTest", javaLangObject);
+    assertThat(type.recordBiasRevocation(1), is(1));
+    assertThat(type.recordBiasRevocation(1), is(2));
+    assertThat(type.getBiasRevocations(1), is(2));
+
+    assertThat(type.getBiasRevocations(2), is(0));
+    assertThat(type.recordBiasRevocation(2), is(1));
+    assertThat(type.getBiasRevocations(1), is(0));
+  }
+
   private RVMClass createRVMClass(String className, RVMClass superClass)
       throws ClassNotFoundException {
     TypeReference tRef = TypeReference.findOrCreate(className);
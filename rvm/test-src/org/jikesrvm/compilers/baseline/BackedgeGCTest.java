@@ -0,0 +1,112 @@
+/*
+ *  This file is part of the Jikes RVM project (http://jikesrvm.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  See the COPYRIGHT.txt file distributed with this work for information
+ *  regarding copyright ownership.
+ */
+package org.jikesrvm.compilers.baseline;
+
+import static org.junit.Assert.assertEquals;
+
+import org.jikesrvm.junit.runners.RequiresBuiltJikesRVM;
+import org.jikesrvm.junit.runners.VMRequirements;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+
+/**
+ * Collects garbage while another thread runs loops whose conditions are
+ * merged int sequences ({@code iload; iload; if_icmp..} and
+ * {@code iload; if..}), so that collections stop the loops at their
+ * backedge yieldpoints. A wrong reference map at a backedge leaves the
+ * loop with a stale reference after a moving collection.
+ */
+@RunWith(VMRequirements.class)
+@Category(RequiresBuiltJikesRVM.class)
+public class BackedgeGCTest {
+
+  private static final int NODES = 64;
+  private static final int ITERATIONS = 100000;
+  private static final int COLLECTIONS = 20;
+
+  private volatile boolean done;
+
+  private static final class Node {
+    final int value;
+    Node next;
+    Node(int value) {
+      this.value = value;
+    }
+  }
+
+  private static Node makeRing() {
+    Node first = new Node(1);
+    Node last = first;
+    for (int i = 2; i <= NODES; i++) {
+      Node n = new Node(i);
+      last.next = n;
+      last = n;
+    }
+    last.next = first;
+    return first;
+  }
+
+  /** The loop condition compiles to iload; iload; if_icmplt with a backward branch */
+  private static long walkCompare(Node n, int iterations) {
+    long sum = 0;
+    for (int i = 0; i < iterations; i++) {
+      sum += n.value;
+      n = n.next;
+    }
+    return sum;
+  }
+
+  /** The loop condition compiles to iload; ifgt with a backward branch */
+  private static long walkCountdown(Node n, int iterations) {
+    long sum = 0;
+    int remaining = iterations;
+    do {
+      sum += n.value;
+      n = n.next;
+      remaining--;
+    } while (remaining > 0);
+    return sum;
+  }
+
+  private static long expectedSum(int iterations) {
+    long rounds = iterations / NODES;
+    long rest = iterations % NODES;
+    return rounds * NODES * (NODES + 1) / 2 + rest * (rest + 1) / 2;
+  }
+
+  @Test
+  public void loopsSurviveCollectionsAtBackedges() throws InterruptedException {
+    final long expected = expectedSum(ITERATIONS);
+    final long[] results = new long[2];
+    Thread walker = new Thread() {
+      @Override
+      public void run() {
+        Node ring = makeRing();
+        while (!done) {
+          results[0] = walkCompare(ring, ITERATIONS);
+          results[1] = walkCountdown(ring, ITERATIONS);
+          if (results[0] != expected || results[1] != expected) return;
+        }
+      }
+    };
+    walker.start();
+    for (int i = 0; i < COLLECTIONS && walker.isAlive(); i++) {
+      System.gc();
+    }
+    done = true;
+    walker.join();
+    assertEquals(expected, results[0]);
+    assertEquals(expected, results[1]);
+  }
+}
@@ -0,0 +1,204 @@
+/*
+ *  This file is part of the Jikes RVM project (http://jikesrvm.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  See the COPYRIGHT.txt file distributed with this work for information
+ *  regarding copyright ownership.
+ */
+package org.jikesrvm.compilers.baseline;
+
+import static org.jikesrvm.tests.util.TestingTools.getNormalMethod;
+import static org.junit.Assert.assertEquals;
+
+import org.jikesrvm.classloader.NormalMethod;
+import org.jikesrvm.compilers.common.CompiledMethod;
+import org.jikesrvm.junit.runners.RequiresBuiltJikesRVM;
+import org.jikesrvm.junit.runners.VMRequirements;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+
+/**
+ * Runs baseline compiled code in which int loads are merged with the
+ * forward branches and arithmetic that consume them, and checks it
+ * against results computed with long arithmetic, which is never merged.
+ */
+@RunWith(VMRequirements.class)
+@Category(RequiresBuiltJikesRVM.class)
+public class MergedIntOperationsTest {
+
+  private static final int[] VALUES = {
+    0, 1, -1, 2, 3, 5, 7, -2, 100, 1000, 1001, 30000, -30000,
+    Integer.MIN_VALUE, Integer.MIN_VALUE + 1, Integer.MAX_VALUE, Integer.MAX_VALUE - 1
+  };
+
+  private static final int WARM_UP_CALLS = 2000;
+  private static final int WARM_UP_LIMIT = 1000;
+
+  /** iload; if.. with forward branches */
+  public static int ifs(int a) {
+    int r = 0;
+    if (a == 0) r |= 1;
+    if (a != 0) r |= 2;
+    if (a < 0) r |= 4;
+    if (a >= 0) r |= 8;
+    if (a > 0) r |= 16;
+    if (a <= 0) r |= 32;
+    return r;
+  }
+
+  /** iload; iload; if_icmp.. with forward branches */
+  public static int compares(int a, int b) {
+    int r = 0;
+    if (a == b) r |= 1;
+    if (a != b) r |= 2;
+    if (a < b) r |= 4;
+    if (a >= b) r |= 8;
+    if (a > b) r |= 16;
+    if (a <= b) r |= 32;
+    return r;
+  }
+
+  /** iload; (iconst|bipush|sipush); if_icmp.. with forward branches */
+  public static int compareConstants(int a) {
+    int r = 0;
+    if (a == 3) r |= 1;
+    if (a != -1) r |= 2;
+    if (a < 7) r |= 4;
+    if (a >= 100) r |= 8;
+    if (a > 1000) r |= 16;
+    if (a <= -30000) r |= 32;
+    return r;
+  }
+
+  /** iload; iload; (iadd|isub|iand|ior|ixor) */
+  public static int alu(int a, int b, int op) {
+    switch (op) {
+      case 0: return a + b;
+      case 1: return a - b;
+      case 2: return a & b;
+      case 3: return a | b;
+      default: return a ^ b;
+    }
+  }
+
+  /** iload; (iconst|bipush|sipush); (iadd|isub|iand|ior|ixor) */
+  public static int aluConstants(int a, int op) {
+    switch (op) {
+      case 0: return a + 1000;
+      case 1: return a - 30000;
+      case 2: return a & 5;
+      case 3: return a | -1;
+      default: return a ^ 100;
+    }
+  }
+
+  private static int expectedCompares(long a, long b) {
+    return (a == b ? 1 : 0) | (a != b ? 2 : 0) | (a < b ? 4 : 0) |
+        (a >= b ? 8 : 0) | (a > b ? 16 : 0) | (a <= b ? 32 : 0);
+  }
+
+  private static int expectedAlu(long a, long b, int op) {
+    switch (op) {
+      case 0: return (int) (a + b);
+      case 1: return (int) (a - b);
+      case 2: return (int) (a & b);
+      case 3: return (int) (a | b);
+      default: return (int) (a ^ b);
+    }
+  }
+
+  /**
+   * A loop whose head test, forward branches and arithmetic are all
+   * merged sequences, to time the warm-up of baseline compiled code.
+   */
+  public static int warmUp(int limit) {
+    int sum = 0;
+    for (int i = 0; i < limit; i++) {
+      int k = i & 7;
+      if (k == 0) sum = sum + i;
+      if (k > 4) sum = sum ^ k;
+      if (i >= 500) sum = sum - 1;
+    }
+    return sum;
+  }
+
+  /**
+   * Compile a method with the baseline compiler and install the code.
+   *
+   * @param m the method
+   * @param merge whether int operations are merged
+   */
+  private static void baselineCompile(NormalMethod m, boolean merge) {
+    boolean old = BaselineCompiler.options.MERGE_INT_OPERATIONS;
+    BaselineCompiler.options.MERGE_INT_OPERATIONS = merge;
+    try {
+      CompiledMethod cm = BaselineCompiler.compile(m);
+      m.replaceCompiledMethod(cm);
+    } finally {
+      BaselineCompiler.options.MERGE_INT_OPERATIONS = old;
+    }
+  }
+
+  @Test
+  public void mergedBranchesMatchUnmergedComparisons() throws Exception {
+    baselineCompile(getNormalMethod(MergedIntOperationsTest.class, "ifs", int.class), true);
+    baselineCompile(getNormalMethod(MergedIntOperationsTest.class, "compares", int.class, int.class), true);
+    baselineCompile(getNormalMethod(MergedIntOperationsTest.class, "compareConstants", int.class), true);
+    for (int a : VALUES) {
+      assertEquals(expectedCompares(a, 0), ifs(a));
+      assertEquals(expectedCompares(a, 3) & 1 | expectedCompares(a, -1) & 2 |
+          expectedCompares(a, 7) & 4 | expectedCompares(a, 100) & 8 |
+          expectedCompares(a, 1000) & 16 | expectedCompares(a, -30000) & 32,
+          compareConstants(a));
+      for (int b : VALUES) {
+        assertEquals(expectedCompares(a, b), compares(a, b));
+      }
+    }
+  }
+
+  @Test
+  public void mergedArithmeticMatchesLongArithmetic() throws Exception {
+    baselineCompile(getNormalMethod(MergedIntOperationsTest.class, "alu", int.class, int.class, int.class), true);
+    baselineCompile(getNormalMethod(MergedIntOperationsTest.class, "aluConstants", int.class, int.class), true);
+    long[] constants = {1000, 30000, 5, -1, 100};
+    for (int op = 0; op < 5; op++) {
+      for (int a : VALUES) {
+        assertEquals(expectedAlu(a, constants[op], op), aluConstants(a, op));
+        for (int b : VALUES) {
+          assertEquals(expectedAlu(a, b, op), alu(a, b, op));
+        }
+      }
+    }
+  }
+
+  /**
+   * Times the calls of baseline compiled code with and without merged int
+   * operations, as seen while an application warms up, and checks both
+   * compute the same result.
+   */
+  @Test
+  public void warmUpWithAndWithoutMergedOperations() throws Exception {
+    NormalMethod m = getNormalMethod(MergedIntOperationsTest.class, "warmUp", int.class);
+    baselineCompile(m, false);
+    int expected = warmUp(WARM_UP_LIMIT);
+    long unmerged = timeWarmUp(expected);
+    baselineCompile(m, true);
+    long merged = timeWarmUp(expected);
+    System.out.println("Baseline warm-up of " + WARM_UP_CALLS + " calls: " +
+        unmerged / 1000 + "us unmerged, " + merged / 1000 + "us merged");
+  }
+
+  private static long timeWarmUp(int expected) {
+    long start = System.nanoTime();
+    for (int i = 0; i < WARM_UP_CALLS; i++) {
+      assertEquals(expected, warmUp(WARM_UP_LIMIT));
+    }
+    return System.nanoTime() - start;
+  }
+}
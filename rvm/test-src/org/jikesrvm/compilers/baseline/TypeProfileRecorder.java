@@ -0,0 +1,63 @@
+/*
+ *  This file is part of the Jikes RVM project (http://jikesrvm.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  See the COPYRIGHT.txt file distributed with this work for information
+ *  regarding copyright ownership.
+ */
+package org.jikesrvm.compilers.baseline;
+
+import org.jikesrvm.classloader.NormalMethod;
+
+/**
+ * Records type profiles as baseline compiled code would, for the tests
+ * of the consumers of {@link TypeProfiles}.
+ */
+public final class TypeProfileRecorder {
+
+  private TypeProfileRecorder() {}
+
+  /**
+   * Replace the type profile of a method with one for a single site.
+   *
+   * @param m the method
+   * @param bcIndex the bytecode index of the site
+   * @param objects the objects seen at the site
+   */
+  public static void profile(NormalMethod m, int bcIndex, Object... objects) {
+    TypeProfiles.allocateProfiles(m, new int[] {bcIndex}, 1);
+    for (Object o : objects) {
+      TypeProfiles.record(o, m.getId(), 0);
+    }
+  }
+
+  /**
+   * @param o an object
+   * @param n the number of copies
+   * @return an array holding the object n times
+   */
+  public static Object[] times(Object o, int n) {
+    Object[] objects = new Object[n];
+    for (int i = 0; i < n; i++) {
+      objects[i] = o;
+    }
+    return objects;
+  }
+
+  /**
+   * @param a some objects
+   * @param b some more objects
+   * @return the objects of both arrays, in order
+   */
+  public static Object[] concat(Object[] a, Object[] b) {
+    Object[] objects = new Object[a.length + b.length];
+    System.arraycopy(a, 0, objects, 0, a.length);
+    System.arraycopy(b, 0, objects, a.length, b.length);
+    return objects;
+  }
+}
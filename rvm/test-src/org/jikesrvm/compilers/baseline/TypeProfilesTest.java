@@ -0,0 +1,103 @@
+/*
+ *  This file is part of the Jikes RVM project (http://jikesrvm.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  See the COPYRIGHT.txt file distributed with this work for information
+ *  regarding copyright ownership.
+ */
+package org.jikesrvm.compilers.baseline;
+
+import static org.jikesrvm.compilers.baseline.TypeProfileRecorder.concat;
+import static org.jikesrvm.compilers.baseline.TypeProfileRecorder.profile;
+import static org.jikesrvm.compilers.baseline.TypeProfileRecorder.times;
+import static org.jikesrvm.tests.util.TestingTools.getNormalMethod;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.jikesrvm.classloader.NormalMethod;
+import org.jikesrvm.classloader.RVMType;
+import org.jikesrvm.junit.runners.RequiresBuiltJikesRVM;
+import org.jikesrvm.junit.runners.VMRequirements;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+
+@RunWith(VMRequirements.class)
+@Category(RequiresBuiltJikesRVM.class)
+public class TypeProfilesTest {
+
+  private static final int BCI = 3;
+
+  private NormalMethod method;
+
+  public static boolean profiled(Object o) {
+    return o instanceof Number;
+  }
+
+  @Before
+  public void getMethod() throws Exception {
+    method = getNormalMethod(TypeProfilesTest.class, "profiled", Object.class);
+  }
+
+  private static RVMType typeOf(Object o) {
+    return JikesRVMSupport.getTypeForClass(o.getClass());
+  }
+
+  @Test
+  public void typesAreRecordedInTheOrderTheyAreFirstSeen() {
+    profile(method, BCI, concat(times("s", 30), times(1, 70)));
+    TypeProfile p = TypeProfiles.getTypeProfile(method, BCI);
+    assertEquals(BCI, p.getBytecodeIndex());
+    assertEquals(2, p.getNumberOfTypes());
+    assertSame(typeOf("s"), p.getType(0));
+    assertSame(typeOf(1), p.getType(1));
+    assertEquals(0.3, p.getFraction(0), 1e-9);
+    assertEquals(0.7, p.getFraction(1), 1e-9);
+  }
+
+  @Test
+  public void objectsOfFurtherTypesAreCountedTogether() {
+    profile(method, BCI, concat(concat(times("s", 50), times(1, 25)), times(1L, 25)));
+    TypeProfile p = TypeProfiles.getTypeProfile(method, BCI);
+    assertEquals(TypeProfiles.TYPES_PER_SITE, p.getNumberOfTypes());
+    assertEquals(0.5, p.getFraction(0), 1e-9);
+    assertEquals(0.25, p.getFraction(1), 1e-9);
+    assertNull(p.getDominantType(0.6));
+  }
+
+  @Test
+  public void nullIsNotRecorded() {
+    profile(method, BCI, concat(times("s", TypeProfile.MIN_OBSERVATIONS), new Object[] {null}));
+    TypeProfile p = TypeProfiles.getTypeProfile(method, BCI);
+    assertEquals(1, p.getNumberOfTypes());
+    assertEquals(1.0, p.getFraction(0), 1e-9);
+  }
+
+  @Test
+  public void dominantTypeNeedsAMatureProfile() {
+    profile(method, BCI, times("s", TypeProfile.MIN_OBSERVATIONS - 1));
+    TypeProfile p = TypeProfiles.getTypeProfile(method, BCI);
+    assertFalse(p.isMature());
+    assertNull(p.getDominantType(0.9));
+
+    TypeProfiles.record("s", method.getId(), 0);
+    p = TypeProfiles.getTypeProfile(method, BCI);
+    assertTrue(p.isMature());
+    assertSame(typeOf("s"), p.getDominantType(0.9));
+  }
+
+  @Test
+  public void unprofiledSiteHasNoProfile() {
+    profile(method, BCI, "s");
+    assertNull(TypeProfiles.getTypeProfile(method, BCI + 1));
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ *  This file is part of the Jikes RVM project (http://jikesrvm.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  See the COPYRIGHT.txt file distributed with this work for information
+ *  regarding copyright ownership.
+ */
+package org.jikesrvm.compilers.opt.bc2ir;
+
+import static org.jikesrvm.tests.util.TestingTools.getNormalMethod;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import org.jikesrvm.adaptive.controller.Controller;
+import org.jikesrvm.classloader.NormalMethod;
+import org.jikesrvm.compilers.baseline.BaselineCompiler;
+import org.jikesrvm.compilers.baseline.ValueProfile;
+import org.jikesrvm.compilers.baseline.ValueProfiles;
+import org.jikesrvm.compilers.common.CompiledMethod;
+import org.jikesrvm.compilers.common.RuntimeCompiler;
+import org.jikesrvm.compilers.opt.driver.OptimizingCompiler;
+import org.jikesrvm.junit.runners.RequiresBuiltJikesRVM;
+import org.jikesrvm.junit.runners.RequiresOptCompiler;
+import org.jikesrvm.junit.runners.VMRequirements;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+
+@RunWith(VMRequirements.class)
+@Category({RequiresBuiltJikesRVM.class, RequiresOptCompiler.class})
+public class ValueGuardExpansionTest {
+
+  /** The bytecode index of the getstatic of {@link #readMode()} */
+  private static final int BCI = 0;
+
+  private static final int MODE = 3;
+
+  public static int mode;
+
+  public static int readMode() {
+    return mode;
+  }
+
+  private NormalMethod method;
+
+  /**
+   * Run baseline compiled code that profiles the values of
+   * {@link #mode}, which never changes while it runs.
+   */
+  @Before
+  public void profileMode() throws Exception {
+    mode = MODE;
+    method = getNormalMethod(ValueGuardExpansionTest.class, "readMode");
+    boolean old = BaselineCompiler.options.PROFILE_VALUES;
+    BaselineCompiler.options.PROFILE_VALUES = true;
+    try {
+      method.replaceCompiledMethod(BaselineCompiler.compile(method));
+    } finally {
+      BaselineCompiler.options.PROFILE_VALUES = old;
+    }
+    for (int i = 0; i < ValueProfile.MIN_OBSERVATIONS; i++) {
+      assertEquals(MODE, readMode());
+    }
+  }
+
+  @Test
+  public void valueThatNeverChangesIsDominant() {
+    ValueProfile profile = ValueProfiles.getValueProfile(method, BCI);
+    assertEquals(MODE, profile.getValue());
+    assertTrue(profile.isDominant(BC2IR.DOMINANT_VALUE_FRACTION));
+    assertFalse(profile.hasSpeculationFailed());
+  }
+
+  @Test
+  public void siteStaysBlacklistedWhileItIsProfiled() {
+    ValueProfiles.speculationFailed(method, BCI);
+    for (int i = 0; i < ValueProfile.MIN_OBSERVATIONS; i++) {
+      assertEquals(MODE, readMode());
+    }
+    ValueProfile profile = ValueProfiles.getValueProfile(method, BCI);
+    assertTrue(profile.isDominant(BC2IR.DOMINANT_VALUE_FRACTION));
+    assertTrue(profile.hasSpeculationFailed());
+  }
+
+  /**
+   * Once the speculated field changes, the guard sends execution back to
+   * baseline code, which loads the new value, and the opt compiled method
+   * is replaced by one that does not speculate on the site again.
+   */
+  @Test
+  public void speculatedFieldThatChangesInvalidatesTheMethodAndBlacklistsTheSite() {
+    assumeTrue(Controller.enabled && OptimizingCompiler.getAppStarted());
+    assertTrue(RuntimeCompiler.recompileWithOpt(method) != -1);
+    CompiledMethod speculating = method.getCurrentCompiledMethod();
+    assertEquals(CompiledMethod.OPT, speculating.getCompilerType());
+    assertEquals(MODE, readMode());
+
+    mode = MODE + 1;
+    assertEquals(MODE + 1, readMode());
+    assertTrue(ValueProfiles.getValueProfile(method, BCI).hasSpeculationFailed());
+    assertNotSame(speculating, method.getCurrentCompiledMethod());
+    assertEquals(MODE + 1, readMode());
+  }
+}
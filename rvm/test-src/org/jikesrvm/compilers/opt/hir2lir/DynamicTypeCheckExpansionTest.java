@@ -0,0 +1,101 @@
+/*
+ *  This file is part of the Jikes RVM project (http://jikesrvm.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  See the COPYRIGHT.txt file distributed with this work for information
+ *  regarding copyright ownership.
+ */
+package org.jikesrvm.compilers.opt.hir2lir;
+
+import static org.jikesrvm.compilers.baseline.TypeProfileRecorder.concat;
+import static org.jikesrvm.compilers.baseline.TypeProfileRecorder.profile;
+import static org.jikesrvm.compilers.baseline.TypeProfileRecorder.times;
+import static org.jikesrvm.compilers.opt.ir.Operators.FENCE;
+import static org.jikesrvm.tests.util.TestingTools.getNormalMethod;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.jikesrvm.classloader.NormalMethod;
+import org.jikesrvm.classloader.RVMClass;
+import org.jikesrvm.compilers.baseline.TypeProfile;
+import org.jikesrvm.compilers.opt.inlining.InlineSequence;
+import org.jikesrvm.compilers.opt.ir.Empty;
+import org.jikesrvm.compilers.opt.ir.Instruction;
+import org.jikesrvm.junit.runners.RequiresBuiltJikesRVM;
+import org.jikesrvm.junit.runners.RequiresOptCompiler;
+import org.jikesrvm.junit.runners.VMRequirements;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+
+@RunWith(VMRequirements.class)
+@Category({RequiresBuiltJikesRVM.class, RequiresOptCompiler.class})
+public class DynamicTypeCheckExpansionTest {
+
+  private static final int BCI = 1;
+
+  private static final int OBSERVATIONS = TypeProfile.MIN_OBSERVATIONS;
+
+  static class Base {}
+  static final class Derived extends Base {}
+  static final class Other extends Base {}
+
+  public static boolean check(Object o) {
+    return o instanceof Base;
+  }
+
+  private NormalMethod method;
+  private Instruction typeCheck;
+  private RVMClass base;
+
+  @Before
+  public void createTypeCheck() throws Exception {
+    method = getNormalMethod(DynamicTypeCheckExpansionTest.class, "check", Object.class);
+    typeCheck = Empty.create(FENCE);
+    typeCheck.setSourcePosition(BCI, new InlineSequence(method));
+    base = JikesRVMSupport.getTypeForClass(Base.class).asClass();
+  }
+
+  @Test
+  public void dominantSubclassIsTestedFirst() {
+    profile(method, BCI, concat(times(new Derived(), OBSERVATIONS * 95 / 100), times(new Other(), OBSERVATIONS * 5 / 100)));
+    assertSame(JikesRVMSupport.getTypeForClass(Derived.class),
+        DynamicTypeCheckExpansion.getProfiledType(typeCheck, base));
+  }
+
+  @Test
+  public void noTypeIsTestedFirstWithoutADominantType() {
+    profile(method, BCI, concat(times(new Derived(), OBSERVATIONS / 2), times(new Other(), OBSERVATIONS / 2)));
+    assertNull(DynamicTypeCheckExpansion.getProfiledType(typeCheck, base));
+  }
+
+  @Test
+  public void noTypeIsTestedFirstWhenTheProfileIsNotMature() {
+    profile(method, BCI, times(new Derived(), OBSERVATIONS - 1));
+    assertNull(DynamicTypeCheckExpansion.getProfiledType(typeCheck, base));
+  }
+
+  @Test
+  public void testedClassItselfIsNotTestedFirst() {
+    profile(method, BCI, times(new Base(), OBSERVATIONS));
+    assertNull(DynamicTypeCheckExpansion.getProfiledType(typeCheck, base));
+  }
+
+  @Test
+  public void dominantTypeThatFailsTheCheckIsNotTestedFirst() {
+    profile(method, BCI, times("not a Base", OBSERVATIONS));
+    assertNull(DynamicTypeCheckExpansion.getProfiledType(typeCheck, base));
+  }
+
+  @Test
+  public void typeCheckWithoutAPositionHasNoProfile() {
+    profile(method, BCI, times(new Derived(), OBSERVATIONS));
+    assertNull(DynamicTypeCheckExpansion.getProfiledType(Empty.create(FENCE), base));
+  }
+}
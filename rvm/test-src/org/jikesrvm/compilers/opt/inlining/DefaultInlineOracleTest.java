@@ -0,0 +1,126 @@
+/*
+ *  This file is part of the Jikes RVM project (http://jikesrvm.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  See the COPYRIGHT.txt file distributed with this work for information
+ *  regarding copyright ownership.
+ */
+package org.jikesrvm.compilers.opt.inlining;
+
+import static org.jikesrvm.compilers.baseline.TypeProfileRecorder.concat;
+import static org.jikesrvm.compilers.baseline.TypeProfileRecorder.profile;
+import static org.jikesrvm.compilers.baseline.TypeProfileRecorder.times;
+import static org.jikesrvm.tests.util.TestingTools.getNormalMethod;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jikesrvm.adaptive.database.callgraph.WeightedCallTargets;
+import org.jikesrvm.classloader.NormalMethod;
+import org.jikesrvm.classloader.RVMMethod;
+import org.jikesrvm.compilers.baseline.TypeProfile;
+import org.jikesrvm.compilers.opt.OptOptions;
+import org.jikesrvm.junit.runners.RequiresBuiltJikesRVM;
+import org.jikesrvm.junit.runners.RequiresOptCompiler;
+import org.jikesrvm.junit.runners.VMRequirements;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+
+@RunWith(VMRequirements.class)
+@Category({RequiresBuiltJikesRVM.class, RequiresOptCompiler.class})
+public class DefaultInlineOracleTest {
+
+  private static final int BCI = 1;
+
+  private static final int OBSERVATIONS = TypeProfile.MIN_OBSERVATIONS;
+
+  static class Base {
+    public int value() {
+      return 0;
+    }
+  }
+
+  static final class First extends Base {
+    @Override
+    public int value() {
+      return 1;
+    }
+  }
+
+  static final class Second extends Base {
+    @Override
+    public int value() {
+      return 2;
+    }
+  }
+
+  public static int call(Base b) {
+    return b.value();
+  }
+
+  private NormalMethod caller;
+  private RVMMethod callee;
+  private OptOptions opts;
+
+  @Before
+  public void getMethods() throws Exception {
+    caller = getNormalMethod(DefaultInlineOracleTest.class, "call", Base.class);
+    callee = getNormalMethod(Base.class, "value");
+    opts = new OptOptions();
+  }
+
+  private List<RVMMethod> targets() {
+    WeightedCallTargets targets = DefaultInlineOracle.getProfiledReceiverTargets(caller, BCI, callee, opts);
+    final List<RVMMethod> methods = new ArrayList<RVMMethod>();
+    if (targets != null) {
+      targets.visitTargets(new WeightedCallTargets.Visitor() {
+        @Override
+        public void visit(RVMMethod target, double weight) {
+          methods.add(target);
+        }
+      });
+    }
+    return methods;
+  }
+
+  @Test
+  public void receiverTypesAboveTheCallSiteFractionAreTargets() throws Exception {
+    opts.INLINE_AI_MIN_CALLSITE_FRACTION = 0.3;
+    profile(caller, BCI, concat(times(new First(), OBSERVATIONS * 6 / 10), times(new Second(), OBSERVATIONS * 4 / 10)));
+    List<RVMMethod> methods = targets();
+    assertEquals(2, methods.size());
+    assertSame(getNormalMethod(First.class, "value"), methods.get(0));
+    assertSame(getNormalMethod(Second.class, "value"), methods.get(1));
+  }
+
+  @Test
+  public void receiverTypesBelowTheCallSiteFractionAreNotTargets() throws Exception {
+    opts.INLINE_AI_MIN_CALLSITE_FRACTION = 0.5;
+    profile(caller, BCI, concat(times(new First(), OBSERVATIONS * 9 / 10), times(new Second(), OBSERVATIONS / 10)));
+    List<RVMMethod> methods = targets();
+    assertEquals(1, methods.size());
+    assertSame(getNormalMethod(First.class, "value"), methods.get(0));
+  }
+
+  @Test
+  public void immatureProfileHasNoTargets() {
+    profile(caller, BCI, times(new First(), OBSERVATIONS - 1));
+    assertNull(DefaultInlineOracle.getProfiledReceiverTargets(caller, BCI, callee, opts));
+  }
+
+  @Test
+  public void unprofiledCallSiteHasNoTargets() {
+    profile(caller, BCI + 1, times(new First(), OBSERVATIONS));
+    assertNull(DefaultInlineOracle.getProfiledReceiverTargets(caller, BCI, callee, opts));
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ *  This file is part of the Jikes RVM project (http://jikesrvm.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  See the COPYRIGHT.txt file distributed with this work for information
+ *  regarding copyright ownership.
+ */
+package org.jikesrvm.mm.mminterface;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import org.jikesrvm.VM;
+import org.jikesrvm.classloader.RVMType;
+import org.jikesrvm.junit.runners.RequiresBuiltJikesRVM;
+import org.jikesrvm.junit.runners.VMRequirements;
+import org.jikesrvm.scheduler.RVMThread;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+import org.mmtk.utility.options.Options;
+
+@RunWith(VMRequirements.class)
+@Category(RequiresBuiltJikesRVM.class)
+public class AllocationProfilerTest {
+
+  private static final int INTERVAL = 4096;
+
+  private static final int LIVE_OBJECTS = 1000;
+
+  private volatile int initialCountdown;
+
+  /** Keeps the counted objects live across the collection */
+  private Counted[] live;
+
+  private static final class Counted {}
+
+  @Test
+  public void newThreadStartsWithFullCountdown() throws InterruptedException {
+    int oldInterval = VM.allocationSampleInterval;
+    boolean oldSampling = AllocationProfiler.sampling;
+    try {
+      // Keep the countdown from being decremented by the thread's allocations
+      AllocationProfiler.sampling = false;
+      VM.allocationSampleInterval = INTERVAL;
+      Thread t = new Thread() {
+        @Override
+        public void run() {
+          initialCountdown = RVMThread.getCurrentThread().allocationSampleCountdown;
+        }
+      };
+      t.start();
+      t.join();
+    } finally {
+      VM.allocationSampleInterval = oldInterval;
+      AllocationProfiler.sampling = oldSampling;
+    }
+    assertEquals(INTERVAL, initialCountdown);
+  }
+
+  @Test
+  public void liveObjectsAreCountedOncePerFullHeapCollection() {
+    RVMType type = JikesRVMSupport.getTypeForClass(Counted.class);
+    if (VM.liveHeapHistogram) {
+      assumeTrue(type.getId() < VM.liveHeapHistogramTypes);
+    } else {
+      // Left allocated: a collection may be counting into it at any time from now on
+      AllocationProfiler.allocateHistogram(Math.max(VM.liveHeapHistogramTypes, type.getId() + 1));
+    }
+    live = new Counted[LIVE_OBJECTS];
+    for (int i = 0; i < live.length; i++) {
+      live[i] = new Counted();
+    }
+    boolean oldFullHeapSystemGC = Options.fullHeapSystemGC.getValue();
+    try {
+      Options.fullHeapSystemGC.setValue(true);
+      System.gc();
+    } finally {
+      Options.fullHeapSystemGC.setValue(oldFullHeapSystemGC);
+    }
+    assertEquals(LIVE_OBJECTS, AllocationProfiler.getLiveObjects(type));
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ *  This file is part of the Jikes RVM project (http://jikesrvm.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  See the COPYRIGHT.txt file distributed with this work for information
+ *  regarding copyright ownership.
+ */
+package org.jikesrvm.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeFalse;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.jikesrvm.VM;
+import org.jikesrvm.classloader.RVMType;
+import org.jikesrvm.junit.runners.RequiresBuiltJikesRVM;
+import org.jikesrvm.junit.runners.VMRequirements;
+import org.jikesrvm.objectmodel.ObjectModel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.runner.RunWith;
+
+@RunWith(VMRequirements.class)
+@Category(RequiresBuiltJikesRVM.class)
+public class LockContentionProfilerTest {
+
+  private static final class ContendedObject { }
+
+  private static final class OtherObject { }
+
+  @Before
+  public void enableProfiler() {
+    // Don't disturb a profile that is being collected for the whole VM
+    assumeFalse(VM.profileLockContention);
+    LockContentionProfiler.allocateTable(64);
+    VM.profileLockContention = true;
+  }
+
+  @After
+  public void disableProfiler() {
+    VM.profileLockContention = false;
+    LockContentionProfiler.freeTable();
+  }
+
+  private static int contentionsFor(Class<?> c) {
+    RVMType type = java.lang.JikesRVMSupport.getTypeForClass(c);
+    return LockContentionProfiler.getContentions(type);
+  }
+
+  /**
+   * Wait until a thread is queued to enter the (fat) lock on an object.
+   *
+   * @param o the object
+   */
+  private static void awaitEnteringThread(Object o) {
+    while (true) {
+      Lock l = ObjectModel.getHeavyLock(o, false);
+      if (l != null) {
+        l.mutex.lock();
+        boolean queued = l.getLockedObject() == o && !l.entering.isEmpty();
+        l.mutex.unlock();
+        if (queued) return;
+      }
+      Thread.yield();
+    }
+  }
+
+  @Test
+  public void recordsAreAccumulatedPerSite() {
+    Object o = new OtherObject();
+    for (int i = 0; i < 3; i++) {
+      LockContentionProfiler.record(1, o, 100);
+    }
+    assertEquals(3, contentionsFor(OtherObject.class));
+  }
+
+  @Test
+  public void nothingIsRecordedAfterTheTableIsFreed() {
+    LockContentionProfiler.freeTable();
+    LockContentionProfiler.record(1, new OtherObject(), 100);
+    assertEquals(0, contentionsFor(OtherObject.class));
+  }
+
+  @Test
+  public void contendedAcquisitionIsRecordedOnce() throws InterruptedException {
+    final Object o = new ContendedObject();
+    final CountDownLatch started = new CountDownLatch(1);
+    Thread contender = new Thread() {
+      @Override
+      public void run() {
+        started.countDown();
+        synchronized (o) {
+          o.hashCode();
+        }
+      }
+    };
+    synchronized (o) {
+      contender.start();
+      started.await();
+      // The contender inflates the lock and, once it has exhausted its spin
+      // budget, queues on it
+      awaitEnteringThread(o);
+    }
+    contender.join();
+    assertEquals(1, contentionsFor(ContendedObject.class));
+  }
+}
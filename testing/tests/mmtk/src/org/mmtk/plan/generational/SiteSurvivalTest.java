@@ -0,0 +1,83 @@
+/*
+ *  This file is part of the Jikes RVM project (http://jikesrvm.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  See the COPYRIGHT.txt file distributed with this work for information
+ *  regarding copyright ownership.
+ */
+package org.mmtk.plan.generational;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mmtk.harness.Harness;
+
+public class SiteSurvivalTest {
+
+  private static final float THRESHOLD = 0.8f;
+
+  /** Enough samples for a decision to be made */
+  private static final int SAMPLES = 64;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    Harness.initArchitecture(Arrays.asList("bits=32"));
+    Harness.initOnce();
+  }
+
+  private static void record(int site, int samples, boolean live) {
+    for (int i = 0; i < samples; i++) {
+      SiteSurvival.recordSample(site, live, THRESHOLD);
+    }
+  }
+
+  @Test
+  public void longLivedSiteIsPretenured() {
+    int site = 100;
+    record(site, SAMPLES, true);
+    assertTrue(SiteSurvival.isPretenured(site));
+    assertEquals(SAMPLES, SiteSurvival.getSampled(site));
+    assertEquals(SAMPLES, SiteSurvival.getSurvived(site));
+  }
+
+  @Test
+  public void shortLivedSiteIsNotPretenured() {
+    int site = 101;
+    record(site, SAMPLES, false);
+    assertFalse(SiteSurvival.isPretenured(site));
+    assertEquals(0, SiteSurvival.getSurvived(site));
+  }
+
+  @Test
+  public void siteWithALargeIdentifierIsPretenured() {
+    int site = (1 << 20) + 7;
+    record(site, SAMPLES, true);
+    assertTrue(SiteSurvival.isPretenured(site));
+  }
+
+  @Test
+  public void siteIsPretenuredWhenMoreSitesHaveBeenSampledThanFitTheTable() {
+    for (int site = 1 << 21; site < (1 << 21) + (1 << 16); site++) {
+      SiteSurvival.recordSample(site, false, THRESHOLD);
+    }
+    int site = 1 << 22;
+    record(site, SAMPLES, true);
+    assertTrue(SiteSurvival.isPretenured(site));
+  }
+
+  @Test
+  public void untrackedSiteIsNotPretenured() {
+    assertFalse(SiteSurvival.isPretenured(-1));
+    assertEquals(0, SiteSurvival.getSampled(1 << 23));
+  }
+}
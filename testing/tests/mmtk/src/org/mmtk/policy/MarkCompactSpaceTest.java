@@ -0,0 +1,69 @@
+/*
+ *  This file is part of the Jikes RVM project (http://jikesrvm.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  See the COPYRIGHT.txt file distributed with this work for information
+ *  regarding copyright ownership.
+ */
+package org.mmtk.policy;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mmtk.harness.Harness;
+import org.mmtk.harness.scheduler.MMTkThread;
+import org.mmtk.harness.tests.BaseMMTkTest;
+import org.mmtk.utility.alloc.EmbeddedMetaData;
+import org.mmtk.utility.heap.VMRequest;
+import org.mmtk.utility.heap.layout.HeapLayout;
+import org.mmtk.utility.heap.layout.VMLayoutConstants;
+import org.vmmagic.unboxed.Address;
+import org.vmmagic.unboxed.Word;
+
+public class MarkCompactSpaceTest extends BaseMMTkTest {
+
+  private static final int CHUNKS = 3;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    Harness.initArchitecture(Arrays.asList("bits=32"));
+    Harness.initOnce();
+  }
+
+  /**
+   * Marks in every chunk of a multi-chunk region of a discontiguous space
+   * must be cleared, not only those in the first chunk of the region.
+   */
+  @Test
+  public void prepareClearsMarksInEveryChunkOfADiscontiguousRegion() throws Throwable {
+    Thread t = new MMTkThread() {
+      @Override
+      public void run() {
+        MarkCompactSpace space = new MarkCompactSpace("mc-discontiguous", VMRequest.discontiguous());
+        Address region = space.growDiscontiguousSpace(CHUNKS);
+        assertEquals(CHUNKS, HeapLayout.vmMap.getContiguousRegionChunks(region));
+        HeapLayout.mmapper.ensureMapped(region, CHUNKS * VMLayoutConstants.PAGES_IN_CHUNK);
+
+        for (int i = 0; i < CHUNKS; i++) {
+          Address chunk = region.plus(i * EmbeddedMetaData.BYTES_IN_REGION);
+          EmbeddedMetaData.getMetaDataBase(chunk).store(Word.one());
+          assertEquals(chunk, MarkCompactSpace.nextMarked(chunk, chunk.plus(EmbeddedMetaData.BYTES_IN_REGION)));
+        }
+
+        space.prepare();
+
+        Address end = region.plus(CHUNKS * EmbeddedMetaData.BYTES_IN_REGION);
+        assertEquals(end, MarkCompactSpace.nextMarked(region, end));
+      }
+    };
+    runMMTkThread(t);
+  }
+}
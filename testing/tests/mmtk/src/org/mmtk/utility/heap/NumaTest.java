@@ -0,0 +1,85 @@
+/*
+ *  This file is part of the Jikes RVM project (http://jikesrvm.org).
+ *
+ *  This file is licensed to You under the Eclipse Public License (EPL);
+ *  You may not use this file except in compliance with the License. You
+ *  may obtain a copy of the License at
+ *
+ *      http://www.opensource.org/licenses/eclipse-1.0.php
+ *
+ *  See the COPYRIGHT.txt file distributed with this work for information
+ *  regarding copyright ownership.
+ */
+package org.mmtk.utility.heap;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mmtk.harness.Harness;
+import org.mmtk.harness.scheduler.MMTkThread;
+import org.mmtk.harness.tests.BaseMMTkTest;
+import org.mmtk.policy.CopySpace;
+import org.mmtk.utility.heap.layout.VMLayoutConstants;
+import org.vmmagic.unboxed.Address;
+
+public class NumaTest extends BaseMMTkTest {
+
+  private static final int NODES = 2;
+
+  private static final int CHUNKS_PER_NODE = 2;
+
+  private static final int PAGES_PER_NODE = CHUNKS_PER_NODE * VMLayoutConstants.PAGES_IN_CHUNK;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    Harness.initArchitecture(Arrays.asList("bits=32"));
+    Harness.initOnce();
+  }
+
+  private static Address acquire(PageResource pr, int pages) {
+    pr.reservePages(pages);
+    return pr.getNewPages(pages, pages, false);
+  }
+
+  /**
+   * A contiguous resource is divided into a slice per node, each bound
+   * once.  Pages come from the slice of the current node (node 0, as the
+   * harness does not know the processor of a thread) until it is full,
+   * then from the slice of the other node, and from the start of the
+   * slices again once the resource is reset.
+   */
+  @Test
+  public void pagesAreTakenFromTheSliceOfEachNodeInTurn() throws Throwable {
+    Thread t = new MMTkThread() {
+      @Override
+      public void run() {
+        CopySpace space = new CopySpace("numa", false, VMRequest.fixedSize(NODES * CHUNKS_PER_NODE * 4));
+        MonotonePageResource pr = new MonotonePageResource(space, space.getStart(), space.getExtent(), 0);
+        Address slice1 = space.getStart().plus(CHUNKS_PER_NODE * VMLayoutConstants.BYTES_IN_CHUNK);
+        Numa.setTopology(NODES, 1, NODES);
+        try {
+          pr.reset();
+          assertEquals(PAGES_PER_NODE, Numa.getPagesBound(0));
+          assertEquals(PAGES_PER_NODE, Numa.getPagesBound(1));
+
+          assertEquals(space.getStart(), acquire(pr, PAGES_PER_NODE));
+          assertEquals(slice1, acquire(pr, 1));
+          assertEquals(PAGES_PER_NODE - 1, pr.getAvailablePhysicalPages());
+          assertEquals(Address.zero(), acquire(pr, PAGES_PER_NODE));
+
+          pr.reset();
+          assertEquals(space.getStart(), acquire(pr, 1));
+          assertEquals(NODES * PAGES_PER_NODE - 1, pr.getAvailablePhysicalPages());
+          assertEquals(PAGES_PER_NODE, Numa.getPagesBound(0));
+          assertEquals(PAGES_PER_NODE, Numa.getPagesBound(1));
+        } finally {
+          Numa.setTopology(1, 1, NODES);
+        }
+      }
+    };
+    runMMTkThread(t);
+  }
+}
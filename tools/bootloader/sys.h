@@ -232,6 +232,9 @@ EXTERNAL void * sysMMapErrno(char *start , size_t length ,
                              int protection , int flags ,
                              int fd , Offset offset);
 EXTERNAL int sysMProtect(char *start, size_t length, int prot);
+EXTERNAL int sysNumaBind(char *start, size_t length, int node);
+EXTERNAL int sysMAdviseHugePages(char *start, size_t length);
+EXTERNAL long long sysHugePageBytes(Address start, Address end);
 EXTERNAL void sysCopy(void *dst, const void *src, Extent cnt);
 EXTERNAL void sysMemmove(void *dst, const void *src, Extent cnt);
 EXTERNAL void sysSyncCache(void *address, size_t size);
@@ -306,10 +309,15 @@ EXTERNAL Address sysThreadCreate(Address ip, Address fp, Address tr, Address jto
 EXTERNAL void sysStartMainThread(jboolean vmInSeparateThread, Address ip, Address sp, Address tr, Address jtoc, uint32_t *bootCompleted);
 EXTERNAL void sysCreateThreadSpecificDataKeys(void);
 EXTERNAL void sysStashVMThread(Address vmThread);
+EXTERNAL void * getVmThread();
 EXTERNAL int sysThreadBindSupported();
 EXTERNAL void sysThreadBind(int cpuId);
+EXTERNAL int sysGetCpu();
+EXTERNAL int sysNumaNodes();
+EXTERNAL int sysNumaNodeOfCpu(int cpuId);
 EXTERNAL void * sysThreadStartup(void *args);
 EXTERNAL Word sysGetThreadId();
+EXTERNAL int sysStartCpuTimer(long long intervalNanos);
 EXTERNAL void sysThreadTerminate();
 EXTERNAL void sysMonitorTimedWaitAbsolute(Word _monitor, long long whenWakeupNanos);
 EXTERNAL void sysNanoSleep(long long howLongNanos);
@@ -17,6 +17,10 @@
 #include <errno.h> // error numbers
 #include <string.h> // memcpy & memmove
 #include <sys/mman.h> // mmap
+#include <unistd.h> // syscall
+#ifdef RVM_FOR_LINUX
+#  include <sys/syscall.h> // SYS_mbind
+#endif
 
 int inRVMAddressSpace(Address a);
 
@@ -257,6 +261,87 @@ EXTERNAL int sysMProtect(char *start, size_t length, int prot)
   return mprotect(start, length, prot);
 }
 
+/**
+ * Ask the kernel to place the pages of a region on a NUMA node, falling
+ * back to other nodes when it has no free memory.  Pages of the region
+ * that have already been touched are moved to the node.
+ *
+ * Taken:     start address (Java ADDRESS)
+ *            length of region (Java EXTENT)
+ *            the preferred node (Java int)
+ * Returned:  0 (success) or -1 (failure) (Java int)
+ */
+EXTERNAL int sysNumaBind(char *start, size_t length, int node)
+{
+  TRACE_PRINTF("%s: sysNumaBind %p %zu %d\n", Me, start, length, node);
+#if defined(RVM_FOR_LINUX) && defined(SYS_mbind)
+  unsigned long nodemask[4];
+  const int bitsPerWord = 8 * sizeof(unsigned long);
+  if (node < 0 || node >= 4 * bitsPerWord) return -1;
+  memset(nodemask, 0, sizeof(nodemask));
+  nodemask[node / bitsPerWord] = 1UL << (node % bitsPerWord);
+  /* MPOL_PREFERRED and MPOL_MF_MOVE, without depending on numaif.h */
+  return syscall(SYS_mbind, start, length, 1, nodemask, 4 * bitsPerWord, 1 << 1);
+#else
+  return -1;
+#endif
+}
+
+/**
+ * Ask the kernel to back a region with transparent huge pages.
+ *
+ * Taken:     start address (Java ADDRESS)
+ *            length of region (Java EXTENT)
+ * Returned:  0 (success) or -1 (failure) (Java int)
+ */
+EXTERNAL int sysMAdviseHugePages(char *start, size_t length)
+{
+  TRACE_PRINTF("%s: sysMAdviseHugePages %p %zu\n", Me, start, length);
+#ifdef MADV_HUGEPAGE
+  return madvise(start, length, MADV_HUGEPAGE);
+#else
+  return -1;
+#endif
+}
+
+/**
+ * Count how much of a region is currently backed by transparent huge
+ * pages, from the AnonHugePages entries of /proc/self/smaps.  Mappings
+ * that straddle the region are counted in proportion to their overlap.
+ *
+ * Taken:     start address (Java ADDRESS)
+ *            end address (Java ADDRESS)
+ * Returned:  bytes backed by huge pages, or -1 if unknown (Java long)
+ */
+EXTERNAL long long sysHugePageBytes(Address start, Address end)
+{
+  TRACE_PRINTF("%s: sysHugePageBytes %p %p\n", Me, (void *) start, (void *) end);
+#ifdef RVM_FOR_LINUX
+  FILE *smaps = fopen("/proc/self/smaps", "r");
+  char line[256];
+  unsigned long vmaStart = 0, vmaEnd = 0;
+  long long total = 0;
+  if (smaps == NULL) return -1;
+  while (fgets(line, sizeof(line), smaps) != NULL) {
+    unsigned long lo, hi, kb;
+    if (sscanf(line, "%lx-%lx ", &lo, &hi) == 2) {
+      vmaStart = lo;
+      vmaEnd = hi;
+    } else if (sscanf(line, "AnonHugePages: %lu kB", &kb) == 1 && kb > 0) {
+      unsigned long from = vmaStart > start ? vmaStart : start;
+      unsigned long to = vmaEnd < end ? vmaEnd : end;
+      if (from < to) {
+        total += (long long) kb * 1024 * (to - from) / (vmaEnd - vmaStart);
+      }
+    }
+  }
+  fclose(smaps);
+  return total;
+#else
+  return -1;
+#endif
+}
+
 /** Memory to memory copy. Memory regions must not overlap. */
 EXTERNAL void sysCopy(void *dst, const void *src, Extent cnt)
 {
@@ -162,6 +162,50 @@ EXTERNAL void hardwareTrapHandler(int signo, siginfo_t *si, void *context)
   if (verboseSignalHandling) dumpContext(context);
 }
 
+/**
+ * Record where a collector thread was when its CPU timer expired: the
+ * interrupted instruction, the compiled method id of the current frame, the
+ * return address into the caller and the compiled method id of the caller's
+ * frame (see RVMThread.collectorSamples). The frame may not be set up yet
+ * if the thread was interrupted in a prologue or epilogue; the VM discards
+ * samples whose instruction is not in the method of the current frame.
+ *
+ * Taken:     thread  [in] the collector thread
+ *            context [in] register contents at the point of the signal
+ */
+static void recordCollectorSample(Address thread, void *context)
+{
+  int count = *(int *)(thread + RVMThread_collectorSampleCount_offset);
+  if (count >= *(int *)(thread + RVMThread_collectorSampleLimit_offset)) {
+    return;
+  }
+  Address instructionPtr;
+  Address instructionFollowingPtr;
+  Address threadPtr;
+  Address jtocPtr;
+  readContextInformation(context, &instructionPtr, &instructionFollowingPtr,
+                         &threadPtr, &jtocPtr);
+  Address fp = readContextFramePointer(context, thread);
+  Address *sample = ((Address *) *(Address *)(thread + RVMThread_collectorSamples_offset)) + 4 * count;
+  sample[0] = instructionPtr;
+  sample[1] = 0;
+  sample[2] = 0;
+  sample[3] = 0;
+  if (fp && fp != Constants_STACKFRAME_SENTINEL_FP) {
+    Address callerFp = *(Address *)(fp + Constants_STACKFRAME_FRAME_POINTER_OFFSET);
+    sample[1] = *(int *)(fp + Constants_STACKFRAME_METHOD_ID_OFFSET);
+    if (callerFp && callerFp != Constants_STACKFRAME_SENTINEL_FP) {
+#ifdef RVM_FOR_POWERPC
+      sample[2] = *(Address *)(callerFp + Constants_STACKFRAME_RETURN_ADDRESS_OFFSET);
+#else
+      sample[2] = *(Address *)(fp + Constants_STACKFRAME_RETURN_ADDRESS_OFFSET);
+#endif
+      sample[3] = *(int *)(callerFp + Constants_STACKFRAME_METHOD_ID_OFFSET);
+    }
+  }
+  *(int *)(thread + RVMThread_collectorSampleCount_offset) = count + 1;
+}
+
 /**
  * Software signal handler
  *
@@ -186,6 +230,21 @@ EXTERNAL void softwareSignalHandler(int signo, siginfo_t UNUSED *si, void *conte
     return;
   }
 
+  // per-thread CPU timer expired (see sysStartCpuTimer): ask the thread
+  // to take a yieldpoint so that the adaptive system samples it
+  if (signo == SIGPROF) {
+    Address thread = (Address) getVmThread();
+    if (thread && *(Address *)(thread + RVMThread_collectorSamples_offset)) {
+      // collector threads have no yieldpoints: record the sample here and
+      // leave it to the end of the collection to attribute it
+      recordCollectorSample(thread, context);
+    } else if (thread && *(int *)(thread + RVMThread_execStatus_offset) == RVMThread_IN_JAVA) {
+      (*(int *)(thread + RVMThread_timeSliceExpired_offset))++;
+      *(int *)(thread + RVMThread_takeYieldpoint_offset) = 1;
+    }
+    return;
+  }
+
   /* We need to adapt this code so that we run the exit handlers
    * appropriately.
    */
@@ -270,6 +329,7 @@ EXTERNAL void* sysStartMainThreadSignals()
   action.sa_sigaction = softwareSignalHandler;
   if (sigaction (SIGALRM, &action, 0) || /* catch timer ticks (so we can timeslice user level threads) */
       sigaction (SIGQUIT, &action, 0) || /* catch QUIT to invoke debugger thread */
+      sigaction (SIGPROF, &action, 0) || /* catch per-thread CPU timer ticks */
       sigaction (SIGTERM, &action, 0)) { /* catch TERM to dump and die */
     ERROR_PRINTF("%s: sigaction failed (errno=%d)\n", Me, errno);
     return NULL;
@@ -24,6 +24,7 @@
 #ifdef RVM_FOR_LINUX
 #  include <sys/sysinfo.h> // get_nprocs
 #  include <sys/ucontext.h>
+#  include <time.h> // timer_create, timer_settime, timer_delete
 #endif // def RVM_FOR_LINUX
 
 /** Constant to show that the newly created thread is a child */
@@ -79,6 +80,7 @@ extern TLS_KEY_TYPE VmThreadKey;
 static TLS_KEY_TYPE threadDataKey;
 static TLS_KEY_TYPE trKey;
 static TLS_KEY_TYPE sigStackKey;
+static TLS_KEY_TYPE cpuTimerKey;
 
 void createThreadLocal(TLS_KEY_TYPE *key) {
   int rc;
@@ -104,6 +106,7 @@ static void createThreadSpecificDataKeys()
   createThreadLocal(&threadDataKey);
   createThreadLocal(&trKey);
   createThreadLocal(&sigStackKey);
+  createThreadLocal(&cpuTimerKey);
   TRACE_PRINTF("%s: vm thread key=%lu\n", Me, (long unsigned int)VmThreadKey);
   TRACE_PRINTF("%s: thread data key key=%lu\n", Me, (long unsigned int)threadDataKey);
   TRACE_PRINTF("%s: thread register key=%lu\n", Me, (long unsigned int)trKey);
@@ -474,6 +477,61 @@ EXTERNAL void sysThreadBind(int cpuId)
 #endif
 }
 
+/**
+ * Returns the processor the calling thread is running on, or -1 if this
+ * cannot be determined.
+ */
+EXTERNAL int sysGetCpu()
+{
+  int result = -1;
+  TRACE_PRINTF("%s: sysGetCpu\n", Me);
+#ifdef RVM_FOR_LINUX
+  result = sched_getcpu();
+#endif
+  return result;
+}
+
+/**
+ * Returns the number of NUMA nodes in the system, as listed in sysfs.
+ * Systems without NUMA support have a single node.
+ */
+EXTERNAL int sysNumaNodes()
+{
+  int nodes = 1;
+  TRACE_PRINTF("%s: sysNumaNodes\n", Me);
+#ifdef RVM_FOR_LINUX
+  char path[64];
+  for (;;) {
+    snprintf(path, sizeof(path), "/sys/devices/system/node/node%d", nodes);
+    if (access(path, F_OK) != 0) break;
+    nodes++;
+  }
+#endif
+  return nodes;
+}
+
+/**
+ * Returns the NUMA node that a processor belongs to, or 0 if this
+ * cannot be determined.
+ *
+ * Taken:     the processor (Java int)
+ */
+EXTERNAL int sysNumaNodeOfCpu(int cpuId)
+{
+  TRACE_PRINTF("%s: sysNumaNodeOfCpu %d\n", Me, cpuId);
+#ifdef RVM_FOR_LINUX
+  char path[64];
+  int node;
+  for (node = 0; ; node++) {
+    snprintf(path, sizeof(path), "/sys/devices/system/node/node%d", node);
+    if (access(path, F_OK) != 0) break;
+    snprintf(path, sizeof(path), "/sys/devices/system/node/node%d/cpu%d", node, cpuId);
+    if (access(path, F_OK) == 0) return node;
+  }
+#endif
+  return 0;
+}
+
 /**
  * Function called by pthread startup
  *
@@ -552,6 +610,48 @@ EXTERNAL Word sysGetThreadId()
   return (Word) getThreadId();
 }
 
+/**
+ * Start a timer that raises SIGPROF in the current thread every time the
+ * thread has consumed the given amount of CPU time. The signal handler
+ * asks the thread to take a yieldpoint, so threads are sampled in
+ * proportion to the CPU time they use. The timer is deleted when the
+ * thread terminates.
+ *
+ * Taken:     intervalNanos [in] CPU time between signals
+ * Returned:  0 if the timer was started, an error number otherwise
+ */
+EXTERNAL int sysStartCpuTimer(long long intervalNanos)
+{
+  TRACE_PRINTF("%s: sysStartCpuTimer\n", Me);
+#if defined RVM_FOR_LINUX && defined SYS_gettid
+  struct sigevent event;
+  struct itimerspec spec;
+  timer_t *timer = (timer_t *) checkMalloc(sizeof(timer_t));
+  memset(&event, 0, sizeof event);
+  event.sigev_notify = SIGEV_THREAD_ID;
+  event.sigev_signo = SIGPROF;
+  event._sigev_un._tid = (pid_t) syscall(SYS_gettid);
+  if (timer_create(CLOCK_THREAD_CPUTIME_ID, &event, timer)) {
+    int err = errno;
+    checkFree(timer);
+    return err;
+  }
+  spec.it_interval.tv_sec = intervalNanos / 1000000000LL;
+  spec.it_interval.tv_nsec = intervalNanos % 1000000000LL;
+  spec.it_value = spec.it_interval;
+  if (timer_settime(*timer, 0, &spec, NULL)) {
+    int err = errno;
+    timer_delete(*timer);
+    checkFree(timer);
+    return err;
+  }
+  setThreadLocal(cpuTimerKey, (void *) timer);
+  return 0;
+#else
+  return ENOSYS;
+#endif
+}
+
 /**
  * Yields execution back to o/s.
  */
@@ -794,6 +894,13 @@ EXTERNAL void sysThreadTerminate()
   *(int*)(tr + RVMThread_execStatus_offset) = RVMThread_TERMINATED;
   Address threadData = (Address) GET_THREAD_LOCAL(threadDataKey);
   void * sigStack = (void *) GET_THREAD_LOCAL(sigStackKey);
+#if defined RVM_FOR_LINUX && defined SYS_gettid
+  timer_t *cpuTimer = (timer_t *) GET_THREAD_LOCAL(cpuTimerKey);
+  if (cpuTimer != NULL) {
+    timer_delete(*cpuTimer);
+    checkFree(cpuTimer);
+  }
+#endif
   sysEndThreadSignals(sigStack);
   if (threadData == MAIN_THREAD_DONT_TERMINATE) {
     while(1) pause();